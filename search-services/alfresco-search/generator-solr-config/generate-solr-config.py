@@ -33,7 +33,11 @@ def get_copy_field_xml(source, destination):
 
 def get_dynamic_field_xml(field, field_type):
     postfix = ""
-    if field_type in ("text", "content"):
+    # The content stored fields have their own type, whose term vectors are enabled by the
+    # alfresco.content.highlighting.termVectors switch of the schema
+    if field_type == "content":
+        postfix = '" type="localePrefixedFieldWithOffsets" />'
+    elif field_type == "text":
         postfix = '" type="localePrefixedField" />'
     else:
         postfix = '" type="localePrefixedField" multiValued="true" />'
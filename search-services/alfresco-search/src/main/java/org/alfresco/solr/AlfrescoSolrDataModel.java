@@ -42,9 +42,14 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -104,6 +109,8 @@ import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.util.Version;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
 import org.apache.solr.core.CoreDescriptorDecorator;
 import org.apache.solr.core.SolrResourceLoader;
 import org.apache.solr.request.SolrQueryRequest;
@@ -256,6 +263,16 @@ public class AlfrescoSolrDataModel implements QueryConstants
     private final Set<QName> tokeniseProperties = new HashSet<>();
     private final ThreadPoolExecutor threadPool;
 
+    /**
+     * Upper bound for the entries of each field mapping cache: property names come from the models (and therefore they
+     * are naturally bounded) but query terms can reference properties which don't exist.
+     */
+    private static final int MAX_CACHED_FIELD_MAPPINGS = 100000;
+
+    private final LongAdder fieldMappingHits = new LongAdder();
+    private final LongAdder fieldMappingMisses = new LongAdder();
+    private volatile FieldMappings fieldMappings = new FieldMappings(0);
+
     public void close() {
         threadPool.shutdown();
     }
@@ -652,7 +669,19 @@ public class AlfrescoSolrDataModel implements QueryConstants
         return dictionaryComponent;
     }
 
+    /**
+     * Returns the field associated with the given specialized metadata (e.g. the mimetype of a content property).
+     * The returned instance is cached until the next model change, so it must not be modified.
+     */
     public IndexedField getIndexedFieldForSpecializedPropertyMetadata(QName propertyQName, SpecializedFieldType type)
+    {
+        return cachedFieldMapping(
+                fieldMappings.queryableFields,
+                new FieldMappingKey(propertyQName, type, null),
+                () -> createIndexedFieldForSpecializedPropertyMetadata(propertyQName, type));
+    }
+
+    private IndexedField createIndexedFieldForSpecializedPropertyMetadata(QName propertyQName, SpecializedFieldType type)
     {
         IndexedField indexedField = new IndexedField();
         PropertyDefinition propertyDefinition = getPropertyDefinition(propertyQName);
@@ -722,6 +751,10 @@ public class AlfrescoSolrDataModel implements QueryConstants
     }
 
 
+    /**
+     * Returns the fields which can be used for querying the given property with the given purpose.
+     * The returned instance is cached until the next model change, so it must not be modified.
+     */
     public IndexedField getQueryableFields(QName propertyQName, SpecializedFieldType type, FieldUse fieldUse)
     {
         if(type != null)
@@ -729,6 +762,14 @@ public class AlfrescoSolrDataModel implements QueryConstants
             return getIndexedFieldForSpecializedPropertyMetadata(propertyQName, type);
         }
 
+        return cachedFieldMapping(
+                fieldMappings.queryableFields,
+                new FieldMappingKey(propertyQName, null, fieldUse),
+                () -> createQueryableFields(propertyQName, fieldUse));
+    }
+
+    private IndexedField createQueryableFields(QName propertyQName, FieldUse fieldUse)
+    {
         IndexedField indexedField = new IndexedField();
         PropertyDefinition propertyDefinition = getPropertyDefinition(propertyQName);
         if((propertyDefinition == null))
@@ -1197,15 +1238,27 @@ public class AlfrescoSolrDataModel implements QueryConstants
 
 
     /**
-     * Get all the field names into which we must copy the source data
+     * Get all the field names into which we must copy the source data.
+     * The returned instance is cached until the next model change, so it must not be modified.
      *
      * @param propertyQName QName
      * @return IndexedField
      */
     public IndexedField getIndexedFieldNamesForProperty(QName propertyQName)
     {
-        // TODO: Cache and throw on model refresh
+        if (propertyQName == null)
+        {
+            return createIndexedFieldNamesForProperty(null);
+        }
+
+        return cachedFieldMapping(
+                fieldMappings.indexedFields,
+                propertyQName,
+                () -> createIndexedFieldNamesForProperty(propertyQName));
+    }
 
+    private IndexedField createIndexedFieldNamesForProperty(QName propertyQName)
+    {
         IndexedField indexedField = new IndexedField();
         PropertyDefinition propertyDefinition = getPropertyDefinition(propertyQName);
 
@@ -1420,6 +1473,7 @@ public class AlfrescoSolrDataModel implements QueryConstants
     {
         modelErrors.remove(model.getName());
         dictionaryDAO.putModelIgnoringConstraints(model);
+        invalidateFieldMappings();
         return true;
     }
 
@@ -1427,6 +1481,7 @@ public class AlfrescoSolrDataModel implements QueryConstants
     {
         modelErrors.remove(getM2Model(modelQName).getName());
         dictionaryDAO.removeModel(modelQName);
+        invalidateFieldMappings();
     }
 
     M2Model getM2Model(QName modelQName)
@@ -1440,6 +1495,59 @@ public class AlfrescoSolrDataModel implements QueryConstants
         {
             cds.afterDictionaryInit();
         }
+        invalidateFieldMappings();
+    }
+
+    /**
+     * Discards all the cached property to field mappings.
+     * The caches are replaced as a whole, so a mapping computed against the previous models version, and stored after
+     * this call, ends up in the discarded caches and it will never be returned.
+     */
+    synchronized void invalidateFieldMappings()
+    {
+        fieldMappings = new FieldMappings(fieldMappings.version + 1);
+    }
+
+    /**
+     * Returns the usage statistics of the property to field mappings caches.
+     *
+     * @return the lookups, hits, hit ratio, current size and models version of the mappings caches.
+     */
+    public NamedList<Object> getFieldMappingsStatistics()
+    {
+        FieldMappings mappings = fieldMappings;
+        long hits = fieldMappingHits.sum();
+        long lookups = hits + fieldMappingMisses.sum();
+
+        NamedList<Object> statistics = new SimpleOrderedMap<>();
+        statistics.add("lookups", lookups);
+        statistics.add("hits", hits);
+        statistics.add("hitratio", lookups > 0 ? (float) hits / lookups : 0f);
+        statistics.add("size", mappings.indexedFields.size() + mappings.queryableFields.size());
+        statistics.add("modelVersion", mappings.version);
+        return statistics;
+    }
+
+    private <K> IndexedField cachedFieldMapping(ConcurrentMap<K, IndexedField> cache, K key, Supplier<IndexedField> mapping)
+    {
+        IndexedField indexedField = cache.get(key);
+        if (indexedField != null)
+        {
+            fieldMappingHits.increment();
+            return indexedField;
+        }
+
+        fieldMappingMisses.increment();
+        indexedField = mapping.get();
+        if (cache.size() < MAX_CACHED_FIELD_MAPPINGS)
+        {
+            IndexedField previous = cache.putIfAbsent(key, indexedField);
+            if (previous != null)
+            {
+                return previous;
+            }
+        }
+        return indexedField;
     }
 
     public org.alfresco.repo.search.impl.querymodel.Query parseCMISQueryToAlfrescoAbstractQuery(CMISQueryMode mode, SearchParameters searchParameters,
@@ -1554,6 +1662,58 @@ public class AlfrescoSolrDataModel implements QueryConstants
         }
     }
 
+    /**
+     * The property to field mappings computed against a given models version.
+     */
+    private static final class FieldMappings
+    {
+        final long version;
+        final ConcurrentMap<QName, IndexedField> indexedFields = new ConcurrentHashMap<>();
+        final ConcurrentMap<FieldMappingKey, IndexedField> queryableFields = new ConcurrentHashMap<>();
+
+        FieldMappings(long version)
+        {
+            this.version = version;
+        }
+    }
+
+    private static final class FieldMappingKey
+    {
+        final QName propertyQName;
+        final SpecializedFieldType type;
+        final FieldUse fieldUse;
+
+        FieldMappingKey(QName propertyQName, SpecializedFieldType type, FieldUse fieldUse)
+        {
+            this.propertyQName = propertyQName;
+            this.type = type;
+            this.fieldUse = fieldUse;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+            if (!(obj instanceof FieldMappingKey))
+            {
+                return false;
+            }
+            FieldMappingKey other = (FieldMappingKey) obj;
+            return Objects.equals(propertyQName, other.propertyQName)
+                    && type == other.type
+                    && fieldUse == other.fieldUse;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(propertyQName, type, fieldUse);
+        }
+    }
+
     public static class FieldInstance
     {
         final String field;
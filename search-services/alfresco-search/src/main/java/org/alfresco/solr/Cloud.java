@@ -26,7 +26,9 @@
 
 package org.alfresco.solr;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.stream.Collectors;
 
 import org.alfresco.repo.search.adaptor.QueryConstants;
 import org.apache.solr.common.SolrDocumentList;
@@ -79,6 +81,23 @@ public class Cloud
         return query.toString();
     }
 
+    /**
+     * Creates a terms query to select docs with any of the specified field values.
+     * Unlike {@link #getQuery(String, String, Collection...)}, the values are parsed as a plain comma separated list and
+     * matched through a single terms set query, so the query is not bound to the maxBooleanClauses limit.
+     * @param fieldName the name of the field in the condition
+     * @param valueLists a bunch of possible values for the field (they must not contain commas)
+     * @return the resulting query string
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    String getTermsQuery(String fieldName, Collection... valueLists)
+    {
+        return Arrays.stream(valueLists)
+                .flatMap(values -> ((Collection<Object>) values).stream())
+                .map(Object::toString)
+                .collect(Collectors.joining(",", "{!terms f=" + fieldName + "}", ""));
+    }
+
     /**
      * Returns whether or not a doc exists that satisfies the specified query
      * @param requestHandler the handler that handles the request
@@ -533,6 +533,10 @@ class HandlerReportHelper
                 srv.getTrackerStats().getModelTimes().getNamedList(detail, hist, values));
         coreSummary.add("Acl index time (ms)",
                 srv.getTrackerStats().getAclTimes().getNamedList(detail, hist, values));
+        coreSummary.add("Acl fetch time (ms)",
+                srv.getTrackerStats().getAclFetchTimes().getNamedList(detail, hist, values));
+        coreSummary.add("Acl fetch wait time (ms)",
+                srv.getTrackerStats().getAclFetchWaitTimes().getNamedList(detail, hist, values));
         coreSummary.add("Node index time (ms)",
                 srv.getTrackerStats().getNodeTimes().getNamedList(detail, hist, values));
         coreSummary.add("Docs/Tx", srv.getTrackerStats().getTxDocs().getNamedList(detail, hist, values));
@@ -27,9 +27,11 @@
 package org.alfresco.solr;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.alfresco.httpclient.AuthenticationException;
 import org.alfresco.repo.dictionary.DictionaryComponent;
@@ -100,10 +102,37 @@ public interface InformationServer extends InformationServerCollectionProvider
 
     void cascadeNodes(List<NodeMetaData> nodes, boolean overwrite) throws IOException, AuthenticationException, JSONException;
 
-    List<NodeMetaData> getCascadeNodes(List<Long> txnIds) throws AuthenticationException, IOException, JSONException;
+    /**
+     * Cascades the updates of the given parent nodes to their descendants.
+     * The descendants whose stored path goes through another pending parent (e.g. nested moves handled by other
+     * batches) are left to the Repository, as their stored paths are about to change.
+     *
+     * @param nodes the parent nodes to cascade.
+     * @param pendingParents all the parent nodes with a pending cascade, including the given ones.
+     * @param overwrite whether the descendant documents are overwritten.
+     * @param repositoryPool the pool requesting the metadata of the descendants from the Repository in parallel.
+     */
+    void cascadeNodes(List<NodeMetaData> nodes, Collection<NodeMetaData> pendingParents, boolean overwrite,
+            ForkJoinPool repositoryPool) throws IOException, AuthenticationException, JSONException;
+
+    /**
+     * Gets the metadata of the parent nodes updated by the given transactions.
+     *
+     * @param repositoryPool the pool requesting the metadata from the Repository in parallel.
+     */
+    List<NodeMetaData> getCascadeNodes(List<Long> txnIds, ForkJoinPool repositoryPool)
+            throws AuthenticationException, IOException, JSONException;
 
     long indexAcl(List<AclReaders> aclReaderList, boolean overwrite) throws IOException;
 
+    /**
+     * Indexes a batch of ACL change sets: the given ACLs, the ACL change sets and the ACL tracker state (which refers
+     * to the latest change set in the batch) are written through a single update request.
+     *
+     * @return the elapsed time, in nanoseconds.
+     */
+    long indexAclChangeSets(List<AclReaders> aclReaderList, Collection<AclChangeSet> changeSets) throws IOException;
+
     TrackerState getTrackerInitialState();
 
     void continueState(TrackerState state);
@@ -116,6 +145,20 @@ public interface InformationServer extends InformationServerCollectionProvider
 
     boolean aclChangeSetInIndex(long changeSetId, boolean populateCache) throws IOException;
 
+    /**
+     * Bulk version of {@link #txnInIndex(long, boolean)}.
+     *
+     * @return the subset of the given transaction ids which are already in the index (or already processed).
+     */
+    Set<Long> txnsInIndex(Collection<Long> txnIds, boolean populateCache) throws IOException;
+
+    /**
+     * Bulk version of {@link #aclChangeSetInIndex(long, boolean)}.
+     *
+     * @return the subset of the given ACL change set ids which are already in the index (or already processed).
+     */
+    Set<Long> aclChangeSetsInIndex(Collection<Long> changeSetIds, boolean populateCache) throws IOException;
+
     List<Transaction> getCascades(int num) throws IOException;
 
     void updateTransaction(Transaction txn) throws IOException;
@@ -156,10 +199,27 @@ public interface InformationServer extends InformationServerCollectionProvider
 
     IndexHealthReport reportIndexTransactions(Long minTxId, IOpenBitSet txIdsInDb, long maxTxId) throws IOException;
 
-    List<TenantDbId> getDocsWithUncleanContent() throws IOException;
+    /**
+     * Looks up the documents with unclean content, marking their transactions as processed.
+     *
+     * @param segmentPool the pool scanning the index segments in parallel
+     */
+    List<TenantDbId> getDocsWithUncleanContent(ForkJoinPool segmentPool) throws IOException;
+
+    /**
+     * Marks the transactions of the given documents, returned by {@link #getDocsWithUncleanContent(ForkJoinPool)} but not
+     * updated, as not processed: their documents are returned again by the next lookup.
+     */
+    void releaseDocsWithUncleanContent(List<TenantDbId> docRefs);
 
     void updateContent(TenantDbId docRef) throws Exception;
 
+    /**
+     * Updates the text content of the given documents through a single update processor chain.
+     * A document whose content can't be updated is logged and skipped, it will be picked up again by a later run.
+     */
+    void updateContentBatch(List<TenantDbId> docRefs) throws Exception;
+
     void addCommonNodeReportInfo(NodeReport nodeReport);
 
     /**
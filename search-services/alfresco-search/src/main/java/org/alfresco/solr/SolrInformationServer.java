@@ -29,9 +29,12 @@ package org.alfresco.solr;
 import static java.util.Arrays.asList;
 import static java.util.Arrays.stream;
 import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.synchronizedList;
 import static java.util.Optional.empty;
 import static java.util.Optional.ofNullable;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 import static org.alfresco.repo.search.adaptor.QueryConstants.FIELD_ACLID;
 import static org.alfresco.repo.search.adaptor.QueryConstants.FIELD_ACLTXCOMMITTIME;
 import static org.alfresco.repo.search.adaptor.QueryConstants.FIELD_ACLTXID;
@@ -82,6 +85,7 @@ import static org.alfresco.repo.search.adaptor.QueryConstants.FIELD_TYPE;
 import static org.alfresco.repo.search.adaptor.QueryConstants.FIELD_VERSION;
 import static org.alfresco.solr.AlfrescoSolrDataModel.getAclChangeSetDocumentId;
 import static org.alfresco.solr.AlfrescoSolrDataModel.getAclDocumentId;
+import static org.alfresco.solr.utils.MinHashBands.FIELD_MINHASH_BAND;
 import static org.alfresco.solr.utils.Utils.notNullOrEmpty;
 import static org.alfresco.util.ISO8601DateFormat.isTimeComponentDefined;
 import static org.alfresco.service.cmr.security.AuthorityType.EVERYONE;
@@ -91,20 +95,24 @@ import static org.alfresco.service.cmr.security.AuthorityType.GUEST;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.IsoFields;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -115,17 +123,26 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.LongPredicate;
 import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 import java.util.stream.LongStream;
+import java.util.stream.Stream;
 import java.util.zip.GZIPInputStream;
 
 import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.LongArrayDeque;
+import com.carrotsearch.hppc.LongArrayList;
 import com.carrotsearch.hppc.LongHashSet;
+import com.carrotsearch.hppc.LongLongHashMap;
 import com.carrotsearch.hppc.cursors.LongCursor;
 
 import org.alfresco.httpclient.AuthenticationException;
@@ -168,25 +185,36 @@ import org.alfresco.solr.client.StringPropertyValue;
 import org.alfresco.solr.client.Transaction;
 import org.alfresco.solr.config.ConfigUtil;
 import org.alfresco.solr.logging.Log;
+import org.alfresco.solr.query.DocValuesCache;
 import org.alfresco.solr.tracker.IndexHealthReport;
 import org.alfresco.solr.tracker.TrackerStats;
+import org.alfresco.solr.utils.MinHashBands;
 import org.alfresco.solr.utils.Utils;
 import org.alfresco.util.ISO9075;
 import org.alfresco.util.Pair;
 import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.io.input.CharSequenceReader;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.IndexCommit;
 import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.NumericDocValues;
-import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BulkScorer;
 import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.LeafCollector;
 import org.apache.lucene.search.LegacyNumericRangeQuery;
 import org.apache.lucene.search.Query;
@@ -195,8 +223,10 @@ import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
-import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.BytesRefBuilder;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.common.SolrDocument;
@@ -222,7 +252,6 @@ import org.apache.solr.schema.SchemaField;
 import org.apache.solr.search.DelegatingCollector;
 import org.apache.solr.search.DocIterator;
 import org.apache.solr.search.DocList;
-import org.apache.solr.search.QueryWrapperFilter;
 import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.update.AddUpdateCommand;
 import org.apache.solr.update.CommitUpdateCommand;
@@ -233,7 +262,6 @@ import org.apache.solr.util.ConcurrentLRUCache;
 import org.apache.solr.util.RefCounted;
 import org.json.JSONException;
 import org.springframework.extensions.surf.util.I18NUtil;
-import org.springframework.util.FileCopyUtils;
 
 /**
  * This is the Apache Solr implementation of the information server (index).
@@ -356,12 +384,17 @@ public class SolrInformationServer implements InformationServer
     private static final String SHARED_FILES = "_SHARED_FILES_";
 
     private static final Set<String> REQUEST_ONLY_ID_FIELD = new HashSet<>(Collections.singletonList(FIELD_SOLR4_ID));
+    private static final Set<String> CASCADE_LOCALLY_FIELDS =
+            new HashSet<>(asList(FIELD_DBID, FIELD_LID, FIELD_INTXID, FIELD_ACLID, FIELD_PATH, FIELD_APATH, FIELD_NPATH));
 
     private static final String LATEST_APPLIED_CONTENT_VERSION_ID = "LATEST_APPLIED_CONTENT_VERSION_ID";
     private static final String LAST_INCOMING_CONTENT_VERSION_ID = "LAST_INCOMING_CONTENT_VERSION_ID";
+    private static final String OUTDATED_CONTENT_TXN_ID = "OUTDATED_CONTENT_TXN_ID";
 
     private static final long CONTENT_OUTDATED_MARKER = -10;
     private static final long CONTENT_UPDATED_MARKER = -20;
+    private static final int CONTENT_READ_BUFFER_SIZE = 8192;
+    private static final long CONTENT_TXN_WINDOW = 500;
 
     private static final String CONTENT_FIELD_NAME = "contentFieldName";
 
@@ -431,6 +464,9 @@ public class SolrInformationServer implements InformationServer
     private final long lag;
     private final long holeRetention;
     private final boolean fingerprintHasBeenEnabledOnThisInstance;
+
+    // Number of MINHASH values hashed together in each MINHASH_BAND token (0 disables the band signatures)
+    private final int fingerprintBandSize;
     private final int contentStreamLimit;
     private final int statsFacetLimit;
 
@@ -439,6 +475,12 @@ public class SolrInformationServer implements InformationServer
     // Get Paths information from Repository for a batch of nodes (true by default)
     // When false, Paths information is only recovered for single nodes
     private final boolean getPathsInNodeBatches;
+
+    // Number of descendant ids requested to the Repository in a single call when cascading a parent update
+    private final int cascadeDescendantBatchSize;
+
+    // Derive the paths of the descendants of a moved node from the index, instead of fetching them from the Repository
+    private final boolean cascadePathsLocally;
     
     // Metadata pulling control
     private boolean skipDescendantDocsForSpecificTypes;
@@ -452,9 +494,9 @@ public class SolrInformationServer implements InformationServer
     private final ReentrantReadWriteLock commitAndRollbackLock = new ReentrantReadWriteLock();
     private final String hostName;
     private final Properties props;
-    private final LRU txnIdCache = new LRU(250000);
-    private final LRU aclChangeSetCache = new LRU(250000);
-    private final Map<Long, Long> cleanContentCache = Collections.synchronizedMap(new LRU(250000));
+    private final ConcurrentLRUCache<Long, Boolean> txnIdCache = new ConcurrentLRUCache<>(250000, 200000);
+    private final ConcurrentLRUCache<Long, Boolean> aclChangeSetCache = new ConcurrentLRUCache<>(250000, 200000);
+    private final TxnTimeCache cleanContentCache = new TxnTimeCache(250000);
     private final LRU cleanCascadeCache = new LRU(250000);
 
     private final int port;
@@ -499,14 +541,60 @@ public class SolrInformationServer implements InformationServer
         }
     }
 
+    /**
+     * Collects the database ids of the matching node documents from the {@link QueryConstants#FIELD_DBID} doc values,
+     * without loading any stored field. Segments without those doc values fall back to decoding the stored document id.
+     */
+    static class DbIdCollector implements Collector, LeafCollector
+    {
+        private final LongHashSet dbIds = new LongHashSet();
+        private LeafReader reader;
+        private NumericDocValues dbIdDocValues;
+
+        public LongHashSet getDbIds()
+        {
+            return this.dbIds;
+        }
+
+        public boolean needsScores()
+        {
+            return false;
+        }
+
+        public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException
+        {
+            this.reader = context.reader();
+            this.dbIdDocValues = reader.getNumericDocValues(FIELD_DBID);
+            return this;
+        }
+
+        public void setScorer(Scorer scorer)
+        {
+            // Nothing to be done here
+        }
+
+        public void collect(int doc) throws IOException
+        {
+            if (dbIdDocValues != null)
+            {
+                dbIds.add(dbIdDocValues.get(doc));
+            }
+            else
+            {
+                Document document = reader.document(doc, REQUEST_ONLY_ID_FIELD);
+                dbIds.add(AlfrescoSolrDataModel.decodeNodeDocumentId(document.get(FIELD_SOLR4_ID)).dbId);
+            }
+        }
+    }
+
     static class TxnCacheFilter extends DelegatingCollector
     {
         private NumericDocValues currentLongs;
-        private final Map<Long, Long> txnLRU;
+        private final LongPredicate isCached;
 
-        TxnCacheFilter(Map<Long, Long> txnLRU)
+        TxnCacheFilter(LongPredicate isCached)
         {
-            this.txnLRU = txnLRU;
+            this.isCached = isCached;
         }
 
         public void doSetNextReader(LeafReaderContext context) throws IOException
@@ -519,52 +607,247 @@ public class SolrInformationServer implements InformationServer
         {
             long txnId = currentLongs.get(doc);
 
-            if(!txnLRU.containsKey(txnId))
+            if(!isCached.test(txnId))
             {
                 this.leafDelegate.collect(doc);
             }
         }
     }
 
-    static class TxnCollector extends DelegatingCollector
+    /**
+     * Collects, in a single pass, the documents belonging to the lowest transactions that have not been processed yet:
+     * the transaction floor is the lowest transaction id seen and only the documents with a transaction id in
+     * [floor, floor + window) are kept. Documents and transaction ids are held in parallel primitive lists, which are
+     * compacted whenever the floor moves down enough to make part of them obsolete.
+     * A collector can be used for a single segment: the windows of the segments are then merged by lowering each
+     * collector ceiling to the lowest one.
+     */
+    static class OutdatedContentCollector implements Collector, LeafCollector
     {
+        private static final int MIN_COMPACTION_SIZE = 1024;
+
+        private final LongPredicate isProcessed;
+        private final long window;
+        private final IntArrayList docs = new IntArrayList();
+        private final LongArrayList txnIds = new LongArrayList();
         private NumericDocValues currentLongs;
-        private final LongHashSet txnSet = new LongHashSet(1000);
-        private final long txnFloor;
-        private final long txnCeil;
+        private int docBase;
+        private long txnCeil = Long.MAX_VALUE;
+        private int compactionSize = MIN_COMPACTION_SIZE;
 
-        TxnCollector(long txnFloor)
-        {
-            this.txnFloor = txnFloor;
-            this.txnCeil = txnFloor+500;
-        }
+        // Documents of the same transaction are usually next to each other
+        private long lastTxnId = -1;
+        private boolean lastTxnProcessed;
 
-        @Override
-        public void doSetNextReader(LeafReaderContext context) throws IOException
+        OutdatedContentCollector(LongPredicate isProcessed, long window)
         {
-            currentLongs = context.reader().getNumericDocValues(FIELD_INTXID);
+            this.isProcessed = isProcessed;
+            this.window = window;
         }
 
-        @Override
         public boolean needsScores()
         {
             return false;
         }
 
-        @Override
+        public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException
+        {
+            this.docBase = context.docBase;
+            this.currentLongs = context.reader().getNumericDocValues(FIELD_INTXID);
+            return this;
+        }
+
+        public void setScorer(Scorer scorer)
+        {
+            // Nothing to be done here
+        }
+
         public void collect(int doc)
         {
+            if (currentLongs == null)
+            {
+                return;
+            }
+
             long txnId = currentLongs.get(doc);
-            if(txnId >= txnFloor && txnId < txnCeil)
+            if (txnId >= txnCeil)
+            {
+                return;
+            }
+
+            if (txnId != lastTxnId)
+            {
+                lastTxnId = txnId;
+                lastTxnProcessed = isProcessed.test(txnId);
+            }
+            if (lastTxnProcessed)
+            {
+                return;
+            }
+
+            if (txnCeil == Long.MAX_VALUE || txnId + window < txnCeil)
             {
-                txnSet.add(txnId);
+                txnCeil = txnId + window;
+            }
 
+            docs.add(docBase + doc);
+            txnIds.add(txnId);
+
+            if (docs.size() >= compactionSize)
+            {
+                compact();
+                compactionSize = Math.max(MIN_COMPACTION_SIZE, docs.size() * 2);
             }
         }
 
-        LongHashSet getTxnSet()
+        private void compact()
         {
-            return txnSet;
+            int kept = 0;
+            for (int i = 0; i < docs.size(); i++)
+            {
+                long txnId = txnIds.get(i);
+                if (txnId < txnCeil)
+                {
+                    docs.set(kept, docs.get(i));
+                    txnIds.set(kept, txnId);
+                    kept++;
+                }
+            }
+            docs.resize(kept);
+            txnIds.resize(kept);
+        }
+
+        /**
+         * @return the collected documents (in index order), the i-th one belonging to the i-th transaction id in {@link #getTxnIds()}.
+         */
+        IntArrayList getDocs()
+        {
+            compact();
+            return docs;
+        }
+
+        LongArrayList getTxnIds()
+        {
+            compact();
+            return txnIds;
+        }
+
+        /**
+         * @return the first transaction id beyond the window, Long.MAX_VALUE if nothing has been collected
+         */
+        long getTxnCeil()
+        {
+            return txnCeil;
+        }
+
+        /**
+         * Drops the documents with a transaction id not lower than the given one.
+         */
+        void lowerTxnCeil(long txnCeil)
+        {
+            this.txnCeil = Math.min(this.txnCeil, txnCeil);
+        }
+    }
+
+    /**
+     * A bounded map from transaction id to the time it was put in, backed by primitive collections.
+     * Once full, the eldest insertions are evicted first. Thread safe.
+     *
+     * The insertion order is kept in a deque of (txn id, sequence number) pairs. Removing a txn from the deque would
+     * mean a linear scan, so {@link #remove(long)} only drops it from the maps and leaves its pair behind. The invariant
+     * is: a pair is live if and only if {@link #sequences} maps its txn id to its sequence number; every cached txn has
+     * exactly one live pair, and any other pair is stale and skipped when met. Putting a removed txn back gets a new
+     * sequence number, so its old pair can never evict it. Stale pairs are dropped by eviction and purge, and a purge is
+     * forced when they make the deque grow beyond twice the maximum size.
+     */
+    static class TxnTimeCache
+    {
+        private final int maxSize;
+        private final LongLongHashMap times = new LongLongHashMap();
+        // Sequence number of the live insertion order pair of each cached txn
+        private final LongLongHashMap sequences = new LongLongHashMap();
+        // Pairs of txn id and sequence number, eldest first
+        private LongArrayDeque insertionOrder = new LongArrayDeque();
+        private long nextSequence;
+
+        TxnTimeCache(int maxSize)
+        {
+            this.maxSize = maxSize;
+        }
+
+        synchronized boolean contains(long txnId)
+        {
+            return times.containsKey(txnId);
+        }
+
+        synchronized void put(long txnId, long time)
+        {
+            if (!times.containsKey(txnId))
+            {
+                while (times.size() >= maxSize && !insertionOrder.isEmpty())
+                {
+                    long eldest = insertionOrder.removeFirst();
+                    long sequence = insertionOrder.removeFirst();
+                    if (isLive(eldest, sequence))
+                    {
+                        times.remove(eldest);
+                        sequences.remove(eldest);
+                    }
+                }
+                if (insertionOrder.size() / 2 >= 2 * maxSize)
+                {
+                    // Too many stale entries
+                    purge(Long.MIN_VALUE);
+                }
+                long sequence = nextSequence++;
+                insertionOrder.addLast(txnId);
+                insertionOrder.addLast(sequence);
+                sequences.put(txnId, sequence);
+            }
+            times.put(txnId, time);
+        }
+
+        synchronized void remove(long txnId)
+        {
+            times.remove(txnId);
+            sequences.remove(txnId);
+        }
+
+        /**
+         * Removes all the entries put in before the given time.
+         */
+        synchronized void purge(long olderThan)
+        {
+            LongArrayDeque retained = new LongArrayDeque(Math.max(times.size() * 2, 2));
+            while (!insertionOrder.isEmpty())
+            {
+                long txnId = insertionOrder.removeFirst();
+                long sequence = insertionOrder.removeFirst();
+                if (isLive(txnId, sequence))
+                {
+                    if (times.get(txnId) < olderThan)
+                    {
+                        times.remove(txnId);
+                        sequences.remove(txnId);
+                    }
+                    else
+                    {
+                        retained.addLast(txnId);
+                        retained.addLast(sequence);
+                    }
+                }
+            }
+            insertionOrder = retained;
+        }
+
+        private boolean isLive(long txnId, long sequence)
+        {
+            return sequences.containsKey(txnId) && sequences.get(txnId) == sequence;
+        }
+
+        synchronized int size()
+        {
+            return times.size();
         }
     }
 
@@ -634,6 +917,7 @@ public class SolrInformationServer implements InformationServer
         LOGGER.info(
                 "Fingerprint has been {} on this instance.",
                 fingerprintHasBeenEnabledOnThisInstance ? "enabled" : "disabled");
+        fingerprintBandSize = Math.max(0, Integer.parseInt(coreConfiguration.getProperty("alfresco.fingerprint.bandSize", "0")));
 
         dataModel = AlfrescoSolrDataModel.getInstance();
 
@@ -641,8 +925,13 @@ public class SolrInformationServer implements InformationServer
         
         getPathsInNodeBatches = Boolean.parseBoolean(coreConfiguration.getProperty("alfresco.metadata.getPathsInNodeBatches", "true"));
 
+        cascadeDescendantBatchSize = Math.max(1, Integer.parseInt(coreConfiguration.getProperty("alfresco.cascade.tracker.descendantBatchSize", "1000")));
+        cascadePathsLocally = Boolean.parseBoolean(coreConfiguration.getProperty("alfresco.cascade.tracker.localPaths", "false"));
+
         statsFacetLimit = Integer.parseInt(coreConfiguration.getProperty("alfresco.stats.facetLimit", "100"));
 
+        DocValuesCache.setOffHeap(core, Boolean.parseBoolean(coreConfiguration.getProperty(DocValuesCache.OFF_HEAP_PROPERTY, "false")));
+
         props = AlfrescoSolrDataModel.getCommonConfig();
         hostName = ConfigUtil.locateProperty(SOLR_HOST, props.getProperty(SOLR_HOST));
 
@@ -876,7 +1165,7 @@ public class SolrInformationServer implements InformationServer
     }
 
     @Override
-    public List<TenantDbId> getDocsWithUncleanContent() throws IOException
+    public List<TenantDbId> getDocsWithUncleanContent(ForkJoinPool segmentPool) throws IOException
     {
         RefCounted<SolrIndexSearcher> refCounted = null;
         try
@@ -907,141 +1196,244 @@ public class SolrInformationServer implements InformationServer
             long purgeTime = System.currentTimeMillis();
             if(purgeTime - cleanContentLastPurged > 120000)
             {
-                Iterator<Entry<Long,Long>> entries = cleanContentCache.entrySet().iterator();
-                while (entries.hasNext())
-                {
-                    Entry<Long, Long> entry = entries.next();
-                    long txnTime = entry.getValue();
-                    if (purgeTime - txnTime > 1200000)
-                    {
-                        //Purge the clean content cache of records more then 20 minutes old.
-                        entries.remove();
-                    }
-                }
+                //Purge the clean content cache of records more then 20 minutes old.
+                cleanContentCache.purge(purgeTime - 1200000);
                 cleanContentLastPurged = purgeTime;
             }
 
-            long txnFloor;
-            Sort sort = new Sort(new SortField(FIELD_INTXID, SortField.Type.LONG));
-            sort = sort.rewrite(searcher);
-            TopFieldCollector collector = TopFieldCollector.create(sort,
-                    1,
-                    null,
-                    false,
-                    false,
-                    false);
-
-            DelegatingCollector delegatingCollector = new TxnCacheFilter(cleanContentCache); //Filter transactions that have already been processed.
-            delegatingCollector.setLastDelegate(collector);
-            searcher.search(documentsWithOutdatedContentQuery(), delegatingCollector);
-
-            LOGGER.debug("{}-[CORE {}] Processing {} documents with content to be indexed", Thread.currentThread().getId(), core.getName(), collector.getTotalHits());
+            //Single pass over the documents with outdated content: the collector of each segment keeps the documents
+            //of the next N transactions (starting from the lowest one not processed yet in the segment) and filters out
+            //the transactions that have already been processed. The segments are scanned in parallel, on the given
+            //pool, then their windows are merged into the window of the whole index.
+            List<LeafReaderContext> leaves = searcher.getTopReaderContext().leaves();
+            Weight weight = searcher.createNormalizedWeight(documentsWithOutdatedContentQuery(), false);
+            List<OutdatedContentCollector> collectors = inParallel(segmentPool, leaves, context -> collectOutdatedContent(weight, context));
 
+            long txnCeil = collectors.stream().mapToLong(OutdatedContentCollector::getTxnCeil).min().orElse(Long.MAX_VALUE);
+            collectors.forEach(collector -> collector.lowerTxnCeil(txnCeil));
 
-            if(collector.getTotalHits() == 0)
+            int size = collectors.stream().mapToInt(collector -> collector.getDocs().size()).sum();
+            if(size == 0)
             {
                 LOGGER.debug("No documents with outdated text content have been found.");
                 return docIds;
             }
 
-            LOGGER.debug("Found {} documents with outdated text content.", collector.getTotalHits());
+            LOGGER.debug("{}-[CORE {}] Processing {} documents with content to be indexed", Thread.currentThread().getId(), core.getName(), size);
 
-            ScoreDoc[] scoreDocs = collector.topDocs().scoreDocs;
-            List<LeafReaderContext> leaves = searcher.getTopReaderContext().leaves();
-            int index = ReaderUtil.subIndex(scoreDocs[0].doc, leaves);
-            LeafReaderContext context = leaves.get(index);
-            NumericDocValues longs = context.reader().getNumericDocValues(FIELD_INTXID);
-            txnFloor = longs.get(scoreDocs[0].doc - context.docBase);
-
-            //Find the next N transactions
-            //The TxnCollector collects the transaction ids from the matching documents
-            //The txnIds are limited to a range >= the txnFloor and < an arbitrary transaction ceiling.
-            TxnCollector txnCollector = new TxnCollector(txnFloor);
-            searcher.search(documentsWithOutdatedContentQuery(), txnCollector);
-            LongHashSet txnSet = txnCollector.getTxnSet();
-
-            if(txnSet.size() == 0)
-            {
-                //This should really never be the case, at a minimum the transaction floor should be collected.
-                return docIds;
-            }
+            List<List<Pair<Long, TenantDbId>>> segmentDocIds =
+                    inParallel(segmentPool, leaves, context -> outdatedContentDocIds(searcher, context, collectors.get(context.ord)));
 
-            FieldType fieldType = searcher.getSchema().getField(FIELD_INTXID).getType();
-            BooleanQuery.Builder builder = new BooleanQuery.Builder();
+            // Documents are returned in transaction order, so the content of the lowest transactions is fetched first
+            LongHashSet processedTxns = new LongHashSet();
+            segmentDocIds.stream()
+                    .flatMap(List::stream)
+                    .sorted(Comparator.comparing(Pair::getFirst))
+                    .forEach(txnAndDocId -> {
+                        processedTxns.add(txnAndDocId.getFirst());
+                        txnAndDocId.getSecond().setProperty(OUTDATED_CONTENT_TXN_ID, txnAndDocId.getFirst());
+                        docIds.add(txnAndDocId.getSecond());
+                    });
+
+            long txnTime = System.currentTimeMillis();
 
-            for (LongCursor cursor : txnSet)
+            for(LongCursor cursor : processedTxns)
             {
-                long txnID = cursor.value;
-                //Build up the query for the filter of transactions we need to pull the dirty content for.
-                TermQuery txnIDQuery = new TermQuery(new Term(FIELD_INTXID, fieldType.readableToIndexed(Long.toString(txnID))));
-                builder.add(new BooleanClause(txnIDQuery, BooleanClause.Occur.SHOULD));
+                //Save the indexVersion so we know when we can clean out this entry
+                cleanContentCache.put(cursor.value, txnTime);
             }
 
-            BooleanQuery txnFilterQuery = builder.build();
+            return docIds;
+        }
+        catch (UncheckedIOException e)
+        {
+            throw e.getCause();
+        }
+        finally
+        {
+            ofNullable(refCounted).ifPresent(RefCounted::decref);
+        }
+    }
 
-            //Get the docs with dirty content for the transactions gathered above.
-            DocListCollector docListCollector = new DocListCollector();
-            BooleanQuery.Builder builder2 = new BooleanQuery.Builder();
+    @Override
+    public void releaseDocsWithUncleanContent(List<TenantDbId> docRefs)
+    {
+        notNullOrEmpty(docRefs).stream()
+                .map(docRef -> docRef.optionalBag.get(OUTDATED_CONTENT_TXN_ID))
+                .filter(Objects::nonNull)
+                .mapToLong(Long.class::cast)
+                .distinct()
+                .forEach(cleanContentCache::remove);
+    }
 
-            builder2.add(documentsWithOutdatedContentQuery(), BooleanClause.Occur.MUST);
-            builder2.add(new QueryWrapperFilter(txnFilterQuery), BooleanClause.Occur.MUST);
+    /**
+     * Applies the function to every segment with a parallel stream submitted to the given pool, so that the segments
+     * are processed by its threads and never by the common pool. The caller may itself run on that pool (e.g. the
+     * ContentTracker prefetching the next documents): joining the stream then helps running it.
+     *
+     * @return the results, in segment order
+     */
+    private static <T> List<T> inParallel(
+            ForkJoinPool pool,
+            List<LeafReaderContext> leaves,
+            Function<LeafReaderContext, T> function)
+    {
+        return pool.submit(() -> leaves.parallelStream().map(function).collect(toList())).join();
+    }
 
-            searcher.search(builder2.build(), docListCollector);
-            IntArrayList docList = docListCollector.getDocs();
-            int size = docList.size();
+    private OutdatedContentCollector collectOutdatedContent(Weight weight, LeafReaderContext context)
+    {
+        OutdatedContentCollector collector = new OutdatedContentCollector(cleanContentCache::contains, CONTENT_TXN_WINDOW);
+        try
+        {
+            BulkScorer scorer = weight.bulkScorer(context);
+            if (scorer != null)
+            {
+                scorer.score(collector.getLeafCollector(context), context.reader().getLiveDocs());
+            }
+            return collector;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-            List<Long> processedTxns = new ArrayList<>();
-            for (int i = 0; i < size; ++i)
+    /**
+     * @return the transaction ids and the {@link TenantDbId}s of the documents collected in the segment, in index order
+     */
+    private List<Pair<Long, TenantDbId>> outdatedContentDocIds(SolrIndexSearcher searcher, LeafReaderContext context,
+                OutdatedContentCollector collector)
+    {
+        IntArrayList docList = collector.getDocs();
+        LongArrayList txnList = collector.getTxnIds();
+        List<Pair<Long, TenantDbId>> docIds = new ArrayList<>(docList.size());
+        if (docList.isEmpty())
+        {
+            return docIds;
+        }
+
+        try
+        {
+            OutdatedContentReader reader = new OutdatedContentReader(context);
+            for (int i = 0; i < docList.size(); ++i)
             {
                 int doc = docList.get(i);
-                Document document = searcher.doc(doc, ID_AND_CONTENT_VERSION_ID_AND_CONTENT_LOCALE);
-                index = ReaderUtil.subIndex(doc, leaves);
-                context = leaves.get(index);
-                longs = context.reader().getNumericDocValues(FIELD_INTXID);
+                long txnId = txnList.get(i);
 
-                long txnId = longs.get(doc - context.docBase);
-
-                if(!cleanContentCache.containsKey(txnId))
+                if(!cleanContentCache.contains(txnId))
                 {
-                    processedTxns.add(txnId);
-                    IndexableField id = document.getField(FIELD_SOLR4_ID);
-                    String idString = id.stringValue();
-                    TenantDbId tenantAndDbId = AlfrescoSolrDataModel.decodeNodeDocumentId(idString);
-
-                    tenantAndDbId.addContentPropertiesSpecs(
-                            enabledIndexCustomContent
-                                ? document.getFields().stream()
-                                    .filter(field -> field.name().startsWith(AlfrescoSolrDataModel.CONTENT_S_LOCALE_PREFIX))
-                                    .map(field -> new AlfrescoSolrDataModel.ContentPropertySpecs(field.name(),field.stringValue()))
-                                    .collect(toList())
-                                : ofNullable(document.getField(CONTENT_LOCALE_FIELD))
-                                    .map(IndexableField::stringValue)
-                                    .map(value -> new AlfrescoSolrDataModel.ContentPropertySpecs(CONTENT_LOCALE_FIELD, value))
-                                    .map(Collections::singletonList)
-                                    .orElse(emptyList()));
-
-                    tenantAndDbId.setProperty(
-                            LATEST_APPLIED_CONTENT_VERSION_ID,
-                            ofNullable(document.getField(LATEST_APPLIED_CONTENT_VERSION_ID))
-                                    .map(IndexableField::stringValue)
-                                    .orElse(null));
-                    docIds.add(tenantAndDbId);
+                    docIds.add(new Pair<>(txnId, reader.hasDocValues()
+                            ? reader.tenantDbId(doc)
+                            : tenantDbId(searcher.doc(doc, ID_AND_CONTENT_VERSION_ID_AND_CONTENT_LOCALE))));
                 }
             }
+            return docIds;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-            long txnTime = System.currentTimeMillis();
+    /**
+     * Builds the {@link TenantDbId} of a document with outdated content from its stored fields.
+     */
+    private TenantDbId tenantDbId(Document document)
+    {
+        IndexableField id = document.getField(FIELD_SOLR4_ID);
+        String idString = id.stringValue();
+        TenantDbId tenantAndDbId = AlfrescoSolrDataModel.decodeNodeDocumentId(idString);
+
+        tenantAndDbId.addContentPropertiesSpecs(
+                enabledIndexCustomContent
+                    ? document.getFields().stream()
+                        .filter(field -> field.name().startsWith(AlfrescoSolrDataModel.CONTENT_S_LOCALE_PREFIX))
+                        .map(field -> new AlfrescoSolrDataModel.ContentPropertySpecs(field.name(),field.stringValue()))
+                        .collect(toList())
+                    : ofNullable(document.getField(CONTENT_LOCALE_FIELD))
+                        .map(IndexableField::stringValue)
+                        .map(value -> new AlfrescoSolrDataModel.ContentPropertySpecs(CONTENT_LOCALE_FIELD, value))
+                        .map(Collections::singletonList)
+                        .orElse(emptyList()));
+
+        tenantAndDbId.setProperty(
+                LATEST_APPLIED_CONTENT_VERSION_ID,
+                ofNullable(document.getField(LATEST_APPLIED_CONTENT_VERSION_ID))
+                        .map(IndexableField::stringValue)
+                        .orElse(null));
+        return tenantAndDbId;
+    }
+
+    /**
+     * Builds the {@link TenantDbId}s of the documents with outdated content of a segment from the doc values of their
+     * id, content version and content locale fields, so that no stored fields have to be loaded.
+     */
+    private class OutdatedContentReader
+    {
+        private final int docBase;
+        private final SortedDocValues ids;
+        private final NumericDocValues contentVersions;
+        private final Bits docsWithContentVersion;
+        private final Map<String, SortedDocValues> contentLocales = new LinkedHashMap<>();
+        private boolean docValuesEnabled;
 
-            for(Long l : processedTxns)
+        OutdatedContentReader(LeafReaderContext context) throws IOException
+        {
+            LeafReader reader = context.reader();
+            this.docBase = context.docBase;
+            this.ids = reader.getSortedDocValues(FIELD_SOLR4_ID);
+            this.contentVersions = reader.getNumericDocValues(LATEST_APPLIED_CONTENT_VERSION_ID);
+            this.docsWithContentVersion = reader.getDocsWithField(LATEST_APPLIED_CONTENT_VERSION_ID);
+            this.docValuesEnabled = ids != null;
+
+            for (FieldInfo fieldInfo : reader.getFieldInfos())
             {
-                //Save the indexVersion so we know when we can clean out this entry
-                cleanContentCache.put(l, txnTime);
+                String name = fieldInfo.name;
+                if (name.equals(LATEST_APPLIED_CONTENT_VERSION_ID))
+                {
+                    docValuesEnabled &= fieldInfo.getDocValuesType() == DocValuesType.NUMERIC;
+                }
+                else if (enabledIndexCustomContent
+                        ? name.startsWith(AlfrescoSolrDataModel.CONTENT_S_LOCALE_PREFIX)
+                        : name.equals(CONTENT_LOCALE_FIELD))
+                {
+                    SortedDocValues locales = reader.getSortedDocValues(name);
+                    docValuesEnabled &= locales != null;
+                    contentLocales.put(name, locales);
+                }
             }
+        }
 
-            return docIds;
+        /**
+         * @return false if any of the needed fields has no doc values in this segment, so they must be read from the stored fields.
+         */
+        boolean hasDocValues()
+        {
+            return docValuesEnabled;
         }
-        finally
+
+        TenantDbId tenantDbId(int doc)
         {
-            ofNullable(refCounted).ifPresent(RefCounted::decref);
+            int segmentDoc = doc - docBase;
+            TenantDbId tenantAndDbId = AlfrescoSolrDataModel.decodeNodeDocumentId(ids.get(segmentDoc).utf8ToString());
+
+            List<AlfrescoSolrDataModel.ContentPropertySpecs> specs = new ArrayList<>(contentLocales.size());
+            contentLocales.forEach((name, locales) -> {
+                int ord = locales.getOrd(segmentDoc);
+                if (ord != -1)
+                {
+                    specs.add(new AlfrescoSolrDataModel.ContentPropertySpecs(name, locales.lookupOrd(ord).utf8ToString()));
+                }
+            });
+            tenantAndDbId.addContentPropertiesSpecs(specs);
+
+            tenantAndDbId.setProperty(
+                    LATEST_APPLIED_CONTENT_VERSION_ID,
+                    contentVersions != null && docsWithContentVersion != null && docsWithContentVersion.get(segmentDoc)
+                            ? Long.toString(contentVersions.get(segmentDoc))
+                            : null);
+            return tenantAndDbId;
         }
     }
 
@@ -1276,6 +1668,8 @@ public class SolrInformationServer implements InformationServer
             }
 
             coreSummary.add("Number of Searchers", searchers.size());
+            coreSummary.add("/alfrescoFieldMappings", dataModel.getFieldMappingsStatistics());
+            coreSummary.add("/alfrescoDocValuesCache", DocValuesCache.getStatistics(core));
             // This is zero for Solr4, whereas we had some local caches before
             coreSummary.add("Total Searcher Cache (GB)", 0);
 
@@ -1544,31 +1938,7 @@ public class SolrInformationServer implements InformationServer
             processor = this.core.getUpdateProcessingChain(null).createProcessor(request, newSolrQueryResponse());
             for (AclReaders aclReaders : notNullOrEmpty(aclReaderList))
             {
-                SolrInputDocument acl = new SolrInputDocument();
-
-                acl.addField(FIELD_SOLR4_ID, getAclDocumentId(aclReaders.getTenantDomain(), aclReaders.getId()));
-                acl.addField(FIELD_VERSION, "0");
-                acl.addField(FIELD_ACLID, aclReaders.getId());
-                acl.addField(FIELD_INACLTXID, aclReaders.getAclChangeSetId());
-
-                String tenant = aclReaders.getTenantDomain();
-                for (String reader : notNullOrEmpty(aclReaders.getReaders()))
-                {
-                    reader = addTenantToAuthority(reader, tenant);
-                    acl.addField(FIELD_READER, reader);
-                }
-
-                for (String denied : aclReaders.getDenied())
-                {
-                    denied = addTenantToAuthority(denied, tenant);
-                    acl.addField(FIELD_DENIED, denied);
-                }
-                acl.addField(FIELD_DOC_TYPE, DOC_TYPE_ACL);
-
-                AddUpdateCommand cmd = new AddUpdateCommand(request);
-                cmd.overwrite = overwrite;
-                cmd.solrDoc = acl;
-                processor.processAdd(cmd);
+                addAcl(processor, request, aclReaders, overwrite);
             }
         }
         finally
@@ -1588,25 +1958,100 @@ public class SolrInformationServer implements InformationServer
         {
             processor = this.core.getUpdateProcessingChain(null).createProcessor(request, newSolrQueryResponse());
 
-            SolrInputDocument aclTx = new SolrInputDocument();
-            aclTx.addField(FIELD_SOLR4_ID, getAclChangeSetDocumentId(changeSet.getId()));
-            aclTx.addField(FIELD_VERSION, "0");
-            aclTx.addField(FIELD_ACLTXID, changeSet.getId());
-            aclTx.addField(FIELD_INACLTXID, changeSet.getId());
-            aclTx.addField(FIELD_ACLTXCOMMITTIME, changeSet.getCommitTimeMs());
-            aclTx.addField(FIELD_DOC_TYPE, DOC_TYPE_ACL_TX);
+            addAclTransaction(processor, request, changeSet, overwrite);
+            putAclTransactionState(processor, request, changeSet);
+        }
+        finally
+        {
+            if (processor != null) processor.finish();
+        }
+    }
 
-            AddUpdateCommand cmd = new AddUpdateCommand(request);
-            cmd.overwrite = overwrite;
-            cmd.solrDoc = aclTx;
-            processor.processAdd(cmd);
+    @Override
+    public long indexAclChangeSets(List<AclReaders> aclReaderList, Collection<AclChangeSet> changeSets) throws IOException
+    {
+        canUpdate();
+        long start = System.nanoTime();
 
-            putAclTransactionState(processor, request, changeSet);
+        UpdateRequestProcessor processor = null;
+        try (SolrQueryRequest request = newSolrQueryRequest())
+        {
+            processor = this.core.getUpdateProcessingChain(null).createProcessor(request, newSolrQueryResponse());
+            for (AclReaders aclReaders : notNullOrEmpty(aclReaderList))
+            {
+                addAcl(processor, request, aclReaders, true);
+            }
+
+            // Acl change sets are ordered by commit time and tie-broken by id
+            AclChangeSet latestChangeSet = null;
+            for (AclChangeSet changeSet : changeSets)
+            {
+                addAclTransaction(processor, request, changeSet, true);
+                if (latestChangeSet == null
+                        || changeSet.getCommitTimeMs() > latestChangeSet.getCommitTimeMs()
+                        || changeSet.getCommitTimeMs() == latestChangeSet.getCommitTimeMs()
+                            && changeSet.getId() > latestChangeSet.getId())
+                {
+                    latestChangeSet = changeSet;
+                }
+            }
+
+            if (latestChangeSet != null)
+            {
+                putAclTransactionState(processor, request, latestChangeSet);
+            }
         }
         finally
         {
             if (processor != null) processor.finish();
         }
+
+        return (System.nanoTime() - start);
+    }
+
+    private void addAcl(UpdateRequestProcessor processor, SolrQueryRequest request, AclReaders aclReaders, boolean overwrite) throws IOException
+    {
+        SolrInputDocument acl = new SolrInputDocument();
+
+        acl.addField(FIELD_SOLR4_ID, getAclDocumentId(aclReaders.getTenantDomain(), aclReaders.getId()));
+        acl.addField(FIELD_VERSION, "0");
+        acl.addField(FIELD_ACLID, aclReaders.getId());
+        acl.addField(FIELD_INACLTXID, aclReaders.getAclChangeSetId());
+
+        String tenant = aclReaders.getTenantDomain();
+        for (String reader : notNullOrEmpty(aclReaders.getReaders()))
+        {
+            reader = addTenantToAuthority(reader, tenant);
+            acl.addField(FIELD_READER, reader);
+        }
+
+        for (String denied : aclReaders.getDenied())
+        {
+            denied = addTenantToAuthority(denied, tenant);
+            acl.addField(FIELD_DENIED, denied);
+        }
+        acl.addField(FIELD_DOC_TYPE, DOC_TYPE_ACL);
+
+        AddUpdateCommand cmd = new AddUpdateCommand(request);
+        cmd.overwrite = overwrite;
+        cmd.solrDoc = acl;
+        processor.processAdd(cmd);
+    }
+
+    private void addAclTransaction(UpdateRequestProcessor processor, SolrQueryRequest request, AclChangeSet changeSet, boolean overwrite) throws IOException
+    {
+        SolrInputDocument aclTx = new SolrInputDocument();
+        aclTx.addField(FIELD_SOLR4_ID, getAclChangeSetDocumentId(changeSet.getId()));
+        aclTx.addField(FIELD_VERSION, "0");
+        aclTx.addField(FIELD_ACLTXID, changeSet.getId());
+        aclTx.addField(FIELD_INACLTXID, changeSet.getId());
+        aclTx.addField(FIELD_ACLTXCOMMITTIME, changeSet.getCommitTimeMs());
+        aclTx.addField(FIELD_DOC_TYPE, DOC_TYPE_ACL_TX);
+
+        AddUpdateCommand cmd = new AddUpdateCommand(request);
+        cmd.overwrite = overwrite;
+        cmd.solrDoc = aclTx;
+        processor.processAdd(cmd);
     }
 
     @Override
@@ -1829,14 +2274,13 @@ public class SolrInformationServer implements InformationServer
     }
 
     @Override
-    public List<NodeMetaData> getCascadeNodes(List<Long> txnIds) throws IOException, JSONException
+    public List<NodeMetaData> getCascadeNodes(List<Long> txnIds, ForkJoinPool repositoryPool) throws IOException, JSONException
     {
         List<FieldInstance> list = dataModel.getIndexedFieldNamesForProperty(ContentModel.PROP_CASCADE_TX).getFields();
         FieldInstance fieldInstance = list.get(0);
 
         RefCounted<SolrIndexSearcher> refCounted = null;
-        IntArrayList docList;
-        Set<Long> parentNodesId = new HashSet<>();
+        LongHashSet parentNodesId;
 
         try
         {
@@ -1858,64 +2302,43 @@ public class SolrInformationServer implements InformationServer
             }
 
             booleanQuery = builder.build();
-
-            DocListCollector collector = new DocListCollector();
-            searcher.search(booleanQuery, collector);
-            docList = collector.getDocs();
-            int size = docList.size();
-            for(int i=0; i<size; i++)
-            {
-                int docId = docList.get(i);
-                Document document = searcher.doc(docId, REQUEST_ONLY_ID_FIELD);
-                IndexableField indexableField = document.getField(FIELD_SOLR4_ID);
-                String id = indexableField.stringValue();
-                TenantDbId ids = AlfrescoSolrDataModel.decodeNodeDocumentId(id);
-                parentNodesId.add(ids.dbId);
-            }
+
+            DbIdCollector collector = new DbIdCollector();
+            searcher.search(booleanQuery, collector);
+            parentNodesId = collector.getDbIds();
         }
         finally
         {
             ofNullable(refCounted).ifPresent(RefCounted::decref);
         }
 
-        List<NodeMetaData> allNodeMetaDatas = new ArrayList<>();
-
-        for (Long parentNodeId : parentNodesId)
-        {
-            NodeMetaDataParameters nmdp = new NodeMetaDataParameters();
-            nmdp.setFromNodeId(parentNodeId);
-            nmdp.setToNodeId(parentNodeId);
-            nmdp.setIncludeAclId(true);
-            nmdp.setIncludeChildAssociations(false);
-            nmdp.setIncludeChildIds(true);
-            nmdp.setIncludeOwner(false);
-            nmdp.setIncludeParentAssociations(false);
-            nmdp.setIncludePaths(true);
-            nmdp.setIncludeProperties(false);
-            nmdp.setIncludeTxnId(true);
-            nmdp.setMaxResults(1);
-            // Gets only one
-            Optional<Collection<NodeMetaData>> nodeMetaDatas = getNodesMetaDataFromRepository(nmdp);
-            allNodeMetaDatas.addAll(nodeMetaDatas.orElse(emptyList()));
-        }
-
+        List<NodeMetaData> allNodeMetaDatas = synchronizedList(new ArrayList<>());
+        forEachBatchOfNodesMetaData(repositoryPool, parentNodesId.toArray(), this::cascadeParentsParameters, allNodeMetaDatas::addAll);
         return allNodeMetaDatas;
     }
 
     @Override
     public void cascadeNodes(List<NodeMetaData> nodeMetaDatas, boolean overwrite) throws IOException, JSONException
     {
+        cascadeNodes(nodeMetaDatas, nodeMetaDatas, overwrite, ForkJoinPool.commonPool());
+    }
+
+    @Override
+    public void cascadeNodes(List<NodeMetaData> nodeMetaDatas, Collection<NodeMetaData> pendingParents, boolean overwrite,
+            ForkJoinPool repositoryPool) throws IOException, JSONException
+    {
+        Set<String> pendingParentIds = pendingParents.stream()
+                .map(NodeMetaData::getNodeRef)
+                .filter(Objects::nonNull)
+                .map(NodeRef::getId)
+                .collect(toSet());
+
         UpdateRequestProcessor processor = null;
         try (SolrQueryRequest request = newSolrQueryRequest())
         {
             processor = this.core.getUpdateProcessingChain(null).createProcessor(request, newSolrQueryResponse());
-            for (NodeMetaData nodeMetaData : nodeMetaDatas)
-            {
-                if (mayHaveChildren(nodeMetaData))
-                {
-                    cascadeUpdateV2(nodeMetaData, overwrite, request, processor);
-                }
-            }
+            cascadeUpdate(nodeMetaDatas.stream().filter(this::mayHaveChildren).collect(toList()), pendingParentIds,
+                    overwrite, request, processor);
         }
         catch (Exception exception)
         {
@@ -1935,13 +2358,33 @@ public class SolrInformationServer implements InformationServer
     @Override
     public void updateContent(TenantDbId docRef) throws Exception
     {
-        LOGGER.debug("Text content of Document DBID={} is going to be updated.", docRef.dbId);
+        updateContentBatch(singletonList(docRef));
+    }
 
+    @Override
+    public void updateContentBatch(List<TenantDbId> docRefs) throws Exception
+    {
         UpdateRequestProcessor processor = null;
         try (SolrQueryRequest request = newSolrQueryRequest())
         {
             processor = this.core.getUpdateProcessingChain(null).createProcessor(request, newSolrQueryResponse());
+            for (TenantDbId docRef : docRefs)
+            {
+                updateContent(docRef, request, processor);
+            }
+        }
+        finally
+        {
+            if(processor != null) {processor.finish();}
+        }
+    }
 
+    private void updateContent(TenantDbId docRef, SolrQueryRequest request, UpdateRequestProcessor processor)
+    {
+        LOGGER.debug("Text content of Document DBID={} is going to be updated.", docRef.dbId);
+
+        try
+        {
             SolrInputDocument doc = new PartialSolrInputDocument();
             doc.removeField(FIELD_DBID);
             doc.addField(FIELD_DBID, docRef.dbId);
@@ -1981,10 +2424,6 @@ public class SolrInformationServer implements InformationServer
         {
             LOGGER.error("Unable to update the text content of node {}. See the stacktrace below for further details.", docRef.dbId, exception);
         }
-        finally
-        {
-            if(processor != null) {processor.finish();}
-        }
     }
 
 
@@ -2059,7 +2498,7 @@ public class SolrInformationServer implements InformationServer
 
                 LOGGER.debug("Deleting");
                 DeleteUpdateCommand delDocCmd = new DeleteUpdateCommand(request);
-                String query = this.cloud.getQuery(FIELD_DBID, OR, deletedNodeIds, shardDeletedNodeIds, shardUpdatedNodeIds, unknownNodeIds);
+                String query = this.cloud.getTermsQuery(FIELD_DBID, deletedNodeIds, shardDeletedNodeIds, shardUpdatedNodeIds, unknownNodeIds);
                 delDocCmd.setQuery(query);
                 processor.processDelete(delDocCmd);
             }
@@ -2750,23 +3189,32 @@ public class SolrInformationServer implements InformationServer
 
     /**
      * Extracts the text content from the given API response.
+     * The content is decoded straight into the returned buffer, after the given prefix, so that no intermediate
+     * byte array or String copy of it is made.
      *
      * @param response the API (GetTextContent) response.
-     * @return the text content from the given API response.
+     * @param prefix the text the returned buffer starts with.
+     * @return the prefix followed by the text content from the given API response.
      * @throws IOException in case of I/O failure.
      */
-    private String textContentFrom(GetTextContentResponse response) throws IOException
+    private StringBuilder textContentFrom(GetTextContentResponse response, String prefix) throws IOException
     {
+        StringBuilder textContent = new StringBuilder(prefix);
         try (final InputStream ris = ofNullable(response.getContentEncoding())
                 .map(c -> c.equals("gzip")).orElse(false)?
                 new GZIPInputStream(response.getContent()) : response.getContent())
         {
             if (ris != null)
             {
-                byte[] bytes = FileCopyUtils.copyToByteArray(new BoundedInputStream(ris, contentStreamLimit));
-                return new String(bytes, StandardCharsets.UTF_8);
+                Reader reader = new InputStreamReader(new BoundedInputStream(ris, contentStreamLimit), StandardCharsets.UTF_8);
+                char[] buffer = new char[CONTENT_READ_BUFFER_SIZE];
+                int read;
+                while ((read = reader.read(buffer)) != -1)
+                {
+                    textContent.append(buffer, 0, read);
+                }
             }
-            return "";
+            return textContent;
         }
         finally
         {
@@ -2774,6 +3222,18 @@ public class SolrInformationServer implements InformationServer
         }
     }
 
+    private static boolean isBlank(CharSequence text, int from)
+    {
+        for (int i = from; i < text.length(); i++)
+        {
+            if (!Character.isWhitespace(text.charAt(i)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private void addContentPropertyToDocUsingAlfrescoRepository(
             SolrInputDocument doc,
             QName propertyQName,
@@ -2788,33 +3248,39 @@ public class SolrInformationServer implements InformationServer
             addContentPropertyMetadata(doc, propertyQName, AlfrescoSolrDataModel.SpecializedFieldType.TRANSFORMATION_EXCEPTION, response);
             addContentPropertyMetadata(doc, propertyQName, AlfrescoSolrDataModel.SpecializedFieldType.TRANSFORMATION_TIME, response);
 
-            final String textContent = textContentFrom(response);
+            final String prefix = "\u0000" + languageFrom(locale) + "\u0000";
+            final StringBuilder textContent = textContentFrom(response, prefix);
 
-            if (fingerprintHasBeenEnabledOnThisInstance && !textContent.isBlank()) {
+            if (fingerprintHasBeenEnabledOnThisInstance && !isBlank(textContent, prefix.length())) {
                 Analyzer analyzer = core.getLatestSchema().getFieldType("min_hash").getIndexAnalyzer();
-                TokenStream ts = analyzer.tokenStream("dummy_field", textContent);
-                CharTermAttribute termAttribute = ts.getAttribute(CharTermAttribute.class);
-                ts.reset();
-                doc.removeField(FINGERPRINT_FIELD);
-                while (ts.incrementToken())
+                try (TokenStream ts = analyzer.tokenStream("dummy_field", new CharSequenceReader(textContent, prefix.length(), textContent.length())))
                 {
-                    StringBuilder tokenBuff = new StringBuilder();
-                    char[] buff = termAttribute.buffer();
+                    CharTermAttribute termAttribute = ts.getAttribute(CharTermAttribute.class);
+                    ts.reset();
+                    doc.removeField(FINGERPRINT_FIELD);
+                    doc.removeField(FIELD_MINHASH_BAND);
+                    List<String> minHashes = new ArrayList<>();
+                    while (ts.incrementToken())
+                    {
+                        StringBuilder tokenBuff = new StringBuilder();
+                        char[] buff = termAttribute.buffer();
 
-                    for (int i = 0; i < termAttribute.length(); i++) {
-                        tokenBuff.append(Integer.toHexString(buff[i]));
-                    }
-                    doc.addField(FINGERPRINT_FIELD, tokenBuff.toString());
+                        for (int i = 0; i < termAttribute.length(); i++) {
+                            tokenBuff.append(Integer.toHexString(buff[i]));
+                        }
+                        doc.addField(FINGERPRINT_FIELD, tokenBuff.toString());
+                        minHashes.add(tokenBuff.toString());
 
+                    }
+                    ts.end();
+                    MinHashBands.bands(minHashes, fingerprintBandSize).forEach(band -> doc.addField(FIELD_MINHASH_BAND, band));
                 }
-                ts.end();
-                ts.close();
             }
 
             this.getTrackerStats().addDocTransformationTime(System.nanoTime() - start);
 
             String storedField = dataModel.getStoredContentField(propertyQName);
-            doc.setField(storedField, "\u0000" + languageFrom(locale) + "\u0000" + textContent);
+            doc.setField(storedField, textContent.toString());
 
             dataModel.getIndexedFieldNamesForProperty(propertyQName)
                     .getFields()
@@ -2843,6 +3309,7 @@ public class SolrInformationServer implements InformationServer
                 .forEach(field -> consumer.accept(doc, field.getField()));
 
         consumer.accept(doc, FINGERPRINT_FIELD);
+        consumer.accept(doc, FIELD_MINHASH_BAND);
 
         List<String> contentProperties = doc.getFieldNames().stream()
                 .filter(field -> field.startsWith(AlfrescoSolrDataModel.CONTENT_S_LOCALE_PREFIX))
@@ -3124,7 +3591,7 @@ public class SolrInformationServer implements InformationServer
             collector = topFieldCollector;
 
             LegacyNumericRangeQuery q = LegacyNumericRangeQuery.newIntRange(FIELD_CASCADE_FLAG, 1, 1, true, true);
-            DelegatingCollector delegatingCollector = new TxnCacheFilter(cleanCascadeCache);
+            DelegatingCollector delegatingCollector = new TxnCacheFilter(cleanCascadeCache::containsKey);
 
             delegatingCollector.setLastDelegate(collector);
             collector = delegatingCollector;
@@ -3165,13 +3632,25 @@ public class SolrInformationServer implements InformationServer
     @Override
     public boolean txnInIndex(long txnId, boolean populateCache) throws IOException
     {
-        return isInIndex(txnId, txnIdCache, FIELD_TXID, populateCache, core);
+        return !inIndex(Collections.singletonList(txnId), txnIdCache, FIELD_TXID, populateCache).isEmpty();
     }
 
     @Override
     public boolean aclChangeSetInIndex(long changeSetId, boolean populateCache) throws IOException
     {
-        return isInIndex(changeSetId, aclChangeSetCache, FIELD_ACLTXID, populateCache, core);
+        return !inIndex(Collections.singletonList(changeSetId), aclChangeSetCache, FIELD_ACLTXID, populateCache).isEmpty();
+    }
+
+    @Override
+    public Set<Long> txnsInIndex(Collection<Long> txnIds, boolean populateCache) throws IOException
+    {
+        return inIndex(txnIds, txnIdCache, FIELD_TXID, populateCache);
+    }
+
+    @Override
+    public Set<Long> aclChangeSetsInIndex(Collection<Long> changeSetIds, boolean populateCache) throws IOException
+    {
+        return inIndex(changeSetIds, aclChangeSetCache, FIELD_ACLTXID, populateCache);
     }
 
     @Override
@@ -3419,33 +3898,108 @@ public class SolrInformationServer implements InformationServer
                 .orElse(0);
     }
 
-    private boolean isInIndex(long id, LRU cache, String fieldName, boolean populateCache, SolrCore core) throws IOException
+    /**
+     * Returns the subset of the given ids which are in the cache (i.e. they have been already processed) or in the index.
+     * The ids which are not cached are sorted, in order to visit the terms dictionary of each segment with a single
+     * forward pass of seeks. Note the trie encoding of a long value preserves its natural order.
+     */
+    private Set<Long> inIndex(Collection<Long> ids, ConcurrentLRUCache<Long, Boolean> cache, String fieldName, boolean populateCache) throws IOException
     {
-        if(cache.containsKey(id))
+        Set<Long> inIndex = new HashSet<>();
+        LongArrayList notCached = new LongArrayList(ids.size());
+        for (Long id : ids)
+        {
+            if (cache.get(id) != null)
+            {
+                inIndex.add(id);
+            }
+            else
+            {
+                notCached.add(id);
+            }
+        }
+
+        if (notCached.isEmpty())
         {
-            return true;
+            return inIndex;
         }
-        else
+
+        long[] sortedIds = notCached.toArray();
+        Arrays.sort(sortedIds);
+        if (populateCache)
         {
-            RefCounted<SolrIndexSearcher> refCounted = null;
-            try
+            // Safe to add these here because we reset the cache on rollback.
+            for (long id : sortedIds)
+            {
+                cache.put(id, Boolean.TRUE);
+            }
+        }
+
+        RefCounted<SolrIndexSearcher> refCounted = null;
+        try
+        {
+            refCounted = core.getSearcher();
+            SolrIndexSearcher searcher = refCounted.get();
+            FieldType fieldType = searcher.getSchema().getField(fieldName).getType();
+
+            BytesRef[] terms = new BytesRef[sortedIds.length];
+            for (int i = 0; i < sortedIds.length; i++)
+            {
+                BytesRefBuilder term = new BytesRefBuilder();
+                fieldType.readableToIndexed(Long.toString(sortedIds[i]), term);
+                terms[i] = term.get();
+            }
+
+            boolean[] found = new boolean[sortedIds.length];
+            int remaining = sortedIds.length;
+            PostingsEnum postings = null;
+            for (LeafReaderContext context : searcher.getTopReaderContext().leaves())
             {
-                if(populateCache)
+                Terms segmentTerms = context.reader().terms(fieldName);
+                if (segmentTerms == null)
+                {
+                    continue;
+                }
+
+                TermsEnum termsEnum = segmentTerms.iterator();
+                Bits liveDocs = context.reader().getLiveDocs();
+                for (int i = 0; i < terms.length && remaining > 0; i++)
                 {
-                    cache.put(id, null); // Safe to add this here because we reset this on rollback.
+                    if (!found[i] && termsEnum.seekExact(terms[i]))
+                    {
+                        postings = termsEnum.postings(postings, PostingsEnum.NONE);
+                        if (hasLiveDocument(postings, liveDocs))
+                        {
+                            found[i] = true;
+                            remaining--;
+                            inIndex.add(sortedIds[i]);
+                        }
+                    }
+                }
+
+                if (remaining == 0)
+                {
+                    break;
                 }
-                refCounted = core.getSearcher();
-                SolrIndexSearcher searcher = refCounted.get();
-                FieldType fieldType = searcher.getSchema().getField(fieldName).getType();
-                TermQuery q = new TermQuery(new Term(fieldName, fieldType.readableToIndexed(Long.toString(id))));
-                TopDocs topDocs = searcher.search(q, 1);
-                return topDocs.totalHits > 0;
             }
-            finally
+            return inIndex;
+        }
+        finally
+        {
+            ofNullable(refCounted).ifPresent(RefCounted::decref);
+        }
+    }
+
+    private static boolean hasLiveDocument(PostingsEnum postings, Bits liveDocs) throws IOException
+    {
+        for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc())
+        {
+            if (liveDocs == null || liveDocs.get(doc))
             {
-                ofNullable(refCounted).ifPresent(RefCounted::decref);
+                return true;
             }
         }
+        return false;
     }
 
     private SolrDocumentList executeQueryRequest(SolrQueryRequest request, SolrQueryResponse response, SolrRequestHandler handler)
@@ -3591,94 +4145,419 @@ public class SolrInformationServer implements InformationServer
             });
     }
 
-    private void cascadeUpdateV2(
-            NodeMetaData parentNodeMetaData,
+    /**
+     * Refreshes the path related fields of all the descendants of the given parent nodes.
+     * The descendants are found through {@link QueryConstants#FIELD_ANCESTOR}, reading their database ids from the doc
+     * values. When local cascades are enabled, the new paths of the descendants of a single updated parent are derived
+     * from the index (see {@link #relocatedDescendant}), unless their stored path goes through another pending parent,
+     * in this batch or not, whose cascade could run before or after this one. The remaining descendants have their
+     * paths and ancestors requested to the Repository in batches of node ids, which are fetched in parallel and sent to
+     * the shared processor as soon as they are available.
+     * Only the descendants whose last transaction precedes the one of an updated parent are refreshed: nodes in the
+     * current transactions are explicitly updated by the trackers and we do not bring in changes from the future, as
+     * nodes may switch shards.
+     */
+    private void cascadeUpdate(
+            List<NodeMetaData> parentNodeMetaDatas,
+            Set<String> pendingParentIds,
             boolean overwrite,
             SolrQueryRequest request,
-            UpdateRequestProcessor processor) throws IOException, JSONException
+            UpdateRequestProcessor processor) throws IOException
     {
-        RefCounted<SolrIndexSearcher> refCounted = null;
-        IntArrayList docList;
-        Set<Long> childIds = new HashSet<>();
+        if (parentNodeMetaDatas.isEmpty())
+        {
+            return;
+        }
 
+        long start = System.nanoTime();
+
+        // Descendant id -> highest transaction of its updated parents
+        LongLongHashMap parentTxnIds = new LongLongHashMap();
+        // Descendants of more than one updated parent: their paths relative to each parent could have changed too
+        LongHashSet multiParentDescendants = new LongHashSet();
+        AtomicLong cascaded = new AtomicLong();
+        int descendants;
+        int cascadedLocally = 0;
+        RefCounted<SolrIndexSearcher> refCounted = null;
         try
         {
             refCounted = core.getSearcher();
             SolrIndexSearcher searcher = refCounted.get();
-            BooleanQuery.Builder builder = new BooleanQuery.Builder();
-            TermQuery termQuery = new TermQuery(new Term(FIELD_ANCESTOR, parentNodeMetaData.getNodeRef().toString()));
-            BooleanClause booleanClause = new BooleanClause(termQuery, BooleanClause.Occur.MUST);
-            builder.add(booleanClause);
-            BooleanQuery booleanQuery = builder.build();
-            DocListCollector collector = new DocListCollector();
-            searcher.search(booleanQuery, collector);
-            docList = collector.getDocs();
-            int size = docList.size();
-            for(int i=0; i<size; i++)
+            for (NodeMetaData parentNodeMetaData : parentNodeMetaDatas)
+            {
+                DbIdCollector collector = new DbIdCollector();
+                searcher.search(descendantsQuery(parentNodeMetaData), collector);
+                for (LongCursor cursor : collector.getDbIds())
+                {
+                    if (parentTxnIds.containsKey(cursor.value))
+                    {
+                        multiParentDescendants.add(cursor.value);
+                    }
+                    long txnId = Math.max(parentNodeMetaData.getTxnId(), parentTxnIds.getOrDefault(cursor.value, Long.MIN_VALUE));
+                    parentTxnIds.put(cursor.value, txnId);
+                }
+            }
+            descendants = parentTxnIds.size();
+
+            if (cascadePathsLocally && cascadeTrackingEnabled())
             {
-                int docId = docList.get(i);
-                Document document = searcher.doc(docId, REQUEST_ONLY_ID_FIELD);
-                IndexableField indexableField = document.getField(FIELD_SOLR4_ID);
-                String id = indexableField.stringValue();
-                TenantDbId ids = AlfrescoSolrDataModel.decodeNodeDocumentId(id);
-                childIds.add(ids.dbId);
+                for (NodeMetaData parentNodeMetaData : parentNodeMetaDatas)
+                {
+                    LongHashSet relocated =
+                            cascadeLocally(searcher, parentNodeMetaData, pendingParentIds, multiParentDescendants, cascaded,
+                                    overwrite, request, processor);
+                    parentTxnIds.removeAll(relocated);
+                    cascadedLocally += relocated.size();
+                }
             }
         }
+        catch (UncheckedIOException exception)
+        {
+            throw exception.getCause();
+        }
         finally
         {
             ofNullable(refCounted).ifPresent(RefCounted::decref);
         }
 
-        for (Long childId : childIds)
-        {
-            NodeMetaDataParameters nmdp = new NodeMetaDataParameters();
-            nmdp.setFromNodeId(childId);
-            nmdp.setToNodeId(childId);
-            nmdp.setIncludeAclId(true);
-            nmdp.setIncludeAspects(false);
-            nmdp.setIncludeChildAssociations(false);
-            nmdp.setIncludeChildIds(true);
-            nmdp.setIncludeNodeRef(true);
-            nmdp.setIncludeOwner(false);
-            nmdp.setIncludeParentAssociations(false);
-
-            // We only care about the path and ancestors (which is included) for this case
-            nmdp.setIncludePaths(true);
-            nmdp.setIncludeProperties(false);
-            nmdp.setIncludeType(true);
-            nmdp.setIncludeTxnId(true);
-            nmdp.setMaxResults(1);
-            // Gets only one
-            Optional<Collection<NodeMetaData>> nodeMetaDatas = getNodesMetaDataFromRepository(nmdp);
-
-            if (nodeMetaDatas.isPresent() && !nodeMetaDatas.get().isEmpty())
-            {
-                NodeMetaData nodeMetaData = nodeMetaDatas.get().iterator().next();
+        int fromRepository = parentTxnIds.size();
+        AtomicLong fetched = new AtomicLong();
+        try
+        {
+            forEachBatchOfNodesMetaData(repositoryPool, parentTxnIds.keys().toArray(), this::cascadeDescendantsParameters, batch -> {
+                List<SolrInputDocument> documents = batch.stream()
+                        .filter(nodeMetaData -> nodeMetaData.getTxnId() < parentTxnIds.get(nodeMetaData.getId()))
+                        .map(this::cascadeDocument)
+                        .collect(toList());
 
-                // Only cascade update nods we know can not have changed and must be in this shard
-                // Node in the current TX will be explicitly updated in the outer loop
-                // We do not bring in changes from the future as nodes may switch shards and we do not want the logic here.
-                if (nodeMetaData.getTxnId() < parentNodeMetaData.getTxnId())
-                {
-                    LOGGER.debug("Cascade update child doc {}", childId);
+                addCascadeDocuments(documents, overwrite, request, processor);
+
+                LOGGER.debug("Cascade update progress: {} out of {} descendants fetched, {} reindexed.",
+                        fetched.addAndGet(batch.size()), fromRepository, cascaded.addAndGet(documents.size()));
+            });
+        }
+        catch (UncheckedIOException exception)
+        {
+            throw exception.getCause();
+        }
 
-                    SolrInputDocument document = basicDocument(nodeMetaData, DOC_TYPE_NODE, PartialSolrInputDocument::new);
+        long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+        LOGGER.info("Cascade update of {} parent nodes: {} out of {} descendants reindexed ({} relocated in the index, "
+                        + "{} fetched from the Repository) in {} ms ({} descendants/s).",
+                parentNodeMetaDatas.size(), cascaded.get(), descendants, cascadedLocally, fromRepository,
+                elapsedMillis, descendants * 1000L / elapsedMillis);
+    }
 
-                    AddUpdateCommand addDocCmd = new AddUpdateCommand(request);
-                    addDocCmd.overwrite = overwrite;
-                    addDocCmd.solrDoc = document;
-                    if (cascadeTrackingEnabled())
+    /**
+     * Reindexes the descendants of the given parent node with paths derived from the index, skipping the ones shared
+     * with other updated parents and the ones below another pending parent.
+     *
+     * @return the ids of the descendants whose paths could be derived, which no longer need the Repository.
+     */
+    private LongHashSet cascadeLocally(
+            SolrIndexSearcher searcher,
+            NodeMetaData parentNodeMetaData,
+            Set<String> pendingParentIds,
+            LongHashSet multiParentDescendants,
+            AtomicLong cascaded,
+            boolean overwrite,
+            SolrQueryRequest request,
+            UpdateRequestProcessor processor) throws IOException
+    {
+        DocListCollector collector = new DocListCollector();
+        searcher.search(descendantsQuery(parentNodeMetaData), collector);
+
+        List<NodeMetaData> relocated = IntStream.of(collector.getDocs().toArray())
+                .parallel()
+                .mapToObj(docId -> {
+                    try
                     {
-                        updatePathRelatedFields(nodeMetaData, document);
-                        updateNamePathRelatedFields(nodeMetaData, document);
-                        updateAncestorRelatedFields(nodeMetaData, document);
+                        return searcher.doc(docId, CASCADE_LOCALLY_FIELDS);
                     }
-                        processor.processAdd(addDocCmd);
+                    catch (IOException exception)
+                    {
+                        throw new UncheckedIOException(exception);
+                    }
+                })
+                .map(document -> relocatedDescendant(parentNodeMetaData, document, pendingParentIds))
+                .flatMap(Optional::stream)
+                .filter(nodeMetaData -> !multiParentDescendants.contains(nodeMetaData.getId()))
+                .collect(toList());
+
+        List<SolrInputDocument> documents = relocated.stream()
+                .filter(nodeMetaData -> nodeMetaData.getTxnId() < parentNodeMetaData.getTxnId())
+                .map(this::cascadeDocument)
+                .collect(toList());
+        addCascadeDocuments(documents, overwrite, request, processor);
+        cascaded.addAndGet(documents.size());
+
+        LongHashSet relocatedIds = new LongHashSet(relocated.size());
+        relocated.forEach(nodeMetaData -> relocatedIds.add(nodeMetaData.getId()));
+        return relocatedIds;
+    }
+
+    private Query descendantsQuery(NodeMetaData parentNodeMetaData)
+    {
+        return new TermQuery(new Term(FIELD_ANCESTOR, parentNodeMetaData.getNodeRef().toString()));
+    }
+
+    /**
+     * Derives the new paths of a descendant of a moved (or renamed) node from the new paths of that node and the paths
+     * of the descendant relative to it, as stored in the index.
+     * Nodes with more than one path cannot be matched to a single path of the moved node and are left to the Repository,
+     * like the ones whose stored ancestor path does not go through the moved node, or goes through another pending
+     * parent below it (their stored path relative to the moved node is stale until that other cascade is done).
+     *
+     * @param parentNodeMetaData the metadata of the moved node, including its new paths.
+     * @param descendant the stored fields of the descendant document.
+     * @param pendingParentIds the node ref ids of all the parent nodes with a pending cascade.
+     * @return the descendant metadata needed by a cascade update, or empty if its paths cannot be derived.
+     */
+    static Optional<NodeMetaData> relocatedDescendant(NodeMetaData parentNodeMetaData, Document descendant,
+                Set<String> pendingParentIds)
+    {
+        String[] paths = descendant.getValues(FIELD_PATH);
+        List<String> ancestorPaths = fullPaths(descendant.getValues(FIELD_APATH));
+        List<String> namePaths = fullPaths(descendant.getValues(FIELD_NPATH));
+        if (paths.length != 1 || ancestorPaths.size() != 1 || namePaths.size() != 1
+                || descendant.get(FIELD_LID) == null
+                || Stream.of(FIELD_DBID, FIELD_INTXID, FIELD_ACLID).anyMatch(field -> descendant.getField(field) == null)
+                || notNullOrEmpty(parentNodeMetaData.getPaths()).size() != 1
+                || notNullOrEmpty(parentNodeMetaData.getAncestorPaths()).size() != 1
+                || notNullOrEmpty(parentNodeMetaData.getNamePaths()).size() != 1)
+        {
+            return empty();
+        }
+
+        NodeRef parentNodeRef = parentNodeMetaData.getNodeRef();
+        List<String> ancestorIds = asList(ancestorPaths.get(0).split("/"));
+        List<String> pathElements = pathElements(paths[0]);
+        List<String> names = asList(namePaths.get(0).split("/"));
+
+        // The stored paths contain the descendant itself, the ancestor path contains the root instead
+        int parentPosition = ancestorIds.lastIndexOf(parentNodeRef.getId());
+        int relativeDepth = ancestorIds.size() - parentPosition;
+        if (parentPosition < 0 || pathElements.size() < relativeDepth || names.size() < relativeDepth)
+        {
+            return empty();
+        }
+
+        List<String> relativeAncestorIds = ancestorIds.subList(parentPosition + 1, ancestorIds.size());
+        if (relativeAncestorIds.stream().anyMatch(pendingParentIds::contains))
+        {
+            return empty();
+        }
+
+        NodeMetaData relocated = new NodeMetaData();
+        relocated.setId(descendant.getField(FIELD_DBID).numericValue().longValue());
+        relocated.setTenantDomain(parentNodeMetaData.getTenantDomain());
+        relocated.setNodeRef(new NodeRef(descendant.get(FIELD_LID)));
+        relocated.setTxnId(descendant.getField(FIELD_INTXID).numericValue().longValue());
+        relocated.setAclId(descendant.getField(FIELD_ACLID).numericValue().longValue());
+
+        String parentPath = withoutTrailingSlash(parentNodeMetaData.getPaths().get(0).getFirst());
+        String relativePath = String.join("", pathElements.subList(pathElements.size() - relativeDepth, pathElements.size()));
+        relocated.setPaths(singletonList(new Pair<>(parentPath + relativePath, null)));
+
+        StringBuilder ancestorPath = new StringBuilder(withoutTrailingSlash(parentNodeMetaData.getAncestorPaths().get(0)))
+                .append('/').append(parentNodeRef.getId());
+        relativeAncestorIds.forEach(id -> ancestorPath.append('/').append(id));
+        relocated.setAncestorPaths(singletonList(ancestorPath.toString()));
+
+        List<String> namePath = new ArrayList<>(parentNodeMetaData.getNamePaths().get(0));
+        namePath.addAll(names.subList(names.size() - relativeDepth, names.size()));
+        relocated.setNamePaths(singletonList(namePath));
+
+        Set<NodeRef> ancestors = new HashSet<>(notNullOrEmpty(parentNodeMetaData.getAncestors()));
+        ancestors.add(parentNodeRef);
+        relativeAncestorIds.forEach(id -> ancestors.add(new NodeRef(parentNodeRef.getStoreRef(), id)));
+        relocated.setAncestors(ancestors);
+
+        return Optional.of(relocated);
+    }
+
+    /**
+     * Returns the full paths ("F" level code) of the given {@link QueryConstants#FIELD_APATH} or
+     * {@link QueryConstants#FIELD_NPATH} values, without the level code and the leading slash.
+     */
+    private static List<String> fullPaths(String[] values)
+    {
+        return stream(values)
+                .filter(value -> value.startsWith("F/"))
+                .map(value -> value.substring(2))
+                .collect(toList());
+    }
+
+    /**
+     * Splits a QName path in its elements, each one with its leading slash. Slashes within the namespace URIs are not
+     * separators.
+     */
+    static List<String> pathElements(String path)
+    {
+        List<String> elements = new ArrayList<>();
+        int start = -1;
+        int depth = 0;
+        for (int i = 0; i < path.length(); i++)
+        {
+            char c = path.charAt(i);
+            if (c == '{')
+            {
+                depth++;
+            }
+            else if (c == '}')
+            {
+                depth--;
+            }
+            else if (c == '/' && depth == 0)
+            {
+                if (start >= 0)
+                {
+                    elements.add(path.substring(start, i));
+                }
+                start = i;
+            }
+        }
+
+        if (start >= 0 && start < path.length() - 1)
+        {
+            elements.add(path.substring(start));
+        }
+        return elements;
+    }
+
+    private static String withoutTrailingSlash(String path)
+    {
+        return path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+
+    private void addCascadeDocuments(
+            List<SolrInputDocument> documents,
+            boolean overwrite,
+            SolrQueryRequest request,
+            UpdateRequestProcessor processor)
+    {
+        synchronized (processor)
+        {
+            for (SolrInputDocument document : documents)
+            {
+                AddUpdateCommand addDocCmd = new AddUpdateCommand(request);
+                addDocCmd.overwrite = overwrite;
+                addDocCmd.solrDoc = document;
+                try
+                {
+                    processor.processAdd(addDocCmd);
+                }
+                catch (IOException exception)
+                {
+                    throw new UncheckedIOException(exception);
                 }
             }
         }
     }
 
+    private SolrInputDocument cascadeDocument(NodeMetaData nodeMetaData)
+    {
+        LOGGER.debug("Cascade update child doc {}", nodeMetaData.getId());
+
+        SolrInputDocument document = basicDocument(nodeMetaData, DOC_TYPE_NODE, PartialSolrInputDocument::new);
+        if (cascadeTrackingEnabled())
+        {
+            updatePathRelatedFields(nodeMetaData, document);
+            updateNamePathRelatedFields(nodeMetaData, document);
+            updateAncestorRelatedFields(nodeMetaData, document);
+        }
+        return document;
+    }
+
+    private NodeMetaDataParameters cascadeParentsParameters()
+    {
+        NodeMetaDataParameters nmdp = new NodeMetaDataParameters();
+        nmdp.setIncludeAclId(true);
+        nmdp.setIncludeChildAssociations(false);
+        nmdp.setIncludeChildIds(true);
+        nmdp.setIncludeOwner(false);
+        nmdp.setIncludeParentAssociations(false);
+        nmdp.setIncludePaths(true);
+        nmdp.setIncludeProperties(false);
+        nmdp.setIncludeTxnId(true);
+        return nmdp;
+    }
+
+    private NodeMetaDataParameters cascadeDescendantsParameters()
+    {
+        NodeMetaDataParameters nmdp = new NodeMetaDataParameters();
+        nmdp.setIncludeAclId(true);
+        nmdp.setIncludeAspects(false);
+        nmdp.setIncludeChildAssociations(false);
+        nmdp.setIncludeChildIds(true);
+        nmdp.setIncludeNodeRef(true);
+        nmdp.setIncludeOwner(false);
+        nmdp.setIncludeParentAssociations(false);
+
+        // We only care about the path and ancestors (which is included) for this case
+        nmdp.setIncludePaths(true);
+        nmdp.setIncludeProperties(false);
+        nmdp.setIncludeType(true);
+        nmdp.setIncludeTxnId(true);
+        return nmdp;
+    }
+
+    /**
+     * Gets the metadata of the given nodes from the Repository. The (sorted) node ids are split in batches of
+     * {@link #cascadeDescendantBatchSize}, which are requested with a parallel stream submitted to the given pool
+     * (e.g. the one of the CascadeTracker, which bounds the parallelism of the blocking requests) and handed to the
+     * consumer as soon as they are available.
+     * The nodes of a batch the Repository could not provide are requested one by one, so that a single failing node
+     * does not skip the whole batch: the nodes still failing have already been logged and are skipped.
+     */
+    void forEachBatchOfNodesMetaData(
+            ForkJoinPool pool,
+            long[] nodeIds,
+            Supplier<NodeMetaDataParameters> parameters,
+            Consumer<Collection<NodeMetaData>> consumer)
+    {
+        Arrays.sort(nodeIds);
+        int batches = (nodeIds.length + cascadeDescendantBatchSize - 1) / cascadeDescendantBatchSize;
+        pool.submit(() -> IntStream.range(0, batches)
+                .parallel()
+                .mapToObj(batch -> Arrays.stream(nodeIds,
+                            batch * cascadeDescendantBatchSize,
+                            Math.min(nodeIds.length, (batch + 1) * cascadeDescendantBatchSize))
+                        .boxed()
+                        .collect(toList()))
+                .forEach(batch -> {
+                    Optional<Collection<NodeMetaData>> nodeMetaDatas = getNodesMetaDataFromRepository(parameters, batch);
+                    if (nodeMetaDatas.isPresent())
+                    {
+                        consumer.accept(nodeMetaDatas.get());
+                    }
+                    else if (batch.size() > 1)
+                    {
+                        LOGGER.warn("Unable to get the metadata of {} nodes from {} to {} in one batch, retrying node by node.",
+                                batch.size(), batch.get(0), batch.get(batch.size() - 1));
+                        List<NodeMetaData> retried = batch.stream()
+                                .map(nodeId -> getNodesMetaDataFromRepository(parameters, singletonList(nodeId)))
+                                .flatMap(Optional::stream)
+                                .flatMap(Collection::stream)
+                                .collect(toList());
+                        if (!retried.isEmpty())
+                        {
+                            consumer.accept(retried);
+                        }
+                    }
+                })).join();
+    }
+
+    private Optional<Collection<NodeMetaData>> getNodesMetaDataFromRepository(
+            Supplier<NodeMetaDataParameters> parameters,
+            List<Long> nodeIds)
+    {
+        NodeMetaDataParameters nmdp = parameters.get();
+        nmdp.setNodeIds(nodeIds);
+        nmdp.setMaxResults(nodeIds.size());
+        return getNodesMetaDataFromRepository(nmdp);
+    }
+
     private long topNodeId(SolrQuery.ORDER order)
     {
         final String sortDir = order.name();
@@ -28,19 +28,34 @@ package org.alfresco.solr.cache;
 
 import java.io.IOException;
 
+import org.alfresco.solr.cache.SegmentedBitDocSet.SegmentLayout;
+import org.alfresco.solr.query.AbstractSolrCachingScorer.ReadableLeafDocs;
+import org.alfresco.solr.query.SolrAuthorityQuery;
+import org.alfresco.solr.query.SolrAuthorityScorer;
+import org.alfresco.solr.query.SolrAuthoritySetQuery;
+import org.alfresco.solr.query.SolrAuthoritySetScorer;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
 import org.apache.solr.search.CacheRegenerator;
+import org.apache.solr.search.DocSet;
 import org.apache.solr.search.SolrCache;
 import org.apache.solr.search.SolrIndexSearcher;
 
 /**
  * Cache regeneration for AUTHORITY and AUTHSET queries.
+ * <p>
+ * When the ACL documents are the same in the new searcher, the readable docs of the segments carried over from the
+ * old searcher are copied from the old value (less any docs deleted since), and only the new segments are evaluated.
+ * Otherwise the query is executed again on the new searcher.
  * 
  * @author Matt Ward
  */
 public class AuthorityCacheRegenerator implements CacheRegenerator
 {
-    @SuppressWarnings({ "rawtypes" })
+    @SuppressWarnings({ "rawtypes", "unchecked" })
     @Override
     public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache,
                 SolrCache oldCache, Object oldKey, Object oldVal) throws IOException
@@ -50,9 +65,99 @@ public class AuthorityCacheRegenerator implements CacheRegenerator
             // The authority cache contains results keyed by SolrAuthorityQuery
             // and SolrAuthoritySetQuery.
             Query authQuery = (Query) oldKey;
-            // Execute the query on the new searcher - resulting in cache population as a side-effect.
-            newSearcher.getDocSet(authQuery);
+            DocSet regenerated = null;
+            if (oldVal instanceof SegmentedBitDocSet)
+            {
+                regenerated = regenerateIncrementally(newSearcher, authQuery, (SegmentedBitDocSet) oldVal);
+            }
+
+            if (regenerated != null)
+            {
+                newCache.put(authQuery, regenerated);
+            }
+            else
+            {
+                // Execute the query on the new searcher - resulting in cache population as a side-effect.
+                newSearcher.getDocSet(authQuery);
+            }
         }
         return true;
     }
+
+    /**
+     * @return the docs readable in the new searcher, or null if they can't be derived from the old ones
+     */
+    private DocSet regenerateIncrementally(SolrIndexSearcher newSearcher, Query authQuery, SegmentedBitDocSet oldDocs) throws IOException
+    {
+        SegmentLayout oldLayout = oldDocs.getLayout();
+        SegmentLayout newLayout = SegmentLayout.of(newSearcher);
+        if (!newLayout.hasSameAclDocs(oldLayout))
+        {
+            return null;
+        }
+
+        FixedBitSet oldBits = oldDocs.getBits();
+        FixedBitSet bits = new FixedBitSet(newSearcher.maxDoc());
+        // Only looked up, once, if there are new segments
+        ReadableLeafDocs readableLeafDocs = null;
+        for (LeafReaderContext leaf : newSearcher.getTopReaderContext().leaves())
+        {
+            int maxDoc = leaf.reader().maxDoc();
+            Bits liveDocs = leaf.reader().getLiveDocs();
+            int oldDocBase = oldLayout.getDocBase(leaf.reader().getCoreCacheKey());
+            if (oldDocBase >= 0)
+            {
+                copy(oldBits, oldDocBase, maxDoc, liveDocs, bits, leaf.docBase);
+            }
+            else
+            {
+                if (readableLeafDocs == null)
+                {
+                    readableLeafDocs = getReadableLeafDocs(newSearcher, authQuery);
+                    if (readableLeafDocs == null)
+                    {
+                        return null;
+                    }
+                }
+                copy(readableLeafDocs.get(leaf), 0, maxDoc, liveDocs, bits, leaf.docBase);
+            }
+        }
+        return new SegmentedBitDocSet(bits, newLayout);
+    }
+
+    /**
+     * @return the readable docs of the segments of the new searcher, or null if they can't be found one segment at a time
+     */
+    private ReadableLeafDocs getReadableLeafDocs(SolrIndexSearcher searcher, Query authQuery) throws IOException
+    {
+        if (authQuery instanceof SolrAuthoritySetQuery)
+        {
+            return SolrAuthoritySetScorer.getReadableLeafDocs(searcher, ((SolrAuthoritySetQuery) authQuery).getAuthorities());
+        }
+        else if (authQuery instanceof SolrAuthorityQuery)
+        {
+            return SolrAuthorityScorer.getReadableLeafDocs(searcher, ((SolrAuthorityQuery) authQuery).getAuthority());
+        }
+        return null;
+    }
+
+    /**
+     * Copies the live docs of a segment, found at fromBase in one bit set, to toBase in another.
+     */
+    private static void copy(FixedBitSet from, int fromBase, int maxDoc, Bits liveDocs, FixedBitSet to, int toBase)
+    {
+        int end = fromBase + maxDoc;
+        for (int doc = nextSetBit(from, fromBase); doc < end; doc = nextSetBit(from, doc + 1))
+        {
+            if (liveDocs == null || liveDocs.get(doc - fromBase))
+            {
+                to.set(toBase + doc - fromBase);
+            }
+        }
+    }
+
+    private static int nextSetBit(FixedBitSet bits, int index)
+    {
+        return index < bits.length() ? bits.nextSetBit(index) : DocIdSetIterator.NO_MORE_DOCS;
+    }
 }
@@ -0,0 +1,180 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.solr.cache;
+
+import static org.alfresco.repo.search.adaptor.QueryConstants.FIELD_DOC_TYPE;
+import static org.alfresco.solr.SolrInformationServer.DOC_TYPE_ACL;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.solr.search.BitDocSet;
+import org.apache.solr.search.DocIterator;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.SolrIndexSearcher;
+
+/**
+ * A {@link BitDocSet} which remembers the segments of the searcher it was built on, so that a cache regenerator can
+ * reuse the part of it belonging to segments which are still in the new searcher.
+ *
+ * @see AuthorityCacheRegenerator
+ */
+public class SegmentedBitDocSet extends BitDocSet
+{
+    private final SegmentLayout layout;
+
+    public SegmentedBitDocSet(FixedBitSet bits, SegmentLayout layout)
+    {
+        super(bits);
+        this.layout = layout;
+    }
+
+    /**
+     * Wraps the docs of the given searcher, copying them if they are not already held in a bit set.
+     */
+    public static SegmentedBitDocSet of(DocSet docs, SolrIndexSearcher searcher) throws IOException
+    {
+        FixedBitSet bits;
+        if (docs instanceof BitDocSet)
+        {
+            bits = ((BitDocSet) docs).getBits();
+        }
+        else
+        {
+            bits = new FixedBitSet(searcher.maxDoc());
+            for (DocIterator it = docs.iterator(); it.hasNext(); /**/)
+            {
+                bits.set(it.nextDoc());
+            }
+        }
+        return new SegmentedBitDocSet(bits, SegmentLayout.of(searcher));
+    }
+
+    public SegmentLayout getLayout()
+    {
+        return layout;
+    }
+
+    /**
+     * Where the segments of a searcher start, and how many live ACL documents each of them holds.
+     */
+    public static class SegmentLayout
+    {
+        private final Map<Object, Integer> segments = new HashMap<>();
+        private final int[] docBases;
+        private final int[] aclDocCounts;
+
+        private SegmentLayout(List<LeafReaderContext> leaves) throws IOException
+        {
+            docBases = new int[leaves.size()];
+            aclDocCounts = new int[leaves.size()];
+            for (int i = 0; i < leaves.size(); i++)
+            {
+                LeafReader reader = leaves.get(i).reader();
+                segments.put(reader.getCoreCacheKey(), i);
+                docBases[i] = leaves.get(i).docBase;
+                aclDocCounts[i] = countLiveAclDocs(reader);
+            }
+        }
+
+        public static SegmentLayout of(SolrIndexSearcher searcher) throws IOException
+        {
+            return new SegmentLayout(searcher.getTopReaderContext().leaves());
+        }
+
+        /**
+         * @return the doc base of the segment with the given core key, or -1 if there is no such segment
+         */
+        public int getDocBase(Object coreCacheKey)
+        {
+            Integer segment = segments.get(coreCacheKey);
+            return segment == null ? -1 : docBases[segment];
+        }
+
+        /**
+         * ACL documents are only ever added, or deleted and added again when they change; so if each segment
+         * of this layout holds the same number of live ACL documents as the same segment did in the previous
+         * layout, and no other segment holds any, the ACLs are unchanged.
+         */
+        public boolean hasSameAclDocs(SegmentLayout previous)
+        {
+            for (Map.Entry<Object, Integer> segment : segments.entrySet())
+            {
+                Integer previousSegment = previous.segments.get(segment.getKey());
+                int previousCount = previousSegment == null ? 0 : previous.aclDocCounts[previousSegment];
+                if (aclDocCounts[segment.getValue()] != previousCount)
+                {
+                    return false;
+                }
+            }
+            for (Map.Entry<Object, Integer> previousSegment : previous.segments.entrySet())
+            {
+                if (!segments.containsKey(previousSegment.getKey()) && previous.aclDocCounts[previousSegment.getValue()] > 0)
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int countLiveAclDocs(LeafReader reader) throws IOException
+        {
+            Term aclDocs = new Term(FIELD_DOC_TYPE, DOC_TYPE_ACL);
+            Bits liveDocs = reader.getLiveDocs();
+            if (liveDocs == null)
+            {
+                // Without deletions the term statistics are exact
+                return reader.docFreq(aclDocs);
+            }
+
+            PostingsEnum postings = reader.postings(aclDocs, PostingsEnum.NONE);
+            if (postings == null)
+            {
+                return 0;
+            }
+
+            int count = 0;
+            for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc())
+            {
+                if (liveDocs.get(doc))
+                {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
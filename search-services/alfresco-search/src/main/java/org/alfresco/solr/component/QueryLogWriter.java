@@ -0,0 +1,263 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.solr.component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.request.LocalSolrQueryRequest;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.processor.UpdateRequestProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Indexes the query log documents in the background.
+ * <p>
+ * Documents are queued by the request threads and indexed in batches by a single writer thread, using one update
+ * request per batch and log core. When the queue is full, new documents are either dropped (and counted) or the
+ * request thread waits for room, depending on the configuration.
+ */
+class QueryLogWriter
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryLogWriter.class);
+
+    private static final long POLL_TIMEOUT_MS = 1000;
+
+    private final BlockingQueue<LogEntry> queue;
+    private final int batchSize;
+    private final boolean blockWhenFull;
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder indexed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * A query log document along with the core it must be indexed into.
+     */
+    private static class LogEntry
+    {
+        private final CoreContainer container;
+        private final String logCoreName;
+        private final SolrInputDocument document;
+
+        LogEntry(CoreContainer container, String logCoreName, SolrInputDocument document)
+        {
+            this.container = container;
+            this.logCoreName = logCoreName;
+            this.document = document;
+        }
+    }
+
+    QueryLogWriter(String name, int queueSize, int batchSize, boolean blockWhenFull)
+    {
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.batchSize = batchSize;
+        this.blockWhenFull = blockWhenFull;
+        this.thread = new Thread(this::run, "QueryLogWriter-" + name);
+        this.thread.setDaemon(true);
+    }
+
+    void start()
+    {
+        thread.start();
+    }
+
+    /**
+     * Queues a query log document.
+     *
+     * @return false if the document has been dropped
+     */
+    boolean submit(CoreContainer container, String logCoreName, SolrInputDocument document)
+    {
+        LogEntry entry = new LogEntry(container, logCoreName, document);
+        if (running)
+        {
+            try
+            {
+                if (blockWhenFull)
+                {
+                    queue.put(entry);
+                    return true;
+                }
+                if (queue.offer(entry))
+                {
+                    return true;
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        dropped.increment();
+        LOGGER.debug("Query log queue is full, dropped query log entry for {}", logCoreName);
+        return false;
+    }
+
+    /**
+     * Stops accepting documents, then waits for the queued ones to be indexed.
+     */
+    void close(long timeoutMs)
+    {
+        running = false;
+        try
+        {
+            thread.join(timeoutMs);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    long getDropped()
+    {
+        return dropped.sum();
+    }
+
+    long getIndexed()
+    {
+        return indexed.sum();
+    }
+
+    long getFailed()
+    {
+        return failed.sum();
+    }
+
+    int getQueued()
+    {
+        return queue.size();
+    }
+
+    private void run()
+    {
+        List<LogEntry> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty())
+        {
+            try
+            {
+                LogEntry first = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (first == null)
+                {
+                    continue;
+                }
+
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            }
+            catch (InterruptedException e)
+            {
+                running = false;
+                Thread.currentThread().interrupt();
+            }
+            catch (Throwable t)
+            {
+                LOGGER.error("Failed to write the query log", t);
+            }
+            finally
+            {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<LogEntry> batch)
+    {
+        Map<String, List<LogEntry>> entriesByCore = new LinkedHashMap<>();
+        for (LogEntry entry : batch)
+        {
+            entriesByCore.computeIfAbsent(entry.logCoreName, name -> new ArrayList<>()).add(entry);
+        }
+
+        for (List<LogEntry> entries : entriesByCore.values())
+        {
+            LogEntry first = entries.get(0);
+            try (SolrCore logCore = first.container.getCore(first.logCoreName))
+            {
+                if (logCore == null)
+                {
+                    failed.add(entries.size());
+                    continue;
+                }
+                write(logCore, entries);
+                indexed.add(entries.size());
+            }
+            catch (Exception e)
+            {
+                failed.add(entries.size());
+                LOGGER.error("Failed to index {} query log entries in {}", entries.size(), first.logCoreName, e);
+            }
+        }
+    }
+
+    private void write(SolrCore logCore, List<LogEntry> entries) throws Exception
+    {
+        SolrQueryRequest request = null;
+        UpdateRequestProcessor processor = null;
+        try
+        {
+            request = new LocalSolrQueryRequest(logCore, new NamedList<>());
+            processor = logCore.getUpdateProcessingChain(null).createProcessor(request, new SolrQueryResponse());
+
+            for (LogEntry entry : entries)
+            {
+                AddUpdateCommand cmd = new AddUpdateCommand(request);
+                cmd.overwrite = true;
+                cmd.solrDoc = entry.document;
+                processor.processAdd(cmd);
+            }
+        }
+        finally
+        {
+            if (processor != null)
+            {
+                processor.finish();
+            }
+            if (request != null)
+            {
+                request.close();
+            }
+        }
+    }
+}
@@ -40,25 +40,91 @@ import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.ShardParams;
 import org.apache.solr.common.params.SpellingParams;
 import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.core.CloseHook;
 import org.apache.solr.core.CoreContainer;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.handler.component.ResponseBuilder;
 import org.apache.solr.handler.component.SearchComponent;
-import org.apache.solr.request.LocalSolrQueryRequest;
-import org.apache.solr.request.SolrQueryRequest;
-import org.apache.solr.response.SolrQueryResponse;
-import org.apache.solr.update.AddUpdateCommand;
-import org.apache.solr.update.processor.UpdateRequestProcessor;
+import org.apache.solr.util.plugin.SolrCoreAware;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 
 /**
+ * Logs the queries into the <code>&lt;core&gt;_qlog</code> core, if it exists.
+ * <p>
+ * The log documents are built on the request thread and indexed in the background by a {@link QueryLogWriter}.
+ * Supported arguments: <code>queueSize</code> (default 10000), <code>batchSize</code> (default 100) and
+ * <code>blockWhenFull</code> (default false: entries that don't fit in the queue are dropped and counted).
+ *
  * @author Andy
  */
-public class QueryLoggingComponent extends SearchComponent
+public class QueryLoggingComponent extends SearchComponent implements SolrCoreAware
 {
+    private static final int DEFAULT_QUEUE_SIZE = 10000;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final long CLOSE_TIMEOUT_MS = 10000;
+
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private boolean blockWhenFull;
+    private String coreName = "";
+    private QueryLogWriter writer;
+
+    @Override
+    public void init(NamedList args)
+    {
+        super.init(args);
+        queueSize = intArg(args, "queueSize", DEFAULT_QUEUE_SIZE);
+        batchSize = intArg(args, "batchSize", DEFAULT_BATCH_SIZE);
+        Object block = args.get("blockWhenFull");
+        blockWhenFull = block != null && Boolean.parseBoolean(block.toString());
+    }
+
+    private static int intArg(NamedList args, String name, int defaultValue)
+    {
+        Object value = args.get(name);
+        return value != null ? Integer.parseInt(value.toString()) : defaultValue;
+    }
+
+    @Override
+    public void inform(SolrCore core)
+    {
+        coreName = core.getName();
+        core.addCloseHook(new CloseHook()
+        {
+            @Override
+            public void preClose(SolrCore core)
+            {
+                closeWriter();
+            }
+
+            @Override
+            public void postClose(SolrCore core)
+            {
+            }
+        });
+    }
+
+    private synchronized QueryLogWriter getWriter()
+    {
+        if (writer == null)
+        {
+            writer = new QueryLogWriter(coreName, queueSize, batchSize, blockWhenFull);
+            writer.start();
+        }
+        return writer;
+    }
+
+    private synchronized void closeWriter()
+    {
+        if (writer != null)
+        {
+            writer.close(CLOSE_TIMEOUT_MS);
+        }
+    }
 
     @Override
     public void finishStage(ResponseBuilder rb)
@@ -103,109 +169,103 @@ public class QueryLoggingComponent extends SearchComponent
         if (!isShard)
         {
             CoreContainer container = rb.req.getCore().getCoreContainer();
-            SolrCore logCore = container.getCore(rb.req.getCore().getName() + "_qlog");
-            if (logCore != null)
+            String logCoreName = rb.req.getCore().getName() + "_qlog";
+            if (container.isLoaded(logCoreName))
             {
                 JSONObject json = (JSONObject) rb.req.getContext().get(AbstractQParser.ALFRESCO_JSON);
 
-                SolrQueryRequest request = null;
-                UpdateRequestProcessor processor = null;
-                try
-                {
-                    request = new LocalSolrQueryRequest(logCore, new NamedList<>());
-                    processor = logCore.getUpdateProcessingChain(null).createProcessor(request, new SolrQueryResponse());
-
-                    AddUpdateCommand cmd = new AddUpdateCommand(request);
-                    cmd.overwrite = true;
-                    SolrInputDocument input = new SolrInputDocument();
-                    input.addField("id", GUID.generate());
-                    input.addField("_version_", "1");
+                SolrInputDocument input = new SolrInputDocument();
+                input.addField("id", GUID.generate());
+                input.addField("_version_", "1");
 
-                    input.addField("timestamp", DateTimeFormatter.ISO_INSTANT.format(Instant.now()));
+                input.addField("timestamp", DateTimeFormatter.ISO_INSTANT.format(Instant.now()));
 
-                    if (json != null)
+                if (json != null)
+                {
+                    try
                     {
-                        try
+                        ArrayList<String> authorityList = new ArrayList<String>(1);
+                        JSONArray authorities = json.getJSONArray("authorities");
+                        for (int i = 0; i < authorities.length(); i++)
                         {
-                            ArrayList<String> authorityList = new ArrayList<String>(1);
-                            JSONArray authorities = json.getJSONArray("authorities");
-                            for (int i = 0; i < authorities.length(); i++)
-                            {
-                                String authorityString = authorities.getString(i);
-                                authorityList.add(authorityString);
-                            }
+                            String authorityString = authorities.getString(i);
+                            authorityList.add(authorityString);
+                        }
 
-                            for (String authority : authorityList)
+                        for (String authority : authorityList)
+                        {
+                            if (AuthorityType.getAuthorityType(authority) == AuthorityType.USER)
                             {
-                                if (AuthorityType.getAuthorityType(authority) == AuthorityType.USER)
-                                {
-                                    input.addField("user", authority);
-                                    break;
-                                }
+                                input.addField("user", authority);
+                                break;
                             }
                         }
-                        catch (JSONException e)
-                        {
-                            input.addField("user", "<UNKNOWN>");
-                        }
                     }
-                    else
+                    catch (JSONException e)
                     {
                         input.addField("user", "<UNKNOWN>");
                     }
+                }
+                else
+                {
+                    input.addField("user", "<UNKNOWN>");
+                }
 
-                    String userQuery = rb.req.getParams().get(SpellingParams.SPELLCHECK_Q);
-                    if (userQuery == null)
+                String userQuery = rb.req.getParams().get(SpellingParams.SPELLCHECK_Q);
+                if (userQuery == null)
+                {
+                    if (json != null)
                     {
-                        if (json != null)
+                        try
+                        {
+                            userQuery = json.getString("query");
+                        }
+                        catch (JSONException e)
                         {
-                            try
-                            {
-                                userQuery = json.getString("query");
-                            }
-                            catch (JSONException e)
-                            {
-                            }
                         }
                     }
-                    if (userQuery == null)
-                    {
-                        userQuery = rb.req.getParams().get(CommonParams.Q);
-                    }
-
-                    if (userQuery != null)
-                    {
-                        input.addField("user_query", userQuery);
-                    }
-
-                    Query query = rb.getQuery();
-                    input.addField("query", query.toString());
-
-                    if (rb.getResults().docList != null)
-                    {
-                        input.addField("found", rb.getResults().docList.matches());
-                    }
-                    input.addField("time", rb.req.getRequestTimer().getTime());
+                }
+                if (userQuery == null)
+                {
+                    userQuery = rb.req.getParams().get(CommonParams.Q);
+                }
 
-                    cmd.solrDoc = input;
-                    processor.processAdd(cmd);
+                if (userQuery != null)
+                {
+                    input.addField("user_query", userQuery);
                 }
 
-                finally
+                Query query = rb.getQuery();
+                input.addField("query", query.toString());
+
+                if (rb.getResults().docList != null)
                 {
-                    if (processor != null)
-                    {
-                        processor.finish();
-                    }
-                    if (request != null)
-                    {
-                        request.close();
-                    }
+                    input.addField("found", rb.getResults().docList.matches());
                 }
+                input.addField("time", rb.req.getRequestTimer().getTime());
+
+                getWriter().submit(container, logCoreName, input);
             }
         }
     }
 
+    /**
+     * Adds the query log counters: entries queued, indexed, dropped because the queue was full and failed to be indexed.
+     */
+    @Override
+    public synchronized NamedList getStatistics()
+    {
+        NamedList<Object> stats = new SimpleOrderedMap<>();
+        if (writer != null)
+        {
+            stats.add("queued", writer.getQueued());
+            stats.add("indexed", writer.getIndexed());
+            stats.add("dropped", writer.getDropped());
+            stats.add("failed", writer.getFailed());
+        }
+        return stats;
+    }
+
     /*
      * (non-Javadoc)
      * @see org.apache.solr.handler.component.SearchComponent#getDescription()
@@ -27,7 +27,6 @@
 package org.alfresco.solr.query;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 
 import org.alfresco.repo.search.adaptor.QueryConstants;
@@ -65,6 +64,11 @@ public abstract class AbstractAuthoritySetQuery extends Query
         this.authorities = authorities;
     }
 
+    public String getAuthorities()
+    {
+        return authorities;
+    }
+
     @Override
     public abstract Weight createWeight(IndexSearcher searcher, boolean needsScores) throws IOException;
     
@@ -121,8 +125,8 @@ public abstract class AbstractAuthoritySetQuery extends Query
             return new EmptyHybridBitSet();
         }
 
-        //TODO : makes this configurable. For some systems this is huge and for others not big enough.
-        HybridBitSet hybridBitSet = new HybridBitSet(60000000);
+        // Sizes itself to the ACL ids actually collected
+        HybridBitSet hybridBitSet = new HybridBitSet();
 
         /*
         * Collect the ACLID's from the matching acl records.
@@ -132,7 +136,8 @@ public abstract class AbstractAuthoritySetQuery extends Query
 
         List<LeafReaderContext> leaves = searcher.getTopReaderContext().leaves();
         LeafReaderContext context = leaves.get(0);
-        NumericDocValues aclValues = DocValuesCache.getNumericDocValues(QueryConstants.FIELD_ACLID, context.reader());
+        boolean offHeap = DocValuesCache.isOffHeap(searcher);
+        NumericDocValues aclValues = DocValuesCache.getNumericDocValues(QueryConstants.FIELD_ACLID, context.reader(), offHeap);
         LeafReader reader = context.reader();
         int ceil = reader.maxDoc();
         int base = 0;
@@ -148,7 +153,7 @@ public abstract class AbstractAuthoritySetQuery extends Query
                     reader = context.reader();
                     base = context.docBase;
                     ceil = base+reader.maxDoc();
-                    aclValues = DocValuesCache.getNumericDocValues(QueryConstants.FIELD_ACLID, reader);
+                    aclValues = DocValuesCache.getNumericDocValues(QueryConstants.FIELD_ACLID, reader, offHeap);
                 }
                 while(doc >= ceil);
             }
@@ -165,28 +170,29 @@ public abstract class AbstractAuthoritySetQuery extends Query
     protected BitsFilter getACLFilter(String[] auths, String field, SolrIndexSearcher searcher) throws IOException
     {
         HybridBitSet aclBits = getACLSet(auths, field, searcher);
-        List<LeafReaderContext> leaves = searcher.getTopReaderContext().leaves();
-        List<FixedBitSet> bitSets = new ArrayList<FixedBitSet>(leaves.size());
+        boolean offHeap = DocValuesCache.isOffHeap(searcher);
+        List<FixedBitSet> bitSets = LeafExecutor.map(searcher, readerContext -> getACLBits(aclBits, readerContext.reader(), offHeap));
+        return new BitsFilter(bitSets);
+    }
 
-        for(LeafReaderContext readerContext :  leaves)
-        {
-        	LeafReader reader = readerContext.reader();
-            int maxDoc = reader.maxDoc();
-            FixedBitSet bits = new FixedBitSet(maxDoc);
-            bitSets.add(bits);
-
-            NumericDocValues fieldValues = DocValuesCache.getNumericDocValues(QueryConstants.FIELD_ACLID, reader);
-            if (fieldValues != null) {
-                for (int i = 0; i < maxDoc; i++) {
-                    long aclID = fieldValues.get(i);
-                    if (aclBits.get(aclID)) {
-                        bits.set(i);
-                    }
+    /**
+     * @return the documents of the segment with an ACLID in the given set
+     */
+    private static FixedBitSet getACLBits(HybridBitSet aclBits, LeafReader reader, boolean offHeap) throws IOException
+    {
+        int maxDoc = reader.maxDoc();
+        FixedBitSet bits = new FixedBitSet(maxDoc);
+
+        NumericDocValues fieldValues = DocValuesCache.getNumericDocValues(QueryConstants.FIELD_ACLID, reader, offHeap);
+        if (fieldValues != null) {
+            for (int i = 0; i < maxDoc; i++) {
+                long aclID = fieldValues.get(i);
+                if (aclBits.get(aclID)) {
+                    bits.set(i);
                 }
             }
         }
-
-        return new BitsFilter(bitSets);
+        return bits;
     }
 
 }
@@ -27,17 +27,31 @@
 package org.alfresco.solr.query;
 
 import java.io.IOException;
-import java.util.stream.LongStream;
+import java.util.Collection;
+import java.util.List;
 
+import org.alfresco.repo.search.adaptor.QueryConstants;
+import org.alfresco.service.cmr.security.PermissionService;
+import org.alfresco.solr.data.GlobalReaders;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BitSetIterator;
 import org.apache.lucene.util.FixedBitSet;
 import org.apache.solr.search.BitDocSet;
 import org.apache.solr.search.DocIterator;
 import org.apache.solr.search.DocSet;
 import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.search.WrappedQuery;
 
 
 /**
@@ -46,28 +60,208 @@ import org.apache.solr.search.SolrIndexSearcher;
  */
 public abstract class AbstractSolrCachingScorer extends Scorer
 {
-    protected static class LongCache 
-		{
-			private static int CACHE_SIZE = 1000000;
-			
-			private LongCache(){}
-	
-			static final long cache[] = LongStream.range(0, CACHE_SIZE).toArray();
-		}
-
-	protected static Long getLong(long l) {
-		if(l > LongCache.CACHE_SIZE)
-		{
-			return Long.valueOf(l);
-		}
-		else
-		{
-			return LongCache.cache[(int)l];
-		}
-	}
+    /**
+     * Builds the set of documents (excluding the ACL documents themselves) with an ACL granted to, or denying, any of
+     * the authorities. The ACL documents matching the authorities in the given field are found first and their ACL ids
+     * collected; the segments are then scanned for documents with one of those ACL ids, concurrently when the
+     * {@link LeafExecutor} of the core is enabled.
+     *
+     * @param searcher the searcher
+     * @param field the ACL document field listing the authorities, e.g. READER or DENIED
+     * @param authorities the authorities, the first character being the separator
+     */
+    protected static DocSet buildAclDocSet(SolrIndexSearcher searcher, String field, String authorities) throws IOException
+    {
+        DocSet aclDocs = searcher.getDocSet(aclDocsQuery(field, splitAuthorities(authorities)));
+        FixedBitSet matches = new FixedBitSet(searcher.maxDoc());
+        List<LeafReaderContext> leaves = searcher.getTopReaderContext().leaves();
+
+        boolean offHeap = DocValuesCache.isOffHeap(searcher);
+        HybridBitSet aclsFound = collectAclIds(aclDocs, leaves, offHeap);
+        if(aclsFound.cardinality() > 0)
+        {
+            List<FixedBitSet> leafMatches = LeafExecutor.map(searcher, leaf -> matchLeaf(leaf, aclsFound, offHeap));
+            for(int i = 0; i < leaves.size(); i++)
+            {
+                FixedBitSet bits = leafMatches.get(i);
+                if(bits != null)
+                {
+                    int docBase = leaves.get(i).docBase;
+                    BitSetIterator leafDocs = new BitSetIterator(bits, 0);
+                    for(int doc = leafDocs.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = leafDocs.nextDoc())
+                    {
+                        matches.set(docBase + doc);
+                    }
+                }
+            }
+        }
+
+        // Exclude the ACL docs from the results, we only want real docs that match.
+        for(DocIterator it = aclDocs.iterator(); it.hasNext(); /**/)
+        {
+            matches.clear(it.nextDoc());
+        }
+        return new BitDocSet(matches);
+    }
+
+    /**
+     * Split the authorities. The first character in the authorities String specifies the separator, e.g. ",jbloggs,abeecher"
+     */
+    protected static String[] splitAuthorities(String authorities)
+    {
+        return authorities.substring(1).split(authorities.substring(0, 1));
+    }
+
+    /**
+     * Collects the ACL ids of the ACL documents listing any of the authorities in the given field.
+     */
+    private static HybridBitSet getAclIds(SolrIndexSearcher searcher, String field, String[] auths) throws IOException
+    {
+        DocSet aclDocs = searcher.getDocSet(aclDocsQuery(field, auths));
+        return collectAclIds(aclDocs, searcher.getTopReaderContext().leaves(), DocValuesCache.isOffHeap(searcher));
+    }
+
+    /**
+     * @param offHeap where the ACLID values of the segment are cached, see {@link DocValuesCache#isOffHeap}
+     * @return the documents of the segment with one of the ACL ids, deleted documents included
+     */
+    private static FixedBitSet getLeafDocsWithAclIds(LeafReaderContext leaf, HybridBitSet aclIds, boolean offHeap) throws IOException
+    {
+        FixedBitSet bits = matchLeaf(leaf, aclIds, offHeap);
+        return bits == null ? new FixedBitSet(leaf.reader().maxDoc()) : bits;
+    }
+
+    /**
+     * @return the documents of the segment with any of the values in the given field, deleted documents included
+     */
+    private static FixedBitSet getLeafDocsWithTerms(LeafReaderContext leaf, String field, Collection<String> values) throws IOException
+    {
+        FixedBitSet bits = new FixedBitSet(leaf.reader().maxDoc());
+        for(String value : values)
+        {
+            PostingsEnum postings = leaf.reader().postings(new Term(field, value), PostingsEnum.NONE);
+            if(postings != null)
+            {
+                for(int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc())
+                {
+                    bits.set(doc);
+                }
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * The documents readable by some authorities, found one segment at a time. The ACL ids granting read access are
+     * collected once for the whole searcher, so each segment only needs its ACL ids and owners to be read.
+     *
+     * @see SolrAuthorityScorer#getReadableLeafDocs
+     * @see SolrAuthoritySetScorer#getReadableLeafDocs
+     */
+    public static class ReadableLeafDocs
+    {
+        private final HybridBitSet readerAclIds;
+        private final Collection<String> owners;
+        private final HybridBitSet ownerReaderAclIds;
+        private final boolean offHeap;
+
+        /**
+         * @param auths the authorities
+         * @param owners the authorities owning documents, i.e. the users among them
+         */
+        ReadableLeafDocs(SolrIndexSearcher searcher, String[] auths, Collection<String> owners) throws IOException
+        {
+            this.offHeap = DocValuesCache.isOffHeap(searcher);
+            // As SolrReaderQuery
+            this.readerAclIds = getAclIds(searcher, QueryConstants.FIELD_READER, auths);
+            this.owners = owners;
+            // Unless all doc owners are granted read permissions at a global level, as SolrReaderQuery(OWNER_AUTHORITY)
+            String[] ownerAuths = {PermissionService.OWNER_AUTHORITY};
+            this.ownerReaderAclIds = GlobalReaders.getReaders().contains(PermissionService.OWNER_AUTHORITY) ? null
+                        : getAclIds(searcher, QueryConstants.FIELD_READER, ownerAuths);
+        }
+
+        /**
+         * @return the readable docs of the segment, deleted docs included. The segment must not hold any ACL documents.
+         */
+        public FixedBitSet get(LeafReaderContext leaf) throws IOException
+        {
+            FixedBitSet readable = getLeafDocsWithAclIds(leaf, readerAclIds, offHeap);
+
+            // As SolrOwnerQuery
+            FixedBitSet ownedDocs = getLeafDocsWithTerms(leaf, QueryConstants.FIELD_OWNER, owners);
+            if(ownerReaderAclIds != null)
+            {
+                ownedDocs.and(getLeafDocsWithAclIds(leaf, ownerReaderAclIds, offHeap));
+            }
+            readable.or(ownedDocs);
+            return readable;
+        }
+    }
+
+    private static Query aclDocsQuery(String field, String[] auths)
+    {
+        BooleanQuery.Builder bQuery = new BooleanQuery.Builder();
+        for(String current : auths)
+        {
+            bQuery.add(new TermQuery(new Term(field, current)), Occur.SHOULD);
+        }
+        WrappedQuery wrapped = new WrappedQuery(bQuery.build());
+        wrapped.setCache(false);
+        return wrapped;
+    }
+
+    /**
+     * Collects the ACL ids of the given ACL documents, whose ids are in increasing order.
+     */
+    private static HybridBitSet collectAclIds(DocSet aclDocs, List<LeafReaderContext> leaves, boolean offHeap) throws IOException
+    {
+        HybridBitSet aclIds = new HybridBitSet();
+        NumericDocValues aclValues = null;
+        int base = 0;
+        int ceil = 0;
+        for(DocIterator it = aclDocs.iterator(); it.hasNext(); /**/)
+        {
+            int doc = it.nextDoc();
+            if(doc >= ceil)
+            {
+                LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(doc, leaves));
+                base = leaf.docBase;
+                ceil = base + leaf.reader().maxDoc();
+                aclValues = DocValuesCache.getNumericDocValues(QueryConstants.FIELD_ACLID, leaf.reader(), offHeap);
+            }
+
+            if(aclValues != null)
+            {
+                aclIds.set(aclValues.get(doc - base));
+            }
+        }
+        return aclIds;
+    }
+
+    /**
+     * @return the segment documents with one of the ACL ids, or null if the segment has no ACL ids
+     */
+    private static FixedBitSet matchLeaf(LeafReaderContext leaf, HybridBitSet aclIds, boolean offHeap) throws IOException
+    {
+        NumericDocValues fieldValues = DocValuesCache.getNumericDocValues(QueryConstants.FIELD_ACLID, leaf.reader(), offHeap);
+        if(fieldValues == null)
+        {
+            return null;
+        }
+
+        int maxDoc = leaf.reader().maxDoc();
+        FixedBitSet bits = new FixedBitSet(maxDoc);
+        for(int i = 0; i < maxDoc; i++)
+        {
+            if(aclIds.get(fieldValues.get(i)))
+            {
+                bits.set(i);
+            }
+        }
+        return bits;
+    }
 
-	
-    
     SolrCachingScorerDoIdSetIterator iterator;
     
     AbstractSolrCachingScorer(Weight weight, DocSet in, LeafReaderContext context, SolrIndexSearcher searcher)
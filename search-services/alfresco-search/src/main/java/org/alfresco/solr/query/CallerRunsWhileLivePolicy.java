@@ -0,0 +1,50 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.solr.query;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Runs the tasks that the executor can't accept on the submitting thread, like
+ * {@link ThreadPoolExecutor.CallerRunsPolicy}, but only while the executor is live: once it has been shut down (the
+ * core is closing) the task is rejected with a {@link RejectedExecutionException}, instead of being silently
+ * discarded and leaving its future never done.
+ */
+final class CallerRunsWhileLivePolicy implements RejectedExecutionHandler
+{
+    @Override
+    public void rejectedExecution(Runnable task, ThreadPoolExecutor executor)
+    {
+        if (executor.isShutdown())
+        {
+            throw new RejectedExecutionException("The executor has been shut down");
+        }
+        task.run();
+    }
+}
@@ -47,11 +47,17 @@ import org.apache.solr.search.DelegatingCollector;
  */
 public class ContentSizeGroupingCollector extends DelegatingCollector
 {
+    private static final int VALUES_BUFFER_SIZE = 4096;
+
     ResponseBuilder rb;
     IncrementalStats stats;
     String schemaFieldName;
     SchemaField schemaField;
     NumericDocValues numericDocValues;    
+    /** Values collected since they were last added to the stats */
+    long[] values = new long[VALUES_BUFFER_SIZE];
+    int valueCount;
+
     /**
      * @param rb
      * @param buckets 
@@ -97,14 +103,21 @@ public class ContentSizeGroupingCollector extends DelegatingCollector
 
         if(numericDocValues != null)
         {
-            long value = numericDocValues.get(doc);
-            stats.add(value);
+            values[valueCount++] = numericDocValues.get(doc);
+            if(valueCount == values.length)
+            {
+                stats.add(values, valueCount);
+                valueCount = 0;
+            }
         }
         leafDelegate.collect(doc);
     }
 
     public void finish() throws IOException 
     {
+        stats.add(values, valueCount);
+        valueCount = 0;
+
         NamedList<Object> analytics = new NamedList<>();
         rb.rsp.add("analytics", analytics);
         NamedList<Object> fieldCounts = new NamedList<>(); 
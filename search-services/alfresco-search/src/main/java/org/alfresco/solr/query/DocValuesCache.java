@@ -27,12 +27,25 @@
 package org.alfresco.solr.query;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.WeakHashMap;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.lucene.index.LeafReader;
 import org.apache.lucene.index.NumericDocValues;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.core.CloseHook;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.search.SolrIndexSearcher;
 
 
 /**
@@ -40,104 +53,316 @@ import org.apache.lucene.index.NumericDocValues;
  * possible access to numeric docValues. The DocValuesCache can be used instead of the Direct DocValues format which also
  * provides uncompressed in-memory docValues. The DocValuesCache can be used in situations when it is not
  * practical to re-index to use Direct docValues.
+ *
+ * Entries are held per segment core and per field. They are built once, by the first thread asking for them, while
+ * lookups of entries already built never block. An entry is dropped when its segment core is closed.
+ * Setting the core property alfresco.docValuesCache.offHeap to true keeps the cached values of that core in direct
+ * buffers.
+ * Hits, misses, size and build time are reported under /alfrescoDocValuesCache in the core summary.
  **/
 
 public class DocValuesCache
 {
-    private static Map<String, WeakHashMap<Object, NumericDocValues>> cache = new HashMap<String, WeakHashMap<Object, NumericDocValues>>();
+    public static final String OFF_HEAP_PROPERTY = "alfresco.docValuesCache.offHeap";
 
-    public static synchronized NumericDocValues getNumericDocValues(String field, LeafReader reader) throws IOException
+    /** The cores keeping their cached values off-heap. */
+    private static final Set<SolrCore> offHeapCores = ConcurrentHashMap.newKeySet();
+
+    private static final ConcurrentMap<Object, ConcurrentMap<String, FutureTask<NumericDocValues>>> cache = new ConcurrentHashMap<>();
+
+    /** Marks fields without docValues in a segment, as the cache can't hold nulls. */
+    private static final NumericDocValues NO_VALUES = new IntValues(new int[0]);
+
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder buildTimeNanos = new LongAdder();
+
+    /**
+     * @return the cached values of the field in the segment, kept on-heap, or null if the segment has none.
+     */
+    public static NumericDocValues getNumericDocValues(String field, LeafReader reader) throws IOException
     {
-        WeakHashMap<Object, NumericDocValues> fieldCache = cache.get(field);
+        return getNumericDocValues(field, reader, false);
+    }
 
+    /**
+     * @param offHeap true if the values are to be kept in direct buffers when they are not cached yet, see
+     *        {@link #isOffHeap(SolrIndexSearcher)}.
+     * @return the cached values of the field in the segment, or null if the segment has none.
+     */
+    public static NumericDocValues getNumericDocValues(String field, LeafReader reader, boolean offHeap) throws IOException
+    {
+        Object cacheKey = reader.getCoreCacheKey();
+        ConcurrentMap<String, FutureTask<NumericDocValues>> fieldCache = cache.get(cacheKey);
         if(fieldCache == null)
         {
-            fieldCache = new WeakHashMap<Object, NumericDocValues>();
-            cache.put(field, fieldCache);
+            fieldCache = new ConcurrentHashMap<>();
+            ConcurrentMap<String, FutureTask<NumericDocValues>> existing = cache.putIfAbsent(cacheKey, fieldCache);
+            if(existing == null)
+            {
+                try
+                {
+                    reader.addCoreClosedListener(cache::remove);
+                }
+                catch(RuntimeException e)
+                {
+                    // Without a close notification the entry would never be released, so don't cache it
+                    cache.remove(cacheKey);
+                    misses.increment();
+                    NumericDocValues values = build(field, reader, offHeap);
+                    return values == NO_VALUES ? null : values;
+                }
+            }
+            else
+            {
+                fieldCache = existing;
+            }
         }
 
-        Object cacheKey = reader.getCoreCacheKey();
-        NumericDocValues cachedValues = fieldCache.get(cacheKey);
+        FutureTask<NumericDocValues> entry = fieldCache.get(field);
+        if(entry == null)
+        {
+            FutureTask<NumericDocValues> newEntry = new FutureTask<>(() -> build(field, reader, offHeap));
+            entry = fieldCache.putIfAbsent(field, newEntry);
+            if(entry == null)
+            {
+                entry = newEntry;
+                misses.increment();
+                entry.run();
+            }
+            else
+            {
+                hits.increment();
+            }
+        }
+        else
+        {
+            hits.increment();
+        }
 
-        if(cachedValues == null)
+        try
+        {
+            NumericDocValues values = entry.get();
+            return values == NO_VALUES ? null : values;
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        catch(ExecutionException e)
+        {
+            // Let a later request try again
+            fieldCache.remove(field, entry);
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException)
+            {
+                throw (IOException)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Sets where the values of the segments of the core are cached, until the core is closed.
+     *
+     * @param offHeap true if the cached values are kept in direct buffers.
+     */
+    public static void setOffHeap(SolrCore core, boolean offHeap)
+    {
+        if (!offHeap)
+        {
+            offHeapCores.remove(core);
+        }
+        else if (offHeapCores.add(core))
+        {
+            core.addCloseHook(new CloseHook()
+            {
+                @Override
+                public void preClose(SolrCore core)
+                {
+                }
+
+                @Override
+                public void postClose(SolrCore core)
+                {
+                    offHeapCores.remove(core);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return true if the values of the segments of the searcher are cached in direct buffers.
+     */
+    public static boolean isOffHeap(SolrIndexSearcher searcher)
+    {
+        return offHeapCores.contains(searcher.getCore());
+    }
+
+    /**
+     * @return lookups, hits, hit ratio, size (segment cores with cached values), build time and the off-heap flag
+     *         of the core.
+     */
+    public static NamedList<Object> getStatistics(SolrCore core)
+    {
+        long hits = getHits();
+        long lookups = hits + getMisses();
+
+        NamedList<Object> statistics = new SimpleOrderedMap<>();
+        statistics.add("lookups", lookups);
+        statistics.add("hits", hits);
+        statistics.add("hitratio", lookups > 0 ? (float) hits / lookups : 0f);
+        statistics.add("size", size());
+        statistics.add("buildTimeMs", TimeUnit.NANOSECONDS.toMillis(getBuildTimeNanos()));
+        statistics.add("offHeap", offHeapCores.contains(core));
+        return statistics;
+    }
+
+    /**
+     * @return the number of lookups answered by an existing entry.
+     */
+    public static long getHits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups which had to build their entry.
+     */
+    public static long getMisses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * @return the total time spent building entries, in nanoseconds.
+     */
+    public static long getBuildTimeNanos()
+    {
+        return buildTimeNanos.sum();
+    }
+
+    /**
+     * @return the number of segment cores with cached values.
+     */
+    public static int size()
+    {
+        return cache.size();
+    }
+
+    private static NumericDocValues build(String field, LeafReader reader, boolean offHeap) throws IOException
+    {
+        long start = System.nanoTime();
+        try
         {
             NumericDocValues fieldValues = reader.getNumericDocValues(field);
             if(fieldValues == null)
             {
-                return null;
+                return NO_VALUES;
             }
-            else
-            {
-                int maxDoc = reader.maxDoc();
-                boolean longs = false;
-                int[] intValues = new int[maxDoc]; //Always start off with an int array.
-                SettableDocValues settableValues = new IntValues(intValues);
 
+            // Always start off with ints, switching to longs on the first value out of the int range
+            int maxDoc = reader.maxDoc();
+            if(offHeap)
+            {
+                IntBuffer intValues = ByteBuffer.allocateDirect(maxDoc * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
                 for(int i=0; i<maxDoc; i++)
                 {
                     long value = fieldValues.get(i);
-                    if(value > Integer.MAX_VALUE && !longs)
+                    if(value > Integer.MAX_VALUE || value < Integer.MIN_VALUE)
                     {
-                        longs = true;
-                        settableValues = new LongValues(intValues);
+                        LongBuffer longValues = ByteBuffer.allocateDirect(maxDoc * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+                        for(int j=0; j<maxDoc; j++)
+                        {
+                            longValues.put(j, fieldValues.get(j));
+                        }
+                        return new DirectLongValues(longValues);
                     }
+                    intValues.put(i, (int)value);
+                }
+                return new DirectIntValues(intValues);
+            }
 
-                    settableValues.set(i, value);
+            int[] intValues = new int[maxDoc];
+            for(int i=0; i<maxDoc; i++)
+            {
+                long value = fieldValues.get(i);
+                if(value > Integer.MAX_VALUE || value < Integer.MIN_VALUE)
+                {
+                    long[] longValues = new long[maxDoc];
+                    for(int j=0; j<maxDoc; j++)
+                    {
+                        longValues[j] = fieldValues.get(j);
+                    }
+                    return new LongValues(longValues);
                 }
-                fieldCache.put(cacheKey, settableValues);
-                return settableValues;
+                intValues[i] = (int)value;
             }
+            return new IntValues(intValues);
         }
-        else
+        finally
         {
-            return cachedValues;
+            buildTimeNanos.add(System.nanoTime() - start);
         }
     }
 
-    private static abstract class SettableDocValues extends NumericDocValues
-    {
-        public abstract void set(int index, long value);
-    }
-
-    private static class IntValues extends SettableDocValues
+    private static class IntValues extends NumericDocValues
     {
-        private int[] values;
+        private final int[] values;
 
         public IntValues(int[] values)
         {
             this.values = values;
         }
 
-        public void set(int index, long value)
+        public long get(int index) {
+            return values[index];
+        }
+    }
+
+    private static class LongValues extends NumericDocValues
+    {
+        private final long[] values;
+
+        public LongValues(long[] values)
         {
-            this.values[index] = (int)value;
+            this.values = values;
         }
 
-        public long get(int index) {
+        public long get(int index)
+        {
             return values[index];
         }
     }
 
-    private static class LongValues extends SettableDocValues
+    private static class DirectIntValues extends NumericDocValues
     {
-        private long[] values;
+        private final IntBuffer values;
 
-        public LongValues(int[] ivalues)
+        public DirectIntValues(IntBuffer values)
         {
-            values = new long[ivalues.length];
-            for(int i=0; i< ivalues.length; i++) {
-                values[i] = ivalues[i];
-            }
+            this.values = values;
         }
 
-        public void set(int index, long value)
+        public long get(int index)
         {
-            this.values[index] = value;
+            return values.get(index);
+        }
+    }
+
+    private static class DirectLongValues extends NumericDocValues
+    {
+        private final LongBuffer values;
+
+        public DirectLongValues(LongBuffer values)
+        {
+            this.values = values;
         }
 
         public long get(int index)
         {
-            return values[index];
+            return values.get(index);
         }
     }
-}
\ No newline at end of file
+}
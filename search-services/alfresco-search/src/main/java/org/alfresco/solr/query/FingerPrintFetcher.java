@@ -0,0 +1,280 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.solr.query;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.solr.component.FingerPrintComponent;
+import org.alfresco.util.TraceableThreadFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.solr.client.solrj.SolrRequest;
+import org.apache.solr.client.solrj.impl.HttpClientUtil;
+import org.apache.solr.client.solrj.impl.HttpSolrClient;
+import org.apache.solr.client.solrj.request.QueryRequest;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.CloseHook;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.update.UpdateShardHandlerConfig;
+import org.apache.solr.util.ConcurrentLRUCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fetches the fingerprint (MINHASH values) of a node from the shards of a distributed FINGERPRINT query.
+ * <p>
+ * One fetcher is owned by each core: it holds a pooled HTTP client, whose connections to the shards are kept alive
+ * between queries, and the executor running the requests to the shards in parallel. The fetched fingerprints are
+ * cached by node id for <code>alfresco.fingerprint.fetch.cacheTtl</code> milliseconds (0 disables the cache), as the
+ * same node is usually looked up several times while browsing its similar documents.
+ */
+final class FingerPrintFetcher
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(FingerPrintFetcher.class);
+
+    private static final int MAX_CONNECTIONS = 128;
+    private static final int MAX_CONNECTIONS_PER_HOST = 32;
+    private static final int MAX_THREADS = 64;
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private static final Map<SolrCore, FingerPrintFetcher> FETCHERS = new ConcurrentHashMap<>();
+
+    private final CloseableHttpClient httpClient;
+    private final Map<String, HttpSolrClient> solrClients = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+    private final FingerPrintCache cache;
+
+    /**
+     * The fingerprints fetched by node id, each one kept for the cache TTL. A TTL of 0 disables the cache.
+     */
+    static final class FingerPrintCache
+    {
+        private final ConcurrentLRUCache<String, CachedFingerPrint> cache;
+        private final long ttl;
+
+        FingerPrintCache(int size, long ttl)
+        {
+            this.cache = new ConcurrentLRUCache<>(size, Math.max(1, size * 9 / 10));
+            this.ttl = ttl;
+        }
+
+        /**
+         * @return the fingerprint of the node, or null if it is not cached or has expired at the given time.
+         */
+        Collection get(String nodeId, long now)
+        {
+            CachedFingerPrint cached = cache.get(nodeId);
+            return cached != null && cached.expiresAt > now ? cached.values : null;
+        }
+
+        void put(String nodeId, Collection values, long now)
+        {
+            if (ttl > 0)
+            {
+                cache.put(nodeId, new CachedFingerPrint(values, now + ttl));
+            }
+        }
+
+        void destroy()
+        {
+            cache.destroy();
+        }
+    }
+
+    private static final class CachedFingerPrint
+    {
+        private final Collection values;
+        private final long expiresAt;
+
+        private CachedFingerPrint(Collection values, long expiresAt)
+        {
+            this.values = values;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private FingerPrintFetcher(SolrCore core)
+    {
+        Properties p = core.getResourceLoader().getCoreProperties();
+        long cacheTtl = Long.parseLong(p.getProperty("alfresco.fingerprint.fetch.cacheTtl", "60000"));
+        int cacheSize = Math.max(1, Integer.parseInt(p.getProperty("alfresco.fingerprint.fetch.cacheSize", "1000")));
+        cache = new FingerPrintCache(cacheSize, cacheTtl);
+
+        ModifiableSolrParams clientParams = new ModifiableSolrParams();
+        clientParams.set(HttpClientUtil.PROP_SO_TIMEOUT, UpdateShardHandlerConfig.DEFAULT_DISTRIBUPDATESOTIMEOUT);
+        clientParams.set(HttpClientUtil.PROP_CONNECTION_TIMEOUT, UpdateShardHandlerConfig.DEFAULT_DISTRIBUPDATECONNTIMEOUT);
+        clientParams.set(HttpClientUtil.PROP_MAX_CONNECTIONS, MAX_CONNECTIONS);
+        clientParams.set(HttpClientUtil.PROP_MAX_CONNECTIONS_PER_HOST, MAX_CONNECTIONS_PER_HOST);
+        httpClient = HttpClientUtil.createClient(clientParams);
+
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setThreadDaemon(true);
+        threadFactory.setNamePrefix("FingerPrintFetch-" + core.getName());
+
+        // Requests beyond the maximum number of threads are run by the query thread, until the core is closed
+        executor = new ThreadPoolExecutor(0, MAX_THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), threadFactory, new CallerRunsWhileLivePolicy());
+    }
+
+    /**
+     * @return the fetcher of the core, created on first use and closed together with the core.
+     */
+    static FingerPrintFetcher of(SolrCore core)
+    {
+        return FETCHERS.computeIfAbsent(core, c -> {
+            FingerPrintFetcher fetcher = new FingerPrintFetcher(c);
+            c.addCloseHook(new CloseHook()
+            {
+                @Override
+                public void preClose(SolrCore core)
+                {
+                    FETCHERS.remove(core);
+                    fetcher.close();
+                }
+
+                @Override
+                public void postClose(SolrCore core)
+                {
+                }
+            });
+            return fetcher;
+        });
+    }
+
+    /**
+     * @return whether the fetcher of the core, if any, has an unexpired fingerprint of the node in its cache.
+     */
+    // test only
+    static boolean isCached(SolrCore core, String nodeId)
+    {
+        FingerPrintFetcher fetcher = FETCHERS.get(core);
+        return fetcher != null && fetcher.cache.get(nodeId, System.currentTimeMillis()) != null;
+    }
+
+    /**
+     * Fetches the fingerprint of the node from the given shards.
+     *
+     * @param urls the shard urls.
+     * @param nodeId the DBID or the UUID of the node.
+     * @return the MINHASH values of the node, or null if no shard has it.
+     */
+    Collection fetch(List<String> urls, String nodeId)
+    {
+        Collection cached = cache.get(nodeId, System.currentTimeMillis());
+        if (cached != null)
+        {
+            return cached;
+        }
+
+        List<Future<Collection>> futures = new ArrayList<>(urls.size());
+        Collection fingerPrint = null;
+        try
+        {
+            for (String url : urls)
+            {
+                futures.add(executor.submit(() -> fetch(url, nodeId)));
+            }
+
+            for (Future<Collection> future : futures)
+            {
+                Collection values = future.get();
+                if (values != null)
+                {
+                    fingerPrint = values;
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            LOGGER.error("Interrupted while fetching the fingerprint of node {}", nodeId, e);
+        }
+        catch (RejectedExecutionException e)
+        {
+            LOGGER.debug("The core is closing, the fingerprint of node {} won't be fetched", nodeId);
+        }
+        catch (Exception e)
+        {
+            LOGGER.error("Unable to fetch the fingerprint of node {}", nodeId, e);
+        }
+        finally
+        {
+            // Only does something on failure: don't keep querying the other shards
+            futures.forEach(future -> future.cancel(true));
+        }
+
+        if (fingerPrint != null)
+        {
+            cache.put(nodeId, fingerPrint, System.currentTimeMillis());
+        }
+        return fingerPrint;
+    }
+
+    private Collection fetch(String url, String nodeId) throws Exception
+    {
+        ModifiableSolrParams params = new ModifiableSolrParams();
+        params.add(FingerPrintComponent.COMPONENT_NAME, "true");
+        params.add("id", nodeId);
+        params.add("qt", "/fingerprint");
+
+        HttpSolrClient solrClient =
+                solrClients.computeIfAbsent(url, u -> new HttpSolrClient.Builder(u).withHttpClient(httpClient).build());
+        NamedList dataResponse = new QueryRequest(params, SolrRequest.METHOD.POST).process(solrClient).getResponse();
+        NamedList fingerprint = (NamedList) dataResponse.get("fingerprint");
+        return (Collection) fingerprint.get("MINHASH");
+    }
+
+    private void close()
+    {
+        executor.shutdownNow();
+        cache.destroy();
+        for (HttpSolrClient solrClient : solrClients.values())
+        {
+            try
+            {
+                solrClient.close();
+            }
+            catch (IOException e)
+            {
+                LOGGER.warn("Unable to close the fingerprint client of {}", solrClient.getBaseURL(), e);
+            }
+        }
+        HttpClientUtil.close(httpClient);
+    }
+}
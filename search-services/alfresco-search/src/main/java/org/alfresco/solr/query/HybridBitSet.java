@@ -26,55 +26,199 @@
 
 package org.alfresco.solr.query;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
 
-import org.apache.lucene.util.FixedBitSet;
+import com.carrotsearch.hppc.LongObjectHashMap;
 
 /**
-*  The HybridBitSet is a random access (doesn't support iteration) BitSet implementation that uses a FixedBitSet for the first N bits
-*  and a HashSet for higher bits. This is designed to provide a balance between the high performance of FixedBitSet and
-*  the efficient sparse behavior of a HashSet.
+*  The HybridBitSet is a random access (doesn't support iteration) set of long values, used for collecting ACL ids.
+*  Values are split into a high part, which selects a container, and the low 16 bits, which are stored in it
+*  (in the same way as a roaring bitmap). A container starts as a sorted array of values and is converted to a
+*  bitmap once it becomes dense, so the memory used follows the actual number and range of the values set rather
+*  than a fixed upper bound. Containers for non negative values below 2^32 are addressed directly by their high part,
+*  the rest are kept in a hash map.
 **/
 
 public class HybridBitSet
 {
-    private FixedBitSet bits;
-    private Set<Long> set = new HashSet<Long>();
-    private int maxBit;
+    /** Number of low bits stored in a container. */
+    private static final int CONTAINER_BITS = 16;
 
-    public HybridBitSet()
-    {
+    /** The high part of the largest value with a directly addressed container. */
+    private static final long MAX_DIRECT_KEY = (1L << 16) - 1;
 
-    }
+    private Container[] containers = new Container[0];
+    private LongObjectHashMap<Container> sparseContainers;
+    private long cardinality;
 
-    HybridBitSet(int maxBit)
+    public HybridBitSet()
     {
-        this.bits = new FixedBitSet(maxBit);
-        this.maxBit = maxBit;
+
     }
 
     public void set(long bit)
     {
-        if(bit < maxBit)
+        long key = bit >>> CONTAINER_BITS;
+        char low = (char) bit;
+        if (key <= MAX_DIRECT_KEY)
         {
-            bits.set((int)bit);
+            int index = (int) key;
+            if (index >= containers.length)
+            {
+                containers = Arrays.copyOf(containers, Math.max(index + 1, Math.min(containers.length * 2, (int) MAX_DIRECT_KEY + 1)));
+            }
+            Container container = containers[index];
+            if (container == null)
+            {
+                container = new ArrayContainer();
+            }
+            containers[index] = add(container, low);
         }
         else
         {
-            set.add((long)bit);
+            if (sparseContainers == null)
+            {
+                sparseContainers = new LongObjectHashMap<>();
+            }
+            Container container = sparseContainers.get(key);
+            if (container == null)
+            {
+                container = new ArrayContainer();
+            }
+            sparseContainers.put(key, add(container, low));
         }
     }
 
     public boolean get(long bit)
     {
-        if(bit < maxBit)
+        long key = bit >>> CONTAINER_BITS;
+        Container container;
+        if (key <= MAX_DIRECT_KEY)
         {
-            return bits.get((int)bit);
+            container = key < containers.length ? containers[(int) key] : null;
         }
         else
         {
-            return set.contains((long)bit);
+            container = sparseContainers == null ? null : sparseContainers.get(key);
+        }
+        return container != null && container.contains((char) bit);
+    }
+
+    /**
+     * @return the number of distinct values set.
+     */
+    public long cardinality()
+    {
+        return cardinality;
+    }
+
+    private Container add(Container container, char low)
+    {
+        int before = container.cardinality();
+        Container result = container.add(low);
+        cardinality += result.cardinality() - before;
+        return result;
+    }
+
+    private interface Container
+    {
+        /**
+         * Adds the value, returning the container that now holds it (which may be a new, denser one).
+         */
+        Container add(char low);
+
+        boolean contains(char low);
+
+        int cardinality();
+    }
+
+    /**
+     * Sorted array of values, used while the container holds few of them.
+     */
+    private static final class ArrayContainer implements Container
+    {
+        /** Above this size a bitmap (8 KB) is smaller than the array. */
+        private static final int MAX_SIZE = 4096;
+
+        private char[] values = new char[4];
+        private int size;
+
+        @Override
+        public Container add(char low)
+        {
+            int index = Arrays.binarySearch(values, 0, size, low);
+            if (index >= 0)
+            {
+                return this;
+            }
+            if (size == MAX_SIZE)
+            {
+                return new BitmapContainer(values, size).add(low);
+            }
+
+            int insertion = -index - 1;
+            if (size == values.length)
+            {
+                values = Arrays.copyOf(values, Math.min(values.length * 2, MAX_SIZE));
+            }
+            System.arraycopy(values, insertion, values, insertion + 1, size - insertion);
+            values[insertion] = low;
+            size++;
+            return this;
+        }
+
+        @Override
+        public boolean contains(char low)
+        {
+            return Arrays.binarySearch(values, 0, size, low) >= 0;
+        }
+
+        @Override
+        public int cardinality()
+        {
+            return size;
+        }
+    }
+
+    /**
+     * Bitmap over all 2^16 values of the container.
+     */
+    private static final class BitmapContainer implements Container
+    {
+        private final long[] words = new long[1 << (CONTAINER_BITS - 6)];
+        private int cardinality;
+
+        BitmapContainer(char[] values, int size)
+        {
+            for (int i = 0; i < size; i++)
+            {
+                add(values[i]);
+            }
+        }
+
+        @Override
+        public Container add(char low)
+        {
+            long mask = 1L << low;
+            int word = low >>> 6;
+            if ((words[word] & mask) == 0)
+            {
+                words[word] |= mask;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        public boolean contains(char low)
+        {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        public int cardinality()
+        {
+            return cardinality;
         }
     }
 }
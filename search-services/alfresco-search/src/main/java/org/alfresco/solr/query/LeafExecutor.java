@@ -0,0 +1,228 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.solr.query;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.util.TraceableThreadFactory;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.solr.core.CloseHook;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.search.SolrIndexSearcher;
+
+/**
+ * Evaluates per segment work of the authority filters, concurrently on a bounded executor owned by the core.
+ * <p>
+ * Disabled by default: <code>alfresco.authorityFilter.threads</code> sets the size of the executor. Searchers with a
+ * single segment or with less than <code>alfresco.authorityFilter.parallelMinDocs</code> documents are always
+ * evaluated sequentially on the query thread. When the executor queue is full the query thread does the work itself.
+ * Both properties are read once, when the core runs its first authority filter.
+ */
+final class LeafExecutor
+{
+    private static final int QUEUE_SIZE_PER_THREAD = 16;
+    private static final long KEEP_ALIVE_SECONDS = 120;
+
+    private static final Map<SolrCore, LeafExecutor> EXECUTORS = new ConcurrentHashMap<>();
+
+    private final SolrCore core;
+    private final int threads;
+    private final long minDocs;
+    private volatile ExecutorService executor;
+
+    /**
+     * Per segment function.
+     */
+    @FunctionalInterface
+    interface LeafFunction<T>
+    {
+        T apply(LeafReaderContext context) throws IOException;
+    }
+
+    private LeafExecutor(SolrCore core, Properties p)
+    {
+        this.core = core;
+        this.threads = Integer.parseInt(p.getProperty("alfresco.authorityFilter.threads", "0"));
+        this.minDocs = Long.parseLong(p.getProperty("alfresco.authorityFilter.parallelMinDocs", "1000000"));
+    }
+
+    /**
+     * Applies the function to each segment of the searcher.
+     *
+     * @return the results, in segment order
+     */
+    static <T> List<T> map(SolrIndexSearcher searcher, LeafFunction<T> function) throws IOException
+    {
+        List<LeafReaderContext> leaves = searcher.getTopReaderContext().leaves();
+        List<T> results = new ArrayList<>(leaves.size());
+
+        ExecutorService executor = of(searcher).executor(searcher);
+        if (executor == null)
+        {
+            for (LeafReaderContext context : leaves)
+            {
+                results.add(function.apply(context));
+            }
+            return results;
+        }
+
+        List<Future<T>> futures = new ArrayList<>(leaves.size());
+        try
+        {
+            for (LeafReaderContext context : leaves)
+            {
+                Future<T> future;
+                try
+                {
+                    future = executor.submit(() -> function.apply(context));
+                }
+                catch (RejectedExecutionException e)
+                {
+                    // The core is closing: don't wait for an executor that won't run the segment
+                    future = CompletableFuture.completedFuture(function.apply(context));
+                }
+                futures.add(future);
+            }
+
+            for (Future<T> future : futures)
+            {
+                results.add(future.get());
+            }
+            return results;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while evaluating the authority filter");
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+            {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+        finally
+        {
+            // Only does something on failure: don't leave useless work in the queue
+            futures.forEach(future -> future.cancel(false));
+        }
+    }
+
+    /**
+     * @return the leaf executor of the core, created on first use and shut down together with the core.
+     */
+    private static LeafExecutor of(SolrIndexSearcher searcher)
+    {
+        return EXECUTORS.computeIfAbsent(searcher.getCore(), c -> {
+            LeafExecutor leafExecutor = new LeafExecutor(c, searcher.getSchema().getResourceLoader().getCoreProperties());
+
+            //Shutdown the executor on core close
+            c.addCloseHook(new CloseHook()
+            {
+                @Override
+                public void preClose(SolrCore core)
+                {
+                    EXECUTORS.remove(core);
+                    leafExecutor.shutdown();
+                }
+
+                @Override
+                public void postClose(SolrCore core)
+                {
+                }
+            });
+            return leafExecutor;
+        });
+    }
+
+    /**
+     * @return the executor to use for the searcher, null if it must be evaluated sequentially
+     */
+    private ExecutorService executor(SolrIndexSearcher searcher)
+    {
+        boolean parallel = threads > 0
+                && searcher.getTopReaderContext().leaves().size() > 1
+                && searcher.maxDoc() >= minDocs;
+        if (!parallel)
+        {
+            return null;
+        }
+
+        if (executor == null)
+        {
+            synchronized (this)
+            {
+                if (executor == null)
+                {
+                    TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+                    threadFactory.setThreadDaemon(true);
+                    threadFactory.setNamePrefix("AuthorityFilter-" + core.getName());
+
+                    ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS,
+                            TimeUnit.SECONDS, new ArrayBlockingQueue<>(threads * QUEUE_SIZE_PER_THREAD), threadFactory,
+                            new CallerRunsWhileLivePolicy());
+                    threadPoolExecutor.allowCoreThreadTimeOut(true);
+                    executor = threadPoolExecutor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private synchronized void shutdown()
+    {
+        if (executor != null)
+        {
+            executor.shutdown();
+        }
+    }
+}
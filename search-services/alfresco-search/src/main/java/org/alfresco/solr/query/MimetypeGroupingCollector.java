@@ -53,6 +53,8 @@ public class MimetypeGroupingCollector extends DelegatingCollector
     String schemaFieldName;
     SchemaField schemaField;
     SortedDocValues sortedDocValues;
+    /** Number of hits of each ordinal of the current segment */
+    int[] ordinalCounts;
     /**
      * @param rb
      * @param mappings 
@@ -72,11 +74,16 @@ public class MimetypeGroupingCollector extends DelegatingCollector
     public void doSetNextReader(LeafReaderContext context) throws IOException
     {
         super.doSetNextReader(context);
+        countSegment();
         if(schemaField != null)
         {
             try
             {
                 sortedDocValues = context.reader().getSortedDocValues(schemaFieldName);
+                if(sortedDocValues != null)
+                {
+                    ordinalCounts = new int[sortedDocValues.getValueCount()];
+                }
             }
             catch (IOException e)
             {
@@ -93,6 +100,28 @@ public class MimetypeGroupingCollector extends DelegatingCollector
             int ordinal = sortedDocValues.getOrd(doc);
             if(ordinal > -1)
             {
+                ordinalCounts[ordinal]++;
+            }
+        }
+
+
+        leafDelegate.collect(doc);
+    }
+
+    /**
+     * Adds the hits of the current segment to the counters of the groups, resolving each ordinal once.
+     */
+    private void countSegment()
+    {
+        if(sortedDocValues != null)
+        {
+            for(int ordinal = 0; ordinal < ordinalCounts.length; ordinal++)
+            {
+                if(ordinalCounts[ordinal] == 0)
+                {
+                    continue;
+                }
+
                 String value = (String)schemaField.getType().toObject(schemaField, sortedDocValues.lookupOrd(ordinal));
                 String group = doGroup ? mappings.get(value) : value;
                 if(group == null)
@@ -106,16 +135,16 @@ public class MimetypeGroupingCollector extends DelegatingCollector
                     counter = Counter.newCounter();
                     counters.put(group, counter);
                 }
-                counter.addAndGet(1);
+                counter.addAndGet(ordinalCounts[ordinal]);
             }
         }
-
-
-        leafDelegate.collect(doc);
+        sortedDocValues = null;
+        ordinalCounts = null;
     }
 
     public void finish() throws IOException 
     {
+        countSegment();
         NamedList<Object> analytics = new NamedList<>();
         rb.rsp.add("analytics", analytics);
         NamedList<Object> fieldCounts = new NamedList<>(); 
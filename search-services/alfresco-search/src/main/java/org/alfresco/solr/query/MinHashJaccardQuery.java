@@ -0,0 +1,230 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.solr.query;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+import com.carrotsearch.hppc.LongHashSet;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TwoPhaseIterator;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BytesRef;
+
+/**
+ * Rescores the candidates of a banded FINGERPRINT query with an estimate of their Jaccard similarity to the
+ * searched document: the fraction of MINHASH values they share, read from the MINHASH doc values.
+ * Candidates below the minimum similarity are filtered out.
+ * Segments without MINHASH doc values (disabled by default, see schema.xml) keep all their candidates, with a
+ * constant score.
+ */
+public class MinHashJaccardQuery extends Query
+{
+    static final String FIELD_MINHASH = "MINHASH";
+
+    private final Query candidates;
+    private final List<BytesRef> minHashes;
+    private final float minSimilarity;
+
+    public MinHashJaccardQuery(Query candidates, Collection<?> minHashes, float minSimilarity)
+    {
+        this.candidates = Objects.requireNonNull(candidates);
+        this.minHashes = new ArrayList<>(minHashes.size());
+        for (Object minHash : minHashes)
+        {
+            this.minHashes.add(new BytesRef(minHash.toString()));
+        }
+        this.minSimilarity = minSimilarity;
+    }
+
+    private MinHashJaccardQuery(Query candidates, List<BytesRef> minHashes, float minSimilarity)
+    {
+        this.candidates = candidates;
+        this.minHashes = minHashes;
+        this.minSimilarity = minSimilarity;
+    }
+
+    @Override
+    public Query rewrite(IndexReader reader) throws IOException
+    {
+        Query rewritten = candidates.rewrite(reader);
+        return rewritten == candidates ? this : new MinHashJaccardQuery(rewritten, minHashes, minSimilarity);
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, boolean needsScores) throws IOException
+    {
+        Weight candidatesWeight = searcher.createWeight(candidates, false);
+        return new ConstantScoreWeight(this)
+        {
+            @Override
+            public Scorer scorer(LeafReaderContext context) throws IOException
+            {
+                Scorer candidatesScorer = candidatesWeight.scorer(context);
+                if (candidatesScorer == null)
+                {
+                    return null;
+                }
+
+                SortedSetDocValues values = context.reader().getSortedSetDocValues(FIELD_MINHASH);
+                if (values == null)
+                {
+                    return new ConstantScoreScorer(this, score(), candidatesScorer.iterator());
+                }
+
+                LongHashSet ords = new LongHashSet(minHashes.size());
+                for (BytesRef minHash : minHashes)
+                {
+                    long ord = values.lookupTerm(minHash);
+                    if (ord >= 0)
+                    {
+                        ords.add(ord);
+                    }
+                }
+                return new JaccardScorer(this, candidatesScorer.iterator(), values, ords);
+            }
+        };
+    }
+
+    /**
+     * Scores each candidate with the number of MINHASH values it shares with the searched document, over the
+     * number of MINHASH values of the larger of the two.
+     */
+    private final class JaccardScorer extends Scorer
+    {
+        private final DocIdSetIterator candidates;
+        private final SortedSetDocValues values;
+        private final LongHashSet ords;
+        private final TwoPhaseIterator twoPhaseIterator;
+        private float similarity;
+
+        private JaccardScorer(Weight weight, DocIdSetIterator candidates, SortedSetDocValues values, LongHashSet ords)
+        {
+            super(weight);
+            this.candidates = candidates;
+            this.values = values;
+            this.ords = ords;
+            this.twoPhaseIterator = new TwoPhaseIterator(candidates)
+            {
+                @Override
+                public boolean matches()
+                {
+                    similarity = similarity(candidates.docID());
+                    return similarity >= minSimilarity;
+                }
+
+                @Override
+                public float matchCost()
+                {
+                    return minHashes.size();
+                }
+            };
+        }
+
+        private float similarity(int doc)
+        {
+            values.setDocument(doc);
+            int shared = 0;
+            int count = 0;
+            for (long ord = values.nextOrd(); ord != SortedSetDocValues.NO_MORE_ORDS; ord = values.nextOrd())
+            {
+                count++;
+                if (ords.contains(ord))
+                {
+                    shared++;
+                }
+            }
+            int size = Math.max(count, minHashes.size());
+            return size == 0 ? 0 : (float) shared / size;
+        }
+
+        @Override
+        public int docID()
+        {
+            return candidates.docID();
+        }
+
+        @Override
+        public float score()
+        {
+            return similarity;
+        }
+
+        @Override
+        public int freq()
+        {
+            return 1;
+        }
+
+        @Override
+        public DocIdSetIterator iterator()
+        {
+            return TwoPhaseIterator.asDocIdSetIterator(twoPhaseIterator);
+        }
+
+        @Override
+        public TwoPhaseIterator twoPhaseIterator()
+        {
+            return twoPhaseIterator;
+        }
+    }
+
+    @Override
+    public String toString(String field)
+    {
+        return "JACCARD(" + candidates.toString(field) + ", " + minSimilarity + ")";
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (!sameClassAs(o)) return false;
+
+        MinHashJaccardQuery that = (MinHashJaccardQuery) o;
+        return minSimilarity == that.minSimilarity
+                && candidates.equals(that.candidates)
+                && minHashes.equals(that.minHashes);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(classHash(), candidates, minHashes, minSimilarity);
+    }
+}
@@ -56,7 +56,7 @@ import org.alfresco.solr.AlfrescoSolrDataModel.SpecializedFieldType;
 import org.alfresco.solr.AlfrescoSolrDataModel.FieldInstance;
 import org.alfresco.solr.AlfrescoSolrDataModel.FieldUse;
 import org.alfresco.solr.AlfrescoSolrDataModel.IndexedField;
-import org.alfresco.solr.component.FingerPrintComponent;
+import org.alfresco.solr.utils.MinHashBands;
 import org.alfresco.solr.utils.ThrowingFunction;
 import org.alfresco.util.CachingDateFormat;
 import org.alfresco.util.Pair;
@@ -64,7 +64,6 @@ import org.alfresco.util.SearchLanguageConversion;
 import org.antlr.misc.OrderedHashSet;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.analysis.commongrams.CommonGramsFilter;
@@ -105,14 +104,8 @@ import org.apache.lucene.search.spans.SpanTermQuery;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.Version;
 import org.apache.solr.analysis.TokenizerChain;
-import org.apache.solr.client.solrj.SolrRequest;
-import org.apache.solr.client.solrj.impl.HttpClientUtil;
-import org.apache.solr.client.solrj.impl.HttpSolrClient;
-import org.apache.solr.client.solrj.request.QueryRequest;
-import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.params.ModifiableSolrParams;
 import org.apache.solr.common.params.SolrParams;
-import org.apache.solr.common.util.NamedList;
 import org.apache.solr.core.SolrCore;
 import org.apache.solr.handler.component.HttpShardHandlerFactory;
 import org.apache.solr.handler.component.ShardHandlerFactory;
@@ -122,7 +115,6 @@ import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.schema.NumberType;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.search.SolrIndexSearcher;
-import org.apache.solr.update.UpdateShardHandlerConfig;
 import org.jaxen.saxpath.SAXPathException;
 import org.jaxen.saxpath.base.XPathReader;
 import org.json.JSONObject;
@@ -142,12 +134,10 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Properties;
 import java.util.Set;
 import java.util.TimeZone;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -187,9 +177,10 @@ public class Solr4QueryParser extends QueryParser implements QueryConstants
 
     IndexSchema schema;
 
-    @SuppressWarnings("unused")
     private static Log logger = LogFactory.getLog(Solr4QueryParser.class);
 
+    private static final AtomicBoolean bandQueryRescoringWarned = new AtomicBoolean();
+
     protected NamespacePrefixResolver namespacePrefixResolver;
 
     protected DictionaryService dictionaryService;
@@ -805,78 +796,7 @@ public class Solr4QueryParser extends QueryParser implements QueryConstants
     private Collection fetchFingerPrint(String shards, String nodeId) {
         shards = shards.replace(",", "|");
         List<String> urls = ((HttpShardHandlerFactory)shardHandlerFactory).buildURLList(shards);
-        ExecutorService executorService =  null;
-        List<Future> futures = new ArrayList();
-        Collection fingerPrint = null;
-        try {
-            executorService = Executors.newCachedThreadPool();
-            for (String url : urls) {
-                futures.add(executorService.submit(new FingerPrintFetchTask(url, nodeId)));
-            }
-
-            for (Future<Collection> future : futures) {
-                Collection col = future.get();
-                if(col != null) {
-                    fingerPrint = col;
-                }
-            }
-
-        }catch(Exception e) {
-            logger.error(e);
-        } finally {
-            if (executorService != null)
-            {
-                executorService.shutdown();
-            }
-        }
-        return fingerPrint;
-    }
-
-
-
-
-    private class FingerPrintFetchTask implements Callable<Collection> {
-        private String url;
-        private String id;
-
-        public FingerPrintFetchTask(String url, String id) {
-            this.url = url;
-            this.id = id;
-        }
-
-        public Collection call() throws Exception {
-            HttpSolrClient solrClient = null;
-            CloseableHttpClient closeableHttpClient = null;
-            try {
-                ModifiableSolrParams params = new ModifiableSolrParams();
-                params.add(FingerPrintComponent.COMPONENT_NAME, "true");
-                params.add("id", id);
-                params.add("qt","/fingerprint");
-                closeableHttpClient = HttpClientUtil.createClient(getClientParams());
-                solrClient = new HttpSolrClient.Builder(url).withHttpClient(closeableHttpClient).build();;
-                QueryRequest request = new QueryRequest(params, SolrRequest.METHOD.POST);
-                QueryResponse response = request.process(solrClient);
-                NamedList dataResponse = response.getResponse();
-                NamedList fingerprint = (NamedList) dataResponse.get("fingerprint");
-                return (Collection)fingerprint.get("MINHASH");
-            } finally {
-                if (closeableHttpClient != null)
-                {
-                    closeableHttpClient.close();
-                }
-                if (solrClient != null)
-                {
-                    solrClient.close();
-                }
-            }
-        }
-
-        protected ModifiableSolrParams getClientParams() {
-            ModifiableSolrParams clientParams = new ModifiableSolrParams();
-            clientParams.set(HttpClientUtil.PROP_SO_TIMEOUT, UpdateShardHandlerConfig.DEFAULT_DISTRIBUPDATESOTIMEOUT);
-            clientParams.set(HttpClientUtil.PROP_CONNECTION_TIMEOUT, UpdateShardHandlerConfig.DEFAULT_DISTRIBUPDATECONNTIMEOUT);
-            return clientParams;
-        }
+        return FingerPrintFetcher.of(request.getCore()).fetch(urls, nodeId);
     }
 
     /**
@@ -898,6 +818,11 @@ public class Solr4QueryParser extends QueryParser implements QueryConstants
             return createIsNodeQuery("T");
         }
 
+        if (values != null && bandQueryEnabled() && canRescoreBandQuery())
+        {
+            return createBandedFingerPrintQuery(parts, values);
+        }
+
         if (values != null)
         {
             int bandSize = 1;
@@ -972,6 +897,80 @@ public class Solr4QueryParser extends QueryParser implements QueryConstants
         }
     }
 
+    private boolean bandQueryEnabled()
+    {
+        return fingerPrintBandSize() > 0
+                && Boolean.parseBoolean(coreProperties().getProperty("alfresco.fingerprint.bandQuery", "false"));
+    }
+
+    /**
+     * Rescoring the band query candidates reads the MINHASH doc values: without them the requested similarity would be
+     * silently ignored, so the term based query is used instead.
+     */
+    private boolean canRescoreBandQuery()
+    {
+        if (!Boolean.parseBoolean(coreProperties().getProperty("alfresco.fingerprint.bandQuery.rescore", "true")))
+        {
+            return true;
+        }
+
+        SchemaField minHash = schema.getFieldOrNull(MinHashJaccardQuery.FIELD_MINHASH);
+        if (minHash != null && minHash.hasDocValues())
+        {
+            return true;
+        }
+
+        if (bandQueryRescoringWarned.compareAndSet(false, true))
+        {
+            logger.warn("alfresco.fingerprint.bandQuery is enabled with rescoring but MINHASH has no doc values "
+                    + "(see alfresco.fingerprint.docValues): FINGERPRINT queries fall back to the term based query.");
+        }
+        return false;
+    }
+
+    private int fingerPrintBandSize()
+    {
+        return Integer.parseInt(coreProperties().getProperty("alfresco.fingerprint.bandSize", "0"));
+    }
+
+    private Properties coreProperties()
+    {
+        return request != null && request.getCore() != null
+                ? request.getCore().getResourceLoader().getCoreProperties()
+                : new Properties();
+    }
+
+    /**
+     * Builds a FINGERPRINT query with a single term lookup for each band of the searched fingerprint, on the band
+     * signatures computed at index time (MINHASH_BAND).
+     * Unless disabled, the candidates are rescored (and filtered by the requested similarity, if any) with the
+     * fraction of MINHASH values they share with the searched document.
+     * The bands are sized at index time (alfresco.fingerprint.bandSize): the expected true positive rate (the third
+     * part of FINGERPRINT:id_similarity_truePositive), used to size the bands of the term based query, is ignored.
+     */
+    private Query createBandedFingerPrintQuery(String[] parts, Collection values)
+    {
+        float fraction = 0;
+        if (parts.length > 1)
+        {
+            fraction = Float.parseFloat(parts[1]);
+            if (fraction > 1)
+            {
+                fraction /= 100;
+            }
+        }
+
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (String band : MinHashBands.bands(new ArrayList<Object>(values), fingerPrintBandSize()))
+        {
+            builder.add(new ConstantScoreQuery(new TermQuery(new Term(MinHashBands.FIELD_MINHASH_BAND, band))), Occur.SHOULD);
+        }
+        Query candidates = builder.setDisableCoord(true).build();
+
+        boolean rescore = Boolean.parseBoolean(coreProperties().getProperty("alfresco.fingerprint.bandQuery.rescore", "true"));
+        return rescore ? new MinHashJaccardQuery(candidates, values, fraction) : candidates;
+    }
+
     private int computeBandSize(int numHash, double sim, double expectedTruePositive)
     {
         for (int bands = 1; bands <= numHash; bands++)
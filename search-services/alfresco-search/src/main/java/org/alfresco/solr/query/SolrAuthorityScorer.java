@@ -27,11 +27,15 @@
 package org.alfresco.solr.query;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Properties;
 
+import org.alfresco.service.cmr.security.AuthorityType;
 import org.alfresco.service.cmr.security.PermissionService;
 import org.alfresco.solr.cache.CacheConstants;
+import org.alfresco.solr.cache.SegmentedBitDocSet;
 import org.alfresco.solr.data.GlobalReaders;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.MatchAllDocsQuery;
@@ -88,7 +92,7 @@ public class SolrAuthorityScorer extends AbstractSolrCachingScorer
             // Get the set of docs owned by the authority (which they can therefore read).
             DocSet authorityOwnedDocs = searcher.getDocSet(new SolrOwnerQuery(authority));
             // Final set of docs that the authority can read.
-            DocSet toCache = readableDocSet.union(authorityOwnedDocs);
+            DocSet toCache = SegmentedBitDocSet.of(readableDocSet.union(authorityOwnedDocs), searcher);
             searcher.cacheInsert(CacheConstants.ALFRESCO_AUTHORITY_CACHE, key, toCache);
             return new SolrAuthorityScorer(weight, toCache, context, searcher);
         }
@@ -101,9 +105,34 @@ public class SolrAuthorityScorer extends AbstractSolrCachingScorer
             // Docs where the authority is an owner and where owners have read rights.
             DocSet docsAuthorityOwnsAndCanRead = ownerReadableDocSet.intersection(authorityOwnedDocs);
             // Final set of docs that the authority can read.
-            DocSet toCache = readableDocSet.union(docsAuthorityOwnsAndCanRead);
+            DocSet toCache = SegmentedBitDocSet.of(readableDocSet.union(docsAuthorityOwnsAndCanRead), searcher);
             searcher.cacheInsert(CacheConstants.ALFRESCO_AUTHORITY_CACHE, key, toCache);
             return new SolrAuthorityScorer(weight, toCache, context, searcher);
         }
     }
+
+    /**
+     * Finds the docs that the authority can read one segment at a time, in the same way as
+     * {@link #createAuthorityScorer} does for the whole index. This lets the authority cache be warmed one segment
+     * at a time.
+     *
+     * @return the readable docs of each segment, or null if the authority can read everything
+     */
+    public static ReadableLeafDocs getReadableLeafDocs(SolrIndexSearcher searcher, String authority) throws IOException
+    {
+        Properties p = searcher.getSchema().getResourceLoader().getCoreProperties();
+        boolean doPermissionChecks = Boolean.parseBoolean(p.getProperty("alfresco.doPermissionChecks", "true"));
+
+        final HashSet<String> globalReaders = GlobalReaders.getReaders();
+        if (globalReaders.contains(authority) || (doPermissionChecks == false))
+        {
+            return null;
+        }
+
+        // As SolrOwnerQuery, only a user owns documents
+        String[] auths = {authority};
+        Collection<String> owners = (AuthorityType.getAuthorityType(authority) == AuthorityType.USER)
+                    ? Collections.singleton(authority) : Collections.emptySet();
+        return new ReadableLeafDocs(searcher, auths, owners);
+    }
 }
@@ -27,9 +27,7 @@
 package org.alfresco.solr.query;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Properties;
 
 import org.alfresco.repo.search.adaptor.QueryConstants;
@@ -42,14 +40,14 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.BooleanQuery.Builder;
-import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
-import org.apache.lucene.search.LeafCollector;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.FixedBitSet;
 import org.apache.solr.search.DelegatingCollector;
 import org.apache.solr.search.PostFilter;
@@ -176,13 +174,14 @@ public class SolrAuthoritySetQuery extends AbstractAuthoritySetQuery implements
 
             if (globalReaders.contains(PermissionService.OWNER_AUTHORITY))
             {
-                return new AccessControlCollector(aclSet, ownerFilter);
+                return new AccessControlCollector(aclSet, ownerFilter, DocValuesCache.isOffHeap(solrIndexSearcher));
             }
             else
             {
                 String[] ownerAuth = {PermissionService.OWNER_AUTHORITY};
                 HybridBitSet ownerAclSet = getACLSet(ownerAuth, QueryConstants.FIELD_READER, solrIndexSearcher);
-                return new AccessControlCollectorWithoutOwnerRead(aclSet, ownerAclSet, ownerFilter);
+                return new AccessControlCollectorWithoutOwnerRead(aclSet, ownerAclSet, ownerFilter,
+                        DocValuesCache.isOffHeap(solrIndexSearcher));
             }
         }
         catch(Exception e)
@@ -240,50 +239,30 @@ public class SolrAuthoritySetQuery extends AbstractAuthoritySetQuery implements
             }
         }
 
-        BitsFilterCollector collector = new BitsFilterCollector(searcher.getTopReaderContext().leaves().size());
-        searcher.search(builder.build(), collector);
-        return collector.getBitsFilter();
+        Weight weight = searcher.createNormalizedWeight(builder.build(), false);
+        return new BitsFilter(LeafExecutor.map(searcher, context -> getOwnerBits(weight, context)));
     }
 
-    class BitsFilterCollector implements Collector, LeafCollector
+    /**
+     * @return the live documents of the segment matching the owner query
+     */
+    private static FixedBitSet getOwnerBits(Weight weight, LeafReaderContext context) throws IOException
     {
-        private List<FixedBitSet> sets;
-        private FixedBitSet set;
-
-        public BitsFilterCollector(int leafCount)
+        FixedBitSet bits = new FixedBitSet(context.reader().maxDoc());
+        Scorer scorer = weight.scorer(context);
+        if (scorer != null)
         {
-            this.sets = new ArrayList<FixedBitSet>(leafCount);
-        }
-
-        public BitsFilter getBitsFilter() {
-            return new BitsFilter(sets);
-        }
-
-        public boolean acceptsDocsOutOfOrder() {
-            return false;
-        }
-
-        public void setScorer(Scorer scorer) {
-
-        }
-
-        public void collect(int doc) {
-            set.set(doc);
+            Bits liveDocs = context.reader().getLiveDocs();
+            DocIdSetIterator iterator = scorer.iterator();
+            for (int doc = iterator.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iterator.nextDoc())
+            {
+                if (liveDocs == null || liveDocs.get(doc))
+                {
+                    bits.set(doc);
+                }
+            }
         }
-
-		@Override
-		public LeafCollector getLeafCollector(LeafReaderContext context)
-				throws IOException {
-			   set = new FixedBitSet(context.reader().maxDoc());
-	            sets.add(set);
-			return this;
-		}
-
-		@Override
-		public boolean needsScores() {
-			// TODO Auto-generated method stub
-			return false;
-		}
+        return bits;
     }
 
 
@@ -297,11 +276,13 @@ public class SolrAuthoritySetQuery extends AbstractAuthoritySetQuery implements
         private NumericDocValues fieldValues;
         private BitsFilter ownerFilter;
         private FixedBitSet ownerDocs;
+        private final boolean offHeap;
 
-        public AccessControlCollector(HybridBitSet aclIds, BitsFilter ownerFilter)
+        public AccessControlCollector(HybridBitSet aclIds, BitsFilter ownerFilter, boolean offHeap)
         {
             this.aclIds=aclIds;
             this.ownerFilter = ownerFilter;
+            this.offHeap = offHeap;
         }
 
         public boolean acceptsDocsOutOfOrder()
@@ -312,7 +293,7 @@ public class SolrAuthoritySetQuery extends AbstractAuthoritySetQuery implements
         public void doSetNextReader(LeafReaderContext context) throws IOException
         {
         	super.doSetNextReader(context);
-            this.fieldValues = DocValuesCache.getNumericDocValues(QueryConstants.FIELD_ACLID, context.reader());
+            this.fieldValues = DocValuesCache.getNumericDocValues(QueryConstants.FIELD_ACLID, context.reader(), offHeap);
             this.ownerDocs = ownerFilter.getBitSets().get(context.ord);
         }
 
@@ -340,11 +321,14 @@ public class SolrAuthoritySetQuery extends AbstractAuthoritySetQuery implements
         private NumericDocValues fieldValues;
         private BitsFilter ownerFilter;
         private FixedBitSet ownerDocs;
-        public AccessControlCollectorWithoutOwnerRead(HybridBitSet aclIds, HybridBitSet ownerAclIds, BitsFilter ownerFilter)
+        private final boolean offHeap;
+        public AccessControlCollectorWithoutOwnerRead(HybridBitSet aclIds, HybridBitSet ownerAclIds, BitsFilter ownerFilter,
+                boolean offHeap)
         {
             this.aclIds=aclIds;
             this.ownerAclIds = ownerAclIds;
             this.ownerFilter = ownerFilter;
+            this.offHeap = offHeap;
         }
 
         public boolean acceptsDocsOutOfOrder()
@@ -355,7 +339,7 @@ public class SolrAuthoritySetQuery extends AbstractAuthoritySetQuery implements
         public void doSetNextReader(LeafReaderContext context) throws IOException
         {
         	super.doSetNextReader(context);
-            this.fieldValues = DocValuesCache.getNumericDocValues(QueryConstants.FIELD_ACLID, context.reader());
+            this.fieldValues = DocValuesCache.getNumericDocValues(QueryConstants.FIELD_ACLID, context.reader(), offHeap);
             this.ownerDocs = ownerFilter.getBitSets().get(context.ord);
         }
 
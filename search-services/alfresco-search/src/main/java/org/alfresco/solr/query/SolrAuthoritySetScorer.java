@@ -27,11 +27,16 @@
 package org.alfresco.solr.query;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Properties;
+import java.util.stream.Collectors;
 
+import org.alfresco.service.cmr.security.AuthorityType;
 import org.alfresco.service.cmr.security.PermissionService;
 import org.alfresco.solr.cache.CacheConstants;
+import org.alfresco.solr.cache.SegmentedBitDocSet;
 import org.alfresco.solr.data.GlobalReaders;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.search.MatchAllDocsQuery;
@@ -110,7 +115,7 @@ public class SolrAuthoritySetScorer extends AbstractSolrCachingScorer
             wrapped.setCache(false);
             DocSet authorityOwnedDocs = searcher.getDocSet(wrapped);
             // Final set of docs that the authorities can read.
-            DocSet toCache = readableDocSet.union(authorityOwnedDocs);
+            DocSet toCache = SegmentedBitDocSet.of(readableDocSet.union(authorityOwnedDocs), searcher);
             searcher.cacheInsert(CacheConstants.ALFRESCO_AUTHORITY_CACHE, key, toCache);
             return new SolrAuthoritySetScorer(weight, toCache, context, searcher);
         }
@@ -127,10 +132,36 @@ public class SolrAuthoritySetScorer extends AbstractSolrCachingScorer
             // Docs where the authority is an owner and where owners have read rights.
             DocSet docsAuthorityOwnsAndCanRead = ownerReadableDocSet.intersection(authorityOwnedDocs);
             // Final set of docs that the authorities can read.
-            DocSet toCache = readableDocSet.union(docsAuthorityOwnsAndCanRead);
+            DocSet toCache = SegmentedBitDocSet.of(readableDocSet.union(docsAuthorityOwnsAndCanRead), searcher);
             searcher.cacheInsert(CacheConstants.ALFRESCO_AUTHORITY_CACHE, key, toCache);
             return new SolrAuthoritySetScorer(weight, toCache, context, searcher);
         }
     }
+
+    /**
+     * Finds the docs that the authorities can read one segment at a time, in the same way as
+     * {@link #createAuthoritySetScorer} does for the whole index. This lets the authority cache be warmed one segment
+     * at a time.
+     *
+     * @return the readable docs of each segment, or null if the authorities can read everything
+     */
+    public static ReadableLeafDocs getReadableLeafDocs(SolrIndexSearcher searcher, String authorities) throws IOException
+    {
+        Properties p = searcher.getSchema().getResourceLoader().getCoreProperties();
+        boolean doPermissionChecks = Boolean.parseBoolean(p.getProperty("alfresco.doPermissionChecks", "true"));
+
+        String[] auths = splitAuthorities(authorities);
+        final HashSet<String> globalReaders = GlobalReaders.getReaders();
+        if (!doPermissionChecks || Arrays.stream(auths).anyMatch(globalReaders::contains))
+        {
+            return null;
+        }
+
+        // As SolrOwnerSetQuery, only the users own documents
+        List<String> users = Arrays.stream(auths)
+                .filter(auth -> AuthorityType.getAuthorityType(auth) == AuthorityType.USER)
+                .collect(Collectors.toList());
+        return new ReadableLeafDocs(searcher, auths, users);
+    }
 }
 
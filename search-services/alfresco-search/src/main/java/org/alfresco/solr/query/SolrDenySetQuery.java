@@ -103,7 +103,7 @@ public class SolrDenySetQuery extends AbstractAuthoritySetQuery implements PostF
             }
             else
             {
-                return new AccessControlCollector(denySet);
+                return new AccessControlCollector(denySet, DocValuesCache.isOffHeap((SolrIndexSearcher) searcher));
             }
         }
         catch(Exception e)
@@ -125,10 +125,12 @@ public class SolrDenySetQuery extends AbstractAuthoritySetQuery implements PostF
     {
         private HybridBitSet aclIds;
         private NumericDocValues fieldValues;
+        private final boolean offHeap;
 
-        public AccessControlCollector(HybridBitSet aclIds)
+        public AccessControlCollector(HybridBitSet aclIds, boolean offHeap)
         {
             this.aclIds=aclIds;
+            this.offHeap = offHeap;
         }
 
         public boolean acceptsDocsOutOfOrder() 
@@ -139,7 +141,7 @@ public class SolrDenySetQuery extends AbstractAuthoritySetQuery implements PostF
         public void doSetNextReader(LeafReaderContext context) throws IOException 
         {
         	super.doSetNextReader(context);
-            this.fieldValues = DocValuesCache.getNumericDocValues(QueryConstants.FIELD_ACLID, context.reader());
+            this.fieldValues = DocValuesCache.getNumericDocValues(QueryConstants.FIELD_ACLID, context.reader(), offHeap);
         }
 
         public void collect(int doc) throws IOException{
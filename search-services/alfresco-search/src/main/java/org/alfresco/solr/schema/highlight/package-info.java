@@ -45,6 +45,13 @@
  *     </li>
  * </ul>
  *
+ * The content stored fields (which can be very large) can be the exception: when
+ * alfresco.content.highlighting.termVectors is enabled, their field type (localePrefixedFieldWithOffsets) indexes the
+ * value with term vectors, positions and offsets, so the highlighter reads the tokens from the term vectors and the
+ * analyzer is used only once, at index time. Since the same
+ * {@link org.alfresco.solr.schema.highlight.LanguagePrefixedTokenStream} produces those tokens, their offsets
+ * already include the locale marker length and they are aligned with the stored value.
+ *
  * The field type purpose is actually to define a custom analyzer which is able to detect the proper localised analyzer
  * at runtime, depending on the locale marker prefix put on the stored content.
  * For example,
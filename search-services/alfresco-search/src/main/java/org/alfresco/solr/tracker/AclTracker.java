@@ -27,18 +27,25 @@
 package org.alfresco.solr.tracker;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
@@ -74,6 +81,7 @@ public class AclTracker extends ActivatableTracker
     private static final int DEFAULT_CHANGE_SET_ACLS_BATCH_SIZE = 2000;
     private static final int DEFAULT_ACL_BATCH_SIZE = 100;
     private static final int DEFAULT_ACL_TRACKER_MAX_PARALLELISM = 32;
+    private static final int DEFAULT_PIPELINE_QUEUE_DEPTH = 2;
     private static final long DEFAULT_ACL_TRACKER_TIMESTEP = TIME_STEP_1_HR_IN_MS;
 
     protected static final long INITIAL_MAX_ACL_CHANGE_SET_ID = 2000L;
@@ -88,6 +96,12 @@ public class AclTracker extends ActivatableTracker
 
     private int changeSetAclsBatchSize;
     private int aclBatchSize;
+
+    /**
+     * Maximum number of ACL Change Set batches in flight: the readers of these batches are fetched from the Repository
+     * in parallel, while the oldest one is being indexed.
+     */
+    private int pipelineQueueDepth;
     private long timeStep;
     private int maxNumberOfAclChangeSets;
 
@@ -144,6 +158,9 @@ public class AclTracker extends ActivatableTracker
                 String.valueOf(DEFAULT_ACL_TRACKER_MAX_PARALLELISM)));
         forkJoinPool = new ForkJoinPool(aclTrackerParallelism);
 
+        pipelineQueueDepth = Math.max(1, Integer.parseInt(p.getProperty("alfresco.acl.tracker.pipeline.queueDepth",
+                String.valueOf(DEFAULT_PIPELINE_QUEUE_DEPTH))));
+
         timeStep = Long.parseLong(p.getProperty("alfresco.acl.tracker.timestep",
                 String.valueOf(DEFAULT_ACL_TRACKER_TIMESTEP)));
 
@@ -693,6 +710,9 @@ public class AclTracker extends ActivatableTracker
      * 
      * The indexing is performed in batches of ACL Change Sets and the Tracker Status
      * is updated in batched of ACLs.
+     * The batches are pipelined: the ACL readers of up to alfresco.acl.tracker.pipeline.queueDepth
+     * batches are fetched from Repository in parallel, while the batches are indexed one by one.
+     * The fetches still in flight are cancelled (and interrupted) when a batch fails or the tracker is shut down.
      * 
      * Tracker Status contains the Commit Time from the latest ACL Change Set indexed,
      * so new operations can be retrieved from Repository starting with that time.
@@ -754,23 +774,48 @@ public class AclTracker extends ActivatableTracker
                 }
 
                 final AtomicInteger counter = new AtomicInteger();
-                Collection<List<AclChangeSet>> changeSetBatches = aclChangeSets.getAclChangeSets().stream()
+                final Set<Long> alreadyIndexed = alreadyIndexedAclChangeSets(aclChangeSets.getAclChangeSets());
+                List<List<AclChangeSet>> changeSetBatches = new ArrayList<>(aclChangeSets.getAclChangeSets().stream()
                         .peek(changeSetsFound::add)
-                        .filter(this::isAclChangeSetAlreadyIndexed)
-                        .collect(Collectors.groupingBy(it -> counter.getAndAdd(1) / changeSetAclsBatchSize))
-                        .values();
-
-
-                for (List<AclChangeSet> changeSetBatch : changeSetBatches)
+                        .filter(changeSet -> isAclChangeSetToBeIndexed(changeSet, alreadyIndexed))
+                        .collect(Collectors.groupingBy(it -> counter.getAndAdd(1) / changeSetAclsBatchSize,
+                                TreeMap::new, Collectors.toList()))
+                        .values());
+
+                // Batches are indexed in commit time order, so the tracker state never goes beyond a batch not indexed yet
+                Deque<Future<List<AclReaders>>> readersInFlight = new ArrayDeque<>();
+                Iterator<List<AclChangeSet>> pendingBatches = changeSetBatches.iterator();
+                try
                 {
-                    aclCount = indexBatchOfChangeSets(changeSetBatch);
-                    // Update last committed transactions
-                    indexAclChangeSetAfterWorker(changeSetBatch, state);
-
-                    long endElapsed = System.nanoTime();
-                    trackerStats.addElapsedAclTime(aclCount, endElapsed-startElapsed);
-                    startElapsed = endElapsed;
-                    totalAclCount += aclCount;
+                    for (List<AclChangeSet> changeSetBatch : changeSetBatches)
+                    {
+                        checkShutdown();
+
+                        // Keep at most pipelineQueueDepth batches in flight, the oldest one is the next to be indexed.
+                        // Unlike the tasks submitted to a ForkJoinPool, a FutureTask interrupts its fetch when cancelled
+                        while (readersInFlight.size() < pipelineQueueDepth && pendingBatches.hasNext())
+                        {
+                            List<AclChangeSet> nextChangeSetBatch = pendingBatches.next();
+                            FutureTask<List<AclReaders>> fetch = new FutureTask<>(() -> getAclReaders(nextChangeSetBatch));
+                            forkJoinPool.execute(fetch);
+                            readersInFlight.add(fetch);
+                        }
+
+                        long waitStart = System.nanoTime();
+                        List<AclReaders> readers = readersInFlight.poll().get();
+                        trackerStats.addAclFetchWaitTime(System.nanoTime() - waitStart);
+
+                        aclCount = indexBatchOfChangeSets(changeSetBatch, readers, state);
+
+                        long endElapsed = System.nanoTime();
+                        trackerStats.addElapsedAclTime(aclCount, endElapsed-startElapsed);
+                        startElapsed = endElapsed;
+                        totalAclCount += aclCount;
+                    }
+                }
+                finally
+                {
+                    readersInFlight.forEach(pending -> pending.cancel(true));
                 }
 
                 // Update state with server data on last transactions processed
@@ -793,28 +838,45 @@ public class AclTracker extends ActivatableTracker
         
     }
 
-    private boolean isAclChangeSetAlreadyIndexed(AclChangeSet changeSet)
+    /**
+     * Returns the ids of the change sets, in the given page, which have been already indexed.
+     * Only change sets not newer than the last indexed commit time can be in the index: they are checked all together
+     * with a single bulk lookup.
+     */
+    private Set<Long> alreadyIndexedAclChangeSets(List<AclChangeSet> changeSets)
     {
+        long lastIndexedChangeSetCommitTime = state.getLastIndexedChangeSetCommitTime();
+        List<Long> candidates = changeSets.stream()
+                .filter(changeSet -> changeSet.getCommitTimeMs() <= lastIndexedChangeSetCommitTime)
+                .map(AclChangeSet::getId)
+                .collect(Collectors.toList());
+        if (candidates.isEmpty())
+        {
+            return Collections.emptySet();
+        }
 
         try
         {
-            boolean isInIndex = (changeSet.getCommitTimeMs() <= state.getLastIndexedChangeSetCommitTime() &&
-                    infoSrv.aclChangeSetInIndex(changeSet.getId(), true));
-            if (LOGGER.isTraceEnabled())
-            {
-                LOGGER.trace("{}-[CORE {}] Skipping change Set Id {} as it was already indexed",
-                        Thread.currentThread().getId(), coreName, changeSet.getId());
-            }
-            return !isInIndex;
+            return infoSrv.aclChangeSetsInIndex(candidates, true);
         }
         catch (IOException e)
         {
             LOGGER.warn(
-                    "{}-[CORE {}] Error catched while checking if ACL Change Set {} was in index",
-                    Thread.currentThread().getId(), coreName, changeSet.getId(), e);
-            return true;
+                    "{}-[CORE {}] Error catched while checking if ACL Change Sets {} were in index",
+                    Thread.currentThread().getId(), coreName, candidates, e);
+            return Collections.emptySet();
         }
+    }
 
+    private boolean isAclChangeSetToBeIndexed(AclChangeSet changeSet, Set<Long> alreadyIndexed)
+    {
+        boolean isInIndex = alreadyIndexed.contains(changeSet.getId());
+        if (isInIndex && LOGGER.isTraceEnabled())
+        {
+            LOGGER.trace("{}-[CORE {}] Skipping change Set Id {} as it was already indexed",
+                    Thread.currentThread().getId(), coreName, changeSet.getId());
+        }
+        return !isInIndex;
     }
 
     private void setLastChangeSetIdAndCommitTimeInTrackerState(List<AclChangeSet> aclChangeSets, TrackerState state)
@@ -833,14 +895,21 @@ public class AclTracker extends ActivatableTracker
     }
 
     /**
-     * Index ACL Change Set transaction after ACLs has been indexed by the worker
+     * Index the ACLs (whose readers have been already fetched from the repository), the ACL Change Sets and the
+     * tracker state of a batch, all together. Then the in-memory tracker state is updated.
+     *
+     * @param changeSetBatch List of ACL Change Sets to be indexed
+     * @param readers the readers of the ACLs contained in the batch
+     * @return Count of ACL indexed
      */
-    private void indexAclChangeSetAfterWorker(Collection<AclChangeSet> changeSetsIndexed, TrackerState state)
+    private int indexBatchOfChangeSets(List<AclChangeSet> changeSetBatch, List<AclReaders> readers, TrackerState state)
                 throws IOException
     {
-        for (AclChangeSet set : changeSetsIndexed)
+        long time = infoSrv.indexAclChangeSets(readers, changeSetBatch);
+        trackerStats.addAclTime(time);
+
+        for (AclChangeSet set : changeSetBatch)
         {
-            infoSrv.indexAclTransaction(set, true);
             // Acl change sets are ordered by commit time and tie-broken by id
             if (set.getCommitTimeMs() > state.getLastIndexedChangeSetCommitTime()
                     || set.getCommitTimeMs() == state.getLastIndexedChangeSetCommitTime()
@@ -851,84 +920,60 @@ public class AclTracker extends ActivatableTracker
             }
             trackerStats.addChangeSetAcls(set.getAclCount());
         }
+        return readers.size();
     }
 
 
     /**
-     * Index ACLs from ACL Change Sets contained in changeSetBatch
-     * When total ACL indexed count is greater than the specified for a single execution
-     * (maxAclsPerExecution), no more ACL Change Sets are processed.
-     * 
+     * Gets from the repository the readers of the ACLs (belonging to this shard) contained in the given ACL Change Sets.
+     * The readers are requested in batches of aclBatchSize ACLs, in parallel.
+     * The time spent is added to the ACL fetch times of the tracker stats.
+     *
      * @param changeSetBatch List of ACL Change Sets to be indexed
-     * @return List of ACL Change Set indexed and Count of ACL indexed
+     * @return the readers of the ACLs contained in the batch
      */
-    private int indexBatchOfChangeSets(List<AclChangeSet> changeSetBatch)
-            throws AuthenticationException, IOException, JSONException, ExecutionException, InterruptedException {
+    private List<AclReaders> getAclReaders(List<AclChangeSet> changeSetBatch)
+            throws AuthenticationException, IOException, JSONException, ExecutionException, InterruptedException
+    {
+        long start = System.nanoTime();
+
         // Exclude ACL Change Set with no ACLs inside
         List<AclChangeSet> nonEmptyChangeSets = changeSetBatch.stream()
                 .filter(set -> set.getAclCount() > 0)
                 .collect(Collectors.toList());
 
         List<Acl> acls = client.getAcls(nonEmptyChangeSets, null, Integer.MAX_VALUE);
-        
+
         if (LOGGER.isDebugEnabled())
         {
             LOGGER.debug("{}-[CORE {}] Found {} Acls from Acl Change Sets: {}", Thread.currentThread().getId(),
                     coreName, acls.size(), nonEmptyChangeSets);
         }
-        
-        List<List<Acl>> aclBatches = Lists.partition(acls, aclBatchSize);
-
-        return forkJoinPool.submit(() ->
-                aclBatches.parallelStream().map(batch -> {
-                    new AclIndexWorker(batch).run();
-                    return batch.size();
-                }).reduce(0, Integer::sum)
-        ).get();
-    }
 
+        List<Callable<List<AclReaders>>> requests = Lists.partition(filterAcls(acls), aclBatchSize).stream()
+                .map(batch -> (Callable<List<AclReaders>>) () -> client.getAclReaders(batch))
+                .collect(Collectors.toList());
 
-    /**
-     * ACL Indexer
-     */
-    class AclIndexWorker extends AbstractWorker
-    {
-        List<Acl> acls;
-
-        AclIndexWorker(List<Acl> acls)
+        List<AclReaders> readers = new ArrayList<>(acls.size());
+        for (Future<List<AclReaders>> response : forkJoinPool.invokeAll(requests))
         {
-            this.acls = acls;
+            readers.addAll(response.get());
         }
+        trackerStats.addAclFetchTime(System.nanoTime() - start);
+        return readers;
+    }
 
-        @Override
-        protected void doWork() throws IOException, AuthenticationException, JSONException
-        {
-            List<Acl> filteredAcls = filterAcls(acls);
-            if(filteredAcls.size() > 0)
-            {
-                List<AclReaders> readers = client.getAclReaders(filteredAcls);
-                indexAcl(readers, true);
-            }
-        }
-        
-        @Override
-        protected void onFail(Throwable failCausedBy)
-        {
-        	setRollback(true, failCausedBy);
-        }
-        
-        private List<Acl> filterAcls(List<Acl> acls)
+    private List<Acl> filterAcls(List<Acl> acls)
+    {
+        ArrayList<Acl> filteredList = new ArrayList<>(acls.size());
+        for(Acl acl : acls)
         {
-            ArrayList<Acl> filteredList = new ArrayList<>(acls.size());
-            for(Acl acl : acls)
+            if(docRouter.routeAcl(shardCount, shardInstance, acl))
             {
-                if(docRouter.routeAcl(shardCount, shardInstance, acl))
-                {
-                    filteredList.add(acl);
-                }
+                filteredList.add(acl);
             }
-            return filteredList;
         }
+        return filteredList;
     }
 
 
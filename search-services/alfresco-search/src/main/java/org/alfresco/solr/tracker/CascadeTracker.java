@@ -143,17 +143,21 @@ public class CascadeTracker extends ActivatableTracker
     {
         InformationServer infoServer;
         List<NodeMetaData> nodes;
+        // All the parent nodes found by this round, the batches of the other workers included
+        List<NodeMetaData> pendingParents;
 
-        CascadeIndexWorker(List<NodeMetaData> nodes, InformationServer infoServer)
+        CascadeIndexWorker(List<NodeMetaData> nodes, List<NodeMetaData> pendingParents, InformationServer infoServer)
         {
             this.infoServer = infoServer;
             this.nodes = nodes;
+            this.pendingParents = pendingParents;
         }
 
         @Override
         protected void doWork() throws IOException, AuthenticationException, JSONException
         {
-            this.infoServer.cascadeNodes(nodes, true);
+            // The Repository is queried by the threads of the tracker pool
+            this.infoServer.cascadeNodes(nodes, pendingParents, true, forkJoinPool);
         }
         
         @Override
@@ -206,7 +210,8 @@ public class CascadeTracker extends ActivatableTracker
                     txIdSet.add(tx.getId());
                 }
 
-                List<NodeMetaData> nodeMetaDatas = infoSrv.getCascadeNodes(txIds);
+                // The Repository is queried by the threads of the tracker pool
+                List<NodeMetaData> nodeMetaDatas = infoSrv.getCascadeNodes(txIds, forkJoinPool);
                 Integer processedCascades = 0;
 
                 if(nodeMetaDatas.size() > 0) {
@@ -215,7 +220,7 @@ public class CascadeTracker extends ActivatableTracker
                     processedCascades = forkJoinPool.submit( () ->
                             nodeBatches.parallelStream().map( batch -> {
 
-                                CascadeIndexWorker worker = new CascadeIndexWorker(batch, infoSrv);
+                                CascadeIndexWorker worker = new CascadeIndexWorker(batch, nodeMetaDatas, infoSrv);
                                 worker.run();
 
                                 if (LOGGER.isTraceEnabled())
@@ -27,6 +27,7 @@
 package org.alfresco.solr.tracker;
 
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.alfresco.solr.AlfrescoSolrDataModel.TenantDbId;
 import org.alfresco.solr.InformationServer;
 import org.alfresco.solr.client.SOLRAPIClient;
@@ -38,7 +39,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
 
 import static org.alfresco.solr.utils.Utils.notNullOrEmpty;
@@ -101,6 +104,7 @@ public class ContentTracker extends ActivatableTracker
     @Override
     protected void doTrack(String iterationId) throws Exception
     {
+        List<TenantDbId> nextDocs = null;
         try
         {
             long startElapsed = System.nanoTime();
@@ -114,29 +118,43 @@ public class ContentTracker extends ActivatableTracker
                 {
                     getWriteLock().acquire();
 
-                    List<TenantDbId> docs = notNullOrEmpty(this.infoSrv.getDocsWithUncleanContent());
+                    List<TenantDbId> docs = (nextDocs != null) ? nextDocs : getDocsWithUncleanContent().get();
+                    nextDocs = null;
                     if (docs.isEmpty())
                     {
                         LOGGER.trace("No unclean document has been detected in the current ContentTracker cycle.");
                         break;
                     }
 
-                    List<List<TenantDbId>> docBatches = Lists.partition(docs, contentUpdateBatchSize);
-                    for (List<TenantDbId> batch : docBatches)
+                    // The transactions of these documents are already marked as processed, so the next ones can be
+                    // looked up while these are being updated
+                    Future<List<TenantDbId>> prefetchedDocs = getDocsWithUncleanContent();
+                    try
                     {
-                        Integer processedDocuments = forkJoinPool.submit(() ->
-                                // Parallel task here, for example
-                                batch.parallelStream().map(doc -> {
-                                    ContentIndexWorkerRunnable ciwr = new ContentIndexWorkerRunnable(doc, infoSrv);
-                                    ciwr.run();
-                                    return 1;
-                                }).reduce(0, Integer::sum)
-                        ).get();
-
-                        long endElapsed = System.nanoTime();
-                        trackerStats.addElapsedContentTime(processedDocuments, endElapsed - startElapsed);
-                        startElapsed = endElapsed;
+                        List<List<TenantDbId>> docBatches = Lists.partition(docs, contentUpdateBatchSize);
+                        for (List<TenantDbId> batch : docBatches)
+                        {
+                            // Each worker updates its share of the batch through one update processor chain
+                            int workerBatchSize = (batch.size() + contentTrackerParallelism - 1) / contentTrackerParallelism;
+                            List<List<TenantDbId>> workerBatches = Lists.partition(batch, workerBatchSize);
+                            Integer processedDocuments = forkJoinPool.submit(() ->
+                                    workerBatches.parallelStream().map(workerBatch -> {
+                                        ContentIndexWorkerRunnable ciwr = new ContentIndexWorkerRunnable(workerBatch, infoSrv);
+                                        ciwr.run();
+                                        return workerBatch.size();
+                                    }).reduce(0, Integer::sum)
+                            ).get();
 
+                            long endElapsed = System.nanoTime();
+                            trackerStats.addElapsedContentTime(processedDocuments, endElapsed - startElapsed);
+                            startElapsed = endElapsed;
+
+                        }
+                    }
+                    finally
+                    {
+                        // The lookup must not outlive the write lock
+                        nextDocs = joinPrefetchedDocs(prefetchedDocs);
                     }
 
                     totalDocs += docs.size();
@@ -155,6 +173,44 @@ public class ContentTracker extends ActivatableTracker
         {
             throw new IOException(e);
         }
+        finally
+        {
+            if (nextDocs != null)
+            {
+                // The lookup marks the transactions of its documents as processed: those not updated are released,
+                // to be looked up again by the next run
+                infoSrv.releaseDocsWithUncleanContent(nextDocs);
+            }
+        }
+    }
+
+    /**
+     * Waits for the lookup of the next documents, even if the tracker thread is interrupted: it is joined instead of
+     * cancelled because a running fork join task can't be interrupted, and it would mark the transactions only once done.
+     *
+     * @return the documents found, null if the lookup failed (nothing has been marked as processed then)
+     */
+    private List<TenantDbId> joinPrefetchedDocs(Future<List<TenantDbId>> prefetchedDocs)
+    {
+        try
+        {
+            return Uninterruptibles.getUninterruptibly(prefetchedDocs);
+        }
+        catch (ExecutionException e)
+        {
+            LOGGER.debug("{}-[CORE {}] The lookup of the next documents with unclean content failed",
+                    Thread.currentThread().getId(), coreName, e);
+            return null;
+        }
+    }
+
+    /**
+     * Looks up the documents with unclean content on the tracker pool, so that the index segments are scanned by its
+     * threads in parallel.
+     */
+    private Future<List<TenantDbId>> getDocsWithUncleanContent()
+    {
+        return forkJoinPool.submit(() -> notNullOrEmpty(this.infoSrv.getDocsWithUncleanContent(forkJoinPool)));
     }
 
     public boolean hasMaintenance()
@@ -176,11 +232,11 @@ public class ContentTracker extends ActivatableTracker
     class ContentIndexWorkerRunnable extends AbstractWorker
     {
         InformationServer infoServer;
-        TenantDbId docRef;
+        List<TenantDbId> docRefs;
 
-        ContentIndexWorkerRunnable(TenantDbId doc, InformationServer infoServer)
+        ContentIndexWorkerRunnable(List<TenantDbId> docs, InformationServer infoServer)
         {
-            this.docRef = doc;
+            this.docRefs = docs;
             this.infoServer = infoServer;
         }
 
@@ -189,7 +245,7 @@ public class ContentTracker extends ActivatableTracker
         {
             checkShutdown();
 
-            infoServer.updateContent(docRef);
+            infoServer.updateContentBatch(docRefs);
         }
         
         @Override
@@ -41,24 +41,34 @@ import org.alfresco.solr.client.SOLRAPIClient;
 import org.alfresco.solr.client.Transaction;
 import org.alfresco.solr.client.Transactions;
 import org.alfresco.util.Pair;
+import org.alfresco.util.TraceableThreadFactory;
 import org.apache.commons.codec.EncoderException;
 import org.json.JSONException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
@@ -80,6 +90,8 @@ public class MetadataTracker extends ActivatableTracker
     private static final int DEFAULT_NODE_BATCH_SIZE = 50;
     private static final String DEFAULT_INITIAL_TRANSACTION_RANGE = "0-2000";
     private static final long DEFAULT_METADATA_TRACKER_TIMESTEP = TIME_STEP_1_HR_IN_MS;
+    private static final int DEFAULT_PIPELINE_QUEUE_DEPTH = 2;
+    private static final long PREFETCH_THREAD_KEEP_ALIVE_SECONDS = 60L;
 
     private int matadataTrackerParallelism;
     private int transactionDocsBatchSize;
@@ -87,6 +99,15 @@ public class MetadataTracker extends ActivatableTracker
     private int maxNumberOfTransactions;
     private long timeStep;
 
+    /**
+     * When pipelined tracking is enabled, the nodes of the next transaction batches and the next page of
+     * transactions are fetched from the Repository while the current batch is being indexed.
+     * The queue depth is the maximum number of transaction batches fetched ahead of the indexing stage.
+     */
+    private boolean pipelinedTracking;
+    private int pipelineQueueDepth;
+    ExecutorService prefetchExecutor;
+
     private final ConcurrentLinkedQueue<Long> transactionsToReindex = new ConcurrentLinkedQueue<>();
     private final ConcurrentLinkedQueue<Long> transactionsToIndex = new ConcurrentLinkedQueue<>();
     private final ConcurrentLinkedQueue<Long> transactionsToPurge = new ConcurrentLinkedQueue<>();
@@ -189,6 +210,14 @@ public class MetadataTracker extends ActivatableTracker
         minTxnIdRange = new Pair<>(Long.valueOf(minTxninitialRangeString[0]), Long.valueOf(minTxninitialRangeString[1]));
         forkJoinPool = new ForkJoinPool(matadataTrackerParallelism);
 
+        pipelinedTracking = Boolean.parseBoolean(p.getProperty("alfresco.metadata.tracker.pipeline.enabled", "false"));
+        pipelineQueueDepth = Math.max(1, Integer.parseInt(p.getProperty("alfresco.metadata.tracker.pipeline.queueDepth",
+                String.valueOf(DEFAULT_PIPELINE_QUEUE_DEPTH))));
+        if (pipelinedTracking)
+        {
+            prefetchExecutor = createPrefetchExecutor(coreName, pipelineQueueDepth);
+        }
+
         RUN_LOCK_BY_CORE.put(coreName, new Semaphore(1, true));
         WRITE_LOCK_BY_CORE.put(coreName, new Semaphore(1, true));
         
@@ -921,6 +950,47 @@ public class MetadataTracker extends ActivatableTracker
         }
     }
 
+    /**
+     * Returns the ids of the transactions, in the given page, which have been already indexed.
+     * Only transactions not newer than the last indexed commit time can be in the index: they are checked all together
+     * with a single bulk lookup.
+     */
+    Set<Long> alreadyIndexedTransactions(List<Transaction> transactions)
+    {
+        long lastIndexedTxCommitTime = state.getLastIndexedTxCommitTime();
+        List<Long> candidates = transactions.stream()
+                .filter(transaction -> transaction.getCommitTimeMs() <= lastIndexedTxCommitTime)
+                .map(Transaction::getId)
+                .collect(Collectors.toList());
+        if (candidates.isEmpty())
+        {
+            return Collections.emptySet();
+        }
+
+        try
+        {
+            return infoSrv.txnsInIndex(candidates, true);
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn(
+                    "{}-[CORE {}] Error catched while checking if Transactions {} were in index",
+                    Thread.currentThread().getId(), coreName, candidates, e);
+            return Collections.emptySet();
+        }
+    }
+
+    private boolean isTransactionToBeIndexed(Transaction transaction, Set<Long> alreadyIndexed)
+    {
+        boolean isInIndex = alreadyIndexed.contains(transaction.getId());
+        if (isInIndex && LOGGER.isTraceEnabled())
+        {
+            LOGGER.trace("{}-[CORE {}] Skipping Transaction Id {} as it was already indexed",
+                    Thread.currentThread().getId(), coreName, transaction.getId());
+        }
+        return !isInIndex;
+    }
+
 
     /**
      * Indexing new transactions from repository in batches of "transactionDocsBatchSize" size.
@@ -941,6 +1011,11 @@ public class MetadataTracker extends ActivatableTracker
         LOGGER.info("{}-[CORE {}] Starting metadata tracker execution", Thread.currentThread().getId(), coreName);
         boolean reachedLagBoundary = false;
 
+        // Next page of transactions requested ahead of time when pipelined tracking is enabled
+        Future<Transactions> prefetchedTransactions = null;
+        Long prefetchedFromCommitTime = null;
+        TrackerState prefetchedState = null;
+
         do
         {
             try
@@ -961,7 +1036,15 @@ public class MetadataTracker extends ActivatableTracker
                 Long fromCommitTime = getTxFromCommitTime(txnsFound,state.getLastGoodTxCommitTimeInIndex());
 
                 // Get transaction list to be indexed
-                if (docRouter instanceof DBIDRangeRouter && txIntervalCommitTimeServiceAvailable)
+                if (prefetchedTransactions != null
+                        && state == prefetchedState
+                        && fromCommitTime.equals(prefetchedFromCommitTime))
+                {
+                    // The tracker state has not been reset since the page was requested, so it is still valid
+                    transactions = prefetchedTransactions.get();
+                    prefetchedTransactions = null;
+                }
+                else if (docRouter instanceof DBIDRangeRouter && txIntervalCommitTimeServiceAvailable)
                 {
                     transactions = getDBIDRangeTransactions(fromCommitTime, txnsFound);
                 }
@@ -970,6 +1053,7 @@ public class MetadataTracker extends ActivatableTracker
                     transactions = getSomeTransactions(txnsFound, fromCommitTime, timeStep, maxNumberOfTransactions,
                             state.getTimeToStopIndexing());
                 }
+                prefetchedTransactions = cancelPrefetch(prefetchedTransactions);
 
                 long idTrackerCycle = System.currentTimeMillis();
                 long lagCutoff = state.getTimeToStopIndexing();
@@ -1012,9 +1096,13 @@ public class MetadataTracker extends ActivatableTracker
                             lagCutoff));
                 }
 
-                List<Transaction> lagEligibleTransactions = transactions.getTransactions().stream()
+                List<Transaction> lagCutoffTransactions = transactions.getTransactions().stream()
                         .filter(transaction -> transaction.getCommitTimeMs() <= lagCutoff)
-                        .filter(this::isTransactionToBeIndexed)
+                        .collect(Collectors.toList());
+
+                final Set<Long> alreadyIndexed = alreadyIndexedTransactions(lagCutoffTransactions);
+                List<Transaction> lagEligibleTransactions = lagCutoffTransactions.stream()
+                        .filter(transaction -> isTransactionToBeIndexed(transaction, alreadyIndexed))
                         .peek(txnsFound::add)
                         .collect(Collectors.toList());
 
@@ -1055,39 +1143,70 @@ public class MetadataTracker extends ActivatableTracker
                     }
                 }
 
-                // Index batches of transactions and the nodes updated or deleted within the transaction
-                List<List<Node>> nodeBatches = new ArrayList<>();
-                for (List<Transaction> batch : eligibleTransactionBatches)
+                if (pipelinedTracking && !hitLagBoundary.get() && !lagEligibleTransactions.isEmpty()
+                        && !(docRouter instanceof DBIDRangeRouter && txIntervalCommitTimeServiceAvailable))
                 {
-
-                    // Index nodes contained in the transactions
-                    long idTxBatch = System.currentTimeMillis();
-                    nodeBatches.addAll(buildBatchOfTransactions(batch, idTrackerCycle, idTxBatch));
+                    // Request the next page while this one is being indexed
+                    final Long nextFromCommitTime = getTxFromCommitTime(txnsFound, state.getLastGoodTxCommitTimeInIndex());
+                    final long timeToStopIndexing = state.getTimeToStopIndexing();
+                    prefetchedFromCommitTime = nextFromCommitTime;
+                    prefetchedState = state;
+                    prefetchedTransactions = prefetchExecutor.submit(() ->
+                            getSomeTransactions(txnsFound, nextFromCommitTime, timeStep, maxNumberOfTransactions,
+                                    timeToStopIndexing));
                 }
-                
-                // Counter used to identify the worker inside the parallel stream processing
-                final AtomicInteger counterBatch = new AtomicInteger(0);
-                long idThread = Thread.currentThread().getId();
-                totalUpdatedDocs += forkJoinPool.submit(() ->
-                        nodeBatches.parallelStream().map(batch -> {
-                            int count = counterBatch.addAndGet(1);
-                            if (LOGGER.isTraceEnabled())
+
+                // Index batches of transactions and the nodes updated or deleted within the transaction
+                if (pipelinedTracking)
+                {
+                    Deque<Future<List<List<Node>>>> nodeBatchesInFlight = new ArrayDeque<>();
+                    Iterator<List<Transaction>> pendingBatches = eligibleTransactionBatches.iterator();
+                    try
+                    {
+                        for (List<Transaction> batch : eligibleTransactionBatches)
+                        {
+                            // Keep at most pipelineQueueDepth transaction batches fetched ahead of the indexing stage
+                            while (nodeBatchesInFlight.size() < pipelineQueueDepth && pendingBatches.hasNext())
                             {
-                                LOGGER.trace("{}:{}:{}-[CORE {}] indexing {} nodes ...",
-                                        idThread, idTrackerCycle, count,
-                                        coreName, batch.size());
+                                List<Transaction> nextBatch = pendingBatches.next();
+                                nodeBatchesInFlight.add(prefetchExecutor.submit(() ->
+                                        buildBatchOfTransactions(nextBatch, idTrackerCycle, System.currentTimeMillis())));
                             }
-                            new NodeIndexWorker(batch, infoSrv, idThread, idTrackerCycle, count).run();
-                            return batch.size();
-                        }).reduce(0, Integer::sum)).get();
 
-                for (List<Transaction> batch : eligibleTransactionBatches)
+                            totalUpdatedDocs += indexNodeBatches(nodeBatchesInFlight.poll().get(), idTrackerCycle);
+
+                            indexTransactionsAfterWorker(batch);
+                            long endElapsed = System.nanoTime();
+                            trackerStats.addElapsedNodeTime(totalUpdatedDocs, endElapsed - startElapsed);
+                            startElapsed = endElapsed;
+                        }
+                    }
+                    finally
+                    {
+                        nodeBatchesInFlight.forEach(this::cancelPrefetch);
+                    }
+                }
+                else
                 {
-                    // Index the transactions
-                    indexTransactionsAfterWorker(batch);
-                    long endElapsed = System.nanoTime();
-                    trackerStats.addElapsedNodeTime(totalUpdatedDocs, endElapsed - startElapsed);
-                    startElapsed = endElapsed;
+                    List<List<Node>> nodeBatches = new ArrayList<>();
+                    for (List<Transaction> batch : eligibleTransactionBatches)
+                    {
+
+                        // Index nodes contained in the transactions
+                        long idTxBatch = System.currentTimeMillis();
+                        nodeBatches.addAll(buildBatchOfTransactions(batch, idTrackerCycle, idTxBatch));
+                    }
+
+                    totalUpdatedDocs += indexNodeBatches(nodeBatches, idTrackerCycle);
+
+                    for (List<Transaction> batch : eligibleTransactionBatches)
+                    {
+                        // Index the transactions
+                        indexTransactionsAfterWorker(batch);
+                        long endElapsed = System.nanoTime();
+                        trackerStats.addElapsedNodeTime(totalUpdatedDocs, endElapsed - startElapsed);
+                        startElapsed = endElapsed;
+                    }
                 }
 
                 // Set the tracker state only for transactions we actually indexed in this cycle
@@ -1116,6 +1235,7 @@ public class MetadataTracker extends ActivatableTracker
             }
             catch(Exception e)
             {
+                cancelPrefetch(prefetchedTransactions);
                 throw new IOException(e);
             }
             finally
@@ -1126,9 +1246,88 @@ public class MetadataTracker extends ActivatableTracker
         }
         while (!reachedLagBoundary && (transactions.getTransactions().size() > 0));
 
+        cancelPrefetch(prefetchedTransactions);
+
         LOGGER.info("{}-[CORE {}] Tracked {} DOCs", Thread.currentThread().getId(), coreName, totalUpdatedDocs);
     }
 
+    /**
+     * Index batches of nodes in parallel using the ForkJoin pool of the tracker.
+     *
+     * @param nodeBatches Batches of nodes to be indexed
+     * @param idTrackerCycle Id of the Tracker Cycle being executed
+     * @return Number of nodes processed
+     */
+    private int indexNodeBatches(List<List<Node>> nodeBatches, long idTrackerCycle)
+            throws ExecutionException, InterruptedException
+    {
+        // Counter used to identify the worker inside the parallel stream processing
+        final AtomicInteger counterBatch = new AtomicInteger(0);
+        long idThread = Thread.currentThread().getId();
+        return forkJoinPool.submit(() ->
+                nodeBatches.parallelStream().map(batch -> {
+                    int count = counterBatch.addAndGet(1);
+                    if (LOGGER.isTraceEnabled())
+                    {
+                        LOGGER.trace("{}:{}:{}-[CORE {}] indexing {} nodes ...",
+                                idThread, idTrackerCycle, count,
+                                coreName, batch.size());
+                    }
+                    new NodeIndexWorker(batch, infoSrv, idThread, idTrackerCycle, count).run();
+                    return batch.size();
+                }).reduce(0, Integer::sum)).get();
+    }
+
+    /**
+     * Cancel a Repository request fetched ahead of time that is not going to be used.
+     *
+     * @param prefetch pending request, it can be null
+     * @return always null, so the caller can reset its reference
+     */
+    private <T> Future<T> cancelPrefetch(Future<T> prefetch)
+    {
+        if (prefetch != null)
+        {
+            prefetch.cancel(true);
+        }
+        return null;
+    }
+
+    /**
+     * Stops the prefetch stage of the pipelined tracking, cancelling the Repository requests still in flight,
+     * so that its threads do not outlive a core reload or unload.
+     */
+    @Override
+    public void shutdown()
+    {
+        super.shutdown();
+        if (prefetchExecutor != null)
+        {
+            prefetchExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Build the executor running the prefetch stage of the pipelined tracking.
+     * Threads are released when the tracker is idle.
+     *
+     * @param coreName Name of the SOLR Core
+     * @param queueDepth Number of transaction batches fetched ahead of the indexing stage
+     * @return Executor for the Repository requests
+     */
+    private static ExecutorService createPrefetchExecutor(String coreName, int queueDepth)
+    {
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setThreadDaemon(true);
+        threadFactory.setNamePrefix("MetadataTrackerPrefetch-" + coreName);
+
+        // One extra thread for the next page of transactions
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(queueDepth + 1, queueDepth + 1,
+                PREFETCH_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     /**
      * Update latest transaction indexed in MetadataTracker state
      * @param transactions List of transactions indexed
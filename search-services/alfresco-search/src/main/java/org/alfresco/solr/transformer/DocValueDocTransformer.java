@@ -28,10 +28,21 @@ package org.alfresco.solr.transformer;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.alfresco.solr.AlfrescoSolrDataModel;
 import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocValuesType;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
 import org.apache.lucene.index.SortedDocValues;
 import org.apache.lucene.index.SortedNumericDocValues;
 import org.apache.lucene.index.SortedSetDocValues;
@@ -39,11 +50,21 @@ import org.apache.lucene.util.NumericUtils;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.response.ResultContext;
 import org.apache.solr.response.transform.DocTransformer;
+import org.apache.solr.schema.FieldType;
 import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.DocIterator;
+import org.apache.solr.search.DocList;
+import org.apache.solr.search.ReturnFields;
+import org.apache.solr.search.SolrIndexSearcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Replaces the fields of the returned documents with their doc values.
+ * <p>
+ * The requested doc values fields are resolved once per request. Values are then read for the whole page of results
+ * at a time, segment by segment in doc id order, binding the doc values of each segment once.
+ *
  * @author Andy
  *
  */
@@ -51,6 +72,12 @@ public class DocValueDocTransformer extends DocTransformer
 {
     protected final static Logger log = LoggerFactory.getLogger(DocValueDocTransformer.class);
 
+    /** Marks a field with no value for a document: the document is left untouched. */
+    private static final Object NO_VALUE = new Object();
+
+    private List<DocValueField> fields;
+    private Map<Integer, Object[]> values;
+
     /* (non-Javadoc)
      * @see org.apache.solr.response.transform.DocTransformer#getName()
      */
@@ -64,6 +91,8 @@ public class DocValueDocTransformer extends DocTransformer
     public void setContext( ResultContext context ) 
     {
         this.context = context;
+        this.fields = null;
+        this.values = null;
     }
     
     
@@ -73,117 +102,227 @@ public class DocValueDocTransformer extends DocTransformer
     @Override
     public void transform(SolrDocument doc, int docid, float score) throws IOException
     {
-        for(String fieldName :context.getSearcher().getFieldNames())
+        if (fields == null)
+        {
+            fields = getRequestedFields(context.getSearcher(), context.getReturnFields());
+            values = new HashMap<>();
+            fill(context.getDocList());
+        }
+
+        Object[] docValues = values.remove(docid);
+        if (docValues == null)
+        {
+            // Not part of the result page (e.g. a document added by another component)
+            fill(new int[] {docid});
+            docValues = values.remove(docid);
+        }
+
+        for (int i = 0; i < fields.size(); i++)
+        {
+            if (docValues[i] != NO_VALUE)
+            {
+                DocValueField field = fields.get(i);
+                doc.removeFields(field.fieldName);
+                doc.removeFields(field.alfrescoFieldName);
+                doc.addField(field.alfrescoFieldName, docValues[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the doc values fields of the index which the response can contain
+     */
+    static List<DocValueField> getRequestedFields(SolrIndexSearcher searcher, ReturnFields returnFields)
+    {
+        FieldInfos fieldInfos = searcher.getSlowAtomicReader().getFieldInfos();
+        List<DocValueField> requestedFields = new ArrayList<>();
+        for (String fieldName : searcher.getFieldNames())
+        {
+            SchemaField schemaField = searcher.getSchema().getFieldOrNull(fieldName);
+            FieldInfo fieldInfo = fieldInfos.fieldInfo(fieldName);
+            if (schemaField == null || !schemaField.hasDocValues() || fieldInfo == null)
+            {
+                continue;
+            }
+
+            String alfrescoFieldName = AlfrescoSolrDataModel.getInstance().getAlfrescoPropertyFromSchemaField(fieldName);
+            boolean requested = returnFields == null
+                    || returnFields.wantsAllFields()
+                    || returnFields.wantsField(fieldName)
+                    || returnFields.wantsField(alfrescoFieldName);
+            if (requested && fieldInfo.getDocValuesType() != DocValuesType.NONE)
+            {
+                requestedFields.add(new DocValueField(schemaField, alfrescoFieldName, fieldInfo.getDocValuesType()));
+            }
+        }
+        return requestedFields;
+    }
+
+    private void fill(DocList docList) throws IOException
+    {
+        if (docList == null)
+        {
+            return;
+        }
+
+        int[] docIds = new int[docList.size()];
+        DocIterator iterator = docList.iterator();
+        for (int i = 0; i < docIds.length && iterator.hasNext(); i++)
+        {
+            docIds[i] = iterator.nextDoc();
+        }
+        fill(docIds);
+    }
+
+    /**
+     * Reads the values of the requested fields for the given documents, segment by segment.
+     */
+    private void fill(int[] docIds) throws IOException
+    {
+        int[] sortedDocIds = docIds.clone();
+        Arrays.sort(sortedDocIds);
+
+        List<LeafReaderContext> leaves = context.getSearcher().getTopReaderContext().leaves();
+        LeafReaderContext leaf = null;
+        LeafValues[] leafValues = new LeafValues[fields.size()];
+
+        for (int docId : sortedDocIds)
         {
-            SchemaField schemaField = context.getSearcher().getSchema().getFieldOrNull(fieldName);
-            if(schemaField != null)
+            if (leaf == null || docId >= leaf.docBase + leaf.reader().maxDoc())
             {
-                if(schemaField.hasDocValues())
+                leaf = leaves.get(ReaderUtil.subIndex(docId, leaves));
+                for (int i = 0; i < leafValues.length; i++)
                 {
-                    SortedDocValues sortedDocValues = context.getSearcher().getSlowAtomicReader().getSortedDocValues(fieldName);
-                    if(sortedDocValues != null)
-                    {
-                        int ordinal = sortedDocValues.getOrd(docid);
-                        if(ordinal > -1)
-                        {
-                            doc.removeFields(fieldName);
-                            String alfrescoFieldName = AlfrescoSolrDataModel.getInstance().getAlfrescoPropertyFromSchemaField(fieldName);
-                            doc.removeFields(alfrescoFieldName);
-                            doc.addField(alfrescoFieldName, schemaField.getType().toObject(schemaField, sortedDocValues.lookupOrd(ordinal)));
-                        }
-                    }
-                    
-                    SortedSetDocValues sortedSetDocValues = context.getSearcher().getSlowAtomicReader().getSortedSetDocValues(fieldName);
-                    if(sortedSetDocValues != null)
-                    {
+                    leafValues[i] = fields.get(i).bind(leaf.reader());
+                }
+            }
+
+            Object[] docValues = new Object[leafValues.length];
+            for (int i = 0; i < leafValues.length; i++)
+            {
+                docValues[i] = leafValues[i] == null ? NO_VALUE : leafValues[i].get(docId - leaf.docBase);
+            }
+            values.put(docId, docValues);
+        }
+    }
+
+    /**
+     * Values of a doc values field within a segment.
+     */
+    @FunctionalInterface
+    interface LeafValues
+    {
+        Object get(int doc);
+    }
+
+    /**
+     * A requested doc values field, resolved once per request.
+     */
+    static class DocValueField
+    {
+        private final SchemaField schemaField;
+        private final String fieldName;
+        private final String alfrescoFieldName;
+        private final DocValuesType docValuesType;
+
+        DocValueField(SchemaField schemaField, String alfrescoFieldName, DocValuesType docValuesType)
+        {
+            this.schemaField = schemaField;
+            this.fieldName = schemaField.getName();
+            this.alfrescoFieldName = alfrescoFieldName;
+            this.docValuesType = docValuesType;
+        }
+
+        /**
+         * Binds the doc values of the field in the given segment.
+         * Segments without the field behave as the whole index view did: as if the field had no value.
+         *
+         * @return the values or null if the field is never transformed
+         */
+        LeafValues bind(LeafReader reader) throws IOException
+        {
+            FieldType type = schemaField.getType();
+            switch (docValuesType)
+            {
+                case SORTED:
+                    SortedDocValues sortedDocValues = orEmpty(reader.getSortedDocValues(fieldName), DocValues.emptySorted());
+                    return doc -> {
+                        int ordinal = sortedDocValues.getOrd(doc);
+                        return ordinal > -1 ? type.toObject(schemaField, sortedDocValues.lookupOrd(ordinal)) : NO_VALUE;
+                    };
+                case SORTED_SET:
+                    SortedSetDocValues sortedSetDocValues = orEmpty(reader.getSortedSetDocValues(fieldName), DocValues.emptySortedSet());
+                    return doc -> {
                         ArrayList<Object> newValues = new ArrayList<Object>();
-                        sortedSetDocValues.setDocument(docid);
+                        sortedSetDocValues.setDocument(doc);
                         long ordinal;
                         while ( (ordinal = sortedSetDocValues.nextOrd()) !=  SortedSetDocValues.NO_MORE_ORDS)
                         {
-                            newValues.add(schemaField.getType().toObject(schemaField, sortedSetDocValues.lookupOrd(ordinal)));       
+                            newValues.add(type.toObject(schemaField, sortedSetDocValues.lookupOrd(ordinal)));
                         }
-                        doc.removeFields(fieldName);
-                        String alfrescoFieldName = AlfrescoSolrDataModel.getInstance().getAlfrescoPropertyFromSchemaField(fieldName);
-                        doc.removeFields(alfrescoFieldName);
-                        doc.addField(alfrescoFieldName, newValues);
-                    }
-                    
-                    
-                    BinaryDocValues binaryDocValues = context.getSearcher().getSlowAtomicReader().getBinaryDocValues(fieldName);
-                    if(binaryDocValues != null)
+                        return newValues;
+                    };
+                case BINARY:
+                    BinaryDocValues binaryDocValues = orEmpty(reader.getBinaryDocValues(fieldName), DocValues.emptyBinary());
+                    return doc -> type.toObject(schemaField, binaryDocValues.get(doc));
+                case NUMERIC:
+                    if (type.getNumericType() == null)
                     {
-                        doc.removeFields(fieldName);
-                        String alfrescoFieldName = AlfrescoSolrDataModel.getInstance().getAlfrescoPropertyFromSchemaField(fieldName);
-                        doc.removeFields(alfrescoFieldName);
-                        doc.addField(alfrescoFieldName, schemaField.getType().toObject(schemaField, binaryDocValues.get(docid)));
+                        return null;
                     }
-                    
-                    if(schemaField.getType().getNumericType() != null)
-                    {
-                        NumericDocValues numericDocValues = context.getSearcher().getSlowAtomicReader().getNumericDocValues(fieldName);
-                        if(numericDocValues != null)
+                    NumericDocValues numericDocValues = orEmpty(reader.getNumericDocValues(fieldName), DocValues.emptyNumeric());
+                    return doc -> {
+                        switch(type.getNumericType())
                         {
-                            doc.removeFields(fieldName);
-                            String alfrescoFieldName = AlfrescoSolrDataModel.getInstance().getAlfrescoPropertyFromSchemaField(fieldName);
-                            doc.removeFields(alfrescoFieldName);
-                            switch(schemaField.getType().getNumericType())
-                            {
-                            case DOUBLE:
-                                doc.addField(alfrescoFieldName,  Double.longBitsToDouble(numericDocValues.get(docid)));
-                                break;
-                            case FLOAT:
-                                doc.addField(alfrescoFieldName,  Float.intBitsToFloat((int) numericDocValues.get(docid)));
-                                break;
-                            case INT:
-                                doc.addField(alfrescoFieldName, (int) numericDocValues.get(docid));
-                                break;
-                            case LONG:
-                                doc.addField(alfrescoFieldName, numericDocValues.get(docid));
-                                break;
-                            }
+                        case DOUBLE:
+                            return Double.longBitsToDouble(numericDocValues.get(doc));
+                        case FLOAT:
+                            return Float.intBitsToFloat((int) numericDocValues.get(doc));
+                        case INT:
+                            return (int) numericDocValues.get(doc);
+                        case LONG:
+                            return numericDocValues.get(doc);
+                        default:
+                            return NO_VALUE;
                         }
-                        
-                        SortedNumericDocValues sortedNumericDocValues = context.getSearcher().getSlowAtomicReader().getSortedNumericDocValues(fieldName);
-                        if(sortedNumericDocValues != null)
+                    };
+                case SORTED_NUMERIC:
+                    if (type.getNumericType() == null)
+                    {
+                        return null;
+                    }
+                    SortedNumericDocValues sortedNumericDocValues = orEmpty(reader.getSortedNumericDocValues(fieldName), DocValues.emptySortedNumeric(reader.maxDoc()));
+                    return doc -> {
+                        sortedNumericDocValues.setDocument(doc);
+                        ArrayList<Object> newValues = new ArrayList<Object>(sortedNumericDocValues.count());
+                        for(int i = 0; i < sortedNumericDocValues.count(); i++)
                         {
-                            sortedNumericDocValues.setDocument(docid);
-                            doc.removeFields(fieldName);
-                            String alfrescoFieldName = AlfrescoSolrDataModel.getInstance().getAlfrescoPropertyFromSchemaField(fieldName);
-                            doc.removeFields(alfrescoFieldName);
-                            ArrayList<Object> newValues = new ArrayList<Object>(sortedNumericDocValues.count()); 
-                            if(sortedNumericDocValues.count() > 0)
+                            switch(type.getNumericType())
                             {
-                               
-                                for(int i = 0; i < sortedNumericDocValues.count(); i++)
-                                {
-                                    switch(schemaField.getType().getNumericType())
-                                    {
-                                        case DOUBLE:
-                                            newValues.add(NumericUtils.sortableLongToDouble(sortedNumericDocValues.valueAt(i)));
-                                            break;
-                                        case FLOAT:
-                                            newValues.add(NumericUtils.sortableIntToFloat((int)sortedNumericDocValues.valueAt(i)));
-                                            break;
-                                        case INT:
-                                            newValues.add((int)sortedNumericDocValues.valueAt(i));
-                                            break;
-                                        case LONG:
-                                            newValues.add(sortedNumericDocValues.valueAt(i));
-                                            break;
-                                          
-                                    }
-                                }
+                                case DOUBLE:
+                                    newValues.add(NumericUtils.sortableLongToDouble(sortedNumericDocValues.valueAt(i)));
+                                    break;
+                                case FLOAT:
+                                    newValues.add(NumericUtils.sortableIntToFloat((int)sortedNumericDocValues.valueAt(i)));
+                                    break;
+                                case INT:
+                                    newValues.add((int)sortedNumericDocValues.valueAt(i));
+                                    break;
+                                case LONG:
+                                    newValues.add(sortedNumericDocValues.valueAt(i));
+                                    break;
                             }
-                            doc.addField(alfrescoFieldName, newValues);
-                            
                         }
-                    }
-                }
+                        return newValues;
+                    };
+                default:
+                    return null;
             }
         }
-        
-    }
 
-    
+        private static <T> T orEmpty(T docValues, T empty)
+        {
+            return docValues != null ? docValues : empty;
+        }
+    }
 }
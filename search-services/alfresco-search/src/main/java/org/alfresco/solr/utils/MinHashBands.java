@@ -0,0 +1,87 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.solr.utils;
+
+import static java.util.Collections.emptyList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.solr.common.util.Hash;
+
+/**
+ * Locality sensitive hashing of a document fingerprint.
+ * The MINHASH values of a document are split in bands of consecutive values and each band is hashed in a single token:
+ * two documents share a band token only if they share all the MINHASH values of that band.
+ * The same function is used at index time (MINHASH_BAND field) and at query time (banded FINGERPRINT query), so
+ * finding the candidates similar to a document requires a single term lookup for each band.
+ */
+public final class MinHashBands
+{
+    public static final String FIELD_MINHASH_BAND = "MINHASH_BAND";
+
+    private static final char SEPARATOR = ' ';
+    private static final int LOW_SEED = 17;
+    private static final int HIGH_SEED = 31;
+
+    private MinHashBands()
+    {
+    }
+
+    /**
+     * Computes the band tokens of a fingerprint.
+     * A trailing narrow band is wrapped around and padded with the first values, like the FINGERPRINT query does.
+     *
+     * @param minHashes the MINHASH values of the document, in index order.
+     * @param rowsPerBand the number of MINHASH values in each band.
+     * @return the band tokens, each one prefixed by the index of its band, or an empty list if banding is disabled.
+     */
+    public static List<String> bands(List<?> minHashes, int rowsPerBand)
+    {
+        if (rowsPerBand < 1 || minHashes == null || minHashes.isEmpty())
+        {
+            return emptyList();
+        }
+
+        int size = minHashes.size();
+        int bandCount = (size + rowsPerBand - 1) / rowsPerBand;
+        List<String> bands = new ArrayList<>(bandCount);
+        StringBuilder band = new StringBuilder();
+        for (int index = 0; index < bandCount; index++)
+        {
+            band.setLength(0);
+            for (int row = 0; row < rowsPerBand; row++)
+            {
+                band.append(minHashes.get((index * rowsPerBand + row) % size)).append(SEPARATOR);
+            }
+            long hash = ((long) Hash.murmurhash3_x86_32(band, 0, band.length(), HIGH_SEED) << 32)
+                    | (Hash.murmurhash3_x86_32(band, 0, band.length(), LOW_SEED) & 0xFFFFFFFFL);
+            bands.add(Integer.toHexString(index) + "_" + Long.toHexString(hash));
+        }
+        return bands;
+    }
+}
@@ -168,8 +168,9 @@ public class AlfrescoSolrHighlighter extends DefaultSolrHighlighter implements P
 	 * The input requestFieldName parameter is the stored field mentioned above; in case {@link HighlightParams#FIELD_MATCH}
 	 * is set to true only query terms aligning with the field being highlighted will in turn be highlighted.
 	 *
-	 * The reverse field mapping you'll find in this method is because the stored field is not indexed, and therefore
-	 * there won't be any "alignment" as described above, never.
+	 * The reverse field mapping you'll find in this method is because the stored field is not searched (content stored
+	 * fields, when indexed, are indexed only for collecting the term vectors used in highlighting), and therefore there
+	 * won't be any "alignment" as described above, never.
 	 *
 	 * So starting from the stored field we need to query {@link AlfrescoSolrDataModel} for retrieving the corresponding
 	 * cross-locale field (text|mltext@m|s__t@) and inject it into the {@link QueryScorer} that is in charge to score only
@@ -77,7 +77,11 @@ import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.XPathExpressionException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -257,6 +261,19 @@ public abstract class AbstractAlfrescoSolrIT implements SolrTestFiles, AlfrescoS
      */
     @Deprecated
     public static void initAlfrescoCore(String schema) throws Exception
+    {
+        initAlfrescoCore(schema, null);
+    }
+
+    /**
+     * @deprecated as testHarness is used
+     * Creates a Solr Alfresco test harness, adding the given properties to the solrcore.properties of the core.
+     * @param schema
+     * @param coreProperties
+     * @throws Exception
+     */
+    @Deprecated
+    public static void initAlfrescoCore(String schema, Properties coreProperties) throws Exception
     {
 
         LOG.info("##################################### init Alfresco core ##############");
@@ -282,6 +299,7 @@ public abstract class AbstractAlfrescoSolrIT implements SolrTestFiles, AlfrescoS
             templateConf = testExecutionSolrHome + "/templates/%s/conf/";
 
             copyTestFiles();
+            updateSolrCoreProperties(coreProperties);
             createAlfrescoCore(schema);
         }
         LOG.info("####initCore end");
@@ -295,6 +313,24 @@ public abstract class AbstractAlfrescoSolrIT implements SolrTestFiles, AlfrescoS
     }
 
 
+    private static void updateSolrCoreProperties(Properties additionalProperties) throws IOException
+    {
+        if (additionalProperties != null)
+        {
+            Path solrcoreProperties = Paths.get(testSolrConf, "solrcore.properties");
+            Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(solrcoreProperties))
+            {
+                properties.load(in);
+            }
+            properties.putAll(additionalProperties);
+            try (OutputStream out = Files.newOutputStream(solrcoreProperties))
+            {
+                properties.store(out, null);
+            }
+        }
+    }
+
     /**
      * @deprecated as testHarness is used
      */
@@ -0,0 +1,59 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.solr;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the query strings built by {@link Cloud}.
+ */
+public class CloudTest
+{
+    private final Cloud cloud = new Cloud();
+
+    @Test
+    public void termsQueryListsAllTheValues()
+    {
+        assertEquals("{!terms f=DBID}1,2,3", cloud.getTermsQuery("DBID", asList(1L, 2L), emptyList(), asList(3L)));
+    }
+
+    @Test
+    public void termsQueryWithoutValuesIsEmpty()
+    {
+        assertEquals("{!terms f=DBID}", cloud.getTermsQuery("DBID", emptyList()));
+    }
+
+    @Test
+    public void orQueryListsAllTheValues()
+    {
+        assertEquals("DBID:\"1\" OR DBID:\"3\"", cloud.getQuery("DBID", SolrInformationServer.OR, asList(1L), asList(3L)));
+    }
+}
@@ -28,8 +28,11 @@ package org.alfresco.solr;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 import org.alfresco.service.namespace.QName;
+import org.apache.solr.common.util.NamedList;
 import org.junit.Test;
 
 /**
@@ -53,4 +56,24 @@ public class SolrDataModelTest
         Long actualId = AlfrescoSolrDataModel.parseTransactionId(id);
         assertEquals(expectedId, actualId);
     }
+
+    @Test
+    public void fieldMappingsAreCachedUntilTheModelsChange()
+    {
+        AlfrescoSolrDataModel dataModel = AlfrescoSolrDataModel.getInstance();
+        QName property = QName.createQName("{http://www.alfresco.org/test/datamodel}cachedProperty");
+
+        AlfrescoSolrDataModel.IndexedField first = dataModel.getIndexedFieldNamesForProperty(property);
+        long hits = (Long) dataModel.getFieldMappingsStatistics().get("hits");
+        long version = (Long) dataModel.getFieldMappingsStatistics().get("modelVersion");
+
+        assertSame(first, dataModel.getIndexedFieldNamesForProperty(property));
+        assertEquals(hits + 1, (long) (Long) dataModel.getFieldMappingsStatistics().get("hits"));
+
+        dataModel.invalidateFieldMappings();
+
+        NamedList<Object> statistics = dataModel.getFieldMappingsStatistics();
+        assertEquals(version + 1, (long) (Long) statistics.get("modelVersion"));
+        assertNotSame(first, dataModel.getIndexedFieldNamesForProperty(property));
+    }
 }
@@ -61,19 +61,28 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongPredicate;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -84,11 +93,34 @@ import org.alfresco.repo.search.adaptor.QueryConstants;
 import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
 import org.alfresco.service.cmr.dictionary.PropertyDefinition;
 import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.solr.client.AclChangeSet;
+import org.alfresco.solr.client.AclReaders;
 import org.alfresco.solr.client.Node;
 import org.alfresco.solr.client.NodeMetaData;
 import org.alfresco.solr.client.NodeMetaDataParameters;
 import org.alfresco.solr.client.SOLRAPIClient;
 import org.alfresco.solr.client.StringPropertyValue;
+import org.alfresco.util.Pair;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LegacyLongField;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.LegacyNumericUtils;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrInputDocument;
 import org.apache.solr.common.params.CommonParams;
@@ -100,14 +132,20 @@ import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.request.SolrRequestHandler;
 import org.apache.solr.response.BasicResultContext;
 import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.SchemaField;
 import org.apache.solr.search.DocList;
 import org.apache.solr.search.DocSlice;
+import org.apache.solr.search.SolrIndexSearcher;
 import org.apache.solr.update.AddUpdateCommand;
 import org.apache.solr.update.processor.UpdateRequestProcessor;
 import org.apache.solr.update.processor.UpdateRequestProcessorChain;
+import org.apache.solr.util.RefCounted;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
@@ -566,4 +604,452 @@ public class SolrInformationServerTest
 		};
 		assertEquals(expectedResult, actualResult);
 	}
+
+	@Test
+	public void txnTimeCacheEvictsEldestAndPurgesOldEntries()
+	{
+		SolrInformationServer.TxnTimeCache cache = new SolrInformationServer.TxnTimeCache(3);
+		cache.put(1, 100);
+		cache.put(2, 200);
+		cache.put(3, 300);
+		cache.put(2, 350);
+		cache.put(4, 400);
+
+		assertFalse(cache.contains(1));
+		assertTrue(cache.contains(2));
+		assertEquals(3, cache.size());
+
+		cache.purge(380);
+
+		assertFalse(cache.contains(2));
+		assertFalse(cache.contains(3));
+		assertTrue(cache.contains(4));
+
+		cache.remove(4);
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void txnTimeCacheIgnoresTheEntriesOfRemovedTxns()
+	{
+		SolrInformationServer.TxnTimeCache cache = new SolrInformationServer.TxnTimeCache(3);
+		cache.put(1, 100);
+		cache.put(2, 200);
+		cache.put(3, 300);
+		cache.remove(2);
+		cache.put(2, 250);
+		cache.put(4, 400);
+
+		assertFalse(cache.contains(1));
+		assertTrue(cache.contains(2));
+		assertTrue(cache.contains(3));
+		assertTrue(cache.contains(4));
+		assertEquals(3, cache.size());
+
+		cache.put(5, 500);
+
+		assertFalse(cache.contains(3));
+		assertTrue(cache.contains(2));
+		assertTrue(cache.contains(4));
+		assertTrue(cache.contains(5));
+
+		cache.purge(300);
+		assertFalse(cache.contains(2));
+		assertEquals(2, cache.size());
+
+		cache.put(6, 600);
+		cache.put(7, 700);
+
+		assertFalse(cache.contains(4));
+		assertTrue(cache.contains(5));
+		assertTrue(cache.contains(6));
+		assertTrue(cache.contains(7));
+		assertEquals(3, cache.size());
+	}
+
+	@Test
+	public void outdatedContentWindowsOfSegmentsAreMergedIntoTheLowestOne() throws Exception
+	{
+		try (Directory directory = new RAMDirectory())
+		{
+			try (IndexWriter writer = new IndexWriter(directory,
+					new IndexWriterConfig(new KeywordAnalyzer()).setMergePolicy(NoMergePolicy.INSTANCE)))
+			{
+				// One segment per commit
+				for (long[] segment : new long[][] {{1000, 1001, 2000}, {1600, 1200}})
+				{
+					for (long txnId : segment)
+					{
+						Document document = new Document();
+						document.add(new NumericDocValuesField(QueryConstants.FIELD_INTXID, txnId));
+						writer.addDocument(document);
+					}
+					writer.commit();
+				}
+			}
+
+			try (DirectoryReader reader = DirectoryReader.open(directory))
+			{
+				List<SolrInformationServer.OutdatedContentCollector> collectors = new ArrayList<>();
+				for (LeafReaderContext context : reader.leaves())
+				{
+					SolrInformationServer.OutdatedContentCollector collector =
+							new SolrInformationServer.OutdatedContentCollector(txnId -> txnId == 1001, 500);
+					LeafCollector leafCollector = collector.getLeafCollector(context);
+					for (int doc = 0; doc < context.reader().maxDoc(); doc++)
+					{
+						leafCollector.collect(doc);
+					}
+					collectors.add(collector);
+				}
+
+				assertEquals(1500, collectors.get(0).getTxnCeil());
+				assertEquals(1700, collectors.get(1).getTxnCeil());
+
+				collectors.forEach(collector -> collector.lowerTxnCeil(1500));
+
+				assertEquals(Arrays.asList(1000L), Arrays.stream(collectors.get(0).getTxnIds().toArray()).boxed().collect(Collectors.toList()));
+				assertEquals(Arrays.asList(0), Arrays.stream(collectors.get(0).getDocs().toArray()).boxed().collect(Collectors.toList()));
+				assertEquals(Arrays.asList(1200L), Arrays.stream(collectors.get(1).getTxnIds().toArray()).boxed().collect(Collectors.toList()));
+				assertEquals(Arrays.asList(4), Arrays.stream(collectors.get(1).getDocs().toArray()).boxed().collect(Collectors.toList()));
+			}
+		}
+	}
+
+	@Test
+	public void outdatedContentIsCollectedFromOutOfOrderAndDuplicateTxnIds() throws Exception
+	{
+		// doc:          0     1     2     3     4     5     6    7     8
+		long[] txnIds = {3000, 1000, 1000, 1200, 1001, 1000, 800, 1400, 800};
+
+		SolrInformationServer.OutdatedContentCollector collector = collectOutdatedContent(txnIds, txnId -> txnId == 1001, 500);
+
+		assertEquals(1300, collector.getTxnCeil());
+		assertEquals(Arrays.asList(1000L, 1000L, 1200L, 1000L, 800L, 800L), Arrays.stream(collector.getTxnIds().toArray()).boxed().collect(Collectors.toList()));
+		assertEquals(Arrays.asList(1, 2, 3, 5, 6, 8), Arrays.stream(collector.getDocs().toArray()).boxed().collect(Collectors.toList()));
+	}
+
+	@Test
+	public void outdatedContentIsCompactedWhileTheTxnFloorMovesDown() throws Exception
+	{
+		// Descending txn ids: the window moves down with every document, well past the first compaction
+		long[] txnIds = new long[2000];
+		for (int doc = 0; doc < txnIds.length; doc++)
+		{
+			txnIds[doc] = 30000 - doc * 10;
+		}
+
+		SolrInformationServer.OutdatedContentCollector collector = collectOutdatedContent(txnIds, txnId -> false, 100);
+
+		assertEquals(10110, collector.getTxnCeil());
+		List<Integer> expectedDocs = new ArrayList<>();
+		List<Long> expectedTxnIds = new ArrayList<>();
+		for (int doc = 1990; doc < 2000; doc++)
+		{
+			expectedDocs.add(doc);
+			expectedTxnIds.add(txnIds[doc]);
+		}
+		assertEquals(expectedTxnIds, Arrays.stream(collector.getTxnIds().toArray()).boxed().collect(Collectors.toList()));
+		assertEquals(expectedDocs, Arrays.stream(collector.getDocs().toArray()).boxed().collect(Collectors.toList()));
+	}
+
+	private SolrInformationServer.OutdatedContentCollector collectOutdatedContent(long[] txnIds, LongPredicate isProcessed, long window) throws IOException
+	{
+		try (Directory directory = new RAMDirectory())
+		{
+			try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new KeywordAnalyzer())))
+			{
+				for (long txnId : txnIds)
+				{
+					Document document = new Document();
+					document.add(new NumericDocValuesField(QueryConstants.FIELD_INTXID, txnId));
+					writer.addDocument(document);
+				}
+			}
+
+			try (DirectoryReader reader = DirectoryReader.open(directory))
+			{
+				SolrInformationServer.OutdatedContentCollector collector =
+						new SolrInformationServer.OutdatedContentCollector(isProcessed, window);
+				LeafReaderContext context = reader.leaves().get(0);
+				LeafCollector leafCollector = collector.getLeafCollector(context);
+				for (int doc = 0; doc < context.reader().maxDoc(); doc++)
+				{
+					leafCollector.collect(doc);
+				}
+				return collector;
+			}
+		}
+	}
+
+	@Test
+	public void dbIdsAreCollectedFromDocValuesOrFromTheStoredId() throws Exception
+	{
+		try (Directory directory = new RAMDirectory())
+		{
+			try (IndexWriter writer = new IndexWriter(directory,
+					new IndexWriterConfig(new KeywordAnalyzer()).setMergePolicy(NoMergePolicy.INSTANCE)))
+			{
+				for (long dbId : new long[] {10, 11})
+				{
+					Document document = new Document();
+					document.add(new NumericDocValuesField(QueryConstants.FIELD_DBID, dbId));
+					writer.addDocument(document);
+				}
+				writer.commit();
+
+				// A segment without the DBID doc values
+				Document document = new Document();
+				document.add(new StoredField(QueryConstants.FIELD_SOLR4_ID, AlfrescoSolrDataModel.getNodeDocumentId("", 12L)));
+				writer.addDocument(document);
+				writer.commit();
+			}
+
+			try (DirectoryReader reader = DirectoryReader.open(directory))
+			{
+				SolrInformationServer.DbIdCollector collector = new SolrInformationServer.DbIdCollector();
+				new IndexSearcher(reader).search(new MatchAllDocsQuery(), collector);
+
+				long[] dbIds = collector.getDbIds().toArray();
+				Arrays.sort(dbIds);
+				assertEquals(Arrays.asList(10L, 11L, 12L), Arrays.stream(dbIds).boxed().collect(Collectors.toList()));
+			}
+		}
+	}
+
+	@Test
+	public void pathsOfDescendantsOfMovedNodesAreDerivedFromTheIndex()
+	{
+		String cm = "{http://www.alfresco.org/model/content/1.0}";
+
+		NodeMetaData moved = new NodeMetaData();
+		moved.setNodeRef(new NodeRef("workspace://SpacesStore/p"));
+		moved.setPaths(Arrays.asList(new Pair<>("/" + cm + "company_home/" + cm + "b/" + cm + "p", null)));
+		moved.setAncestorPaths(Arrays.asList("/r/ch/b"));
+		moved.setNamePaths(Arrays.asList(Arrays.asList("Company Home", "B", "P")));
+		moved.setAncestors(Set.of(new NodeRef("workspace://SpacesStore/r"), new NodeRef("workspace://SpacesStore/ch"), new NodeRef("workspace://SpacesStore/b")));
+
+		Document descendant = new Document();
+		descendant.add(new StoredField(QueryConstants.FIELD_DBID, 10L));
+		descendant.add(new StoredField(QueryConstants.FIELD_LID, "workspace://SpacesStore/d"));
+		descendant.add(new StoredField(QueryConstants.FIELD_INTXID, 5L));
+		descendant.add(new StoredField(QueryConstants.FIELD_ACLID, 7L));
+		descendant.add(new StoredField(QueryConstants.FIELD_PATH, "/" + cm + "company_home/" + cm + "a/" + cm + "p/" + cm + "s/" + cm + "d"));
+		Stream.of("0/r", "1/r/ch", "2/r/ch/a", "3/r/ch/a/p", "4/r/ch/a/p/s", "F/r/ch/a/p/s")
+				.forEach(apath -> descendant.add(new StoredField(QueryConstants.FIELD_APATH, apath)));
+		Stream.of("0/Company Home", "1/Company Home/A", "F/Company Home/A/P/S/D")
+				.forEach(npath -> descendant.add(new StoredField(QueryConstants.FIELD_NPATH, npath)));
+
+		NodeMetaData relocated = SolrInformationServer.relocatedDescendant(moved, descendant, Set.of()).orElseThrow();
+
+		assertEquals(10L, relocated.getId());
+		assertEquals(5L, relocated.getTxnId());
+		assertEquals(7L, relocated.getAclId());
+		assertEquals(new NodeRef("workspace://SpacesStore/d"), relocated.getNodeRef());
+		assertEquals("/" + cm + "company_home/" + cm + "b/" + cm + "p/" + cm + "s/" + cm + "d", relocated.getPaths().get(0).getFirst());
+		assertEquals(Arrays.asList("/r/ch/b/p/s"), relocated.getAncestorPaths());
+		assertEquals(Arrays.asList(Arrays.asList("Company Home", "B", "P", "S", "D")), relocated.getNamePaths());
+		assertEquals(Stream.of("r", "ch", "b", "p", "s").map(id -> new NodeRef("workspace://SpacesStore/" + id)).collect(Collectors.toSet()),
+				relocated.getAncestors());
+
+		// A second path makes the descendant ambiguous
+		descendant.add(new StoredField(QueryConstants.FIELD_PATH, "/" + cm + "company_home/" + cm + "c/" + cm + "d"));
+		assertEquals(Optional.empty(), SolrInformationServer.relocatedDescendant(moved, descendant, Set.of()));
+	}
+
+	@Test
+	public void descendantsBelowAnotherPendingParentAreLeftToTheRepository()
+	{
+		String cm = "{http://www.alfresco.org/model/content/1.0}";
+
+		// P is moved from A to B, and S (a child of P) is moved from P to C, by two cascade batches of the same round
+		NodeMetaData movedP = new NodeMetaData();
+		movedP.setNodeRef(new NodeRef("workspace://SpacesStore/p"));
+		movedP.setPaths(Arrays.asList(new Pair<>("/" + cm + "company_home/" + cm + "b/" + cm + "p", null)));
+		movedP.setAncestorPaths(Arrays.asList("/r/ch/b"));
+		movedP.setNamePaths(Arrays.asList(Arrays.asList("Company Home", "B", "P")));
+		movedP.setAncestors(Set.of(new NodeRef("workspace://SpacesStore/r"), new NodeRef("workspace://SpacesStore/ch"), new NodeRef("workspace://SpacesStore/b")));
+
+		// D, a child of S, still has the stored paths from before both moves
+		Document descendant = new Document();
+		descendant.add(new StoredField(QueryConstants.FIELD_DBID, 10L));
+		descendant.add(new StoredField(QueryConstants.FIELD_LID, "workspace://SpacesStore/d"));
+		descendant.add(new StoredField(QueryConstants.FIELD_INTXID, 5L));
+		descendant.add(new StoredField(QueryConstants.FIELD_ACLID, 7L));
+		descendant.add(new StoredField(QueryConstants.FIELD_PATH, "/" + cm + "company_home/" + cm + "a/" + cm + "p/" + cm + "s/" + cm + "d"));
+		Stream.of("0/r", "1/r/ch", "2/r/ch/a", "3/r/ch/a/p", "4/r/ch/a/p/s", "F/r/ch/a/p/s")
+				.forEach(apath -> descendant.add(new StoredField(QueryConstants.FIELD_APATH, apath)));
+		Stream.of("0/Company Home", "1/Company Home/A", "F/Company Home/A/P/S/D")
+				.forEach(npath -> descendant.add(new StoredField(QueryConstants.FIELD_NPATH, npath)));
+
+		// The path of D relative to P goes through S, whose cascade is pending: whichever batch runs first, D is
+		// left to the Repository by the cascade of P
+		assertEquals(Optional.empty(), SolrInformationServer.relocatedDescendant(movedP, descendant, Set.of("p", "s")));
+
+		// The pending parents above P, and P itself, do not make the relative path stale
+		assertTrue(SolrInformationServer.relocatedDescendant(movedP, descendant, Set.of("a", "p")).isPresent());
+	}
+
+	@Test
+	public void nodesOfAFailingMetadataBatchAreRetriedOneByOne() throws Exception
+	{
+		// The Repository fails on node 2, so the whole batch of nodes 1 to 3 fails
+		when(client.getNodesMetaData(any(NodeMetaDataParameters.class))).thenAnswer(invocation -> {
+			List<Long> nodeIds = invocation.getArgument(0, NodeMetaDataParameters.class).getNodeIds();
+			if (nodeIds.contains(2L))
+			{
+				throw new IOException("Unable to get the metadata of node 2");
+			}
+			return nodeIds.stream()
+					.map(nodeId -> {
+						NodeMetaData nodeMetaData = new NodeMetaData();
+						nodeMetaData.setId(nodeId);
+						return nodeMetaData;
+					})
+					.collect(Collectors.toList());
+		});
+
+		List<Long> fetched = Collections.synchronizedList(new ArrayList<>());
+		ForkJoinPool pool = new ForkJoinPool(2);
+		try
+		{
+			infoServer.forEachBatchOfNodesMetaData(pool, new long[] {3, 1, 2}, NodeMetaDataParameters::new,
+					batch -> batch.forEach(nodeMetaData -> fetched.add(nodeMetaData.getId())));
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+
+		// Only the failing node is skipped
+		assertEquals(Arrays.asList(1L, 3L), fetched);
+		verify(client, times(4)).getNodesMetaData(any(NodeMetaDataParameters.class));
+	}
+
+	@Test
+	public void txnsInIndexSkipsDeletedAndMissingIdsAndAnswersCachedIdsWithoutSearching() throws Exception
+	{
+		try (Directory directory = new RAMDirectory())
+		{
+			try (IndexWriter writer = new IndexWriter(directory,
+					new IndexWriterConfig(new KeywordAnalyzer()).setMergePolicy(NoMergePolicy.INSTANCE)))
+			{
+				// One segment per commit
+				for (long[] segment : new long[][] {{10, 20, 30}, {5, 40}})
+				{
+					for (long txnId : segment)
+					{
+						Document document = new Document();
+						document.add(new StringField("id", "TX-" + txnId, Field.Store.NO));
+						document.add(new LegacyLongField(QueryConstants.FIELD_TXID, txnId, Field.Store.NO));
+						writer.addDocument(document);
+					}
+					writer.commit();
+				}
+				writer.deleteDocuments(new Term("id", "TX-30"));
+				writer.commit();
+			}
+
+			try (DirectoryReader reader = DirectoryReader.open(directory))
+			{
+				FieldType fieldType = mock(FieldType.class);
+				doAnswer(invocation -> {
+					BytesRefBuilder term = invocation.getArgument(1);
+					LegacyNumericUtils.longToPrefixCoded(Long.parseLong(invocation.getArgument(0).toString()), 0, term);
+					return null;
+				}).when(fieldType).readableToIndexed(any(), any());
+				SchemaField schemaField = mock(SchemaField.class);
+				when(schemaField.getType()).thenReturn(fieldType);
+				IndexSchema schema = mock(IndexSchema.class);
+				when(schema.getField(QueryConstants.FIELD_TXID)).thenReturn(schemaField);
+
+				SolrIndexSearcher searcher = mock(SolrIndexSearcher.class);
+				when(searcher.getSchema()).thenReturn(schema);
+				when(searcher.getTopReaderContext()).thenReturn(reader.getContext());
+				when(core.getSearcher()).thenReturn(new RefCounted<SolrIndexSearcher>(searcher)
+				{
+					@Override
+					protected void close()
+					{
+					}
+				});
+
+				assertEquals(new HashSet<>(Arrays.asList(40L, 10L, 5L)),
+						infoServer.txnsInIndex(Arrays.asList(40L, 30L, 99L, 10L, 5L), true));
+
+				// All the ids have been cached as processed, so the index is not searched again
+				assertEquals(new HashSet<>(Arrays.asList(99L, 30L)), infoServer.txnsInIndex(Arrays.asList(99L, 30L), false));
+				assertTrue(infoServer.txnInIndex(40L, false));
+				verify(core, times(1)).getSearcher();
+			}
+		}
+	}
+
+	@Test
+	public void aclChangeSetsBatchIsWrittenWithASingleStateDocForTheLatestChangeSet() throws Exception
+	{
+		NamedList<Object> noState = new NamedList<>();
+		noState.add(RESPONSE_DEFAULT_ID, null);
+		when(response.getValues()).thenReturn(noState);
+
+		List<AclReaders> readers = Arrays.asList(
+				new AclReaders(10, Arrays.asList("GROUP_EVERYONE"), Arrays.asList(), 1, ""),
+				new AclReaders(11, Arrays.asList("jbloggs"), Arrays.asList("abeecher"), 3, ""));
+		List<AclChangeSet> changeSets = Arrays.asList(
+				new AclChangeSet(1, 100, 1),
+				new AclChangeSet(3, 200, 1),
+				new AclChangeSet(2, 200, 0));
+
+		infoServer.registerTrackerThread();
+		try
+		{
+			infoServer.indexAclChangeSets(readers, changeSets);
+		}
+		finally
+		{
+			infoServer.unregisterTrackerThread();
+		}
+
+		ArgumentCaptor<AddUpdateCommand> commands = ArgumentCaptor.forClass(AddUpdateCommand.class);
+		verify(updateRequestProcessor, times(6)).processAdd(commands.capture());
+		verify(updateRequestProcessorChain, times(1)).createProcessor(any(), any());
+		verify(updateRequestProcessor).finish();
+
+		List<SolrInputDocument> states = commands.getAllValues().stream()
+				.map(command -> command.solrDoc)
+				.filter(doc -> "State".equals(doc.getFieldValue(QueryConstants.FIELD_DOC_TYPE)))
+				.collect(Collectors.toList());
+		assertEquals(1, states.size());
+		// Ordered by commit time, then by id
+		assertEquals(3L, states.get(0).getFieldValue(QueryConstants.FIELD_S_ACLTXID));
+		assertEquals(200L, states.get(0).getFieldValue(QueryConstants.FIELD_S_ACLTXCOMMITTIME));
+	}
+
+	@Test
+	public void aclChangeSetsBatchFailureStopsBeforeTheStateDoc() throws Exception
+	{
+		doNothing().doThrow(new IOException("Update failure")).when(updateRequestProcessor).processAdd(any());
+
+		List<AclReaders> readers = Arrays.asList(
+				new AclReaders(10, Arrays.asList("GROUP_EVERYONE"), Arrays.asList(), 1, ""),
+				new AclReaders(11, Arrays.asList("jbloggs"), Arrays.asList(), 1, ""));
+
+		infoServer.registerTrackerThread();
+		try
+		{
+			infoServer.indexAclChangeSets(readers, Arrays.asList(new AclChangeSet(1, 100, 2)));
+			fail("The update failure should have been rethrown");
+		}
+		catch (IOException expected)
+		{
+			// The processor is released and the tracker state is not written
+			verify(updateRequestProcessor, times(2)).processAdd(any());
+			verify(updateRequestProcessor).finish();
+			verify(handler, never()).handleRequest(any(), any());
+		}
+		finally
+		{
+			infoServer.unregisterTrackerThread();
+		}
+	}
 }
@@ -0,0 +1,285 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.solr.cache;
+
+import static org.alfresco.repo.search.adaptor.QueryConstants.FIELD_ACLID;
+import static org.alfresco.repo.search.adaptor.QueryConstants.FIELD_DOC_TYPE;
+import static org.alfresco.repo.search.adaptor.QueryConstants.FIELD_INACLTXID;
+import static org.alfresco.repo.search.adaptor.QueryConstants.FIELD_READER;
+import static org.alfresco.repo.search.adaptor.QueryConstants.FIELD_SOLR4_ID;
+import static org.alfresco.repo.search.adaptor.QueryConstants.FIELD_VERSION;
+import static org.alfresco.solr.AlfrescoSolrUtils.addNode;
+import static org.alfresco.solr.AlfrescoSolrUtils.createGUID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.solr.AbstractAlfrescoSolrIT;
+import org.alfresco.solr.AlfrescoSolrDataModel;
+import org.alfresco.solr.SolrInformationServer;
+import org.alfresco.solr.query.SolrAuthorityQuery;
+import org.alfresco.solr.query.SolrAuthoritySetQuery;
+import org.alfresco.solr.query.SolrReaderQuery;
+import org.apache.lucene.search.Query;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.search.DocIterator;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.SolrCache;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.search.WrappedQuery;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.CommitUpdateCommand;
+import org.apache.solr.update.DeleteUpdateCommand;
+import org.apache.solr.util.RefCounted;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Checks that the authority cache values regenerated one segment at a time are the same as the ones computed from
+ * scratch on the new searcher.
+ */
+public class AuthorityCacheRegeneratorIT extends AbstractAlfrescoSolrIT
+{
+    private static final String[] OWNERS = {"joel", "bob", "GROUP_A", "mary"};
+
+    /** Each ACL is read by a single authority */
+    private static final String[] ACL_READERS = {"joel", "GROUP_A", "GROUP_B"};
+
+    private static final List<Query> AUTHORITY_QUERIES = Arrays.asList(
+            new SolrAuthorityQuery("joel"),
+            new SolrAuthorityQuery("bob"),
+            new SolrAuthorityQuery("GROUP_A"),
+            new SolrAuthoritySetQuery("|bob|GROUP_A"),
+            new SolrAuthoritySetQuery("|mary|GROUP_B"));
+
+    private static long nextDbId = 1000;
+
+    @BeforeClass
+    public static void loadAclsAndNodes() throws Exception
+    {
+        initAlfrescoCore("schema.xml");
+
+        // The first segment holds all the ACLs and is the largest one
+        for (int aclId = 1; aclId <= ACL_READERS.length; aclId++)
+        {
+            addAcl(aclId, ACL_READERS[aclId - 1]);
+        }
+        addNodes(30);
+        commit();
+    }
+
+    @Test
+    public void newSegmentsAreEvaluatedOnTheirOwn() throws Exception
+    {
+        RefCounted<SolrIndexSearcher> oldSearcher = getCore().getSearcher();
+        try
+        {
+            addNodes(6);
+            commit();
+            addNodes(5);
+            commit();
+
+            assertRegeneratedAsFromScratch(oldSearcher.get());
+        }
+        finally
+        {
+            oldSearcher.decref();
+        }
+    }
+
+    @Test
+    public void deletedDocsAreDroppedFromTheSegmentsCarriedOver() throws Exception
+    {
+        addNodes(4);
+        commit();
+
+        RefCounted<SolrIndexSearcher> oldSearcher = getCore().getSearcher();
+        try
+        {
+            // Nodes of the first segment and of the last one
+            deleteNode(1000);
+            deleteNode(1001);
+            deleteNode(nextDbId - 1);
+            addNodes(3);
+            commit();
+
+            assertRegeneratedAsFromScratch(oldSearcher.get());
+        }
+        finally
+        {
+            oldSearcher.decref();
+        }
+    }
+
+    @Test
+    public void mergedSegmentsAreEvaluatedAgain() throws Exception
+    {
+        addNodes(3);
+        commit();
+        addNodes(4);
+        commit();
+
+        RefCounted<SolrIndexSearcher> oldSearcher = getCore().getSearcher();
+        try
+        {
+            assertTrue(oldSearcher.get().getTopReaderContext().leaves().size() > 2);
+
+            // Merges the smaller segments, leaving the one with the ACLs
+            CommitUpdateCommand merge = new CommitUpdateCommand(req(), true);
+            merge.maxOptimizeSegments = 2;
+            getCore().getUpdateHandler().commit(merge);
+
+            assertRegeneratedAsFromScratch(oldSearcher.get());
+        }
+        finally
+        {
+            oldSearcher.decref();
+        }
+    }
+
+    @Test
+    public void groupsOnlyReadTheDocsOfTheirAcls() throws Exception
+    {
+        RefCounted<SolrIndexSearcher> searcher = getCore().getSearcher();
+        try
+        {
+            // GROUP_A owns some nodes, but only a user can read the nodes it owns
+            DocSet readable = fromScratch(searcher.get(), new SolrAuthorityQuery("GROUP_A"));
+            DocSet aclReadable = fromScratch(searcher.get(), new SolrReaderQuery("GROUP_A"));
+            assertTrue(aclReadable.size() > 0);
+            assertEquals(docs(aclReadable), docs(readable));
+        }
+        finally
+        {
+            searcher.decref();
+        }
+    }
+
+    /**
+     * Regenerates the values of the old searcher for the current one, and checks they are the same as the ones
+     * computed from scratch. The values must be regenerated one segment at a time, not by running the queries again.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private void assertRegeneratedAsFromScratch(SolrIndexSearcher oldSearcher) throws Exception
+    {
+        RefCounted<SolrIndexSearcher> newSearcher = getCore().getSearcher();
+        try
+        {
+            for (Query authQuery : AUTHORITY_QUERIES)
+            {
+                SegmentedBitDocSet oldDocs = SegmentedBitDocSet.of(fromScratch(oldSearcher, authQuery), oldSearcher);
+
+                SolrCache newCache = mock(SolrCache.class);
+                new AuthorityCacheRegenerator().regenerateItem(newSearcher.get(), newCache, null, authQuery, oldDocs);
+
+                ArgumentCaptor<Object> regenerated = ArgumentCaptor.forClass(Object.class);
+                verify(newCache).put(eq(authQuery), regenerated.capture());
+                assertTrue(regenerated.getValue() instanceof SegmentedBitDocSet);
+                assertEquals(authQuery.toString(), docs(fromScratch(newSearcher.get(), authQuery)), docs((DocSet) regenerated.getValue()));
+            }
+        }
+        finally
+        {
+            newSearcher.decref();
+        }
+    }
+
+    /**
+     * @return the docs readable by the authorities, computed without any cache as the authority scorers do on a cache miss
+     */
+    private static DocSet fromScratch(SolrIndexSearcher searcher, Query authQuery) throws IOException
+    {
+        WrappedQuery uncached = new WrappedQuery(authQuery);
+        uncached.setCache(false);
+        return searcher.getDocSet(uncached);
+    }
+
+    private static List<Integer> docs(DocSet docSet)
+    {
+        List<Integer> docs = new ArrayList<>();
+        for (DocIterator it = docSet.iterator(); it.hasNext(); /**/)
+        {
+            docs.add(it.nextDoc());
+        }
+        return docs;
+    }
+
+    private static void addAcl(long aclId, String... readers) throws IOException
+    {
+        AddUpdateCommand aclCmd = new AddUpdateCommand(req());
+        aclCmd.overwrite = true;
+        SolrInputDocument aclSol = new SolrInputDocument();
+        aclSol.addField(FIELD_SOLR4_ID, AlfrescoSolrDataModel.getAclDocumentId(AlfrescoSolrDataModel.DEFAULT_TENANT, aclId));
+        aclSol.addField(FIELD_VERSION, "0");
+        aclSol.addField(FIELD_ACLID, aclId);
+        aclSol.addField(FIELD_INACLTXID, "1");
+        for (String reader : readers)
+        {
+            aclSol.addField(FIELD_READER, reader);
+        }
+        aclSol.addField(FIELD_DOC_TYPE, SolrInformationServer.DOC_TYPE_ACL);
+        aclCmd.solrDoc = aclSol;
+        getCore().getUpdateHandler().addDoc(aclCmd);
+    }
+
+    /**
+     * Adds nodes cycling through the owners and the ACLs.
+     */
+    private static void addNodes(int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            long dbId = nextDbId++;
+            NodeRef nodeRef = new NodeRef(new StoreRef("workspace", "SpacesStore"), createGUID());
+            addNode(getCore(), dataModel, 1, (int) dbId, 1 + (int) (dbId % ACL_READERS.length), ContentModel.TYPE_CONTENT,
+                    null, null, null, OWNERS[(int) (dbId % OWNERS.length)], null, null, null, nodeRef, false);
+        }
+    }
+
+    private static void deleteNode(long dbId) throws IOException
+    {
+        DeleteUpdateCommand delete = new DeleteUpdateCommand(req());
+        delete.setId(AlfrescoSolrDataModel.getNodeDocumentId(AlfrescoSolrDataModel.DEFAULT_TENANT, dbId));
+        getCore().getUpdateHandler().delete(delete);
+    }
+
+    private static void commit() throws IOException
+    {
+        getCore().getUpdateHandler().commit(new CommitUpdateCommand(req(), false));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.solr.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.processor.UpdateRequestProcessor;
+import org.apache.solr.update.processor.UpdateRequestProcessorChain;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueryLogWriterTest
+{
+    private static final String LOG_CORE = "alfresco_qlog";
+
+    private CoreContainer container;
+    private SolrCore logCore;
+    private UpdateRequestProcessor processor;
+
+    @Before
+    public void setUp()
+    {
+        processor = mock(UpdateRequestProcessor.class);
+        UpdateRequestProcessorChain chain = mock(UpdateRequestProcessorChain.class);
+        when(chain.createProcessor(any(SolrQueryRequest.class), any(SolrQueryResponse.class))).thenReturn(processor);
+
+        logCore = mock(SolrCore.class);
+        when(logCore.getUpdateProcessingChain(null)).thenReturn(chain);
+
+        container = mock(CoreContainer.class);
+        when(container.getCore(LOG_CORE)).thenReturn(logCore);
+    }
+
+    @Test
+    public void entriesAreDroppedWhenTheQueueIsFull() throws Exception
+    {
+        QueryLogWriter writer = new QueryLogWriter("alfresco", 2, 10, false);
+
+        assertTrue(writer.submit(container, LOG_CORE, new SolrInputDocument()));
+        assertTrue(writer.submit(container, LOG_CORE, new SolrInputDocument()));
+        assertFalse(writer.submit(container, LOG_CORE, new SolrInputDocument()));
+        assertEquals(1, writer.getDropped());
+        assertEquals(2, writer.getQueued());
+
+        writer.start();
+        writer.close(10000);
+
+        // Both queued entries are indexed in a single batch
+        verify(processor, times(2)).processAdd(any(AddUpdateCommand.class));
+        verify(processor).finish();
+        verify(logCore).close();
+        assertEquals(2, writer.getIndexed());
+        assertEquals(0, writer.getQueued());
+    }
+
+    @Test
+    public void entriesAreNotAcceptedOnceClosed()
+    {
+        QueryLogWriter writer = new QueryLogWriter("alfresco", 2, 10, true);
+        writer.start();
+        writer.close(10000);
+
+        assertFalse(writer.submit(container, LOG_CORE, new SolrInputDocument()));
+        assertEquals(1, writer.getDropped());
+    }
+
+    @Test
+    public void entriesForAMissingCoreAreCountedAsFailed()
+    {
+        QueryLogWriter writer = new QueryLogWriter("alfresco", 2, 10, false);
+        writer.submit(container, "missing_qlog", new SolrInputDocument());
+        writer.start();
+        writer.close(10000);
+
+        assertEquals(1, writer.getFailed());
+        assertEquals(0, writer.getIndexed());
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+
+package org.alfresco.solr.highlight;
+
+import static java.util.Collections.singletonList;
+import static org.alfresco.solr.AlfrescoSolrUtils.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Properties;
+
+import org.alfresco.repo.search.adaptor.QueryConstants;
+import org.alfresco.solr.AbstractAlfrescoSolrIT;
+import org.alfresco.solr.client.*;
+import org.apache.lucene.index.Fields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.LegacyNumericRangeQuery;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.params.HighlightParams;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.util.RefCounted;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Highlights the content with alfresco.content.highlighting.termVectors enabled: the content stored fields are indexed
+ * with term vectors, which {@link org.apache.solr.highlight.DefaultSolrHighlighter} reads instead of analyzing the
+ * stored text again.
+ */
+public class AlfrescoContentTermVectorsHighlighterIT extends AbstractAlfrescoSolrIT
+{
+    private static final long MAX_WAIT_TIME = 80000;
+
+    private static final String CONTENT_FIELD = "content@s___t@{http://www.alfresco.org/model/content/1.0}content";
+
+    private static final String CONTENT_STORED_FIELD = "content@s_stored_t____@{http://www.alfresco.org/model/content/1.0}content";
+
+    @BeforeClass
+    public static void beforeClass() throws Exception
+    {
+        Properties coreProperties = new Properties();
+        coreProperties.put("alfresco.content.highlighting.termVectors", "true");
+        initAlfrescoCore("schema.xml", coreProperties);
+        loadData();
+    }
+
+    private static void loadData() throws Exception
+    {
+        AclChangeSet aclChangeSet = getAclChangeSet(1);
+        Acl acl = getAcl(aclChangeSet);
+        AclReaders aclReaders = getAclReaders(aclChangeSet, acl, singletonList("joel"), singletonList("phil"), null);
+        indexAclChangeSet(aclChangeSet, singletonList(acl), singletonList(aclReaders));
+
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        builder.add(new BooleanClause(new TermQuery(new Term(QueryConstants.FIELD_SOLR4_ID, "TRACKER!STATE!ACLTX")), BooleanClause.Occur.MUST));
+        builder.add(new BooleanClause(LegacyNumericRangeQuery.newLongRange(QueryConstants.FIELD_S_ACLTXID, aclChangeSet.getId(), aclChangeSet.getId() + 1, true, false), BooleanClause.Occur.MUST));
+        waitForDocCount(builder.build(), 1, MAX_WAIT_TIME);
+
+        Transaction txn = getTransaction(0, 1);
+        Node node = getNode(txn, acl, Node.SolrApiNodeStatus.UPDATED);
+        NodeMetaData nodeMetaData = getNodeMetaData(node, txn, acl, "mike", null, false);
+        indexTransaction(txn, singletonList(node), singletonList(nodeMetaData),
+                singletonList("this is some long text.  It has the word long in many places.  " +
+                        "In fact, it has long on some different fragments.  " +
+                        "Let us see what happens to long in this case."));
+
+        // The content is indexed by the ContentTracker, after the metadata
+        waitForDocCount(new TermQuery(new Term(CONTENT_FIELD, "long")), 1, MAX_WAIT_TIME);
+    }
+
+    @AfterClass
+    public static void clearQueue()
+    {
+        SOLRAPIQueueClient.NODE_META_DATA_MAP.clear();
+        SOLRAPIQueueClient.TRANSACTION_QUEUE.clear();
+        SOLRAPIQueueClient.ACL_CHANGE_SET_QUEUE.clear();
+        SOLRAPIQueueClient.ACL_READERS_MAP.clear();
+        SOLRAPIQueueClient.ACL_MAP.clear();
+        SOLRAPIQueueClient.NODE_MAP.clear();
+        SOLRAPIQueueClient.NODE_CONTENT_MAP.clear();
+    }
+
+    @Test
+    public void contentStoredFieldsAreIndexedWithTermVectors() throws Exception
+    {
+        // DefaultSolrHighlighter reads the term vectors of a field whose schema stores them with positions and offsets
+        SchemaField contentStoredField = getCore().getLatestSchema().getField(CONTENT_STORED_FIELD);
+        assertTrue(contentStoredField.storeTermVector());
+        assertTrue(contentStoredField.storeTermPositions());
+        assertTrue(contentStoredField.storeTermOffsets());
+
+        RefCounted<SolrIndexSearcher> refCounted = getCore().getSearcher();
+        try
+        {
+            SolrIndexSearcher searcher = refCounted.get();
+            TopDocs hits = searcher.search(new TermQuery(new Term(CONTENT_FIELD, "long")), 1);
+            assertEquals(1, hits.totalHits);
+
+            Fields termVectors = searcher.getIndexReader().getTermVectors(hits.scoreDocs[0].doc);
+            String storedFieldName = null;
+            for (String field : termVectors)
+            {
+                if (field.startsWith("content@s_stored_") && field.endsWith("}content"))
+                {
+                    storedFieldName = field;
+                }
+            }
+            assertNotNull("The content stored field has no term vectors", storedFieldName);
+
+            Terms terms = termVectors.terms(storedFieldName);
+            assertTrue(terms.hasPositions());
+            assertTrue(terms.hasOffsets());
+            assertTrue(terms.iterator().seekExact(new BytesRef("long")));
+        }
+        finally
+        {
+            refCounted.decref();
+        }
+    }
+
+    @Test
+    public void contentIsHighlightedFromTheTermVectors()
+    {
+        SolrServletRequest req = areq(params("q", "cm:content:long", "qt", "/afts", "start", "0", "rows", "5",
+                HighlightParams.HIGHLIGHT, "true",
+                HighlightParams.Q, "long",
+                HighlightParams.FIELDS, "content",
+                HighlightParams.SNIPPETS, "4",
+                HighlightParams.FRAGSIZE, "40"),
+                "{\"locales\":[\"en\"], \"tenants\": [ \"\" ]}");
+
+        // The offsets read from the term vectors include the locale marker, which is not in the snippets
+        assertQ(req,
+                "*[count(//lst[@name='highlighting']/lst)=1]",
+                "//lst[@name='highlighting']/lst[1]/arr[@name='content']/str[.='this is some <em>long</em> text.  It has the']",
+                "//lst[@name='highlighting']/lst[1]/arr[@name='content']/str[.=' word <em>long</em> in many places.  In fact, it has']",
+                "//lst[@name='highlighting']/lst[1]/arr[@name='content']/str[.=' <em>long</em> on some different fragments.  Let us']",
+                "//lst[@name='highlighting']/lst[1]/arr[@name='content']/str[.=' see what happens to <em>long</em> in this case.']");
+    }
+}
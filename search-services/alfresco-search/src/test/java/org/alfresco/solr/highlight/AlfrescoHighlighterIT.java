@@ -31,6 +31,7 @@ import static java.util.Arrays.asList;
 
 import static java.util.Collections.singletonList;
 import static org.alfresco.solr.AlfrescoSolrUtils.*;
+import static org.junit.Assert.assertFalse;
 
 import java.util.Map;
 import org.alfresco.model.ContentModel;
@@ -46,6 +47,7 @@ import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.LegacyNumericRangeQuery;
 import org.apache.lucene.search.TermQuery;
 import org.apache.solr.common.params.HighlightParams;
+import org.apache.solr.schema.SchemaField;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -162,6 +164,19 @@ public class AlfrescoHighlighterIT extends AbstractAlfrescoSolrIT
         SOLRAPIQueueClient.NODE_CONTENT_MAP.clear();
     }
 
+    /**
+     * The term vectors of the content are opt-in (see {@link AlfrescoContentTermVectorsHighlighterIT}): by default the
+     * content stored fields are analyzed by the highlighter, like the other stored fields.
+     */
+    @Test
+    public void contentStoredFieldsHaveNoTermVectorsByDefault()
+    {
+        SchemaField contentStoredField =
+                getCore().getLatestSchema().getField("content@s_stored_t____@{http://www.alfresco.org/model/content/1.0}content");
+        assertFalse(contentStoredField.indexed());
+        assertFalse(contentStoredField.storeTermVector());
+    }
+
     @Test
     public void highlightingSnippetsFragSizeTest()
     {
@@ -0,0 +1,142 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.solr.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Properties;
+
+import org.alfresco.repo.search.adaptor.QueryConstants;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.solr.core.CloseHook;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.core.SolrResourceLoader;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.search.BitDocSet;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class AbstractSolrCachingScorerTest
+{
+    /** ACL ids of the documents, one segment per row: the first document of each segment is an ACL document. */
+    private static final long[][] SEGMENTS = { {1, 1, 2}, {2, 1, 3}, {3, 2} };
+
+    private Directory directory;
+    private DirectoryReader reader;
+    private Properties properties;
+    private SolrCore core;
+    private SolrIndexSearcher searcher;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        directory = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(directory,
+                new IndexWriterConfig(new KeywordAnalyzer()).setMergePolicy(NoMergePolicy.INSTANCE)))
+        {
+            for (long[] segment : SEGMENTS)
+            {
+                for (long aclId : segment)
+                {
+                    Document doc = new Document();
+                    doc.add(new NumericDocValuesField(QueryConstants.FIELD_ACLID, aclId));
+                    writer.addDocument(doc);
+                }
+                writer.commit();
+            }
+        }
+        reader = DirectoryReader.open(directory);
+
+        properties = new Properties();
+        SolrResourceLoader resourceLoader = mock(SolrResourceLoader.class);
+        when(resourceLoader.getCoreProperties()).thenReturn(properties);
+        IndexSchema schema = mock(IndexSchema.class);
+        when(schema.getResourceLoader()).thenReturn(resourceLoader);
+
+        core = mock(SolrCore.class);
+        when(core.getName()).thenReturn("alfresco");
+        searcher = mock(SolrIndexSearcher.class);
+        when(searcher.getSchema()).thenReturn(schema);
+        when(searcher.getCore()).thenReturn(core);
+        when(searcher.getTopReaderContext()).thenReturn(reader.getContext());
+        when(searcher.maxDoc()).thenReturn(reader.maxDoc());
+
+        // The ACL documents (ACL ids 1 and 2) granting access to the authorities
+        FixedBitSet aclDocs = new FixedBitSet(reader.maxDoc());
+        aclDocs.set(0);
+        aclDocs.set(3);
+        when(searcher.getDocSet(any(Query.class))).thenReturn(new BitDocSet(aclDocs));
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        reader.close();
+        directory.close();
+    }
+
+    @Test
+    public void segmentsScannedInParallelMatchTheSequentialScan() throws Exception
+    {
+        DocSet sequential = AbstractSolrCachingScorer.buildAclDocSet(searcher, QueryConstants.FIELD_READER, ",jbloggs,abeecher");
+
+        properties.setProperty("alfresco.authorityFilter.threads", "2");
+        properties.setProperty("alfresco.authorityFilter.parallelMinDocs", "0");
+        DocSet parallel = AbstractSolrCachingScorer.buildAclDocSet(searcher, QueryConstants.FIELD_READER, ",jbloggs,abeecher");
+
+        ArgumentCaptor<CloseHook> closeHook = ArgumentCaptor.forClass(CloseHook.class);
+        verify(core).addCloseHook(closeHook.capture());
+        closeHook.getValue().preClose(core);
+
+        // Documents with ACL id 1 or 2, the ACL documents excluded
+        FixedBitSet expected = new FixedBitSet(reader.maxDoc());
+        expected.set(1);
+        expected.set(2);
+        expected.set(4);
+        expected.set(7);
+        assertEquals(expected, ((BitDocSet) sequential).getBits());
+        assertEquals(expected, ((BitDocSet) parallel).getBits());
+    }
+}
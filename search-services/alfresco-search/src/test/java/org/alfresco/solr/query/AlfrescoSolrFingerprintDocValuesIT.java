@@ -0,0 +1,75 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.solr.query;
+
+import java.util.List;
+import java.util.Properties;
+
+import org.alfresco.solr.client.Node;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Runs the {@link AlfrescoSolrFingerprintIT} tests again with the MINHASH doc values enabled, so that the banded
+ * FINGERPRINT queries rescore their candidates instead of falling back to the term based query.
+ */
+public class AlfrescoSolrFingerprintDocValuesIT extends AlfrescoSolrFingerprintIT
+{
+    @BeforeClass
+    public static void beforeClass() throws Exception
+    {
+        Properties coreProperties = new Properties();
+        coreProperties.put("alfresco.fingerprint.bandSize", "2");
+        coreProperties.put("alfresco.fingerprint.docValues", "true");
+        initAlfrescoCore("schema.xml", coreProperties);
+    }
+
+    @Test
+    public void testBandFingerprintIsScoredWithTheSharedMinHashes() throws Exception
+    {
+        List<Node> nodes = indexSimilarContentNodes();
+        enableBandQuery(true);
+
+        // The term based query would score each node with the number of MINHASH values it shares
+        ModifiableSolrParams params = new ModifiableSolrParams()
+                .add("q", "FINGERPRINT:" + nodes.get(0).getId() + "_70")
+                .add("qt", "/afts")
+                .add("fl", "DBID,score")
+                .add("start", "0")
+                .add("rows", "6")
+                .add("sort", "id asc");
+
+        SolrServletRequest req = areq(params, "{\"locales\":[\"en\"], \"templates\": [{\"name\":\"t1\", \"template\":\"%cm:content\"}], \"authorities\": [ \"joel\"], \"tenants\": [ \"\" ]}");
+        assertQ(req,
+                "*[count(//doc)= 2]",
+                "//result/doc[1]/long[@name='DBID'][.='" + nodes.get(0).getId() + "']",
+                "//result/doc[1]/float[@name='score'][.='1.0']",
+                "//result/doc[2]/long[@name='DBID'][.='" + nodes.get(2).getId() + "']",
+                "//result/doc[2]/float[@name='score'][. >= 0.7 and . < 1]");
+    }
+}
@@ -49,6 +49,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.util.List;
+import java.util.Properties;
 import java.util.Random;
 import java.util.stream.Collectors;
 
@@ -65,10 +66,13 @@ public class AlfrescoSolrFingerprintIT extends AbstractAlfrescoSolrIT
     @BeforeClass
     public static void beforeClass() throws Exception
     {
-        initAlfrescoCore("schema.xml");
+        // Index the band signatures as well: FINGERPRINT queries use them only when the band query is enabled
+        Properties coreProperties = new Properties();
+        coreProperties.put("alfresco.fingerprint.bandSize", "2");
+        initAlfrescoCore("schema.xml", coreProperties);
     }
 
-    private Acl acl;
+    protected Acl acl;
 
     @Before
     public void prepare() throws Exception
@@ -107,6 +111,14 @@ public class AlfrescoSolrFingerprintIT extends AbstractAlfrescoSolrIT
         assertU(commit());
     }
 
+    @After
+    public void disableBandQuery()
+    {
+        Properties coreProperties = h.getCore().getResourceLoader().getCoreProperties();
+        coreProperties.remove("alfresco.fingerprint.bandQuery");
+        coreProperties.remove("alfresco.fingerprint.bandQuery.rescore");
+    }
+
     private void makeSureTransactionHasBeenIndexed(long transactionId) throws Exception
     {
         //Check for the TXN state stamp.
@@ -208,6 +220,54 @@ public class AlfrescoSolrFingerprintIT extends AbstractAlfrescoSolrIT
                 "//result/doc[4]/long[@name='DBID'][.='"+node4.getId()+"']");
     }
 
+    @Test
+    public void testBandFingerprintWithoutRescoring() throws Exception
+    {
+        List<Node> nodes = indexSimilarContentNodes();
+        enableBandQuery(false);
+
+        // Each node shares at least a band with the others: the requested similarity needs the rescoring and the
+        // true positive part is ignored, as the bands are sized at index time
+        for (String query : asList(String.valueOf(nodes.get(0).getId()), nodes.get(0).getId() + "_70", nodes.get(3).getId() + "_30_90"))
+        {
+            assertFingerprintQueryCorrectness(query,
+                    "*[count(//doc)= 4]",
+                    "//result/doc[1]/long[@name='DBID'][.='"+nodes.get(0).getId()+"']",
+                    "//result/doc[2]/long[@name='DBID'][.='"+nodes.get(1).getId()+"']",
+                    "//result/doc[3]/long[@name='DBID'][.='"+nodes.get(2).getId()+"']",
+                    "//result/doc[4]/long[@name='DBID'][.='"+nodes.get(3).getId()+"']");
+        }
+    }
+
+    /**
+     * The requested similarity is applied whether the candidates are rescored or, as MINHASH has no doc values in the
+     * default schema, the term based query is used instead (see {@link AlfrescoSolrFingerprintDocValuesIT}).
+     */
+    @Test
+    public void testBandFingerprintWithRescoring() throws Exception
+    {
+        List<Node> nodes = indexSimilarContentNodes();
+        enableBandQuery(true);
+
+        assertFingerprintQueryCorrectness(nodes.get(0).getId(),
+                "*[count(//doc)= 4]",
+                "//result/doc[1]/long[@name='DBID'][.='"+nodes.get(0).getId()+"']",
+                "//result/doc[2]/long[@name='DBID'][.='"+nodes.get(1).getId()+"']",
+                "//result/doc[3]/long[@name='DBID'][.='"+nodes.get(2).getId()+"']",
+                "//result/doc[4]/long[@name='DBID'][.='"+nodes.get(3).getId()+"']");
+
+        assertFingerprintQueryCorrectness(nodes.get(0).getId() + "_70",
+                "*[count(//doc)= 2]",
+                "//result/doc[1]/long[@name='DBID'][.='"+nodes.get(0).getId()+"']",
+                "//result/doc[2]/long[@name='DBID'][.='"+nodes.get(2).getId()+"']");
+
+        assertFingerprintQueryCorrectness(nodes.get(0).getId() + "_45",
+                "*[count(//doc)= 3]",
+                "//result/doc[1]/long[@name='DBID'][.='"+nodes.get(0).getId()+"']",
+                "//result/doc[2]/long[@name='DBID'][.='"+nodes.get(1).getId()+"']",
+                "//result/doc[3]/long[@name='DBID'][.='"+nodes.get(2).getId()+"']");
+    }
+
     @Test
     public void testFingerprintStillExistsAfterNodeMetadataUpdate() throws Exception
     {
@@ -340,6 +400,39 @@ public class AlfrescoSolrFingerprintIT extends AbstractAlfrescoSolrIT
         assertQ(req, assertions);
     }
 
+    protected void enableBandQuery(boolean rescore)
+    {
+        Properties coreProperties = h.getCore().getResourceLoader().getCoreProperties();
+        coreProperties.setProperty("alfresco.fingerprint.bandQuery", "true");
+        coreProperties.setProperty("alfresco.fingerprint.bandQuery.rescore", Boolean.toString(rescore));
+    }
+
+    /**
+     * Indexes four nodes whose contents are prefixes of the same text (see {@link #randomTextContent()}).
+     */
+    protected List<Node> indexSimilarContentNodes() throws Exception
+    {
+        Transaction txn = getTransaction(0, 4);
+
+        List<Node> nodes = asList(
+                getNode(txn, acl, Node.SolrApiNodeStatus.UPDATED),
+                getNode(txn, acl, Node.SolrApiNodeStatus.UPDATED),
+                getNode(txn, acl, Node.SolrApiNodeStatus.UPDATED),
+                getNode(txn, acl, Node.SolrApiNodeStatus.UPDATED));
+        List<NodeMetaData> nodeMetaDatas = nodes.stream()
+                .map(node -> getNodeMetaData(node, txn, acl, "mike", null, false))
+                .collect(Collectors.toList());
+
+        Random randomizer = new Random(1);
+        String aFirstToken = Integer.toString(Math.abs(randomizer.nextInt()));
+
+        indexTransaction(txn, nodes, nodeMetaDatas, randomTextContent());
+
+        makeSureTransactionHasBeenIndexed(txn.getId());
+        makeSureContentNodesHaveBeenIndexed("mike", aFirstToken, 4);
+        return nodes;
+    }
+
     private List<String> randomTextContent()
     {
         int[] sizes = {2000, 1000, 1500, 750};
@@ -0,0 +1,74 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.solr.query;
+
+import static java.lang.Thread.currentThread;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CallerRunsWhileLivePolicyTest
+{
+    private ThreadPoolExecutor executor;
+
+    @Before
+    public void setUp()
+    {
+        executor = new ThreadPoolExecutor(0, 1, 1, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                new CallerRunsWhileLivePolicy());
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void rejectedTasksRunOnTheCallerWhileTheExecutorIsLive()
+    {
+        AtomicReference<Thread> runBy = new AtomicReference<>();
+        new CallerRunsWhileLivePolicy().rejectedExecution(() -> runBy.set(currentThread()), executor);
+
+        assertSame(currentThread(), runBy.get());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void tasksSubmittedAfterShutdownAreRejected()
+    {
+        executor.shutdown();
+        executor.submit(() -> 1);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.solr.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+
+import org.alfresco.solr.AlfrescoSolrDataModel;
+import org.alfresco.solr.AlfrescoSolrDataModel.FieldUse;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.schema.TrieLongField;
+import org.junit.Test;
+import org.mockito.MockedStatic;
+
+public class ContentSizeGroupingCollectorTest
+{
+    private static final String FIELD = "size";
+
+    private static final int SIZES = 10;
+
+    @Test
+    public void sizesOfSeveralSegmentsAreAddedAcrossTheBufferBoundary() throws Exception
+    {
+        // 4097 docs: the values buffer is flushed once when full and once more for the last value on finish
+        int[] segmentSizes = {1000, 3000, 97};
+        long[] expected = new long[SIZES];
+        try (Directory directory = new RAMDirectory())
+        {
+            try (IndexWriter writer = new IndexWriter(directory,
+                    new IndexWriterConfig(new KeywordAnalyzer()).setMergePolicy(NoMergePolicy.INSTANCE)))
+            {
+                int doc = 0;
+                for (int segmentSize : segmentSizes)
+                {
+                    for (int i = 0; i < segmentSize; i++, doc++)
+                    {
+                        Document document = new Document();
+                        document.add(new NumericDocValuesField(FIELD, doc % SIZES));
+                        expected[doc % SIZES]++;
+                        writer.addDocument(document);
+                    }
+                    writer.commit();
+                }
+            }
+
+            try (DirectoryReader reader = DirectoryReader.open(directory))
+            {
+                assertEquals(segmentSizes.length, reader.leaves().size());
+
+                ResponseBuilder rb = responseBuilder();
+                TotalHitCountCollector hits = new TotalHitCountCollector();
+                try (MockedStatic<AlfrescoSolrDataModel> dataModel = mockDataModel())
+                {
+                    // A bucket per size: sizes lower than the sub bucket count are counted exactly
+                    ContentSizeGroupingCollector collector = new ContentSizeGroupingCollector(rb, 1, SIZES);
+                    collector.setDelegate(hits);
+                    new IndexSearcher(reader).search(new MatchAllDocsQuery(), collector);
+                    collector.finish();
+                }
+
+                assertEquals(4097, hits.getTotalHits());
+                NamedList<?> counts = (NamedList<?>) ((NamedList<?>) rb.rsp.getValues().get("analytics")).get("contentSize()");
+                assertEquals(SIZES, counts.size());
+                long total = 0;
+                for (int size = 0; size < SIZES; size++)
+                {
+                    assertEquals("[" + size + " TO " + (size + 1) + ">", counts.getName(size));
+                    assertEquals(expected[size], counts.getVal(size));
+                    total += (Long) counts.getVal(size);
+                }
+                assertEquals(4097, total);
+            }
+        }
+    }
+
+    private MockedStatic<AlfrescoSolrDataModel> mockDataModel()
+    {
+        AlfrescoSolrDataModel instance = mock(AlfrescoSolrDataModel.class);
+        when(instance.mapProperty(eq("content.size"), eq(FieldUse.FACET), any(SolrQueryRequest.class))).thenReturn(FIELD);
+        MockedStatic<AlfrescoSolrDataModel> dataModel = mockStatic(AlfrescoSolrDataModel.class);
+        dataModel.when(AlfrescoSolrDataModel::getInstance).thenReturn(instance);
+        return dataModel;
+    }
+
+    private ResponseBuilder responseBuilder()
+    {
+        IndexSchema schema = mock(IndexSchema.class);
+        when(schema.getFieldOrNull(FIELD)).thenReturn(new SchemaField(FIELD, new TrieLongField()));
+        SolrQueryRequest req = mock(SolrQueryRequest.class);
+        when(req.getSchema()).thenReturn(schema);
+        return new ResponseBuilder(req, new SolrQueryResponse(), Collections.emptyList());
+    }
+}
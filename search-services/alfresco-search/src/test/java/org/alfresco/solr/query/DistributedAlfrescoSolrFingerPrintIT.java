@@ -38,6 +38,7 @@ import static java.util.Collections.singletonList;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Properties;
 import java.util.Random;
 
 import org.alfresco.model.ContentModel;
@@ -56,9 +57,12 @@ import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.LegacyNumericRangeQuery;
 import org.apache.lucene.search.TermQuery;
 import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.response.QueryResponse;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.params.ModifiableSolrParams;
+import org.apache.solr.core.SolrCore;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -70,6 +74,7 @@ import org.junit.Test;
 public class DistributedAlfrescoSolrFingerPrintIT extends AbstractAlfrescoDistributedIT
 {
     private static long MAX_WAIT_TIME = 80000;
+    private static final long FINGERPRINT_CACHE_TTL = 5000;
 
     private static Node[] NODES = new Node[4];
     private static NodeMetaData[] NODES_METADATA = new NodeMetaData[4];
@@ -78,7 +83,9 @@ public class DistributedAlfrescoSolrFingerPrintIT extends AbstractAlfrescoDistri
     @BeforeClass
     public static void initData() throws Throwable
     {
-        initSolrServers(2,DistributedAlfrescoSolrFingerPrintIT.getSimpleClassName(),null);
+        Properties properties = new Properties();
+        properties.put("alfresco.fingerprint.fetch.cacheTtl", Long.toString(FINGERPRINT_CACHE_TTL));
+        initSolrServers(2,DistributedAlfrescoSolrFingerPrintIT.getSimpleClassName(),properties);
 
         AclChangeSet aclChangeSet = getAclChangeSet(1);
 
@@ -244,6 +251,71 @@ public class DistributedAlfrescoSolrFingerPrintIT extends AbstractAlfrescoDistri
         assertEquals(dbid2, NODES[1].getId());
     }
 
+    /**
+     * Each shard coordinating the query fetches the fingerprint from the other shards only if it doesn't have the node,
+     * then keeps it in the cache of its fetcher until the TTL expires: the same query run again finds it there.
+     */
+    @Test
+    public void testFingerPrintFetchedFromTheOtherShardsIsCached() throws Exception
+    {
+        putHandleDefaults();
+        String nodeId = Long.toString(NODES[3].getId());
+        assertFalse(isCachedByAnyCore(nodeId));
+
+        List<Long> dbids = queryFingerPrintOnEachShard(nodeId);
+        assertTrue(isCachedByAnyCore(nodeId));
+        assertEquals(dbids, queryFingerPrintOnEachShard(nodeId));
+        assertTrue(isCachedByAnyCore(nodeId));
+
+        Thread.sleep(FINGERPRINT_CACHE_TTL + 1000);
+        assertFalse(isCachedByAnyCore(nodeId));
+
+        assertEquals(dbids, queryFingerPrintOnEachShard(nodeId));
+        assertTrue(isCachedByAnyCore(nodeId));
+    }
+
+    /**
+     * Runs the FINGERPRINT query of the node with each shard as the coordinator, so that at least one of them has to
+     * fetch the fingerprint from the others.
+     */
+    private List<Long> queryFingerPrintOnEachShard(String nodeId) throws Exception
+    {
+        List<Long> dbids = new ArrayList<>();
+        for (SolrClient client : clientShards)
+        {
+            ModifiableSolrParams params = params("q", "FINGERPRINT:" + nodeId,
+                "qt", "/afts",
+                "shards.qt", "/afts",
+                "start", "0",
+                "fl", "DBID,score",
+                "rows", "100");
+            setDistributedParams(params);
+            QueryResponse response = getAlfrescoRequest(
+                "{\"locales\":[\"en\"], \"templates\": [{\"name\":\"t1\", \"template\":\"%cm:content\"}], \"authorities\": [\"joel\"], \"tenants\": []}",
+                params).process(client);
+
+            SolrDocumentList docs = response.getResults();
+            assertEquals(Long.parseLong(nodeId), docs.get(0).getFieldValue("DBID"));
+            for (SolrDocument doc : docs)
+            {
+                dbids.add((Long) doc.getFieldValue("DBID"));
+            }
+        }
+        return dbids;
+    }
+
+    private boolean isCachedByAnyCore(String nodeId)
+    {
+        for (SolrCore core : getCores(jettyContainers.values()))
+        {
+            if (FingerPrintFetcher.isCached(core, nodeId))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Test
     public void testFingerPrint4() throws Exception
     {
@@ -0,0 +1,161 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.solr.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.CloseHook;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class DocValuesCacheTest
+{
+    private Directory directory;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        directory = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(new KeywordAnalyzer())))
+        {
+            for (long value : new long[] {1, 7, Integer.MAX_VALUE + 1L})
+            {
+                Document doc = new Document();
+                doc.add(new NumericDocValuesField("small", value % 100));
+                doc.add(new NumericDocValuesField("large", value));
+                writer.addDocument(doc);
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        directory.close();
+    }
+
+    @Test
+    public void valuesAreCachedPerSegmentUntilTheSegmentIsClosed() throws Exception
+    {
+        int sizeBefore = DocValuesCache.size();
+        try (DirectoryReader reader = DirectoryReader.open(directory))
+        {
+            LeafReader leaf = reader.leaves().get(0).reader();
+            long misses = DocValuesCache.getMisses();
+            long hits = DocValuesCache.getHits();
+
+            NumericDocValues small = DocValuesCache.getNumericDocValues("small", leaf);
+            assertEquals(1, small.get(0));
+            assertEquals(7, small.get(1));
+            assertEquals((Integer.MAX_VALUE + 1L) % 100, small.get(2));
+
+            NumericDocValues large = DocValuesCache.getNumericDocValues("large", leaf);
+            assertEquals(Integer.MAX_VALUE + 1L, large.get(2));
+
+            assertSame(small, DocValuesCache.getNumericDocValues("small", leaf));
+            assertNull(DocValuesCache.getNumericDocValues("missing", leaf));
+            assertNull(DocValuesCache.getNumericDocValues("missing", leaf));
+
+            assertEquals(misses + 3, DocValuesCache.getMisses());
+            assertEquals(hits + 2, DocValuesCache.getHits());
+            assertEquals(sizeBefore + 1, DocValuesCache.size());
+        }
+        assertEquals(sizeBefore, DocValuesCache.size());
+    }
+
+    @Test
+    public void offHeapValuesAreReadFromDirectBuffers() throws Exception
+    {
+        try (DirectoryReader reader = DirectoryReader.open(directory))
+        {
+            LeafReader leaf = reader.leaves().get(0).reader();
+
+            NumericDocValues small = DocValuesCache.getNumericDocValues("small", leaf, true);
+            assertEquals(7, small.get(1));
+            NumericDocValues large = DocValuesCache.getNumericDocValues("large", leaf, true);
+            assertEquals(1, large.get(0));
+            assertEquals(Integer.MAX_VALUE + 1L, large.get(2));
+            assertSame(large, DocValuesCache.getNumericDocValues("large", leaf, true));
+        }
+    }
+
+    @Test
+    public void offHeapIsSetPerCoreUntilTheCoreIsClosed()
+    {
+        SolrCore offHeapCore = mock(SolrCore.class);
+        SolrCore onHeapCore = mock(SolrCore.class);
+        DocValuesCache.setOffHeap(offHeapCore, true);
+        DocValuesCache.setOffHeap(onHeapCore, false);
+
+        assertTrue(DocValuesCache.isOffHeap(searcherOf(offHeapCore)));
+        assertFalse(DocValuesCache.isOffHeap(searcherOf(onHeapCore)));
+
+        NamedList<Object> statistics = DocValuesCache.getStatistics(offHeapCore);
+        assertEquals(true, statistics.get("offHeap"));
+        assertEquals(DocValuesCache.getHits(), statistics.get("hits"));
+        assertEquals(DocValuesCache.getHits() + DocValuesCache.getMisses(), statistics.get("lookups"));
+        assertEquals(DocValuesCache.size(), statistics.get("size"));
+        assertEquals(false, DocValuesCache.getStatistics(onHeapCore).get("offHeap"));
+
+        ArgumentCaptor<CloseHook> closeHook = ArgumentCaptor.forClass(CloseHook.class);
+        verify(offHeapCore).addCloseHook(closeHook.capture());
+        verify(onHeapCore, never()).addCloseHook(any());
+        closeHook.getValue().postClose(offHeapCore);
+        assertFalse(DocValuesCache.isOffHeap(searcherOf(offHeapCore)));
+    }
+
+    private SolrIndexSearcher searcherOf(SolrCore core)
+    {
+        SolrIndexSearcher searcher = mock(SolrIndexSearcher.class);
+        when(searcher.getCore()).thenReturn(core);
+        return searcher;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.solr.query;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Properties;
+
+import org.alfresco.solr.query.FingerPrintFetcher.FingerPrintCache;
+import org.apache.solr.core.CloseHook;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.core.SolrResourceLoader;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/** Unit tests for the {@link FingerPrintFetcher} and its cache. */
+public class FingerPrintFetcherTest
+{
+    @Test
+    public void cachedFingerPrintIsReturnedUntilItExpires()
+    {
+        FingerPrintCache cache = new FingerPrintCache(10, 1000);
+        List<String> fingerPrint = asList("1234", "5678");
+        try
+        {
+            assertNull(cache.get("10", 0));
+
+            cache.put("10", fingerPrint, 0);
+
+            assertSame(fingerPrint, cache.get("10", 999));
+            assertNull(cache.get("10", 1000));
+            assertNull(cache.get("11", 0));
+        }
+        finally
+        {
+            cache.destroy();
+        }
+    }
+
+    @Test
+    public void zeroTtlDisablesTheCache()
+    {
+        FingerPrintCache cache = new FingerPrintCache(10, 0);
+        try
+        {
+            cache.put("10", asList("1234", "5678"), 0);
+
+            assertNull(cache.get("10", 0));
+        }
+        finally
+        {
+            cache.destroy();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void fetchingOnAClosedCoreReturnsNoFingerPrint()
+    {
+        SolrResourceLoader resourceLoader = mock(SolrResourceLoader.class);
+        when(resourceLoader.getCoreProperties()).thenReturn(new Properties());
+        SolrCore core = mock(SolrCore.class);
+        when(core.getName()).thenReturn("alfresco");
+        when(core.getResourceLoader()).thenReturn(resourceLoader);
+
+        FingerPrintFetcher fetcher = FingerPrintFetcher.of(core);
+        ArgumentCaptor<CloseHook> closeHook = ArgumentCaptor.forClass(CloseHook.class);
+        verify(core).addCloseHook(closeHook.capture());
+        closeHook.getValue().preClose(core);
+
+        // A FINGERPRINT query racing the core close doesn't wait for requests the executor won't run
+        assertNull(fetcher.fetch(asList("http://localhost:1/solr/alfresco", "http://localhost:2/solr/alfresco"), "10"));
+    }
+}
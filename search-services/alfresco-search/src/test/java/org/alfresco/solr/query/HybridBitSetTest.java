@@ -0,0 +1,121 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.solr.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class HybridBitSetTest
+{
+    @Test
+    public void emptySetContainsNothing()
+    {
+        HybridBitSet bits = new HybridBitSet();
+
+        assertFalse(bits.get(0));
+        assertFalse(bits.get(60000000));
+        assertFalse(bits.get(Long.MAX_VALUE));
+        assertEquals(0, bits.cardinality());
+    }
+
+    @Test
+    public void sparseValuesAreFound()
+    {
+        HybridBitSet bits = new HybridBitSet();
+        bits.set(3);
+        bits.set(65536);
+        bits.set(60000001);
+        bits.set(3);
+
+        assertTrue(bits.get(3));
+        assertTrue(bits.get(65536));
+        assertTrue(bits.get(60000001));
+        assertFalse(bits.get(4));
+        assertFalse(bits.get(65537));
+        assertFalse(bits.get(60000000));
+        assertEquals(3, bits.cardinality());
+    }
+
+    @Test
+    public void valuesOutsideTheDirectRangeAreFound()
+    {
+        HybridBitSet bits = new HybridBitSet();
+        bits.set(1L << 40);
+        bits.set(Long.MAX_VALUE);
+        bits.set(-1);
+
+        assertTrue(bits.get(1L << 40));
+        assertTrue(bits.get(Long.MAX_VALUE));
+        assertTrue(bits.get(-1));
+        assertFalse(bits.get((1L << 40) + 1));
+        assertFalse(bits.get(-2));
+        assertEquals(3, bits.cardinality());
+    }
+
+    @Test
+    public void denseContainerKeepsAllValues()
+    {
+        HybridBitSet bits = new HybridBitSet();
+        for (long i = 0; i < 20000; i += 2)
+        {
+            bits.set(i);
+        }
+
+        for (long i = 0; i < 20000; i++)
+        {
+            assertEquals(i % 2 == 0, bits.get(i));
+        }
+        assertEquals(10000, bits.cardinality());
+    }
+
+    @Test
+    public void matchesHashSetOnRandomValues()
+    {
+        Random random = new Random(42);
+        HybridBitSet bits = new HybridBitSet();
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < 50000; i++)
+        {
+            long value = random.nextInt(200000);
+            bits.set(value);
+            expected.add(value);
+        }
+
+        for (long i = 0; i < 200000; i++)
+        {
+            assertEquals(expected.contains(i), bits.get(i));
+        }
+        assertEquals(expected.size(), bits.cardinality());
+    }
+}
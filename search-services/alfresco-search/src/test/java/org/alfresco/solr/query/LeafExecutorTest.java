@@ -0,0 +1,220 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.solr.query;
+
+import static java.util.Arrays.asList;
+import static java.lang.Thread.currentThread;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.solr.core.CloseHook;
+import org.apache.solr.core.SolrCore;
+import org.apache.solr.core.SolrResourceLoader;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class LeafExecutorTest
+{
+    private Directory directory;
+    private DirectoryReader reader;
+    private Properties properties;
+    private SolrCore core;
+    private SolrIndexSearcher searcher;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        directory = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(directory,
+                new IndexWriterConfig(new KeywordAnalyzer()).setMergePolicy(NoMergePolicy.INSTANCE)))
+        {
+            // One segment per commit
+            for (int segment = 1; segment <= 3; segment++)
+            {
+                for (int doc = 0; doc < segment; doc++)
+                {
+                    writer.addDocument(new Document());
+                }
+                writer.commit();
+            }
+        }
+        reader = DirectoryReader.open(directory);
+
+        properties = new Properties();
+        SolrResourceLoader resourceLoader = mock(SolrResourceLoader.class);
+        when(resourceLoader.getCoreProperties()).thenReturn(properties);
+        IndexSchema schema = mock(IndexSchema.class);
+        when(schema.getResourceLoader()).thenReturn(resourceLoader);
+
+        core = mock(SolrCore.class);
+        when(core.getName()).thenReturn("alfresco");
+        searcher = mock(SolrIndexSearcher.class);
+        when(searcher.getSchema()).thenReturn(schema);
+        when(searcher.getCore()).thenReturn(core);
+        when(searcher.getTopReaderContext()).thenReturn(reader.getContext());
+        when(searcher.maxDoc()).thenReturn(reader.maxDoc());
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        reader.close();
+        directory.close();
+    }
+
+    @Test
+    public void segmentsAreEvaluatedSequentiallyByDefault() throws Exception
+    {
+        List<Integer> maxDocs = LeafExecutor.map(searcher, context -> context.reader().maxDoc());
+
+        assertEquals(asList(1, 2, 3), maxDocs);
+        assertEquals(asList(currentThread(), currentThread(), currentThread()),
+                LeafExecutor.map(searcher, context -> currentThread()));
+        closeCore();
+    }
+
+    @Test
+    public void smallIndexesAreEvaluatedSequentially() throws Exception
+    {
+        properties.setProperty("alfresco.authorityFilter.threads", "2");
+        properties.setProperty("alfresco.authorityFilter.parallelMinDocs", "7");
+
+        assertEquals(asList(currentThread(), currentThread(), currentThread()),
+                LeafExecutor.map(searcher, context -> currentThread()));
+        closeCore();
+    }
+
+    @Test
+    public void propertiesAreReadOncePerCore() throws Exception
+    {
+        properties.setProperty("alfresco.authorityFilter.threads", "2");
+        properties.setProperty("alfresco.authorityFilter.parallelMinDocs", "0");
+        LeafExecutor.map(searcher, context -> context.ord);
+
+        properties.setProperty("alfresco.authorityFilter.threads", "0");
+        List<Thread> threads = LeafExecutor.map(searcher, context -> currentThread());
+        assertFalse(threads.contains(currentThread()));
+        closeCore();
+    }
+
+    @Test
+    public void segmentsAreEvaluatedOnTheQueryThreadOnceTheExecutorIsShutDown() throws Exception
+    {
+        properties.setProperty("alfresco.authorityFilter.threads", "1");
+        properties.setProperty("alfresco.authorityFilter.parallelMinDocs", "0");
+        LeafExecutor.map(searcher, context -> context.ord);
+
+        // A query racing the core close still gets all its segments evaluated
+        ArgumentCaptor<CloseHook> closeHook = ArgumentCaptor.forClass(CloseHook.class);
+        verify(core).addCloseHook(closeHook.capture());
+        CountDownLatch closed = new CountDownLatch(1);
+        List<Integer> ords = LeafExecutor.map(searcher, context -> {
+            if (context.ord == 0)
+            {
+                closeHook.getValue().preClose(core);
+                closed.countDown();
+            }
+            return context.ord;
+        });
+
+        assertTrue(closed.await(10, SECONDS));
+        assertEquals(asList(0, 1, 2), ords);
+    }
+
+    @Test
+    public void segmentsAreEvaluatedOnTheCoreExecutorInSegmentOrder() throws Exception
+    {
+        properties.setProperty("alfresco.authorityFilter.threads", "2");
+        properties.setProperty("alfresco.authorityFilter.parallelMinDocs", "6");
+
+        assertEquals(asList(1, 2, 3), LeafExecutor.map(searcher, context -> context.reader().maxDoc()));
+        assertEquals(asList(0, 1, 2), LeafExecutor.map(searcher, context -> context.ord));
+
+        // The executor is created once per core and released when the core closes
+        ArgumentCaptor<CloseHook> closeHook = ArgumentCaptor.forClass(CloseHook.class);
+        verify(core).addCloseHook(closeHook.capture());
+        closeHook.getValue().preClose(core);
+
+        LeafExecutor.map(searcher, context -> context.ord);
+        verify(core, times(2)).addCloseHook(closeHook.capture());
+        closeHook.getValue().preClose(core);
+    }
+
+    private void closeCore()
+    {
+        ArgumentCaptor<CloseHook> closeHook = ArgumentCaptor.forClass(CloseHook.class);
+        verify(core).addCloseHook(closeHook.capture());
+        closeHook.getValue().preClose(core);
+    }
+
+    @Test(expected = IOException.class)
+    public void segmentFailuresAreRethrown() throws Exception
+    {
+        properties.setProperty("alfresco.authorityFilter.threads", "2");
+        properties.setProperty("alfresco.authorityFilter.parallelMinDocs", "0");
+
+        try
+        {
+            LeafExecutor.map(searcher, context -> {
+                if (context.ord == 1)
+                {
+                    throw new IOException("Segment failure");
+                }
+                return context.ord;
+            });
+        }
+        finally
+        {
+            ArgumentCaptor<CloseHook> closeHook = ArgumentCaptor.forClass(CloseHook.class);
+            verify(core).addCloseHook(closeHook.capture());
+            closeHook.getValue().preClose(core);
+        }
+    }
+}
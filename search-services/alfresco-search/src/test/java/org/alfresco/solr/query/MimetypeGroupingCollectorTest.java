@@ -0,0 +1,147 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.solr.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.alfresco.solr.AlfrescoSolrDataModel;
+import org.alfresco.solr.AlfrescoSolrDataModel.FieldUse;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.handler.component.ResponseBuilder;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.schema.StrField;
+import org.junit.Test;
+import org.mockito.MockedStatic;
+
+public class MimetypeGroupingCollectorTest
+{
+    private static final String FIELD = "mimetype";
+
+    private static final String[] MIMETYPES = {"text/plain", "application/pdf", "image/png", null};
+
+    @Test
+    public void hitsOfSeveralSegmentsAreCountedPerGroup() throws Exception
+    {
+        HashMap<String, String> mappings = new HashMap<>();
+        mappings.put("text/plain", "Text Documents");
+        mappings.put("application/pdf", "Documents");
+
+        // 4097 docs split into unevenly sized segments
+        int[] segmentSizes = {1000, 3000, 97};
+        Map<String, Integer> expected = new HashMap<>();
+        try (Directory directory = new RAMDirectory())
+        {
+            try (IndexWriter writer = new IndexWriter(directory,
+                    new IndexWriterConfig(new KeywordAnalyzer()).setMergePolicy(NoMergePolicy.INSTANCE)))
+            {
+                int doc = 0;
+                for (int segmentSize : segmentSizes)
+                {
+                    for (int i = 0; i < segmentSize; i++, doc++)
+                    {
+                        Document document = new Document();
+                        // The last segment only holds some of the mimetypes, with other ordinals
+                        String mimetype = MIMETYPES[(segmentSize == 97) ? doc % 2 + 1 : doc % MIMETYPES.length];
+                        if (mimetype != null)
+                        {
+                            document.add(new SortedDocValuesField(FIELD, new BytesRef(mimetype)));
+                            expected.merge(mappings.getOrDefault(mimetype, mimetype), 1, Integer::sum);
+                        }
+                        writer.addDocument(document);
+                    }
+                    writer.commit();
+                }
+            }
+
+            try (DirectoryReader reader = DirectoryReader.open(directory))
+            {
+                assertEquals(segmentSizes.length, reader.leaves().size());
+
+                ResponseBuilder rb = responseBuilder();
+                TotalHitCountCollector hits = new TotalHitCountCollector();
+                try (MockedStatic<AlfrescoSolrDataModel> dataModel = mockDataModel())
+                {
+                    MimetypeGroupingCollector collector = new MimetypeGroupingCollector(rb, mappings, true);
+                    collector.setDelegate(hits);
+                    new IndexSearcher(reader).search(new MatchAllDocsQuery(), collector);
+                    collector.finish();
+                }
+
+                assertEquals(4097, hits.getTotalHits());
+                NamedList<?> counts = (NamedList<?>) ((NamedList<?>) rb.rsp.getValues().get("analytics")).get("mimetype()");
+                assertEquals(expected.size(), counts.size());
+                for (Map.Entry<String, Integer> group : expected.entrySet())
+                {
+                    assertEquals(group.getKey(), (long) group.getValue(), counts.get(group.getKey()));
+                }
+            }
+        }
+    }
+
+    private MockedStatic<AlfrescoSolrDataModel> mockDataModel()
+    {
+        AlfrescoSolrDataModel instance = mock(AlfrescoSolrDataModel.class);
+        when(instance.mapProperty(eq("content.mimetype"), eq(FieldUse.FACET), any(SolrQueryRequest.class))).thenReturn(FIELD);
+        MockedStatic<AlfrescoSolrDataModel> dataModel = mockStatic(AlfrescoSolrDataModel.class);
+        dataModel.when(AlfrescoSolrDataModel::getInstance).thenReturn(instance);
+        return dataModel;
+    }
+
+    private ResponseBuilder responseBuilder()
+    {
+        IndexSchema schema = mock(IndexSchema.class);
+        when(schema.getFieldOrNull(FIELD)).thenReturn(new SchemaField(FIELD, new StrField()));
+        SolrQueryRequest req = mock(SolrQueryRequest.class);
+        when(req.getSchema()).thenReturn(schema);
+        return new ResponseBuilder(req, new SolrQueryResponse(), Collections.emptyList());
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.solr.query;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MinHashJaccardQueryTest
+{
+    private static final String CANDIDATE = "CANDIDATE";
+
+    private Directory directory;
+
+    /**
+     * Indexes a segment with the MINHASH doc values and a segment without them, as left by an index built before
+     * the doc values were enabled.
+     */
+    @Before
+    public void setUp() throws Exception
+    {
+        directory = new RAMDirectory();
+        IndexWriterConfig config = new IndexWriterConfig(new KeywordAnalyzer()).setMergePolicy(NoMergePolicy.INSTANCE);
+        try (IndexWriter writer = new IndexWriter(directory, config))
+        {
+            writer.addDocument(candidate("same", true, "a", "b", "c", "d"));
+            writer.addDocument(candidate("half", true, "a", "b", "x", "y"));
+            writer.addDocument(candidate("other", true, "w", "x", "y", "z"));
+            writer.commit();
+
+            writer.addDocument(candidate("sameWithoutDocValues", false, "a", "b", "c", "d"));
+            writer.addDocument(candidate("otherWithoutDocValues", false, "w", "x", "y", "z"));
+            writer.commit();
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        directory.close();
+    }
+
+    @Test
+    public void candidatesAreScoredWithTheFractionOfSharedMinHashes() throws Exception
+    {
+        Map<String, Float> scores = search(0);
+
+        assertEquals(5, scores.size());
+        assertEquals(1f, scores.get("same"), 0);
+        assertEquals(0.5f, scores.get("half"), 0);
+        assertEquals(0f, scores.get("other"), 0);
+    }
+
+    @Test
+    public void candidatesBelowTheMinimumSimilarityAreFilteredOut() throws Exception
+    {
+        Map<String, Float> scores = search(0.6f);
+
+        assertEquals(1f, scores.get("same"), 0);
+        assertNull(scores.get("half"));
+        assertNull(scores.get("other"));
+    }
+
+    @Test
+    public void segmentsWithoutDocValuesKeepAllTheirCandidatesWithAConstantScore() throws Exception
+    {
+        Map<String, Float> scores = search(0.6f);
+
+        assertEquals(3, scores.size());
+        assertEquals(scores.get("sameWithoutDocValues"), scores.get("otherWithoutDocValues"));
+    }
+
+    private Document candidate(String id, boolean docValues, String... minHashes)
+    {
+        Document doc = new Document();
+        doc.add(new StringField("id", id, Field.Store.YES));
+        doc.add(new StringField(CANDIDATE, "T", Field.Store.NO));
+        for (String minHash : minHashes)
+        {
+            doc.add(new StringField(MinHashJaccardQuery.FIELD_MINHASH, minHash, Field.Store.NO));
+            if (docValues)
+            {
+                doc.add(new SortedSetDocValuesField(MinHashJaccardQuery.FIELD_MINHASH, new BytesRef(minHash)));
+            }
+        }
+        return doc;
+    }
+
+    private Map<String, Float> search(float minSimilarity) throws Exception
+    {
+        MinHashJaccardQuery query = new MinHashJaccardQuery(new TermQuery(new Term(CANDIDATE, "T")),
+                asList("a", "b", "c", "d"), minSimilarity);
+
+        Map<String, Float> scores = new HashMap<>();
+        try (DirectoryReader reader = DirectoryReader.open(directory))
+        {
+            assertEquals(2, reader.leaves().size());
+            IndexSearcher searcher = new IndexSearcher(reader);
+            searcher.setQueryCache(null);
+            for (ScoreDoc hit : searcher.search(query, 10).scoreDocs)
+            {
+                scores.put(searcher.doc(hit.doc).get("id"), hit.score);
+            }
+        }
+        return scores;
+    }
+}
@@ -29,6 +29,9 @@ package org.alfresco.solr.schema.highlight;
 import org.alfresco.solr.AlfrescoAnalyzerWrapper;
 import org.alfresco.util.Pair;
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.core.WhitespaceAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.analysis.tokenattributes.OffsetAttribute;
 import org.apache.solr.schema.FieldType;
 import org.apache.solr.schema.IndexSchema;
 import org.junit.Before;
@@ -186,4 +189,30 @@ public class LanguagePrefixedTokenStreamTest
 
         assertTrue(data.getFirst().isEmpty());
     }
+
+    @Test
+    public void offsetsIncludeTheLocaleMarker_soTheyAreAlignedWithTheStoredValue() throws IOException
+    {
+        FieldType englishFieldType = mock(FieldType.class);
+        when(englishFieldType.getIndexAnalyzer()).thenReturn(new WhitespaceAnalyzer());
+        when(schema.getFieldTypeByName(classUnderTest.highlightingFieldTypeName("en"))).thenReturn(englishFieldType);
+
+        String storedValue = "\u0000en\u0000some large content";
+        CharTermAttribute term = classUnderTest.getAttribute(CharTermAttribute.class);
+        OffsetAttribute offset = classUnderTest.getAttribute(OffsetAttribute.class);
+
+        classUnderTest.setReader(new StringReader(storedValue));
+        classUnderTest.reset();
+
+        int tokens = 0;
+        while (classUnderTest.incrementToken())
+        {
+            assertEquals(term.toString(), storedValue.substring(offset.startOffset(), offset.endOffset()));
+            tokens++;
+        }
+        classUnderTest.end();
+        classUnderTest.close();
+
+        assertEquals(3, tokens);
+    }
 }
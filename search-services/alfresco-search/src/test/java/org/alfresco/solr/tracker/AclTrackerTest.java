@@ -27,22 +27,46 @@ package org.alfresco.solr.tracker;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
 
 import static org.alfresco.solr.tracker.AclTracker.INITIAL_MAX_ACL_CHANGE_SET_ID;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.openMocks;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.solr.IndexTrackingShutdownException;
 import org.alfresco.solr.InformationServer;
 import org.alfresco.solr.TrackerState;
+import org.alfresco.solr.client.Acl;
 import org.alfresco.solr.client.AclChangeSet;
 import org.alfresco.solr.client.AclChangeSets;
+import org.alfresco.solr.client.AclReaders;
 import org.alfresco.solr.client.SOLRAPIClient;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 
@@ -58,6 +82,9 @@ public class AclTrackerTest
     /** The class that gets information from Solr. */
     @Mock
     private InformationServer solrInformationServer;
+    /** The statistics of the trackers. */
+    @Mock
+    private TrackerStats trackerStats;
 
     @Before
     public void setUp()
@@ -176,4 +203,257 @@ public class AclTrackerTest
         // Call the method under test.
         aclTracker.checkRepoAndIndexConsistency(trackerState);
     }
+
+    /** Check that the batches of ACL change sets are indexed one by one, in commit time order. */
+    @Test
+    public void testTrackAclChangeSets_batchesIndexedInCommitTimeOrder() throws Exception
+    {
+        AclChangeSet first = new AclChangeSet(5, 100, 1);
+        AclChangeSet second = new AclChangeSet(2, 200, 1);
+        AclChangeSet third = new AclChangeSet(3, 200, 1);
+        AclChangeSet fourth = new AclChangeSet(4, 300, 1);
+        AclTracker tracker = trackerOf(2, first, second, third, fourth);
+
+        // Call the method under test.
+        tracker.trackAclChangeSets();
+
+        InOrder inOrder = inOrder(solrInformationServer);
+        inOrder.verify(solrInformationServer).indexAclChangeSets(readersOf(first, second), asList(first, second));
+        inOrder.verify(solrInformationServer).indexAclChangeSets(readersOf(third, fourth), asList(third, fourth));
+        assertEquals(300L, tracker.state.getLastIndexedChangeSetCommitTime());
+        assertEquals(4L, tracker.state.getLastIndexedChangeSetId());
+    }
+
+    /** Check that each batch is written with a single call, which carries the tracker state of the whole batch. */
+    @Test
+    public void testTrackAclChangeSets_oneIndexCallPerBatch() throws Exception
+    {
+        AclChangeSet first = new AclChangeSet(1, 100, 1);
+        AclChangeSet second = new AclChangeSet(2, 100, 0);
+        AclChangeSet third = new AclChangeSet(3, 200, 1);
+        AclTracker tracker = trackerOf(3, first, second, third);
+
+        // Call the method under test.
+        tracker.trackAclChangeSets();
+
+        // The change set with no ACLs is still indexed, with the others of its batch.
+        verify(solrInformationServer).indexAclChangeSets(readersOf(first, third), asList(first, second, third));
+        verify(solrInformationServer, times(1)).indexAclChangeSets(anyList(), any());
+        assertEquals(200L, tracker.state.getLastIndexedChangeSetCommitTime());
+        assertEquals(3L, tracker.state.getLastIndexedChangeSetId());
+    }
+
+    /** Check that a failure partway through the batches keeps the tracker state at the last batch fully indexed. */
+    @Test
+    public void testTrackAclChangeSets_failurePartwayKeepsTheStateOfTheLastIndexedBatch() throws Exception
+    {
+        AclChangeSet first = new AclChangeSet(1, 100, 1);
+        AclChangeSet second = new AclChangeSet(2, 200, 1);
+        AclChangeSet third = new AclChangeSet(3, 300, 1);
+        AclTracker tracker = trackerOf(1, first, second, third);
+        when(solrInformationServer.indexAclChangeSets(readersOf(second), asList(second)))
+                .thenThrow(new IOException("Index failure"));
+
+        try
+        {
+            // Call the method under test.
+            tracker.trackAclChangeSets();
+            fail("Expected the indexing failure to be rethrown.");
+        }
+        catch (IOException expected)
+        {
+            assertEquals(100L, tracker.state.getLastIndexedChangeSetCommitTime());
+            assertEquals(1L, tracker.state.getLastIndexedChangeSetId());
+            verify(solrInformationServer, times(2)).indexAclChangeSets(anyList(), any());
+        }
+    }
+
+    /** Check that no more than pipelineQueueDepth batches are fetched ahead, and that they are indexed in order. */
+    @Test
+    public void testTrackAclChangeSets_pipelineIsBoundedAndKeepsTheOrder() throws Exception
+    {
+        AclChangeSet[] changeSets = new AclChangeSet[6];
+        for (int i = 0; i < changeSets.length; i++)
+        {
+            changeSets[i] = new AclChangeSet(i + 1, 100 * (i + 1), 1);
+        }
+        AclTracker tracker = trackerOf(1, 2, changeSets);
+
+        AtomicInteger fetched = new AtomicInteger();
+        AtomicInteger indexed = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(repositoryClient.getAcls(anyList(), isNull(), eq(Integer.MAX_VALUE))).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(fetched.incrementAndGet() - indexed.get(), Math::max);
+            AclChangeSet changeSet = invocation.<List<AclChangeSet>>getArgument(0).get(0);
+            // The older batches are the slower to fetch
+            Thread.sleep(10L * (changeSets.length - changeSet.getId()));
+            return asList(new Acl(changeSet.getId(), changeSet.getId()));
+        });
+        when(solrInformationServer.indexAclChangeSets(anyList(), any())).thenAnswer(invocation -> {
+            indexed.incrementAndGet();
+            return 0L;
+        });
+
+        // Call the method under test.
+        tracker.trackAclChangeSets();
+
+        assertTrue("Expected at most 2 batches in flight, but were " + maxInFlight.get(), maxInFlight.get() <= 2);
+        InOrder inOrder = inOrder(solrInformationServer);
+        for (AclChangeSet changeSet : changeSets)
+        {
+            inOrder.verify(solrInformationServer).indexAclChangeSets(readersOf(changeSet), asList(changeSet));
+        }
+        verify(trackerStats, times(changeSets.length)).addAclFetchTime(anyLong());
+        verify(trackerStats, times(changeSets.length)).addAclFetchWaitTime(anyLong());
+    }
+
+    /** Check that a failed fetch reaches the tracker, and that the fetches still in flight are interrupted. */
+    @Test
+    public void testTrackAclChangeSets_fetchFailureReachesTheTrackerAndCancelsTheOtherFetches() throws Exception
+    {
+        AclChangeSet first = new AclChangeSet(1, 100, 1);
+        AclChangeSet second = new AclChangeSet(2, 200, 1);
+        AclChangeSet third = new AclChangeSet(3, 300, 1);
+        AclTracker tracker = trackerOf(1, 2, first, second, third);
+
+        IOException fetchFailure = new IOException("Fetch failure");
+        CountDownLatch thirdFetchStarted = new CountDownLatch(1);
+        CountDownLatch thirdFetchInterrupted = new CountDownLatch(1);
+        when(repositoryClient.getAcls(anyList(), isNull(), eq(Integer.MAX_VALUE))).thenAnswer(invocation -> {
+            AclChangeSet changeSet = invocation.<List<AclChangeSet>>getArgument(0).get(0);
+            if (changeSet.equals(second))
+            {
+                // Fail once the next batch is in flight
+                thirdFetchStarted.await(5, SECONDS);
+                throw fetchFailure;
+            }
+            if (changeSet.equals(third))
+            {
+                thirdFetchStarted.countDown();
+                awaitInterruption(thirdFetchInterrupted);
+            }
+            return asList(new Acl(changeSet.getId(), changeSet.getId()));
+        });
+
+        try
+        {
+            // Call the method under test.
+            tracker.trackAclChangeSets();
+            fail("Expected the fetch failure to be rethrown.");
+        }
+        catch (IOException expected)
+        {
+            assertTrue(expected.getCause() instanceof ExecutionException);
+            assertSame(fetchFailure, expected.getCause().getCause());
+        }
+
+        assertTrue("Expected the third fetch to be interrupted.", thirdFetchInterrupted.await(5, SECONDS));
+        verify(solrInformationServer).indexAclChangeSets(readersOf(first), asList(first));
+        verify(solrInformationServer, times(1)).indexAclChangeSets(anyList(), any());
+        assertEquals(1L, tracker.state.getLastIndexedChangeSetId());
+    }
+
+    /** Check that the tracker stops between two batches when shut down, interrupting the fetches in flight. */
+    @Test
+    public void testTrackAclChangeSets_shutdownCancelsTheFetchesInFlight() throws Exception
+    {
+        AclChangeSet first = new AclChangeSet(1, 100, 1);
+        AclChangeSet second = new AclChangeSet(2, 200, 1);
+        AclTracker tracker = trackerOf(1, 2, first, second);
+
+        CountDownLatch secondFetchStarted = new CountDownLatch(1);
+        CountDownLatch secondFetchInterrupted = new CountDownLatch(1);
+        when(repositoryClient.getAcls(anyList(), isNull(), eq(Integer.MAX_VALUE))).thenAnswer(invocation -> {
+            AclChangeSet changeSet = invocation.<List<AclChangeSet>>getArgument(0).get(0);
+            if (changeSet.equals(second))
+            {
+                secondFetchStarted.countDown();
+                awaitInterruption(secondFetchInterrupted);
+            }
+            return asList(new Acl(changeSet.getId(), changeSet.getId()));
+        });
+        when(solrInformationServer.indexAclChangeSets(anyList(), any())).thenAnswer(invocation -> {
+            secondFetchStarted.await(5, SECONDS);
+            tracker.shutdown();
+            return 0L;
+        });
+
+        try
+        {
+            // Call the method under test.
+            tracker.trackAclChangeSets();
+            fail("Expected the tracker to stop.");
+        }
+        catch (IndexTrackingShutdownException expected)
+        {
+            // The second batch is not indexed
+        }
+
+        assertTrue("Expected the second fetch to be interrupted.", secondFetchInterrupted.await(5, SECONDS));
+        verify(solrInformationServer, times(1)).indexAclChangeSets(anyList(), any());
+        assertEquals(1L, tracker.state.getLastIndexedChangeSetId());
+    }
+
+    /** Blocks the fetch until it is interrupted, then counts down the given latch. */
+    private static void awaitInterruption(CountDownLatch interrupted) throws InterruptedException
+    {
+        try
+        {
+            new CountDownLatch(1).await(10, SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            interrupted.countDown();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates an ACL tracker, backed by the mocks, which finds the given change sets in the repository.
+     * Each change set with ACLs contains a single ACL, with the same id.
+     */
+    private AclTracker trackerOf(int changeSetAclsBatchSize, AclChangeSet... changeSets) throws Exception
+    {
+        return trackerOf(changeSetAclsBatchSize, 2, changeSets);
+    }
+
+    private AclTracker trackerOf(int changeSetAclsBatchSize, int pipelineQueueDepth, AclChangeSet... changeSets)
+            throws Exception
+    {
+        Properties properties = new Properties();
+        properties.setProperty("alfresco.changeSetAclsBatchSize", String.valueOf(changeSetAclsBatchSize));
+        properties.setProperty("alfresco.acl.tracker.pipeline.queueDepth", String.valueOf(pipelineQueueDepth));
+        properties.setProperty("alfresco.acl.tracker.maxParallelism", "4");
+        when(solrInformationServer.getTrackerStats()).thenReturn(trackerStats);
+
+        AclTracker tracker = new AclTracker(properties, repositoryClient, "core-" + System.nanoTime(), solrInformationServer);
+        tracker.state = new TrackerState();
+        tracker.state.setTimeToStopIndexing(10000L);
+
+        when(repositoryClient.getAclChangeSets(anyLong(), isNull(), anyLong(), isNull(), anyInt()))
+                .thenReturn(new AclChangeSets(asList(changeSets)), new AclChangeSets(emptyList()));
+        when(repositoryClient.getAcls(anyList(), isNull(), eq(Integer.MAX_VALUE))).thenAnswer(invocation ->
+                invocation.<List<AclChangeSet>>getArgument(0).stream()
+                        .map(changeSet -> new Acl(changeSet.getId(), changeSet.getId()))
+                        .collect(toList()));
+        when(repositoryClient.getAclReaders(anyList())).thenAnswer(invocation ->
+                invocation.<List<Acl>>getArgument(0).stream()
+                        .map(acl -> readersOf(acl.getAclChangeSetId()))
+                        .collect(toList()));
+        return tracker;
+    }
+
+    /** The readers of the ACLs contained in the given change sets. */
+    private static List<AclReaders> readersOf(AclChangeSet... changeSets)
+    {
+        return asList(changeSets).stream()
+                .filter(changeSet -> changeSet.getAclCount() > 0)
+                .map(changeSet -> readersOf(changeSet.getId()))
+                .collect(toList());
+    }
+
+    private static AclReaders readersOf(long aclChangeSetId)
+    {
+        return new AclReaders(aclChangeSetId, asList("GROUP_EVERYONE"), emptyList(), aclChangeSetId, null);
+    }
 }
@@ -0,0 +1,115 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.solr.tracker;
+
+import static java.util.Collections.emptyList;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.alfresco.solr.AlfrescoCoreAdminHandler;
+import org.alfresco.solr.InformationServer;
+import org.alfresco.solr.client.NodeMetaData;
+import org.alfresco.solr.client.SOLRAPIClient;
+import org.alfresco.solr.client.Transaction;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CascadeTrackerTest
+{
+    private CascadeTracker cascadeTracker;
+
+    @Mock
+    private SOLRAPIClient repositoryClient;
+    @Mock
+    private InformationServer srv;
+    @Spy
+    private Properties props;
+    @Mock
+    private TrackerStats trackerStats;
+    @Mock
+    private AlfrescoCoreAdminHandler adminHandler;
+    @Mock
+    private TrackerRegistry trackerRegistry;
+    @Mock
+    private ModelTracker modelTracker;
+
+    @Before
+    public void setUp()
+    {
+        when(srv.getTrackerStats()).thenReturn(trackerStats);
+        when(srv.getAdminHandler()).thenReturn(adminHandler);
+        when(adminHandler.getTrackerRegistry()).thenReturn(trackerRegistry);
+        when(trackerRegistry.getModelTracker()).thenReturn(modelTracker);
+        when(modelTracker.hasModels()).thenReturn(true);
+        this.cascadeTracker = new CascadeTracker(props, repositoryClient, "theCoreName", srv);
+    }
+
+    /**
+     * Nested moves can be cascaded by different workers: each of them must know all the parent nodes of the round, so
+     * the descendants below a parent of another batch are not relocated with stale paths.
+     */
+    @Test
+    public void eachBatchIsCascadedKnowingAllTheParentsOfTheRound() throws Exception
+    {
+        Transaction transaction = new Transaction();
+        transaction.setId(1L);
+        when(srv.getCascades(anyInt())).thenReturn(List.of(transaction), emptyList());
+
+        // Two batches of parents, with the default batch size of 10
+        List<NodeMetaData> parents = LongStream.rangeClosed(1, 12)
+                .mapToObj(id -> {
+                    NodeMetaData nodeMetaData = new NodeMetaData();
+                    nodeMetaData.setId(id);
+                    return nodeMetaData;
+                })
+                .collect(Collectors.toList());
+        when(srv.getCascadeNodes(eq(List.of(1L)), any(ForkJoinPool.class))).thenReturn(parents);
+
+        cascadeTracker.doTrack("anIterationId");
+
+        verify(srv).cascadeNodes(eq(parents.subList(0, 10)), eq(parents), eq(true), any(ForkJoinPool.class));
+        verify(srv).cascadeNodes(eq(parents.subList(10, 12)), eq(parents), eq(true), any(ForkJoinPool.class));
+        verify(srv, times(2)).cascadeNodes(anyList(), eq(parents), eq(true), any(ForkJoinPool.class));
+        verify(srv).updateTransaction(transaction);
+    }
+}
@@ -28,11 +28,14 @@ package org.alfresco.solr.tracker;
 
 import static org.mockito.Mockito.*;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.alfresco.solr.AlfrescoSolrDataModel.TenantDbId;
+import org.alfresco.solr.IndexTrackingShutdownException;
 import org.alfresco.solr.SolrInformationServer;
 import org.alfresco.solr.client.SOLRAPIClient;
 import org.junit.Assert;
@@ -109,14 +112,14 @@ public class ContentTrackerTest
             doc.tenant = "2";
             docs2.add(doc);
         }
-        when(this.srv.getDocsWithUncleanContent())
+        when(this.srv.getDocsWithUncleanContent(any()))
                 .thenReturn(docs1)
                 .thenReturn(docs2)
             .thenReturn(emptyList);
         this.contentTracker.doTrack("anIterationId");
         
         InOrder order = inOrder(srv);
-        order.verify(srv).getDocsWithUncleanContent();
+        order.verify(srv).getDocsWithUncleanContent(any());
         
         /*
          * I had to make each bunch of calls have different parameters to prevent Mockito from incorrectly failing
@@ -137,7 +140,7 @@ public class ContentTrackerTest
         order.verify(srv).updateContent(thirdDoc);
         order.verify(srv).commit();
         
-        order.verify(srv).getDocsWithUncleanContent();
+        order.verify(srv).getDocsWithUncleanContent(any());
         
         // From docs2
         docRef = new TenantDbId();
@@ -146,8 +149,97 @@ public class ContentTrackerTest
         order.verify(srv, times(UPDATE_BATCH)).updateContent(docRef);
         order.verify(srv).commit();
         
-        order.verify(srv).getDocsWithUncleanContent();
+        order.verify(srv).getDocsWithUncleanContent(any());
     }
+
+    @Test
+    public void doTrackUpdatesContentOfEachWorkerInOneBatch() throws Exception
+    {
+        doReturn("1").when(props).getProperty(eq("alfresco.content.tracker.maxParallelism"), anyString());
+        this.contentTracker = new ContentTracker(props, repositoryClient, coreName, srv);
+
+        List<TenantDbId> docs = new ArrayList<>();
+        for (long i = 0; i <= UPDATE_BATCH; i++)
+        {
+            TenantDbId doc = new TenantDbId();
+            doc.dbId = i;
+            doc.tenant = "";
+            docs.add(doc);
+        }
+        when(this.srv.getDocsWithUncleanContent(any()))
+                .thenReturn(docs)
+                .thenReturn(new ArrayList<>());
+
+        this.contentTracker.doTrack("anIterationId");
+
+        verify(srv).updateContentBatch(docs.subList(0, UPDATE_BATCH));
+        verify(srv).updateContentBatch(docs.subList(UPDATE_BATCH, UPDATE_BATCH + 1));
+        verify(srv, never()).updateContent(any(TenantDbId.class));
+    }
+
+    @Test
+    public void doTrackReleasesThePrefetchedDocsWhenStopped() throws Exception
+    {
+        doReturn("1").when(props).getProperty(eq("alfresco.content.tracker.maxParallelism"), anyString());
+        this.contentTracker = new ContentTracker(props, repositoryClient, coreName, srv);
+
+        TenantDbId doc = new TenantDbId();
+        doc.dbId = 1L;
+        doc.tenant = "";
+        TenantDbId prefetchedDoc = new TenantDbId();
+        prefetchedDoc.dbId = 2L;
+        prefetchedDoc.tenant = "";
+        List<TenantDbId> prefetchedDocs = new ArrayList<>(List.of(prefetchedDoc));
+        when(this.srv.getDocsWithUncleanContent(any()))
+                .thenReturn(new ArrayList<>(List.of(doc)))
+                .thenReturn(prefetchedDocs);
+        // The tracker is shut down while the first documents are updated, the next ones have been already looked up
+        doAnswer(invocation -> {
+            contentTracker.shutdown();
+            return null;
+        }).when(srv).updateContentBatch(anyList());
+
+        try
+        {
+            this.contentTracker.doTrack("anIterationId");
+            Assert.fail("The tracker should have been stopped");
+        }
+        catch (IOException expected)
+        {
+            Assert.assertTrue(expected.getCause() instanceof IndexTrackingShutdownException);
+        }
+
+        verify(srv).updateContentBatch(List.of(doc));
+        verify(srv).releaseDocsWithUncleanContent(prefetchedDocs);
+    }
+
+    @Test
+    public void doTrackWaitsForThePrefetchedDocsBeforeReleasingTheWriteLock() throws Exception
+    {
+        doReturn("1").when(props).getProperty(eq("alfresco.content.tracker.maxParallelism"), anyString());
+        this.contentTracker = new ContentTracker(props, repositoryClient, coreName, srv);
+
+        TenantDbId doc = new TenantDbId();
+        doc.dbId = 1L;
+        doc.tenant = "";
+        AtomicBoolean lockedWhilePrefetching = new AtomicBoolean();
+        when(this.srv.getDocsWithUncleanContent(any()))
+                .thenReturn(new ArrayList<>(List.of(doc)))
+                .thenAnswer(invocation -> {
+                    // Slower than the update of the first documents
+                    Thread.sleep(200);
+                    lockedWhilePrefetching.set(contentTracker.getWriteLock().availablePermits() == 0);
+                    return new ArrayList<>();
+                });
+
+        this.contentTracker.doTrack("anIterationId");
+
+        verify(srv).updateContentBatch(List.of(doc));
+        verify(srv, times(2)).getDocsWithUncleanContent(any());
+        Assert.assertTrue(lockedWhilePrefetching.get());
+        Assert.assertEquals(1, contentTracker.getWriteLock().availablePermits());
+    }
+
     @Test
     public void typeCheck()
     {
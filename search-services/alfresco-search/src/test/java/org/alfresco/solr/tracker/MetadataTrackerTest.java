@@ -28,9 +28,12 @@ package org.alfresco.solr.tracker;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.alfresco.httpclient.AuthenticationException;
 import org.alfresco.repo.index.shard.ShardState;
@@ -60,6 +63,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
@@ -279,6 +283,23 @@ public class MetadataTrackerTest
         assertTrue(metadataTracker.isTransactionToBeIndexed(incomingTransaction));
     }
 
+    @Test
+    public void onlyTransactionsNotNewerThanLastIndexedCommitTimeAreLookedUpInBulk() throws Exception
+    {
+        var olderTransaction = new Transaction();
+        olderTransaction.setId(1);
+        olderTransaction.setCommitTimeMs(10L);
+
+        var newerTransaction = new Transaction();
+        newerTransaction.setId(2);
+        newerTransaction.setCommitTimeMs(20L);
+
+        when(trackerState.getLastIndexedTxCommitTime()).thenReturn(15L);
+        when(srv.txnsInIndex(List.of(1L), true)).thenReturn(Set.of(1L));
+
+        assertEquals(Set.of(1L), metadataTracker.alreadyIndexedTransactions(List.of(olderTransaction, newerTransaction)));
+    }
+
     @Test
     public void lastIndexedTransactionUsesCommitTimeThenIdOrdering() throws Exception
     {
@@ -368,6 +389,64 @@ public class MetadataTrackerTest
         assertEquals(11L, state.getLastIndexedTxId());
     }
 
+    @Test
+    public void pipelinedTrackingIndexesNodesBeforeTheirTransactions() throws Exception
+    {
+        props.setProperty("alfresco.metadata.tracker.pipeline.enabled", "true");
+        props.setProperty("alfresco.metadata.tracker.pipeline.queueDepth", "1");
+        metadataTracker = spy(new MetadataTracker(props, repositoryClient, "theCoreName", srv));
+
+        TrackerState state = new TrackerState();
+        state.setTimeToStopIndexing(1000L);
+        state.setLastIndexedTxCommitTime(0L);
+        state.setLastIndexedTxId(0L);
+
+        metadataTracker.state = state;
+        when(metadataTracker.getTrackerState()).thenReturn(state);
+
+        Transaction tx1 = new Transaction();
+        tx1.setId(1L);
+        tx1.setCommitTimeMs(100L);
+        tx1.setUpdates(1);
+
+        Transaction tx2 = new Transaction();
+        tx2.setId(2L);
+        tx2.setCommitTimeMs(200L);
+        tx2.setUpdates(1);
+
+        when(repositoryClient.getTransactions(anyLong(), isNull(), anyLong(), isNull(), anyInt()))
+            .thenReturn(new Transactions(List.of(tx1, tx2)))
+            .thenReturn(new Transactions(Collections.emptyList()));
+
+        List<Node> nodes = getNodes();
+        when(repositoryClient.getNodes(any(GetNodesParameters.class), anyInt())).thenReturn(nodes);
+
+        metadataTracker.trackTransactions();
+
+        InOrder inOrder = inOrder(srv);
+        inOrder.verify(srv).indexNodes(nodes, true);
+        inOrder.verify(srv).indexTransaction(tx1, true);
+        inOrder.verify(srv).indexTransaction(tx2, true);
+
+        // Second page has been requested ahead of time by the prefetch stage
+        verify(repositoryClient, times(2)).getTransactions(anyLong(), isNull(), anyLong(), isNull(), anyInt());
+        assertEquals(200L, state.getLastIndexedTxCommitTime());
+        assertEquals(2L, state.getLastIndexedTxId());
+    }
+
+    @Test
+    public void shutdownStopsThePrefetchExecutor()
+    {
+        props.setProperty("alfresco.metadata.tracker.pipeline.enabled", "true");
+        metadataTracker = new MetadataTracker(props, repositoryClient, "theCoreName", srv);
+        assertNotNull(metadataTracker.prefetchExecutor);
+
+        metadataTracker.shutdown();
+
+        assertTrue(metadataTracker.isAlreadyInShutDownMode());
+        assertTrue(metadataTracker.prefetchExecutor.isShutdown());
+    }
+
     private Node getNode()
     {
         Node node = new Node();
@@ -458,8 +537,10 @@ public class MetadataTrackerTest
         Transactions batch2 = new Transactions(List.of(newTx));
 
         // Marking the existing transactions as already in the index
-        when(srv.txnInIndex(1L, true)).thenReturn(true);
-        when(srv.txnInIndex(2L, true)).thenReturn(true);
+        when(srv.txnsInIndex(anyCollection(), eq(true))).thenAnswer(invocation ->
+                invocation.<Collection<Long>>getArgument(0).stream()
+                        .filter(id -> id == 1L || id == 2L)
+                        .collect(Collectors.toSet()));
 
         // Cycles 1-3: same batch each time, all already indexed -> bookmark + break
         // Cycle 4: threshold hit, bookmark skips to 200, gets batch2 with new tx
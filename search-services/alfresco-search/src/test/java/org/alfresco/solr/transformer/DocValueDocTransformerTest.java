@@ -0,0 +1,181 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.solr.transformer;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Set;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.SortedDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.SlowCompositeReaderWrapper;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.response.ResultContext;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.schema.IndexSchema;
+import org.apache.solr.schema.SchemaField;
+import org.apache.solr.search.DocSlice;
+import org.apache.solr.search.ReturnFields;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DocValueDocTransformerTest
+{
+    private Directory directory;
+    private DirectoryReader reader;
+    private ResultContext context;
+    private ReturnFields returnFields;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        directory = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(directory,
+                new IndexWriterConfig(new KeywordAnalyzer()).setMergePolicy(NoMergePolicy.INSTANCE)))
+        {
+            // Two segments, the second one without any "tags"
+            writer.addDocument(document("a", "first", "x", "y"));
+            writer.addDocument(document("b", null));
+            writer.commit();
+            writer.addDocument(document("c", "third"));
+            writer.commit();
+        }
+        reader = DirectoryReader.open(directory);
+
+        IndexSchema schema = mock(IndexSchema.class);
+        FieldType type = mock(FieldType.class);
+        when(type.toObject(any(SchemaField.class), any(BytesRef.class)))
+                .thenAnswer(invocation -> ((BytesRef) invocation.getArgument(1)).utf8ToString());
+        for (String fieldName : asList("name", "title", "tags"))
+        {
+            SchemaField schemaField = mock(SchemaField.class);
+            when(schemaField.getName()).thenReturn(fieldName);
+            when(schemaField.hasDocValues()).thenReturn(true);
+            when(schemaField.getType()).thenReturn(type);
+            when(schema.getFieldOrNull(fieldName)).thenReturn(schemaField);
+        }
+
+        SolrIndexSearcher searcher = mock(SolrIndexSearcher.class);
+        when(searcher.getSchema()).thenReturn(schema);
+        when(searcher.getFieldNames()).thenReturn(Set.of("name", "title", "tags"));
+        when(searcher.getSlowAtomicReader()).thenReturn(SlowCompositeReaderWrapper.wrap(reader));
+        when(searcher.getTopReaderContext()).thenReturn(reader.getContext());
+
+        returnFields = mock(ReturnFields.class);
+        context = mock(ResultContext.class);
+        when(context.getSearcher()).thenReturn(searcher);
+        when(context.getReturnFields()).thenReturn(returnFields);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        reader.close();
+        directory.close();
+    }
+
+    @Test
+    public void onlyRequestedFieldsAreTransformed() throws Exception
+    {
+        when(returnFields.wantsField(anyString())).thenReturn(false);
+        when(returnFields.wantsField("title")).thenReturn(true);
+        when(context.getDocList()).thenReturn(new DocSlice(0, 2, new int[] {2, 0}, null, 2, 0));
+
+        DocValueDocTransformer transformer = new DocValueDocTransformer();
+        transformer.setContext(context);
+
+        SolrDocument third = new SolrDocument();
+        transformer.transform(third, 2, 0);
+        SolrDocument first = new SolrDocument();
+        transformer.transform(first, 0, 0);
+
+        assertEquals("third", third.getFieldValue("title"));
+        assertEquals("first", first.getFieldValue("title"));
+        assertFalse(first.containsKey("name"));
+        assertFalse(first.containsKey("tags"));
+    }
+
+    @Test
+    public void allFieldsAreTransformedWhenAllFieldsAreRequested() throws Exception
+    {
+        when(returnFields.wantsAllFields()).thenReturn(true);
+        when(context.getDocList()).thenReturn(new DocSlice(0, 2, new int[] {0, 2}, null, 2, 0));
+
+        DocValueDocTransformer transformer = new DocValueDocTransformer();
+        transformer.setContext(context);
+
+        SolrDocument first = new SolrDocument();
+        first.addField("name", "stored value");
+        transformer.transform(first, 0, 0);
+        assertEquals("a", first.getFieldValue("name"));
+        assertEquals(asList("x", "y"), first.getFieldValue("tags"));
+
+        SolrDocument third = new SolrDocument();
+        transformer.transform(third, 2, 0);
+        assertEquals("c", third.getFieldValue("name"));
+        assertEquals(asList(), third.getFieldValue("tags"));
+
+        // Documents outside of the result page are read on their own
+        SolrDocument second = new SolrDocument();
+        transformer.transform(second, 1, 0);
+        assertEquals("b", second.getFieldValue("name"));
+        assertNull(second.getFieldValue("title"));
+    }
+
+    private Document document(String name, String title, String... tags)
+    {
+        Document document = new Document();
+        document.add(new SortedDocValuesField("name", new BytesRef(name)));
+        if (title != null)
+        {
+            document.add(new SortedDocValuesField("title", new BytesRef(title)));
+        }
+        for (String tag : tags)
+        {
+            document.add(new SortedSetDocValuesField("tags", new BytesRef(tag)));
+        }
+        return document;
+    }
+}
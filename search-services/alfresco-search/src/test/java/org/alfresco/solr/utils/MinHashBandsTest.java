@@ -0,0 +1,80 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.solr.utils;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the band signatures computed by {@link MinHashBands}.
+ */
+public class MinHashBandsTest
+{
+    @Test
+    public void eachBandIsPrefixedByItsIndex()
+    {
+        List<String> bands = MinHashBands.bands(asList("a1", "b2", "c3", "d4", "e5"), 2);
+
+        assertEquals(3, bands.size());
+        for (int index = 0; index < bands.size(); index++)
+        {
+            assertTrue(bands.get(index).startsWith(Integer.toHexString(index) + "_"));
+        }
+    }
+
+    @Test
+    public void documentsShareOnlyTheBandsWithTheSameValues()
+    {
+        List<String> bands = MinHashBands.bands(asList("a1", "b2", "c3", "d4"), 2);
+        List<String> similar = MinHashBands.bands(asList("a1", "b2", "c3", "ff"), 2);
+
+        assertEquals(bands.get(0), similar.get(0));
+        assertNotEquals(bands.get(1), similar.get(1));
+    }
+
+    @Test
+    public void narrowTrailingBandIsPaddedWithTheFirstValues()
+    {
+        List<String> padded = MinHashBands.bands(asList("a1", "b2", "c3"), 2);
+        List<String> explicit = MinHashBands.bands(asList("a1", "b2", "c3", "a1"), 2);
+
+        assertEquals(explicit, padded);
+    }
+
+    @Test
+    public void bandingCanBeDisabled()
+    {
+        assertTrue(MinHashBands.bands(asList("a1", "b2"), 0).isEmpty());
+        assertTrue(MinHashBands.bands(null, 2).isEmpty());
+    }
+}
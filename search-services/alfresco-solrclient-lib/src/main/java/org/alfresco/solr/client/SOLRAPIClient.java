@@ -27,7 +27,9 @@
 package org.alfresco.solr.client;
 
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.JsonToken;
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.httpclient.AlfrescoHttpClient;
@@ -73,13 +75,14 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -290,49 +293,84 @@ public class SOLRAPIClient
         jsonReq.put("aclIds", aclIdsJSON);
 
         PostRequest req = new PostRequest(url.toString(), jsonReq.toString(), "application/json");
-        JSONObject json = callRepository(GET_ACLS_READERS, req);
-
-        JSONArray aclsReadersJSON = json.getJSONArray("aclsReaders");
-        List<AclReaders> aclsReaders = new ArrayList<AclReaders>(aclsReadersJSON.length());
-        for (int i = 0; i < aclsReadersJSON.length(); i++)
-        {
-            JSONObject aclReadersJSON = aclsReadersJSON.getJSONObject(i);
-            long aclId = aclReadersJSON.getLong("aclId");
-            JSONArray readersJSON = aclReadersJSON.getJSONArray("readers");
-            List<String> readers = authorityListFromJSON(readersJSON);
-            JSONArray deniedJSON = aclReadersJSON.getJSONArray("denied");
-            List<String> denied = authorityListFromJSON(deniedJSON);
-            long aclChangeSetId = aclReadersJSON.getLong("aclChangeSetId");
-            
-            String tenantDomain = aclReadersJSON.getString("tenantDomain");
-            if (tenantDomain == null)
+        List<AclReaders> aclsReaders = new ArrayList<>(aclIds.size());
+        streamRepository(GET_ACLS_READERS, req, "aclsReaders", parser -> aclsReaders.add(readAclReaders(parser)));
+
+        // Done
+        return aclsReaders;
+    }
+
+    /**
+     * Decode the ACL readers object the parser is positioned on.
+     *
+     * @param parser JSON parser positioned on the START_OBJECT token of the ACL readers
+     * @return the ACL readers
+     */
+    private AclReaders readAclReaders(JsonParser parser) throws IOException
+    {
+        Long aclId = null;
+        Long aclChangeSetId = null;
+        List<String> readers = new ArrayList<>();
+        List<String> denied = new ArrayList<>();
+        String tenantDomain = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME)
+        {
+            String fieldName = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.VALUE_NULL)
             {
-                tenantDomain = TenantService.DEFAULT_DOMAIN;
+                continue;
+            }
+
+            switch (fieldName)
+            {
+                case "aclId":
+                    aclId = parser.getLongValue();
+                    break;
+                case "aclChangeSetId":
+                    aclChangeSetId = parser.getLongValue();
+                    break;
+                case "readers":
+                    readers = readStringList(parser);
+                    break;
+                case "denied":
+                    denied = readStringList(parser);
+                    break;
+                case "tenantDomain":
+                    tenantDomain = parser.getText();
+                    break;
+                default:
+                    parser.skipChildren();
             }
-            
-            AclReaders aclReaders = new AclReaders(aclId, readers, denied, aclChangeSetId, tenantDomain);
-            aclsReaders.add(aclReaders);
         }
-        // Done
-        return aclsReaders;
+
+        if (tenantDomain == null)
+        {
+            tenantDomain = TenantService.DEFAULT_DOMAIN;
+        }
+
+        return new AclReaders(required(parser, "aclId", aclId), readers, denied,
+                required(parser, "aclChangeSetId", aclChangeSetId), tenantDomain);
     }
-    
+
     /**
-     * Convert a JSON array of authorities to a simple Java List&lt;String&gt;
-     * 
-     * @param jsonArray JSONArray
+     * Decode the JSON array of strings the parser is positioned on. Null elements are ignored.
+     *
+     * @param parser JSON parser positioned on the START_ARRAY token
      * @return List&lt;String&gt;
-     * @throws JSONException
      */
-    private List<String> authorityListFromJSON(JSONArray jsonArray) throws JSONException
+    private List<String> readStringList(JsonParser parser) throws IOException
     {
-        List<String> authorities = new ArrayList<String>(jsonArray.length());
-        for (int j = 0; j < jsonArray.length(); j++)
+        expectToken(parser, JsonToken.START_ARRAY);
+        List<String> values = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY)
         {
-            String authority = jsonArray.getString(j);
-            authorities.add(authority);
+            if (parser.currentToken() != JsonToken.VALUE_NULL)
+            {
+                values.add(parser.getText());
+            }
         }
-        return authorities;
+        return values;
     }
     
     public Transactions getTransactions(Long fromCommitTime, Long minTxnId, Long toCommitTime, Long maxTxnId, int maxResults) throws AuthenticationException, IOException, JSONException
@@ -577,165 +615,213 @@ public class SOLRAPIClient
 
         
         PostRequest req = new PostRequest(url.toString(), body.toString(), "application/json");
-        JSONObject json = callRepository(GET_NODES_URL, req);
+        List<Node> nodes = new ArrayList<>();
+        streamRepository(GET_NODES_URL, req, "nodes", parser -> nodes.add(readNode(parser)));
 
-        JSONArray jsonNodes = json.getJSONArray("nodes");
-        List<Node> nodes = new ArrayList<>(jsonNodes.length());
-        for(int i = 0; i < jsonNodes.length(); i++)
-        {
-            JSONObject jsonNodeInfo = jsonNodes.getJSONObject(i);
-            Node nodeInfo = new Node();
-            if(jsonNodeInfo.has("id"))
-            {
-                nodeInfo.setId(jsonNodeInfo.getLong("id"));
-            }
-
-            if(jsonNodeInfo.has("nodeRef"))
-            {
-                nodeInfo.setNodeRef(jsonNodeInfo.getString("nodeRef"));
-            }
-            
-            if(jsonNodeInfo.has("txnId"))
-            {
-                nodeInfo.setTxnId(jsonNodeInfo.getLong("txnId"));
-            }
-            
-            if(jsonNodeInfo.has("aclId"))
-            {
-                nodeInfo.setAclId(jsonNodeInfo.getLong("aclId"));
-            }
-            
-            if(jsonNodeInfo.has("shardPropertyValue"))
-            {
-                nodeInfo.setShardPropertyValue(jsonNodeInfo.getString("shardPropertyValue"));
-            }
+        return nodes;
+    }
 
-            if(jsonNodeInfo.has("explicitShardId"))
-            {
-                nodeInfo.setExplicitShardId(jsonNodeInfo.getInt("explicitShardId"));
-            }
-            
-            if(jsonNodeInfo.has("tenant"))
+    /**
+     * Decode the node object the parser is positioned on.
+     *
+     * @param parser JSON parser positioned on the START_OBJECT token of the node
+     * @return the node
+     */
+    private Node readNode(JsonParser parser) throws IOException
+    {
+        Node nodeInfo = new Node();
+        Long id = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME)
+        {
+            String fieldName = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.VALUE_NULL)
             {
-                nodeInfo.setTenant(jsonNodeInfo.getString("tenant"));
+                continue;
             }
 
-            if(jsonNodeInfo.has("status"))
-            {
-                Node.SolrApiNodeStatus status;
-                String statusStr = jsonNodeInfo.getString("status");
-                if(statusStr.equals("u"))
-                {
-                    status = Node.SolrApiNodeStatus.UPDATED;
-                }
-                else if(statusStr.equals("d"))
-                {
-                    status = Node.SolrApiNodeStatus.DELETED;
-                }
-                else
-                {
-                    status = Node.SolrApiNodeStatus.UNKNOWN;
-                }
-                nodeInfo.setStatus(status);
+            switch (fieldName)
+            {
+                case "id":
+                    id = parser.getLongValue();
+                    break;
+                case "nodeRef":
+                    nodeInfo.setNodeRef(parser.getText());
+                    break;
+                case "txnId":
+                    nodeInfo.setTxnId(parser.getLongValue());
+                    break;
+                case "aclId":
+                    nodeInfo.setAclId(parser.getLongValue());
+                    break;
+                case "shardPropertyValue":
+                    nodeInfo.setShardPropertyValue(parser.getText());
+                    break;
+                case "explicitShardId":
+                    nodeInfo.setExplicitShardId(parser.getIntValue());
+                    break;
+                case "tenant":
+                    nodeInfo.setTenant(parser.getText());
+                    break;
+                case "status":
+                    String statusStr = parser.getText();
+                    if (statusStr.equals("u"))
+                    {
+                        nodeInfo.setStatus(Node.SolrApiNodeStatus.UPDATED);
+                    }
+                    else if (statusStr.equals("d"))
+                    {
+                        nodeInfo.setStatus(Node.SolrApiNodeStatus.DELETED);
+                    }
+                    else
+                    {
+                        nodeInfo.setStatus(Node.SolrApiNodeStatus.UNKNOWN);
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
             }
-            
-            nodes.add(nodeInfo);
         }
-
-        return nodes;
+        nodeInfo.setId(required(parser, "id", id));
+        return nodeInfo;
     }
     
-    private PropertyValue getSinglePropertyValue(DataTypeDefinition dataType, Object value) throws JSONException
+    /**
+     * Decode a single (not multi-valued) property value. The parser is positioned on the first token of the value.
+     */
+    private PropertyValue readSinglePropertyValue(JsonParser parser, DataTypeDefinition dataType) throws IOException
     {
-        PropertyValue ret = null;
-        QName dataTypeName = dataType.getName();
-
-        if(value == null || value == JSONObject.NULL)
+        if (parser.currentToken() == JsonToken.VALUE_NULL)
         {
-            ret = null;
+            return null;
         }
-        else if(dataTypeName.equals(DataTypeDefinition.MLTEXT))
-        {
-            JSONArray a = (JSONArray)value;
-            Map<Locale, String> mlValues = new HashMap<Locale, String>(a.length());
 
-            for(int k = 0; k < a.length(); k++)
+        QName dataTypeName = dataType.getName();
+        if (dataTypeName.equals(DataTypeDefinition.MLTEXT))
+        {
+            expectToken(parser, JsonToken.START_ARRAY);
+            Map<Locale, String> mlValues = new HashMap<>();
+            while (parser.nextToken() == JsonToken.START_OBJECT)
             {
-                JSONObject pair = a.getJSONObject(k);
-                Locale locale = deserializer.deserializeValue(Locale.class, pair.getString("locale"));
-                String mlValue = pair.has("value") && !pair.isNull("value") ? pair.getString("value") : null;
+                Locale locale = null;
+                String mlValue = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME)
+                {
+                    String fieldName = parser.getCurrentName();
+                    JsonToken token = parser.nextToken();
+                    if ("locale".equals(fieldName) && token != JsonToken.VALUE_NULL)
+                    {
+                        locale = deserializer.deserializeValue(Locale.class, parser.getText());
+                    }
+                    else if ("value".equals(fieldName) && token != JsonToken.VALUE_NULL)
+                    {
+                        mlValue = parser.getText();
+                    }
+                    else
+                    {
+                        parser.skipChildren();
+                    }
+                }
                 mlValues.put(locale, mlValue);
             }
-
-            ret = new MLTextPropertyValue(mlValues);
+            return new MLTextPropertyValue(mlValues);
         }
-        else if(dataTypeName.equals(DataTypeDefinition.CONTENT))
+        else if (dataTypeName.equals(DataTypeDefinition.CONTENT))
         {
-            JSONObject o = (JSONObject)value;
-            
-            String localeStr = o.has("locale") && !o.isNull("locale") ? o.getString("locale") : null;
-            Locale locale = (o.has("locale") && !o.isNull("locale") ? deserializer.deserializeValue(Locale.class, localeStr) : null);
-
-            long size = o.has("size") && !o.isNull("size") ? o.getLong("size") : 0;
-
-            String encoding = o.has("encoding") && !o.isNull("encoding") ? o.getString("encoding") : null;
-            String mimetype = o.has("mimetype") && !o.isNull("mimetype") ? o.getString("mimetype") : null;
+            expectToken(parser, JsonToken.START_OBJECT);
+            Locale locale = null;
+            long size = 0;
+            String encoding = null;
+            String mimetype = null;
+            Long id = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME)
+            {
+                String fieldName = parser.getCurrentName();
+                if (parser.nextToken() == JsonToken.VALUE_NULL)
+                {
+                    continue;
+                }
 
-            Long id = o.has("contentId") && !o.isNull("contentId") ? o.getLong("contentId") : null;
-            
-            ret = new ContentPropertyValue(locale, size, encoding, mimetype, id);
+                switch (fieldName)
+                {
+                    case "locale":
+                        locale = deserializer.deserializeValue(Locale.class, parser.getText());
+                        break;
+                    case "size":
+                        size = parser.getValueAsLong();
+                        break;
+                    case "encoding":
+                        encoding = parser.getText();
+                        break;
+                    case "mimetype":
+                        mimetype = parser.getText();
+                        break;
+                    case "contentId":
+                        id = parser.getValueAsLong();
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            return new ContentPropertyValue(locale, size, encoding, mimetype, id);
         }
         else
         {
-            ret = new StringPropertyValue((String)value);
+            return new StringPropertyValue(readScalarText(parser));
         }
-        
-        return ret;
     }
 
-    private PropertyValue getPropertyValue(PropertyDefinition propertyDef, Object value) throws JSONException
+    /**
+     * Decode a property value according to its definition. The parser is positioned on the first token of the value.
+     */
+    private PropertyValue readPropertyValue(JsonParser parser, PropertyDefinition propertyDef) throws IOException
     {
-        PropertyValue ret = null;
-
-        if(value == null || value == JSONObject.NULL)
+        if (parser.currentToken() == JsonToken.VALUE_NULL)
         {
-            ret = null;
+            return null;
         }
-        else if(propertyDef == null)
+        else if (propertyDef == null)
         {
             // assume a string
-            ret = new StringPropertyValue((String)value);
+            return new StringPropertyValue(readScalarText(parser));
         }
-        else
+
+        DataTypeDefinition dataType = propertyDef.getDataType();
+        if (propertyDef.isMultiValued())
         {
-            DataTypeDefinition dataType = propertyDef.getDataType();
-            
-            boolean isMulti = propertyDef.isMultiValued();
-            if(isMulti)
+            if (parser.currentToken() != JsonToken.START_ARRAY)
             {
-                if(!(value instanceof JSONArray))
-                {
-                    throw new IllegalArgumentException("Expected json array, got " + value.getClass().getName());
-                }
-
-                MultiPropertyValue multi = new MultiPropertyValue();
-                JSONArray array = (JSONArray)value;
-                for(int j = 0; j < array.length(); j++)
-                {
-                    multi.addValue(getSinglePropertyValue(dataType, array.get(j)));
-                }
-    
-                ret = multi;
+                throw new IllegalArgumentException("Expected json array, got " + parser.currentToken());
             }
-            else
+
+            MultiPropertyValue multi = new MultiPropertyValue();
+            while (parser.nextToken() != JsonToken.END_ARRAY)
             {
-                ret = getSinglePropertyValue(dataType, value);
+                multi.addValue(readSinglePropertyValue(parser, dataType));
             }
+            return multi;
+        }
+        else
+        {
+            return readSinglePropertyValue(parser, dataType);
         }
-        
-        return ret;
     }
-    
+
+    private String readScalarText(JsonParser parser) throws IOException
+    {
+        if (parser.currentToken().isStructStart())
+        {
+            throw new IllegalArgumentException("Expected json string, got " + parser.currentToken());
+        }
+        return parser.getText();
+    }
+
+    /**
+     * Get the metadata of the nodes matching the parameters.
+     * The response is decoded as a stream, so the JSON tree of the whole payload is never built.
+     *
+     * @param params the nodes to be fetched and the information to be included
+     * @return the metadata of the nodes, in the order returned by the Repository
+     */
     public List<NodeMetaData> getNodesMetaData(NodeMetaDataParameters params) throws AuthenticationException, IOException, JSONException
     {
         List<Long> nodeIds = params.getNodeIds();
@@ -811,187 +897,178 @@ public class SOLRAPIClient
         }
 
         PostRequest req = new PostRequest(url.toString(), body.toString(), "application/json");
-        JSONObject json = callRepository(GET_METADATA_URL, req);
+        List<NodeMetaData> nodes = new ArrayList<>();
+        streamRepository(GET_METADATA_URL, req, "nodes", parser -> nodes.add(readNodeMetaData(parser)));
+        return nodes;
+    }
 
-        JSONArray jsonNodes = json.getJSONArray("nodes");
-        List<NodeMetaData> nodes = new ArrayList<>(jsonNodes.length());
-        for(int i = 0; i < jsonNodes.length(); i++)
+    /**
+     * Decode the node metadata object the parser is positioned on.
+     *
+     * @param parser JSON parser positioned on the START_OBJECT token of the node
+     * @return the node metadata
+     */
+    private NodeMetaData readNodeMetaData(JsonParser parser) throws IOException
+    {
+        NodeMetaData metaData = new NodeMetaData();
+        Long id = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME)
         {
-            JSONObject jsonNodeInfo = jsonNodes.getJSONObject(i);
-            NodeMetaData metaData = new NodeMetaData();
-            
-            if(jsonNodeInfo.has("id"))
-            {
-                metaData.setId(jsonNodeInfo.getLong("id"));
-            }
-            
-            if(jsonNodeInfo.has("tenantDomain"))
-            {
-                metaData.setTenantDomain(jsonNodeInfo.getString("tenantDomain"));
-            }
-            
-            if(jsonNodeInfo.has("txnId"))
+            String fieldName = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.VALUE_NULL)
             {
-                metaData.setTxnId(jsonNodeInfo.getLong("txnId"));
-            }
-            
-            if(jsonNodeInfo.has("aclId"))
-            {
-                metaData.setAclId(jsonNodeInfo.getLong("aclId"));
+                continue;
             }
 
-            if(jsonNodeInfo.has("nodeRef"))
-            {
-                metaData.setNodeRef(new NodeRef(jsonNodeInfo.getString("nodeRef")));
-            }
-            
-            if(jsonNodeInfo.has("type"))
-            {
-                metaData.setType(deserializer.deserializeValue(QName.class, jsonNodeInfo.getString("type")));
-            }
-            
-            if(jsonNodeInfo.has("aspects"))
-            {
-                JSONArray jsonAspects = jsonNodeInfo.getJSONArray("aspects");
-                Set<QName> aspects = new HashSet<QName>(jsonAspects.length());
-                for(int j = 0; j < jsonAspects.length(); j++)
-                {
-                    String jsonAspect = (String)jsonAspects.get(j);
-                    aspects.add(deserializer.deserializeValue(QName.class, jsonAspect));
-                }
-                metaData.setAspects(aspects);
-            }
-
-            if(jsonNodeInfo.has("paths"))
-            {
-                JSONArray jsonPaths = jsonNodeInfo.getJSONArray("paths");
-                List<Pair<String, QName>> paths = new ArrayList<Pair<String, QName>>(jsonPaths.length());
-                List<String> ancestorPaths = new ArrayList<String>();
-                for(int j = 0; j < jsonPaths.length(); j++)
-                {
-                    JSONObject path = jsonPaths.getJSONObject(j);
-                    String pathValue = path.getString("path");
-                    QName qname = path.has("qname") ? deserializer.deserializeValue(QName.class, path.getString("qname")) : null;
-                    paths.add(new Pair<String, QName>(pathValue, qname));
-                    if(path.has("apath"))
+            switch (fieldName)
+            {
+                case "id":
+                    id = parser.getLongValue();
+                    break;
+                case "tenantDomain":
+                    metaData.setTenantDomain(parser.getText());
+                    break;
+                case "txnId":
+                    metaData.setTxnId(parser.getLongValue());
+                    break;
+                case "aclId":
+                    metaData.setAclId(parser.getLongValue());
+                    break;
+                case "nodeRef":
+                    metaData.setNodeRef(new NodeRef(parser.getText()));
+                    break;
+                case "type":
+                    metaData.setType(deserializer.deserializeValue(QName.class, parser.getText()));
+                    break;
+                case "aspects":
+                    Set<QName> aspects = new HashSet<>();
+                    for (String aspect : readStringList(parser))
                     {
-                    	String ancestorPath = path.getString("apath");
-                    	ancestorPaths.add(ancestorPath);
+                        aspects.add(deserializer.deserializeValue(QName.class, aspect));
                     }
-                }
-                metaData.setPaths(paths);
-                metaData.setAncestorPaths(ancestorPaths);
-            }
-            
-            if(jsonNodeInfo.has("namePaths"))
-            {
-                JSONArray jsonNamePaths = jsonNodeInfo.getJSONArray("namePaths");
-                List<List<String>> namePaths = new ArrayList<List<String>>(jsonNamePaths.length());
-                for(int j = 0; j < jsonNamePaths.length(); j++)
-                {
-                    JSONObject jsonNamePath = jsonNamePaths.getJSONObject(j);
-                    JSONArray jsonNameElements = jsonNamePath.getJSONArray("namePath");
-                    List<String> namePath = new ArrayList<String>(jsonNameElements.length());
-                    for(int k = 0; k < jsonNameElements.length(); k++)
+                    metaData.setAspects(aspects);
+                    break;
+                case "paths":
+                    readPaths(parser, metaData);
+                    break;
+                case "namePaths":
+                    expectToken(parser, JsonToken.START_ARRAY);
+                    List<List<String>> namePaths = new ArrayList<>();
+                    while (parser.nextToken() == JsonToken.START_OBJECT)
                     {
-                        String namePathElement =  jsonNameElements.getString(k);
-                        namePath.add(namePathElement);
+                        while (parser.nextToken() == JsonToken.FIELD_NAME)
+                        {
+                            String namePathField = parser.getCurrentName();
+                            parser.nextToken();
+                            if ("namePath".equals(namePathField))
+                            {
+                                namePaths.add(readStringList(parser));
+                            }
+                            else
+                            {
+                                parser.skipChildren();
+                            }
+                        }
                     }
-                    namePaths.add(namePath);
-                }
-                metaData.setNamePaths(namePaths);
-            }
-            
-            if(jsonNodeInfo.has("ancestors"))
-            {
-                JSONArray jsonAncestors = jsonNodeInfo.getJSONArray("ancestors");
-                HashSet<NodeRef> ancestors = new HashSet<NodeRef>(jsonAncestors.length());
-                for(int j = 0; j < jsonAncestors.length(); j++)
-                {
-                    String ancestorNodeRefString = jsonAncestors.getString(j);
-                    NodeRef ancestorNodeRef = new NodeRef(ancestorNodeRefString);
-                    ancestors.add(ancestorNodeRef);
-                }
-                metaData.setAncestors(ancestors);
-            }
+                    metaData.setNamePaths(namePaths);
+                    break;
+                case "ancestors":
+                    Set<NodeRef> ancestors = new HashSet<>();
+                    for (String ancestor : readStringList(parser))
+                    {
+                        ancestors.add(new NodeRef(ancestor));
+                    }
+                    metaData.setAncestors(ancestors);
+                    break;
+                case "properties":
+                    expectToken(parser, JsonToken.START_OBJECT);
+                    Map<QName, PropertyValue> properties = new HashMap<>();
+                    while (parser.nextToken() == JsonToken.FIELD_NAME)
+                    {
+                        QName propQName = deserializer.deserializeValue(QName.class, parser.getCurrentName());
+                        parser.nextToken();
 
-            if(jsonNodeInfo.has("properties"))
-            {
-                JSONObject jsonProperties = jsonNodeInfo.getJSONObject("properties");
-                Map<QName, PropertyValue> properties = new HashMap<QName, PropertyValue>(jsonProperties.length());
-                @SuppressWarnings("rawtypes")
-                Iterator propKeysIterator = jsonProperties.keys();
-                while(propKeysIterator.hasNext())
-                {
-                    String propName = (String)propKeysIterator.next();
-                    QName propQName = deserializer.deserializeValue(QName.class, propName);
-                    Object propValueObj = jsonProperties.opt(propName);
-
-                    // check the expected property type to determine how to process the value
-                    PropertyDefinition propertyDef = dictionaryService.getProperty(propQName);
-//                    if(propertyDef == null)
-//                    {
-//                        // TODO which exception here?
-//                        throw new IllegalArgumentException("Could not find property definition for property " + propName);
-//                    }
-                    
-                    properties.put(propQName, getPropertyValue(propertyDef, propValueObj));
-                }
-                metaData.setProperties(properties);
-            }
-            
-            if(jsonNodeInfo.has("parentAssocsCrc"))
-            {
-                metaData.setParentAssocsCrc(jsonNodeInfo.getLong("parentAssocsCrc"));
-            }
-            
-            if(jsonNodeInfo.has("parentAssocs"))
-            {
-                JSONArray jsonParentAssocs = jsonNodeInfo.getJSONArray("parentAssocs");
-                List<ChildAssociationRef> assocs = new ArrayList<ChildAssociationRef>(jsonParentAssocs.length());
-                for(int j = 0; j < jsonParentAssocs.length(); j++)
-                {
-                    String childAssocRefStr = jsonParentAssocs.getString(j);
-                    ChildAssociationRef childAssociationRef = new ChildAssociationRef(childAssocRefStr);
-                    assocs.add(childAssociationRef);
-                }
-                metaData.setParentAssocs(assocs);
+                        // check the expected property type to determine how to process the value
+                        PropertyDefinition propertyDef = dictionaryService.getProperty(propQName);
+                        properties.put(propQName, readPropertyValue(parser, propertyDef));
+                    }
+                    metaData.setProperties(properties);
+                    break;
+                case "parentAssocsCrc":
+                    metaData.setParentAssocsCrc(parser.getLongValue());
+                    break;
+                case "parentAssocs":
+                    metaData.setParentAssocs(readChildAssociationRefs(parser));
+                    break;
+                case "childAssocs":
+                    metaData.setChildAssocs(readChildAssociationRefs(parser));
+                    break;
+                case "childIds":
+                    expectToken(parser, JsonToken.START_ARRAY);
+                    List<Long> childIds = new ArrayList<>();
+                    while (parser.nextToken() != JsonToken.END_ARRAY)
+                    {
+                        childIds.add(parser.getValueAsLong());
+                    }
+                    metaData.setChildIds(childIds);
+                    break;
+                case "owner":
+                    metaData.setOwner(parser.getText());
+                    break;
+                default:
+                    parser.skipChildren();
             }
-            
-            if(jsonNodeInfo.has("childAssocs"))
+        }
+        metaData.setId(required(parser, "id", id));
+        return metaData;
+    }
+
+    private void readPaths(JsonParser parser, NodeMetaData metaData) throws IOException
+    {
+        expectToken(parser, JsonToken.START_ARRAY);
+        List<Pair<String, QName>> paths = new ArrayList<>();
+        List<String> ancestorPaths = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.START_OBJECT)
+        {
+            String pathValue = null;
+            QName qname = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME)
             {
-                JSONArray jsonParentAssocs = jsonNodeInfo.getJSONArray("childAssocs");
-                List<ChildAssociationRef> assocs = new ArrayList<ChildAssociationRef>(jsonParentAssocs.length());
-                for(int j = 0; j < jsonParentAssocs.length(); j++)
+                String fieldName = parser.getCurrentName();
+                if (parser.nextToken() == JsonToken.VALUE_NULL)
                 {
-                    String childAssocRefStr = jsonParentAssocs.getString(j);
-                    ChildAssociationRef childAssociationRef = new ChildAssociationRef(childAssocRefStr);
-                    assocs.add(childAssociationRef);
+                    continue;
                 }
-                metaData.setChildAssocs(assocs);
-            }
-            
-            if(jsonNodeInfo.has("childIds"))
-            {
-                JSONArray jsonChildIds = jsonNodeInfo.getJSONArray("childIds");
-                List<Long> childIds = new ArrayList<Long>(jsonChildIds.length());
-                for(int j = 0; j < jsonChildIds.length(); j++)
+
+                switch (fieldName)
                 {
-                    Long childId = jsonChildIds.getLong(j);
-                    childIds.add(childId);
+                    case "path":
+                        pathValue = parser.getText();
+                        break;
+                    case "qname":
+                        qname = deserializer.deserializeValue(QName.class, parser.getText());
+                        break;
+                    case "apath":
+                        ancestorPaths.add(parser.getText());
+                        break;
+                    default:
+                        parser.skipChildren();
                 }
-                metaData.setChildIds(childIds);
-            }
-            
-            if(jsonNodeInfo.has("owner"))
-            {
-                metaData.setOwner(jsonNodeInfo.getString("owner"));
             }
-            
-            nodes.add(metaData);
+            paths.add(new Pair<>(pathValue, qname));
         }
+        metaData.setPaths(paths);
+        metaData.setAncestorPaths(ancestorPaths);
+    }
 
-        return nodes;
+    private List<ChildAssociationRef> readChildAssociationRefs(JsonParser parser) throws IOException
+    {
+        List<ChildAssociationRef> assocs = new ArrayList<>();
+        for (String childAssocRefStr : readStringList(parser))
+        {
+            assocs.add(new ChildAssociationRef(childAssocRefStr));
+        }
+        return assocs;
     }
     
     public GetTextContentResponse getTextContent(Long nodeId, QName propertyQName, Long modifiedSince) throws AuthenticationException, IOException {
@@ -1625,6 +1702,116 @@ public class SOLRAPIClient
         }
     }
 
+    /**
+     * Callback invoked for every element of the JSON array streamed from the Repository.
+     */
+    @FunctionalInterface
+    private interface JsonElementHandler
+    {
+        /**
+         * @param parser JSON parser positioned on the START_OBJECT token of the element.
+         *               The handler must consume the element up to its END_OBJECT token.
+         */
+        void handle(JsonParser parser) throws IOException;
+    }
+
+    /**
+     * Send the request to the Repository and decode the response as a stream of tokens.
+     * Every object found in the top level array named arrayName is passed to the handler as soon as it is
+     * available, so no intermediate representation of the whole payload is built. Any other top level
+     * attribute is skipped.
+     */
+    private void streamRepository(String msgId, Request req, String arrayName, JsonElementHandler handler)
+            throws IOException, AuthenticationException
+    {
+        Response response = null;
+        LookAheadBufferedReader reader = null;
+        try
+        {
+            response = repositoryHttpClient.sendRequest(req);
+            if (response.getStatus() != HttpStatus.SC_OK)
+            {
+                throw new AlfrescoRuntimeException(msgId + " return status:" + response.getStatus());
+            }
+
+            reader = new LookAheadBufferedReader(new InputStreamReader(response.getContentAsStream(), StandardCharsets.UTF_8), LOGGER);
+            try (JsonParser parser = LOGGER.isDebugEnabled()
+                    ? jsonFactory.createParser(readAndLogPayload(reader))
+                    : jsonFactory.createParser(reader))
+            {
+                expectToken(parser, parser.nextToken(), JsonToken.START_OBJECT);
+                while (parser.nextToken() == JsonToken.FIELD_NAME)
+                {
+                    String fieldName = parser.getCurrentName();
+                    JsonToken token = parser.nextToken();
+                    if (arrayName.equals(fieldName) && token == JsonToken.START_ARRAY)
+                    {
+                        while (parser.nextToken() == JsonToken.START_OBJECT)
+                        {
+                            handler.handle(parser);
+                        }
+                    }
+                    else
+                    {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        }
+        catch (JSONException | JsonProcessingException exception)
+        {
+            String message = "Received a malformed JSON payload. Request was \"" +
+                    req.getFullUri() +
+                    "\" Data: "
+                    + ofNullable(reader)
+                    .map(LookAheadBufferedReader::lookAheadAndGetBufferedContent)
+                    .orElse("Not available");
+            LOGGER.error(message);
+            throw exception;
+        }
+        finally
+        {
+            ofNullable(response).ifPresent(Response::release);
+            ofNullable(reader).ifPresent(this::silentlyClose);
+        }
+    }
+
+    /**
+     * Reads the whole payload in order to log it: with DEBUG enabled the response is no longer streamed.
+     */
+    private String readAndLogPayload(Reader reader) throws IOException
+    {
+        StringWriter payload = new StringWriter();
+        reader.transferTo(payload);
+        LOGGER.debug(payload.toString());
+        return payload.toString();
+    }
+
+    /**
+     * Fails, instead of defaulting to 0, when a required field is missing (or null) in the object just decoded.
+     */
+    private long required(JsonParser parser, String fieldName, Long value) throws JsonParseException
+    {
+        if (value == null)
+        {
+            throw new JsonParseException(parser, "Missing required field \"" + fieldName + "\"");
+        }
+        return value;
+    }
+
+    private void expectToken(JsonParser parser, JsonToken expected) throws JsonParseException
+    {
+        expectToken(parser, parser.currentToken(), expected);
+    }
+
+    private void expectToken(JsonParser parser, JsonToken actual, JsonToken expected) throws JsonParseException
+    {
+        if (actual != expected)
+        {
+            throw new JsonParseException(parser, "Expected " + expected + " but found " + actual);
+        }
+    }
+
     private void silentlyClose(Closeable closeable)
     {
         try
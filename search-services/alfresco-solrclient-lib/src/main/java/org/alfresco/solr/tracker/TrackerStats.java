@@ -27,16 +27,19 @@
 package org.alfresco.solr.tracker;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.alfresco.solr.InformationServerCollectionProvider;
 import org.alfresco.solr.adapters.ISimpleOrderedMap;
-import org.alfresco.util.Pair;
 
 /**
  * @author Andy
@@ -49,6 +52,10 @@ public class TrackerStats
 
     ConcurrentHashMap<String, IncrementalStats> aclTimes = new ConcurrentHashMap<String, IncrementalStats>();
 
+    ConcurrentHashMap<String, IncrementalStats> aclFetchTimes = new ConcurrentHashMap<String, IncrementalStats>();
+
+    ConcurrentHashMap<String, IncrementalStats> aclFetchWaitTimes = new ConcurrentHashMap<String, IncrementalStats>();
+
     ConcurrentHashMap<String, IncrementalStats> changeSetAcls = new ConcurrentHashMap<String, IncrementalStats>();
 
     ConcurrentHashMap<String, IncrementalStats> txDocs = new ConcurrentHashMap<String, IncrementalStats>();
@@ -90,34 +97,39 @@ public class TrackerStats
         {
             IncrementalStats next = all.get(key);
             IncrementalStats stats = next.copy();
+            double[] moments = stats.getMoments();
             if (answer == null)
             {
                 answer = new SimpleStats(stats.scale, this.infoSrv);
                 answer .start  = stats.start;
-                answer.moments[0] = stats.moments[0];
-                answer.moments[1] = stats.moments[1];
-                answer.moments[2] = stats.moments[2];
-                answer.max = stats.max;
-                answer.min = stats.min;
+                answer.moments[0] = moments[0];
+                answer.moments[1] = moments[1];
+                answer.moments[2] = moments[2];
+                answer.max = stats.getMax();
+                answer.min = stats.getMin();
+                stats.addCountsTo(answer.counts);
                 answer.copies.put(key, stats);
             }
             else
             {
                 SimpleStats newAnswer = new SimpleStats(answer.scale, this.infoSrv);
 
-                newAnswer.moments[0] = answer.moments[0] + stats.moments[0];
+                newAnswer.moments[0] = answer.moments[0] + moments[0];
 
-                newAnswer.moments[1] = answer.moments[1] * answer.moments[0] + stats.moments[1] * stats.moments[0];
-                newAnswer.moments[1] /= answer.moments[0] + stats.moments[0];
+                newAnswer.moments[1] = answer.moments[1] * answer.moments[0] + moments[1] * moments[0];
+                newAnswer.moments[1] /= answer.moments[0] + moments[0];
 
                 newAnswer.moments[2] = answer.moments[2] * answer.moments[0];
                 newAnswer.moments[2] += (answer.moments[1] - newAnswer.moments[1]) * (answer.moments[1] - newAnswer.moments[1]) * answer.moments[0];
-                newAnswer.moments[2] += stats.moments[2] * stats.moments[0];
-                newAnswer.moments[2] += (stats.moments[1] - newAnswer.moments[1]) * (stats.moments[1] - newAnswer.moments[1]) * stats.moments[0];
-                newAnswer.moments[2] /= answer.moments[0] + stats.moments[0];
+                newAnswer.moments[2] += moments[2] * moments[0];
+                newAnswer.moments[2] += (moments[1] - newAnswer.moments[1]) * (moments[1] - newAnswer.moments[1]) * moments[0];
+                newAnswer.moments[2] /= answer.moments[0] + moments[0];
+
+                newAnswer.min = (stats.getMin() < answer.min) ? stats.getMin() : answer.min;
+                newAnswer.max = (stats.getMax() > answer.max) ? stats.getMax() : answer.max;
 
-                newAnswer.min = (stats.min < answer.min) ? stats.min : answer.min;
-                newAnswer.max = (stats.max > answer.max) ? stats.max : answer.max;
+                newAnswer.counts = answer.counts;
+                stats.addCountsTo(newAnswer.counts);
                 
                 newAnswer.start = (stats.start.compareTo(answer.start) < 1) ? stats.start : answer.start;
 
@@ -145,6 +157,22 @@ public class TrackerStats
         return aggregateResults(aclTimes);
     }
 
+    /**
+     * @return the times spent reading the ACLs of a batch of change sets from the repository
+     */
+    public SimpleStats getAclFetchTimes()
+    {
+        return aggregateResults(aclFetchTimes);
+    }
+
+    /**
+     * @return the times the ACL indexing waited for the ACLs of a batch of change sets to be read
+     */
+    public SimpleStats getAclFetchWaitTimes()
+    {
+        return aggregateResults(aclFetchWaitTimes);
+    }
+
     public SimpleStats getChangeSetAcls()
     {
         return aggregateResults(changeSetAcls);
@@ -230,6 +258,9 @@ public class TrackerStats
 
         double[] moments = new double[3];
 
+        /** Bucket counts merged from all the copies */
+        long[] counts = new long[IncrementalStats.BUCKET_COUNT];
+
         double min = 0D;
 
         double max = 0D;
@@ -273,6 +304,12 @@ public class TrackerStats
             return Math.sqrt(getVarience());
         }
 
+        synchronized double getPercentile(double quantile)
+        {
+            double value = IncrementalStats.percentile(counts, quantile, scale);
+            return Double.isNaN(value) ? value : Math.min(Math.max(value, min), max);
+        }
+
         public synchronized ISimpleOrderedMap<Object> getNamedList(boolean incdludeDetail, boolean includeHist, boolean includeValues)
         {
             ISimpleOrderedMap<Object> map = this.server.getSimpleOrderedMapInstance();
@@ -283,6 +320,9 @@ public class TrackerStats
             map.add("Mean", getMean());
             map.add("Varience", getVarience());
             map.add("StdDev", getStandardDeviation());
+            map.add("P50", getPercentile(0.50D));
+            map.add("P95", getPercentile(0.95D));
+            map.add("P99", getPercentile(0.99D));
             if (incdludeDetail)
             {
                 for (Entry<String, IncrementalStats> copy : copies.entrySet())
@@ -383,32 +423,56 @@ public class TrackerStats
 
     }
 
+    /**
+     * Statistics on a stream of values, updated without locking so it can be shared by concurrent indexing threads.
+     *
+     * The moments are computed from striped sums of the powers of the values, shifted by the first value added to
+     * keep them accurate. The distribution is recorded in a fixed set of log-linear buckets (a value is counted
+     * in a bucket with a relative width below 1 / 2^(SUB_BUCKET_BITS - 1)), which gives the percentiles and can be
+     * merged across copies. Only the last <code>buckets</code> values are kept.
+     */
     public static class IncrementalStats
     {
-        Date start = new Date();
-        
-        int scale;
+        static final int SUB_BUCKET_BITS = 5;
 
-        int buckets;
+        private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
 
-        double[] moments = new double[5];
+        private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1;
 
-        double min = 0D;
+        /** Number of buckets needed to cover all the non negative long values */
+        static final int BUCKET_COUNT = (65 - SUB_BUCKET_BITS) * SUB_BUCKET_HALF_COUNT;
 
-        double max = 0D;
+        private static final long NO_SHIFT = Double.doubleToRawLongBits(Double.NaN);
 
-        List<Double> values;
+        volatile Date start = new Date();
+
+        final int scale;
+
+        final int buckets;
+
+        private final LongAdder count = new LongAdder();
+
+        private final AtomicLong shift = new AtomicLong(NO_SHIFT);
+
+        private final DoubleAdder[] powerSums = { new DoubleAdder(), new DoubleAdder(), new DoubleAdder(), new DoubleAdder() };
+
+        private final DoubleAccumulator min = new DoubleAccumulator(Math::min, Double.POSITIVE_INFINITY);
+
+        private final DoubleAccumulator max = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+        private final AtomicLongArray values;
+
+        private final AtomicLong valueCount = new AtomicLong();
 
-        List<Bucket> hist;
-        
         InformationServerCollectionProvider server;
 
         public IncrementalStats(int scale, int buckets, InformationServerCollectionProvider infoSrv)
         {
             this.scale = scale;
             this.buckets = buckets;
-            values = new ArrayList<Double>(buckets);
-            hist = new ArrayList<Bucket>(buckets + 1);
+            values = new AtomicLongArray(Math.max(buckets, 1));
             this.server = infoSrv;
         }
 
@@ -427,26 +491,20 @@ public class TrackerStats
             map.add("StdDev", getStandardDeviation());
             map.add("Skew", getSkew());
             map.add("Kurtosis", getKurtosis());
+            map.add("P50", getPercentile(0.50D));
+            map.add("P95", getPercentile(0.95D));
+            map.add("P99", getPercentile(0.99D));
 
             if (includeHist)
             {
                 int i = 0;
                 ISimpleOrderedMap<Object> buckets = this.server.getSimpleOrderedMapInstance();
-                for (Bucket b : hist)
+                for (Bucket b : getHistogram())
                 {
                     double mark = (b.leftBoundary + b.rightBoundary) / 2.0D;
                     double width = b.rightBoundary - b.leftBoundary;
 
-                    // SimpleOrderedMap<Object> bucket = new SimpleOrderedMap<Object>();
-                    // bucket.add("Lower", b.leftBoundary);
-                    // bucket.add("Upper", mark);
-                    // bucket.add("ProbabilityDensity", b.countLeft/b.incrementalStats.getN()/width);
                     buckets.add("" + i++, (b.leftBoundary + mark) / 2.0D + "," + b.countLeft / b.incrementalStats.getN() / width);
-
-                    // bucket = new SimpleOrderedMap<Object>();
-                    // bucket.add("Lower", mark);
-                    // bucket.add("Upper", b.rightBoundary);
-                    // bucket.add("ProbabilityDensity", b.countRight/b.incrementalStats.getN()/width);
                     buckets.add("" + i++, (mark + b.rightBoundary) / 2.0D + "," + b.countRight / b.incrementalStats.getN() / width);
                 }
                 map.add("Buckets", buckets);
@@ -456,7 +514,7 @@ public class TrackerStats
             {
                 int i = 0;
                 ISimpleOrderedMap<Object> valuesMap = this.server.getSimpleOrderedMapInstance();
-                for (Double value : values)
+                for (Double value : getValues())
                 {
                     valuesMap.add("" + i++, value);
                 }
@@ -466,248 +524,226 @@ public class TrackerStats
             return map;
         }
 
-        public synchronized void reset()
+        /**
+         * Values added while resetting may be partially kept.
+         */
+        public void reset()
         {
-            moments = new double[5];
-
-            min = 0D;
-
-            max = 0D;
-
-            values = new ArrayList<Double>(buckets);
+            count.reset();
+            shift.set(NO_SHIFT);
+            for (DoubleAdder powerSum : powerSums)
+            {
+                powerSum.reset();
+            }
+            min.reset();
+            max.reset();
+            for (int i = 0; i < counts.length(); i++)
+            {
+                counts.set(i, 0L);
+            }
+            valueCount.set(0L);
 
-            hist = new ArrayList<Bucket>(buckets + 1);
-            
             start = new Date();
         }
 
-        public synchronized void add(double xUnscaled)
+        public void add(double xUnscaled)
         {
-            double x = xUnscaled / scale;
-            if ((moments[0] == 0) || (x > max))
+            add(xUnscaled, 1L);
+        }
+
+        /**
+         * Adds the first <code>count</code> values, in order.
+         */
+        public void add(long[] xUnscaled, int count)
+        {
+            for (int i = 0; i < count; i++)
             {
-                max = x;
+                add(xUnscaled[i], 1L);
             }
-            if ((moments[0] == 0L) || (x < min))
+        }
+
+        /**
+         * Adds the same value <code>occurrences</code> times.
+         */
+        void add(double xUnscaled, long occurrences)
+        {
+            if (occurrences < 1)
             {
-                min = x;
+                return;
             }
-            double n = moments[0];
-            double nPlus1 = n + 1;
-            double n2 = n * n;
-            double d = (moments[1] - x) / nPlus1;
-            double d2 = d * d;
-            double d3 = d2 * d;
-            double n_nPlus1 = n / nPlus1;
 
-            moments[4] += 4 * d * moments[3] + 6 * d2 * moments[2] + (1 + n * n2) * d2 * d2;
-            moments[4] *= n_nPlus1;
-
-            moments[3] += 3 * d * moments[2] + (1 - n2) * d3;
-            moments[3] *= n_nPlus1;
-
-            moments[2] += (1 + n) * d2;
-            moments[2] *= n_nPlus1;
+            double x = xUnscaled / scale;
+            shift.compareAndSet(NO_SHIFT, Double.doubleToRawLongBits(x));
+            double d = x - Double.longBitsToDouble(shift.get());
+            double power = occurrences;
+            for (DoubleAdder powerSum : powerSums)
+            {
+                power *= d;
+                powerSum.add(power);
+            }
+            min.accumulate(x);
+            max.accumulate(x);
+            counts.addAndGet(bucketIndex((long) xUnscaled), occurrences);
 
-            moments[1] -= d;
+            long last = valueCount.addAndGet(occurrences);
+            for (long i = Math.max(last - occurrences, last - values.length()); i < last; i++)
+            {
+                values.set((int) (i % values.length()), Double.doubleToRawLongBits(x));
+            }
 
-            moments[0] = nPlus1;
+            // Counted last, so the sums are complete for the values already counted
+            count.add(occurrences);
+        }
 
-            if (buckets > 1)
+        /**
+         * @return the index of the bucket counting the unscaled value
+         */
+        static int bucketIndex(long xUnscaled)
+        {
+            if (xUnscaled < SUB_BUCKET_COUNT)
             {
-                if (moments[0] < buckets)
-                {
-                    values.add(Double.valueOf(x));
-                }
-                else if (moments[0] == buckets)
-                {
-                    values.add(Double.valueOf(x));
-                    buildInitialBuckets();
-                }
-                else
-                {
-                    values.set((int) moments[0] % buckets, x);
-                    if (x < hist.get(0).leftBoundary)
-                    {
-                        double delta = (hist.get(0).leftBoundary - x) / 3.0;
-                        Bucket b = new Bucket(this, x - delta, hist.get(0).leftBoundary);
-                        hist.add(0, b);
-                        b.add(x);
-                        Pair<Integer, Double> bestToMerge = findBestToMerge();
-                        if (hist.size() > buckets)
-                        {
-                            merge(bestToMerge.getFirst());
-                        }
-                    }
-                    else if (x >= hist.get(hist.size() - 1).rightBoundary)
-                    {
-                        double delta = (x - hist.get(hist.size() - 1).rightBoundary) / 3.0;
-                        Bucket b = new Bucket(this, hist.get(hist.size() - 1).rightBoundary, x + delta);
-                        hist.add(b);
-                        b.add(x);
-                        Pair<Integer, Double> bestToMerge = findBestToMerge();
-                        if (hist.size() > buckets)
-                        {
-                            merge(bestToMerge.getFirst());
-                        }
-                    }
-                    else
-                    {
-                        // find existing
-                        for (Bucket b : hist)
-                        {
-                            if ((b.leftBoundary <= x) && (x < b.rightBoundary))
-                            {
-                                b.add(x);
-                                break;
-                            }
-
-                        }
-                        Pair<Integer, Double> bestToMerge = findBestToMerge();
-                        Pair<Integer, Double> bestToSplit = findBestToSplit();
-                       
-                        if (bestToMerge.getSecond() - bestToSplit.getSecond() < 0)
-                        {
-                            if(hist.size() < buckets)
-                            {
-                                split(bestToSplit.getFirst());
-                            }
-                            else
-                            {
-                                merge(bestToMerge.getFirst());
-                                split(bestToMerge.getFirst() < bestToSplit.getFirst() ? bestToSplit.getFirst() - 1 : bestToSplit.getFirst());
-                            }
-                        }
-                    }
-                }
+                return (int) Math.max(xUnscaled, 0L);
             }
+            int shift = 64 - Long.numberOfLeadingZeros(xUnscaled) - SUB_BUCKET_BITS;
+            return shift * SUB_BUCKET_HALF_COUNT + (int) (xUnscaled >>> shift);
         }
 
         /**
-         * 
+         * @return the lowest unscaled value counted by the bucket
          */
-        private void buildInitialBuckets()
+        static double bucketLowerBound(int index)
         {
-            // generate initial bucket list
-            Collections.sort(values);
-            FOUND: for (int i = 0; i < values.size(); i++)
+            if (index < SUB_BUCKET_COUNT)
             {
-                for (Bucket b : hist)
-                {
-                    if ((b.leftBoundary <= values.get(i)) && (values.get(i) < b.rightBoundary))
-                    {
-                        b.add(values.get(i));
-                        continue FOUND;
-                    }
+                return index;
+            }
+            int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+            return (double) ((long) (index - shift * SUB_BUCKET_HALF_COUNT) << shift);
+        }
 
-                }
-                if (i < values.size() - 1)
-                {
-                    double start = values.get(i);
-                    double end = start + 1.0D;
+        /**
+         * @return the width of the bucket, as unscaled values
+         */
+        static double bucketWidth(int index)
+        {
+            return (index < SUB_BUCKET_COUNT) ? 1D : (double) (1L << (index / SUB_BUCKET_HALF_COUNT - 1));
+        }
 
-                    END: for (int j = i + 1; j < values.size(); j++)
-                    {
-                        if (values.get(j) > start)
-                        {
-                            end = values.get(j);
-                            break END;
-                        }
-                    }
+        /**
+         * @param counts bucket counts, possibly merged from several stats
+         * @param quantile between 0 and 1
+         * @param scale scale of the stats
+         * @return the scaled middle value of the bucket holding the quantile, NaN if there are no values
+         */
+        static double percentile(long[] counts, double quantile, int scale)
+        {
+            long n = 0;
+            for (long c : counts)
+            {
+                n += c;
+            }
+            if (n == 0)
+            {
+                return Double.NaN;
+            }
 
-                    Bucket b = new Bucket(this, start, end);
-                    b.add(values.get(i));
-                    hist.add(b);
-                }
-                else
-                {
-                    double first = values.get(0);
-                    double last = values.get(values.size() - 1);
-                    double width = 1.0D;
-                    if (values.size() > 1)
-                    {
-                        width = (last - first) / (values.size() - 1);
-                    }
-                    Bucket b = new Bucket(this, last, last + width);
-                    b.add(values.get(i));
-                    hist.add(b);
-                }
+            long rank = Math.max(1L, (long) Math.ceil(quantile * n));
+            long seen = 0;
+            int i = 0;
+            while (seen + counts[i] < rank)
+            {
+                seen += counts[i++];
             }
+            double width = bucketWidth(i);
+            return (bucketLowerBound(i) + ((width > 1D) ? width / 2.0D : 0D)) / scale;
         }
 
-        void merge(int position)
+        /**
+         * @return a copy of the bucket counts
+         */
+        long[] getCounts()
         {
-            Bucket lower = hist.get(position);
-            Bucket upper = hist.get(position + 1);
-            Bucket merged = new Bucket(this, lower.leftBoundary, upper.rightBoundary, lower.countLeft + lower.countRight, upper.countLeft + upper.countRight);
-            hist.remove(position);
-            hist.set(position, merged);
-
+            long[] snapshot = new long[BUCKET_COUNT];
+            addCountsTo(snapshot);
+            return snapshot;
         }
 
-        void split(int position)
+        /**
+         * Merge the bucket counts into the given ones.
+         */
+        void addCountsTo(long[] target)
         {
-            Bucket toSplit = hist.get(position);
-            double mark = (toSplit.leftBoundary + toSplit.rightBoundary) / 2.0D;
-            Bucket lower = new Bucket(this, toSplit.leftBoundary, mark, toSplit.countLeft / 2.0D, toSplit.countLeft / 2.0D);
-            Bucket upper = new Bucket(this, mark, toSplit.rightBoundary, toSplit.countRight / 2.0D, toSplit.countRight / 2.0D);
-            hist.set(position, upper);
-            hist.add(position, lower);
+            for (int i = 0; i < BUCKET_COUNT; i++)
+            {
+                target[i] += counts.get(i);
+            }
         }
 
-        Pair<Integer, Double> findBestToMerge()
+        /**
+         * @return n, the mean, then the second, third and fourth central moments (divided by n)
+         */
+        double[] getMoments()
         {
-            double minMergeError = Double.MAX_VALUE;
-            int bucket = 0;
-            for (int i = 0; i < hist.size() - 1; i++)
+            double[] moments = new double[5];
+            long n = count.sum();
+            if (n == 0)
             {
-                double mergeError = hist.get(i).mergeError(hist.get(i + 1));
-                if (mergeError < minMergeError)
-                {
-                    minMergeError = mergeError;
-                    bucket = i;
-                }
+                return moments;
             }
-            return new Pair<Integer, Double>(bucket, minMergeError);
+
+            double m1 = powerSums[0].sum() / n;
+            double m2 = powerSums[1].sum() / n;
+            double m3 = powerSums[2].sum() / n;
+            double m4 = powerSums[3].sum() / n;
+            double m1Squared = m1 * m1;
+            moments[0] = n;
+            moments[1] = Double.longBitsToDouble(shift.get()) + m1;
+            moments[2] = Math.max(m2 - m1Squared, 0D);
+            moments[3] = m3 - 3 * m1 * m2 + 2 * m1 * m1Squared;
+            moments[4] = m4 - 4 * m1 * m3 + 6 * m1Squared * m2 - 3 * m1Squared * m1Squared;
+            return moments;
         }
 
-        Pair<Integer, Double> findBestToSplit()
+        /**
+         * @return the last values added, at most <code>buckets</code>
+         */
+        List<Double> getValues()
         {
-            double maxError = Double.MIN_VALUE;
-            int bucket = 0;
-            for (int i = 0; i < hist.size(); i++)
+            long last = valueCount.get();
+            List<Double> recent = new ArrayList<Double>();
+            for (long i = Math.max(0L, last - values.length()); i < last; i++)
             {
-                double error = hist.get(i).error();
-                if (error > maxError)
-                {
-                    maxError = error;
-                    bucket = i;
-                }
+                recent.add(Double.longBitsToDouble(values.get((int) (i % values.length()))));
             }
-            return new Pair<Integer, Double>(bucket, maxError);
+            return recent;
         }
 
-        public synchronized long getN()
+        public long getN()
         {
-            return (long) moments[0];
+            return count.sum();
         }
 
-        public synchronized double getMin()
+        public double getMin()
         {
-            return min;
+            return (getN() == 0) ? 0D : min.get();
         }
 
-        public synchronized double getMax()
+        public double getMax()
         {
-            return max;
+            return (getN() == 0) ? 0D : max.get();
         }
 
-        public synchronized double getMean()
+        public double getMean()
         {
-            return moments[1];
+            return getMoments()[1];
         }
 
-        public synchronized double getVarience()
+        public double getVarience()
+        {
+            return varience(getMoments());
+        }
+
+        private static double varience(double[] moments)
         {
             if (moments[0] > 1)
             {
@@ -719,16 +755,17 @@ public class TrackerStats
             }
         }
 
-        public synchronized double getStandardDeviation()
+        public double getStandardDeviation()
         {
             return Math.sqrt(getVarience());
         }
 
-        public synchronized double getSkew()
+        public double getSkew()
         {
+            double[] moments = getMoments();
             if (moments[0] > 2)
             {
-                double v = getVarience();
+                double v = varience(moments);
                 return moments[3] * moments[0] * moments[0] / (Math.sqrt(v) * v * (moments[0] - 1) * (moments[0] - 2));
             }
             else
@@ -737,13 +774,14 @@ public class TrackerStats
             }
         }
 
-        public synchronized double getKurtosis()
+        public double getKurtosis()
         {
+            double[] moments = getMoments();
             if (moments[0] > 3)
             {
                 double div = (moments[0] - 2) * (moments[0] - 3);
                 double nMinus1 = moments[0] - 1;
-                double v = getVarience();
+                double v = varience(moments);
                 double z = ((moments[4] * moments[0] * moments[0] * (moments[0] + 1)) / (v * v * nMinus1));
                 z -= 3 * nMinus1 * nMinus1;
                 z /= div;
@@ -754,37 +792,80 @@ public class TrackerStats
                 return Double.NaN;
             }
         }
-        
-        public synchronized List<Bucket> getHistogram()
+
+        /**
+         * @param quantile between 0 and 1
+         * @return the approximated value, NaN if there are no values
+         */
+        public double getPercentile(double quantile)
+        {
+            double value = percentile(getCounts(), quantile, scale);
+            return Double.isNaN(value) ? value : Math.min(Math.max(value, getMin()), getMax());
+        }
+
+        /**
+         * The non empty buckets, adjacent ones merged until there are at most <code>buckets</code> of them.
+         */
+        public List<Bucket> getHistogram()
         {
-            if(hist.size() == 0)
+            List<Bucket> hist = new ArrayList<Bucket>(buckets + 1);
+            if (buckets < 2)
+            {
+                return hist;
+            }
+
+            List<double[]> ranges = new ArrayList<>();
+            for (int i = 0; i < BUCKET_COUNT; i++)
+            {
+                long c = counts.get(i);
+                if (c > 0)
+                {
+                    double lower = bucketLowerBound(i);
+                    ranges.add(new double[] { lower / scale, (lower + bucketWidth(i)) / scale, c });
+                }
+            }
+            while (ranges.size() > buckets)
             {
-                buildInitialBuckets();
+                int smallest = 0;
+                for (int i = 1; i < ranges.size() - 1; i++)
+                {
+                    if (ranges.get(i)[2] + ranges.get(i + 1)[2] < ranges.get(smallest)[2] + ranges.get(smallest + 1)[2])
+                    {
+                        smallest = i;
+                    }
+                }
+                double[] upper = ranges.remove(smallest + 1);
+                double[] lower = ranges.get(smallest);
+                lower[1] = upper[1];
+                lower[2] += upper[2];
+            }
+            for (double[] range : ranges)
+            {
+                hist.add(new Bucket(this, range[0], range[1], range[2] / 2.0D, range[2] / 2.0D));
             }
             return hist;
         }
-        
-     
 
-        synchronized IncrementalStats copy()
+        IncrementalStats copy()
         {
             IncrementalStats copy = new IncrementalStats(this.scale, this.buckets, this.server);
             copy.start = this.start;
-            copy.max = this.getMax();
-            copy.min = this.min;
-            copy.moments[0] = this.moments[0];
-            copy.moments[1] = this.moments[1];
-            copy.moments[2] = this.moments[2];
-            copy.moments[3] = this.moments[3];
-            copy.moments[4] = this.moments[4];
-            for (Double x : this.values)
+            copy.shift.set(this.shift.get());
+            for (int i = 0; i < powerSums.length; i++)
             {
-                copy.values.add(x);
+                copy.powerSums[i].add(this.powerSums[i].sum());
             }
-            for (Bucket b : this.hist)
+            copy.min.accumulate(this.min.get());
+            copy.max.accumulate(this.max.get());
+            for (int i = 0; i < BUCKET_COUNT; i++)
             {
-                copy.hist.add(new Bucket(copy, b.leftBoundary, b.rightBoundary, b.countLeft, b.countRight));
+                copy.counts.set(i, this.counts.get(i));
             }
+            for (Double x : getValues())
+            {
+                copy.values.set((int) (copy.valueCount.getAndIncrement() % copy.values.length()), Double.doubleToRawLongBits(x));
+            }
+            copy.count.add(this.count.sum());
             return copy;
         }
 
@@ -797,7 +878,7 @@ public class TrackerStats
         {
             return "IncrementalStats [getN()="
                     + getN() + ", getMin()=" + getMin() + ", getMax()=" + getMax() + ", getMean()=" + getMean() + ", getVarience()=" + getVarience() + ", getStandardDeviation()="
-                    + getStandardDeviation() + ", getSkew()=" + getSkew() + ", getKurtosis()=" + getKurtosis() + ", values=" + values + ", hist=" + hist + "]";
+                    + getStandardDeviation() + ", getSkew()=" + getSkew() + ", getKurtosis()=" + getKurtosis() + ", values=" + getValues() + ", hist=" + getHistogram() + "]";
         }
 
     }
@@ -830,6 +911,34 @@ public class TrackerStats
         stats.add(time);
     }
 
+    /**
+     * @param time long
+     */
+    public void addAclFetchTime(long time)
+    {
+        IncrementalStats stats = aclFetchTimes.get(Thread.currentThread().getName());
+        if (stats == null)
+        {
+            stats = new IncrementalStats(TIME_SCALE, 50, this.infoSrv);
+            aclFetchTimes.put(Thread.currentThread().getName(), stats);
+        }
+        stats.add(time);
+    }
+
+    /**
+     * @param time long
+     */
+    public void addAclFetchWaitTime(long time)
+    {
+        IncrementalStats stats = aclFetchWaitTimes.get(Thread.currentThread().getName());
+        if (stats == null)
+        {
+            stats = new IncrementalStats(TIME_SCALE, 50, this.infoSrv);
+            aclFetchWaitTimes.put(Thread.currentThread().getName(), stats);
+        }
+        stats.add(time);
+    }
+
     /**
      * @param time long
      */
@@ -860,11 +969,7 @@ public class TrackerStats
             stats = new IncrementalStats(TIME_SCALE, 50, this.infoSrv);
             elapsedNodeTimes.put(Thread.currentThread().getName(), stats);
         }
-        long meanTime = time / docCount;
-        for(int i = 0; i < docCount; i++)
-        {
-            stats.add(meanTime);
-        }
+        stats.add(time / docCount, docCount);
         
     }
     
@@ -884,11 +989,7 @@ public class TrackerStats
             stats = new IncrementalStats(TIME_SCALE, 50, this.infoSrv);
             elapsedAclTimes.put(Thread.currentThread().getName(), stats);
         }
-        long meanTime = time / docCount;
-        for(int i = 0; i < docCount; i++)
-        {
-            stats.add(meanTime);
-        }
+        stats.add(time / docCount, docCount);
         
     }
     
@@ -908,11 +1009,7 @@ public class TrackerStats
             stats = new IncrementalStats(TIME_SCALE, 50, this.infoSrv);
             elapsedContentTimes.put(Thread.currentThread().getName(), stats);
         }
-        long meanTime = time / docCount;
-        for(int i = 0; i < docCount; i++)
-        {
-            stats.add(meanTime);
-        }
+        stats.add(time / docCount, docCount);
         
     }
     
@@ -966,7 +1063,8 @@ public class TrackerStats
     public String toString()
     {
         return "TrackerStats [modelTimes="
-                + modelTimes + ", aclTimes=" + aclTimes + ", changeSetAcls=" + changeSetAcls + ", txDocs=" + txDocs + ", docTransformationTimes=" + docTransformationTimes
+                + modelTimes + ", aclTimes=" + aclTimes + ", aclFetchTimes=" + aclFetchTimes + ", aclFetchWaitTimes=" + aclFetchWaitTimes
+                + ", changeSetAcls=" + changeSetAcls + ", txDocs=" + txDocs + ", docTransformationTimes=" + docTransformationTimes
                 + ", nodeTimes=" + nodeTimes + "]";
     }
 
@@ -977,6 +1075,8 @@ public class TrackerStats
     {
         modelTimes.clear();
         aclTimes.clear();
+        aclFetchTimes.clear();
+        aclFetchWaitTimes.clear();
         changeSetAcls.clear();
         txDocs.clear();
         docTransformationTimes.clear();
@@ -0,0 +1,223 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.solr.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import org.alfresco.httpclient.AlfrescoHttpClient;
+import org.alfresco.httpclient.Request;
+import org.alfresco.httpclient.Response;
+import org.alfresco.repo.dictionary.NamespaceDAO;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.cmr.dictionary.PropertyDefinition;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+/**
+ * Tests the streaming decoding of the Repository responses in {@link SOLRAPIClient}.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class SOLRAPIClientStreamingTest
+{
+    private static final String CM = "{http://www.alfresco.org/model/content/1.0}";
+
+    @Mock
+    private AlfrescoHttpClient repositoryHttpClient;
+
+    @Mock
+    private DictionaryService dictionaryService;
+
+    @Mock
+    private NamespaceDAO namespaceDAO;
+
+    @Mock
+    private Response response;
+
+    private SOLRAPIClient client;
+
+    @Before
+    public void setUp()
+    {
+        client = new SOLRAPIClient(repositoryHttpClient, dictionaryService, namespaceDAO);
+    }
+
+    private void respondWith(String json) throws Exception
+    {
+        when(repositoryHttpClient.sendRequest(any(Request.class))).thenReturn(response);
+        when(response.getStatus()).thenReturn(200);
+        when(response.getContentAsStream()).thenReturn(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void nodesMetaDataAreDecodedOneByOne() throws Exception
+    {
+        PropertyDefinition keywords = mockPropertyDefinition(DataTypeDefinition.TEXT, true);
+        when(dictionaryService.getProperty(QName.createQName(CM + "keywords"))).thenReturn(keywords);
+        PropertyDefinition title = mockPropertyDefinition(DataTypeDefinition.MLTEXT, false);
+        when(dictionaryService.getProperty(QName.createQName(CM + "title"))).thenReturn(title);
+        PropertyDefinition content = mockPropertyDefinition(DataTypeDefinition.CONTENT, false);
+        when(dictionaryService.getProperty(QName.createQName(CM + "content"))).thenReturn(content);
+
+        respondWith("{\"nodes\":["
+                + "{\"id\":10,\"tenantDomain\":\"\",\"txnId\":5,\"aclId\":7,"
+                + "\"nodeRef\":\"workspace://SpacesStore/a\",\"type\":\"" + CM + "content\","
+                + "\"aspects\":[\"" + CM + "auditable\"],"
+                + "\"paths\":[{\"path\":\"/a\",\"qname\":\"" + CM + "a\",\"apath\":\"/1/2\"}],"
+                + "\"namePaths\":[{\"namePath\":[\"Company Home\",\"a\"]}],"
+                + "\"ancestors\":[\"workspace://SpacesStore/root\"],"
+                + "\"properties\":{"
+                + "\"" + CM + "name\":\"a.txt\","
+                + "\"" + CM + "keywords\":[\"one\",\"two\"],"
+                + "\"" + CM + "title\":[{\"locale\":\"en\",\"value\":\"Title\"}],"
+                + "\"" + CM + "content\":{\"locale\":\"en\",\"size\":12,\"mimetype\":\"text/plain\",\"contentId\":3},"
+                + "\"" + CM + "description\":null},"
+                + "\"parentAssocsCrc\":42,\"childIds\":[11,12],\"owner\":\"admin\",\"unexpected\":{\"ignored\":[1]}},"
+                + "{\"id\":20,\"txnId\":6}"
+                + "],\"count\":2}");
+
+        List<NodeMetaData> decoded = client.getNodesMetaData(new NodeMetaDataParameters());
+
+        assertEquals(2, decoded.size());
+
+        NodeMetaData first = decoded.get(0);
+        assertEquals(10L, first.getId());
+        assertEquals(5L, first.getTxnId());
+        assertEquals(7L, first.getAclId());
+        assertEquals(new NodeRef("workspace://SpacesStore/a"), first.getNodeRef());
+        assertEquals(QName.createQName(CM + "content"), first.getType());
+        assertTrue(first.getAspects().contains(QName.createQName(CM + "auditable")));
+        assertEquals("/a", first.getPaths().get(0).getFirst());
+        assertEquals("/1/2", first.getAncestorPaths().get(0));
+        assertEquals(List.of("Company Home", "a"), first.getNamePaths().get(0));
+        assertTrue(first.getAncestors().contains(new NodeRef("workspace://SpacesStore/root")));
+        assertEquals(42L, first.getParentAssocsCrc());
+        assertEquals(List.of(11L, 12L), first.getChildIds());
+        assertEquals("admin", first.getOwner());
+
+        assertEquals("a.txt", ((StringPropertyValue) first.getProperties().get(QName.createQName(CM + "name"))).getValue());
+        assertEquals(2, ((MultiPropertyValue) first.getProperties().get(QName.createQName(CM + "keywords"))).getValues().size());
+        assertEquals("Title", ((MLTextPropertyValue) first.getProperties().get(QName.createQName(CM + "title"))).getValue(Locale.ENGLISH));
+        ContentPropertyValue contentValue = (ContentPropertyValue) first.getProperties().get(QName.createQName(CM + "content"));
+        assertEquals(12L, contentValue.getLength());
+        assertEquals("text/plain", contentValue.getMimetype());
+        assertNull(first.getProperties().get(QName.createQName(CM + "description")));
+
+        assertEquals(20L, decoded.get(1).getId());
+        verify(response).release();
+    }
+
+    @Test
+    public void nodesAreDecoded() throws Exception
+    {
+        respondWith("{\"nodes\":[{\"id\":1,\"nodeRef\":\"workspace://SpacesStore/a\",\"txnId\":2,\"aclId\":3,"
+                + "\"tenant\":\"\",\"status\":\"u\"},{\"id\":4,\"txnId\":2,\"status\":\"d\",\"explicitShardId\":1}]}");
+
+        List<Node> nodes = client.getNodes(new GetNodesParameters(), 10);
+
+        assertEquals(2, nodes.size());
+        assertEquals(1L, nodes.get(0).getId());
+        assertEquals(Node.SolrApiNodeStatus.UPDATED, nodes.get(0).getStatus());
+        assertEquals(Node.SolrApiNodeStatus.DELETED, nodes.get(1).getStatus());
+        assertEquals(Integer.valueOf(1), nodes.get(1).getExplicitShardId());
+    }
+
+    @Test
+    public void aclReadersAreDecoded() throws Exception
+    {
+        respondWith("{\"aclsReaders\":[{\"aclId\":1,\"readers\":[\"GROUP_EVERYONE\"],\"denied\":[],"
+                + "\"aclChangeSetId\":9,\"tenantDomain\":null}]}");
+
+        List<AclReaders> readers = client.getAclReaders(List.of(new Acl(9, 1)));
+
+        assertEquals(1, readers.size());
+        assertEquals(1L, readers.get(0).getId());
+        assertEquals(List.of("GROUP_EVERYONE"), readers.get(0).getReaders());
+        assertTrue(readers.get(0).getDenied().isEmpty());
+        assertEquals(TenantService.DEFAULT_DOMAIN, readers.get(0).getTenantDomain());
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void malformedPayloadIsReported() throws Exception
+    {
+        respondWith("{\"nodes\":[{\"id\":1,");
+
+        client.getNodes(new GetNodesParameters(), 10);
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void nodeMetaDataWithoutIdIsReported() throws Exception
+    {
+        respondWith("{\"nodes\":[{\"id\":10,\"txnId\":5},{\"id\":null,\"txnId\":6}]}");
+
+        client.getNodesMetaData(new NodeMetaDataParameters());
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void nodeWithoutIdIsReported() throws Exception
+    {
+        respondWith("{\"nodes\":[{\"txnId\":2,\"status\":\"u\"}]}");
+
+        client.getNodes(new GetNodesParameters(), 10);
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void aclReadersWithoutAclIdAreReported() throws Exception
+    {
+        respondWith("{\"aclsReaders\":[{\"readers\":[\"GROUP_EVERYONE\"],\"denied\":[],\"aclChangeSetId\":9}]}");
+
+        client.getAclReaders(List.of(new Acl(9, 1)));
+    }
+
+    private PropertyDefinition mockPropertyDefinition(QName dataTypeName, boolean multiValued)
+    {
+        DataTypeDefinition dataType = mock(DataTypeDefinition.class);
+        when(dataType.getName()).thenReturn(dataTypeName);
+        PropertyDefinition propertyDefinition = mock(PropertyDefinition.class);
+        when(propertyDefinition.getDataType()).thenReturn(dataType);
+        when(propertyDefinition.isMultiValued()).thenReturn(multiValued);
+        return propertyDefinition;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * #%L
+ * Alfresco Search Services
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+
+package org.alfresco.solr.tracker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.solr.tracker.TrackerStats.Bucket;
+import org.alfresco.solr.tracker.TrackerStats.IncrementalStats;
+import org.junit.Test;
+
+public class IncrementalStatsTest
+{
+    @Test
+    public void bulkAddIsEquivalentToAddingOneByOne()
+    {
+        IncrementalStats oneByOne = new IncrementalStats(1, 10, null);
+        IncrementalStats bulk = new IncrementalStats(1, 10, null);
+
+        Random random = new Random(42);
+        long[] values = new long[1000];
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = random.nextInt(100000);
+            oneByOne.add(values[i]);
+        }
+        bulk.add(values, 600);
+        bulk.add(new long[] {values[600]}, 1);
+        bulk.add(Arrays.copyOfRange(values, 601, values.length), values.length - 601);
+
+        assertEquals(oneByOne.getN(), bulk.getN());
+        assertEquals(oneByOne.getMin(), bulk.getMin(), 0);
+        assertEquals(oneByOne.getMax(), bulk.getMax(), 0);
+        assertEquals(oneByOne.getMean(), bulk.getMean(), 0);
+        assertEquals(oneByOne.getVarience(), bulk.getVarience(), 0);
+
+        List<Bucket> expected = oneByOne.getHistogram();
+        List<Bucket> actual = bulk.getHistogram();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++)
+        {
+            assertEquals(expected.get(i).leftBoundary, actual.get(i).leftBoundary, 0);
+            assertEquals(expected.get(i).rightBoundary, actual.get(i).rightBoundary, 0);
+            assertEquals(expected.get(i).countLeft + expected.get(i).countRight,
+                    actual.get(i).countLeft + actual.get(i).countRight, 0);
+        }
+    }
+
+    @Test
+    public void bulkAddIgnoresValuesBeyondCount()
+    {
+        IncrementalStats stats = new IncrementalStats(1, 10, null);
+        stats.add(new long[] {1, 2, 3, 1000}, 3);
+
+        assertEquals(3, stats.getN());
+        assertEquals(3, stats.getMax(), 0);
+    }
+
+    @Test
+    public void percentilesAreWithinTheBucketPrecision()
+    {
+        IncrementalStats stats = new IncrementalStats(1, 50, null);
+        Random random = new Random(42);
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = random.nextInt(1000000);
+            stats.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double quantile : new double[] {0.5, 0.95, 0.99})
+        {
+            double expected = values[(int) Math.ceil(quantile * values.length) - 1];
+            assertEquals(expected, stats.getPercentile(quantile), expected / 16);
+        }
+        assertTrue(stats.getHistogram().size() <= 50);
+    }
+
+    @Test
+    public void momentsAreAccurateForValuesFarFromZero()
+    {
+        IncrementalStats stats = new IncrementalStats(TrackerStats.TIME_SCALE, 50, null);
+        for (int i = 0; i < 1000; i++)
+        {
+            stats.add(5_000_000_000L + i * 1000L);
+        }
+
+        assertEquals(5000.4995, stats.getMean(), 1e-9);
+        assertEquals(1000 * 1001 / 12.0 / 1e6, stats.getVarience(), 1e-9);
+        assertEquals(50, stats.getValues().size());
+    }
+
+    @Test
+    public void concurrentAddsAreAllCounted() throws Exception
+    {
+        IncrementalStats stats = new IncrementalStats(1, 50, null);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int thread = 0; thread < 8; thread++)
+        {
+            executor.execute(() -> {
+                for (int i = 1; i <= 10000; i++)
+                {
+                    stats.add(i);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        assertEquals(80000, stats.getN());
+        assertEquals(1, stats.getMin(), 0);
+        assertEquals(10000, stats.getMax(), 0);
+        assertEquals(5000.5, stats.getMean(), 1e-6);
+        assertEquals(5000.5, stats.getPercentile(0.5), 5000.5 / 16);
+    }
+
+    @Test
+    public void percentilesAreMergedAcrossThreads() throws Exception
+    {
+        TrackerStats trackerStats = new TrackerStats(null);
+        trackerStats.addNodeTime(1_000_000L);
+        Thread other = new Thread(() -> trackerStats.addNodeTime(3_000_000L));
+        other.start();
+        other.join();
+
+        assertEquals(2, trackerStats.getNodeTimes().getN());
+        assertEquals(1, trackerStats.getNodeTimes().getPercentile(0.5), 1 / 16.0);
+        assertEquals(3, trackerStats.getNodeTimes().getPercentile(0.99), 3 / 16.0);
+    }
+}